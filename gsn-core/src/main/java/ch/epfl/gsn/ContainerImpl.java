@@ -32,19 +32,37 @@
 
 package ch.epfl.gsn;
 
+import java.io.IOException;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.slf4j.LoggerFactory;
+
+import ch.epfl.gsn.beans.DataTypes;
 import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.beans.VSensorConfig;
+import ch.epfl.gsn.data.blob.BlobStore;
+import ch.epfl.gsn.delivery.LocalChannel;
+import ch.epfl.gsn.storage.PartialInsertException;
+import ch.epfl.gsn.storage.RollupMaintainer;
 import ch.epfl.gsn.storage.StorageManager;
+import ch.epfl.gsn.storage.WriteBehindBuffer;
+import ch.epfl.gsn.storage.segment.SegmentStore;
 import ch.epfl.gsn.vsensor.AbstractVirtualSensor;
 
+import org.slf4j.Logger;
+
 public class ContainerImpl {
 
+	private static final transient Logger logger = LoggerFactory.getLogger(ContainerImpl.class);
+
 	/**
 	 * The <code> waitingVirtualSensors</code> contains the virtual sensors that
 	 * recently produced data. This variable is useful for batch processing timed
@@ -103,16 +121,221 @@ public class ContainerImpl {
 	 *                      the storage operation.
 	 */
 	public void publishData(AbstractVirtualSensor sensor, StreamElement data) throws SQLException {
-		String name = sensor.getVirtualSensorConfiguration().getName().toLowerCase();
-		StorageManager storageMan = Main.getStorage(sensor.getVirtualSensorConfiguration().getName());
-		//synchronized (psLock) {
-		storageMan.executeInsert(name, sensor.getVirtualSensorConfiguration().getOutputStructure(), data);
-		//}
-		
-		CopyOnWriteArrayList<VirtualSensorDataListener> listeners = dataListeners.get(name);
+		publishData(sensor, Collections.singletonList(data));
+	}
+
+	/**
+	 * Batch version of {@link #publishData(AbstractVirtualSensor, StreamElement)}.
+	 * All the stream elements are inserted in a single batch on the storage of
+	 * the virtual sensor before the registered listeners are notified, in
+	 * order, for each of them.
+	 * <p>
+	 * The local-wrappers reading the whole output of the virtual sensor get
+	 * the elements in memory first, the insertion and the notification of the
+	 * listeners are then done asynchronously (see {@link LocalChannel}), in
+	 * which case their failures are only logged.
+	 *
+	 * @param sensor The virtual sensor from which data is to be published.
+	 * @param data   The stream elements to be published.
+	 * @throws SQLException If any SQL-related errors occur during the execution of
+	 *                      the storage operation.
+	 */
+	public void publishData(final AbstractVirtualSensor sensor, final List<StreamElement> data) throws SQLException {
+		if (data.isEmpty()) {
+			return;
+		}
+		LocalChannel.get(sensor.getVirtualSensorConfiguration().getName()).publish(data,
+				new LocalChannel.Persistence() {
+					public void persist() throws SQLException {
+						persistData(sensor, data);
+					}
+				});
+	}
+
+	/**
+	 * Inserts the stream elements into the table of the virtual sensor and
+	 * notifies the listeners. With a write-behind buffer the elements are only
+	 * queued (see {@link WriteBehindBuffer}), the listeners are notified once
+	 * they are written, or at once if they are acknowledged when queued, in
+	 * which case they are notified again without element once the elements
+	 * are written, for those reading the table. The rollup tables (see
+	 * {@link RollupMaintainer}) and the {@link LatestValueCache} are updated
+	 * once they are written. Neither is done for elements which failed to be
+	 * written, but it is for the others of the batch (see
+	 * {@link PartialInsertException}).
+	 * The elements are also appended to the segment store of the virtual
+	 * sensor, if any. The large binary values are stored in the blob store,
+	 * see {@link #offloadBlobs(VSensorConfig, List)}.
+	 */
+	private void persistData(final AbstractVirtualSensor sensor, final List<StreamElement> data) throws SQLException {
+		final VSensorConfig config = sensor.getVirtualSensorConfiguration();
+		final List<StreamElement> stored = offloadBlobs(config, data);
+		SegmentStore segments = SegmentStore.find(config.getName());
+		if (segments != null) {
+			try {
+				segments.append(stored);
+			} catch (IOException e) {
+				logger.error("Archiving the output of " + config.getName() + " failed: " + e.getMessage(), e);
+			}
+		}
+		WriteBehindBuffer buffer = WriteBehindBuffer.find(config.getName());
+		if (buffer != null && WriteBehindBuffer.ACK_QUEUED.equals(config.getWriteAck())) {
+			buffer.add(stored, new WriteBehindBuffer.Callback() {
+				public void written(SQLException error) {
+					List<StreamElement> written = getWritten(data, stored, error);
+					if (!written.isEmpty()) {
+						updateRollups(config, written);
+						LatestValueCache.update(config, written);
+						// the listeners reading the table found nothing when first notified
+						notifyWritten(config);
+					}
+				}
+			}, false);
+			notifyListeners(config, data);
+			return;
+		}
+		if (buffer != null) {
+			buffer.add(stored, new WriteBehindBuffer.Callback() {
+				public void written(SQLException error) {
+					List<StreamElement> written = getWritten(data, stored, error);
+					if (!written.isEmpty()) {
+						updateRollups(config, written);
+						LatestValueCache.update(config, written);
+						notifyListeners(config, written);
+					}
+				}
+			}, WriteBehindBuffer.ACK_SYNC.equals(config.getWriteAck()));
+			return;
+		}
+		String name = config.getName().toLowerCase();
+		StorageManager storageMan = Main.getStorage(config.getName());
+		try {
+			if (stored.size() == 1) {
+				storageMan.executeInsert(name, config.getOutputStructure(), stored.get(0));
+			} else if (stored.size() >= StorageManager.BULK_INSERT_THRESHOLD) {
+				storageMan.executeBulkInsert(name, config.getOutputStructure(), stored);
+			} else {
+				storageMan.executeBatchInsert(name, config.getOutputStructure(), stored);
+			}
+		} catch (PartialInsertException e) {
+			// the rows inserted are committed, they are rolled up and delivered anyway
+			List<StreamElement> written = getWritten(data, stored, e);
+			updateRollups(config, written);
+			LatestValueCache.update(config, written);
+			notifyListeners(config, written);
+			throw e;
+		}
+		updateRollups(config, data);
+		LatestValueCache.update(config, data);
+		notifyListeners(config, data);
+	}
+
+	/**
+	 * @param stored the elements given to the storage, in the order of the
+	 *               published ones
+	 * @param error  the failure of the insertion, null if none
+	 * @return the published elements which were inserted
+	 */
+	private static List<StreamElement> getWritten(List<StreamElement> data, List<StreamElement> stored,
+			SQLException error) {
+		if (error == null) {
+			return data;
+		}
+		if (!(error instanceof PartialInsertException)) {
+			return Collections.emptyList();
+		}
+		Set<StreamElement> inserted = Collections.newSetFromMap(new IdentityHashMap<StreamElement, Boolean>());
+		inserted.addAll(((PartialInsertException) error).getInserted());
+		List<StreamElement> toReturn = new ArrayList<StreamElement>(inserted.size());
+		for (int i = 0; i < stored.size(); i++) {
+			if (inserted.contains(stored.get(i))) {
+				toReturn.add(data.get(i));
+			}
+		}
+		return toReturn;
+	}
+
+	/**
+	 * Writes the binary values of at least the blob threshold of the virtual
+	 * sensor to the blob store and returns the elements to store, holding
+	 * references to them. The published elements are shared with the
+	 * listeners, the references are set on copies. A value that can't be
+	 * written to the blob store is stored in the table.
+	 */
+	private List<StreamElement> offloadBlobs(VSensorConfig config, List<StreamElement> data) {
+		BlobStore blobs = BlobStore.getInstance();
+		int threshold = config.getBlobThreshold();
+		if (blobs == null || threshold <= 0) {
+			return data;
+		}
+		List<StreamElement> toReturn = null;
+		for (int i = 0; i < data.size(); i++) {
+			StreamElement se = data.get(i);
+			StreamElement copy = se;
+			Byte[] types = se.getFieldTypes();
+			for (int j = 0; j < types.length; j++) {
+				if (types[j] == null || types[j] != DataTypes.BINARY || !(se.getData(j) instanceof byte[])) {
+					continue;
+				}
+				byte[] value = (byte[]) se.getData(j);
+				if (value.length < threshold) {
+					continue;
+				}
+				try {
+					// recorded first, the table is read before sweeping the store
+					blobs.addTable(config.getName());
+					byte[] reference = blobs.put(value).toBytes();
+					if (copy == se) {
+						copy = new StreamElement(se);
+					}
+					copy.setData(j, reference);
+				} catch (IOException e) {
+					logger.error("Writing a value of " + config.getName() + " to the blob store failed: "
+							+ e.getMessage(), e);
+				}
+			}
+			if (copy != se && toReturn == null) {
+				toReturn = new ArrayList<StreamElement>(data.subList(0, i));
+			}
+			if (toReturn != null) {
+				toReturn.add(copy);
+			}
+		}
+		return toReturn == null ? data : toReturn;
+	}
+
+	private void updateRollups(VSensorConfig config, List<StreamElement> data) {
+		RollupMaintainer rollups = RollupMaintainer.find(config.getName());
+		if (rollups != null) {
+			try {
+				rollups.update(data);
+			} catch (SQLException e) {
+				logger.error("Updating the rollups of " + config.getName() + " failed: " + e.getMessage(), e);
+			}
+		}
+	}
+
+	private void notifyListeners(VSensorConfig config, List<StreamElement> data) {
+		CopyOnWriteArrayList<VirtualSensorDataListener> listeners = dataListeners.get(config.getName().toLowerCase());
+		if (listeners != null) {
+			for (StreamElement se : data) {
+				for (VirtualSensorDataListener listener : listeners) {
+					listener.consume(se, config);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tells the listeners that the elements they were notified of are now in
+	 * the table of the virtual sensor, with a null element, as the listeners
+	 * do when they have more rows to read.
+	 */
+	private void notifyWritten(VSensorConfig config) {
+		CopyOnWriteArrayList<VirtualSensorDataListener> listeners = dataListeners.get(config.getName().toLowerCase());
 		if (listeners != null) {
 			for (VirtualSensorDataListener listener : listeners) {
-				listener.consume(data, sensor.getVirtualSensorConfiguration());
+				listener.consume(null, config);
 			}
 		}
 	}
@@ -36,9 +36,13 @@ import java.awt.event.ActionListener;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -50,18 +54,41 @@ import ch.epfl.gsn.beans.VSensorConfig;
 import ch.epfl.gsn.delivery.DefaultDistributionRequest;
 import ch.epfl.gsn.delivery.DeliverySystem;
 import ch.epfl.gsn.delivery.DistributionRequest;
+import ch.epfl.gsn.delivery.LocalChannel;
 import ch.epfl.gsn.networking.zeromq.ZeroMQDeliveryAsync;
 import ch.epfl.gsn.networking.zeromq.ZeroMQDeliverySync;
 import ch.epfl.gsn.storage.DataEnumerator;
+import ch.epfl.gsn.storage.DataEnumeratorIF;
 import ch.epfl.gsn.storage.SQLValidator;
 import ch.epfl.gsn.storage.StorageManager;
 
 import org.slf4j.Logger;
 
+/**
+ * Delivers the output of the virtual sensors to the listeners registered with
+ * a query on it, from a single thread.
+ * <p>
+ * The listeners reading the whole output of a virtual sensor (the query is
+ * <code>select * from vs</code>) get the stream elements it produces through
+ * a {@link Feed}, a ring buffer filled by {@link #consume(StreamElement, VSensorConfig)},
+ * instead of reading them back from its table. Their table is only read for
+ * the elements older than their subscription, and again if they fall behind
+ * by more than {@link #FEED_CAPACITY} elements. The other listeners re-run
+ * their query on the table each time the virtual sensor produces data.
+ * <p>
+ * The listeners registered with the same query on the same virtual sensor
+ * share it, see {@link SharedQuery}: the rows are read once for all of them.
+ */
 public class DataDistributer implements VirtualSensorDataListener, VSensorStateChangeListener, Runnable {
 
     public static final int KEEP_ALIVE_PERIOD = 15 * 1000; // 15 sec.
 
+    /**
+     * Number of stream elements kept in memory for each listener reading the
+     * whole output of a virtual sensor.
+     */
+    public static final int FEED_CAPACITY = 1024;
+
     private static int keepAlivePeriod = -1;
 
     private javax.swing.Timer keepAliveTimer = null;
@@ -76,11 +103,15 @@ public class DataDistributer implements VirtualSensorDataListener, VSensorStateC
     private Thread thread;
     private HashMap<StorageManager, Connection> connections = new HashMap<StorageManager, Connection>();
 
-    private HashMap<DistributionRequest, PreparedStatement> preparedStatements = new HashMap<DistributionRequest, PreparedStatement>();
+    private HashMap<String, SharedQuery> sharedQueries = new HashMap<String, SharedQuery>();
+
+    private ConcurrentHashMap<DistributionRequest, SharedQuery> queries = new ConcurrentHashMap<DistributionRequest, SharedQuery>();
 
     private ArrayList<DistributionRequest> listeners = new ArrayList<DistributionRequest>();
 
-    private ConcurrentHashMap<DistributionRequest, DataEnumerator> candidateListeners = new ConcurrentHashMap<DistributionRequest, DataEnumerator>();
+    private ConcurrentHashMap<DistributionRequest, DataEnumeratorIF> candidateListeners = new ConcurrentHashMap<DistributionRequest, DataEnumeratorIF>();
+
+    private ConcurrentHashMap<DistributionRequest, Feed> feeds = new ConcurrentHashMap<DistributionRequest, Feed>();
 
     private LinkedBlockingQueue<DistributionRequest> locker = new LinkedBlockingQueue<DistributionRequest>();
 
@@ -193,39 +224,79 @@ public class DataDistributer implements VirtualSensorDataListener, VSensorStateC
      *                          statement.
      */
     public void addListener(DistributionRequest listener) {
+        synchronized (listeners) {
+            if (listeners.contains(listener) || feeds.containsKey(listener)) {
+                logger.info("Adding a listener to Distributer failed, duplicated listener! " + listener.toString());
+                return;
+            }
+        }
+        // attached before taking the lock, as the virtual sensor must be idle
+        Feed feed = null;
+        if (isWholeOutput(listener)) {
+            feed = new Feed(listener);
+            try {
+                feed.attach();
+            } catch (Exception e) {
+                logger.warn("Pushing the output of " + listener.getVSensorConfig().getName() + " to " + listener
+                        + " failed, it is read from the table instead: " + e.getMessage(), e);
+                feeds.remove(listener);
+                feed = null;
+            }
+        }
         synchronized (listeners) {
             if (listeners.contains(listener)) {
                 logger.info("Adding a listener to Distributer failed, duplicated listener! " + listener.toString());
 
             } else {
                 logger.info("Adding a listener to Distributer:" + listener.toString());
-                boolean needsAnd = SQLValidator.removeSingleQuotes(SQLValidator.removeQuotes(listener.getQuery()))
-                        .indexOf(" where ") > 0;
-                String query = SQLValidator.addPkField(listener.getQuery());
-                if (needsAnd) {
-                    query += " AND ";
-                } else {
-                    query += " WHERE ";
-                }
+                String key = listener.getVSensorConfig().getName().toLowerCase() + ":"
+                        + listener.getQuery().trim().replaceAll("\\s+", " ");
+                SharedQuery shared = sharedQueries.get(key);
+                if (shared == null) {
+                    boolean needsAnd = SQLValidator.removeSingleQuotes(SQLValidator.removeQuotes(listener.getQuery()))
+                            .indexOf(" where ") > 0;
+                    String query = SQLValidator.addPkField(listener.getQuery());
+                    if (needsAnd) {
+                        query += " AND ";
+                    } else {
+                        query += " WHERE ";
+                    }
 
-                query += " timed > ? and pk > ? order by pk asc LIMIT 1000"; // both have to be parameters to force the optimizer
-                                                                   // of Postgres < 9.2 to not scan on timed index
-                PreparedStatement prepareStatement = null;
-                try {
-                    prepareStatement = getPersistantConnection(listener.getVSensorConfig()).prepareStatement(query); // prepareStatement
-                                                                                                                     // =
-                                                                                                                     // StorageManager.getInstance().getConnection().prepareStatement(query);
-                    prepareStatement.setMaxRows(1000); // Limit the number of rows loaded in memory.
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
+                    query += " timed > ? and pk > ? order by pk asc LIMIT " + SharedQuery.PAGE_SIZE; // both have to be parameters to force the optimizer
+                                                                       // of Postgres < 9.2 to not scan on timed index
+                    PreparedStatement prepareStatement = null;
+                    try {
+                        prepareStatement = getPersistantConnection(listener.getVSensorConfig()).prepareStatement(query); // prepareStatement
+                                                                                                                         // =
+                                                                                                                         // StorageManager.getInstance().getConnection().prepareStatement(query);
+                        prepareStatement.setMaxRows(SharedQuery.PAGE_SIZE); // Limit the number of rows loaded in memory.
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                    shared = new SharedQuery(key, prepareStatement);
+                    sharedQueries.put(key, shared);
                 }
-                preparedStatements.put(listener, prepareStatement);
+                shared.join(listener);
+                queries.put(listener, shared);
                 listeners.add(listener);
-                addListenerToCandidates(listener);
+                if (feed != null) {
+                    feed.start();
+                } else {
+                    addListenerToCandidates(listener);
+                }
             }
         }
     }
 
+    /**
+     * @return true if the listener reads the whole output of its virtual
+     *         sensor, it can then be pushed the stream elements in memory
+     */
+    private static boolean isWholeOutput(DistributionRequest listener) {
+        return listener instanceof DefaultDistributionRequest && listener.getQuery().trim().replaceAll("\\s+", " ")
+                .equalsIgnoreCase("select * from " + listener.getVSensorConfig().getName());
+    }
+
     /**
      * Adds a new listener to the candidate listeners list.
      *
@@ -241,7 +312,7 @@ public class DataDistributer implements VirtualSensorDataListener, VSensorStateC
         if(logger.isDebugEnabled()){
             logger.debug("Adding the listener: " + listener.toString() + " to the candidates.");
         }
-        DataEnumerator dataEnum = makeDataEnum(listener);
+        DataEnumeratorIF dataEnum = makeDataEnum(listener);
         if (dataEnum.hasMoreElements()) {
             candidateListeners.put(listener, dataEnum);
             locker.add(listener);
@@ -282,7 +353,7 @@ public class DataDistributer implements VirtualSensorDataListener, VSensorStateC
      * @param listener
      * @return
      */
-    private boolean flushStreamElement(DataEnumerator dataEnum, DistributionRequest listener) {
+    private boolean flushStreamElement(DataEnumeratorIF dataEnum, DistributionRequest listener) {
         if (listener.isClosed()) {
             if(logger.isDebugEnabled()){
                 logger.debug("Flushing an stream element failed, isClosed=true [Listener: " + listener.toString() + "]");
@@ -325,10 +396,17 @@ public class DataDistributer implements VirtualSensorDataListener, VSensorStateC
         synchronized (listeners) {
             if (listeners.remove(listener)) {
                 try {
+                    Feed feed = feeds.remove(listener);
+                    if (feed != null) {
+                        feed.close();
+                    }
 
                     candidatesForNextRound.remove(listener);
                     removeListenerFromCandidates(listener);
-                    preparedStatements.get(listener).close();
+                    SharedQuery shared = queries.get(listener);
+                    if (shared.leave(listener)) {
+                        sharedQueries.remove(shared.key);
+                    }
                     listener.close();
 
                     if(listeners.isEmpty()){
@@ -340,7 +418,7 @@ public class DataDistributer implements VirtualSensorDataListener, VSensorStateC
                 } catch (SQLException e) {
                     logger.error(e.getMessage(), e);
                 } finally {
-                    preparedStatements.remove(listener);
+                    queries.remove(listener);
                 }
             }
         }
@@ -364,9 +442,28 @@ public class DataDistributer implements VirtualSensorDataListener, VSensorStateC
      *               that produced the StreamElement.
      */
     public void consume(StreamElement se, VSensorConfig config) {
+        // without element, the rows were written after the listeners were notified
+        consume(se, config, true);
+    }
+
+    /**
+     * @param written true if rows were written since the listeners read the
+     *                table, their shared pages are then read again
+     */
+    private void consume(StreamElement se, VSensorConfig config, boolean written) {
+        if (se != null) {
+            for (Feed feed : feeds.values()) {
+                if (feed.listener.getVSensorConfig() == config) {
+                    feed.push(se);
+                }
+            }
+        }
         synchronized (listeners) {
             for (DistributionRequest listener : listeners) {
-                if (listener.getVSensorConfig() == config) {
+                if (listener.getVSensorConfig() == config && written) {
+                    queries.get(listener).invalidate();
+                }
+                if (listener.getVSensorConfig() == config && !feeds.containsKey(listener)) {
                     if(logger.isDebugEnabled()){
                         logger.debug("sending stream element " + (se == null ? "second-chance-se" : se.toString())
                             + " produced by " + config.getName() + " to listener =>" + listener.toString());
@@ -399,14 +496,18 @@ public class DataDistributer implements VirtualSensorDataListener, VSensorStateC
                 logger.error(e.getMessage(), e);
             }
 
-            for (Entry<DistributionRequest, DataEnumerator> item : candidateListeners.entrySet()) {
+            for (Entry<DistributionRequest, DataEnumeratorIF> item : candidateListeners.entrySet()) {
                 boolean success = flushStreamElement(item.getValue(), item.getKey());
                 if (success) {
-                    if (!item.getValue().hasMoreElements()) {
+                    if (item.getValue() instanceof Feed) {
+                        if (!item.getValue().hasMoreElements()) {
+                            ((Feed) item.getValue()).idle();
+                        }
+                    } else if (!item.getValue().hasMoreElements()) {
                         removeListenerFromCandidates(item.getKey());
                         // As we are limiting the number of elements returned by the JDBC driver
                         // we consume the eventual remaining items.
-                        consume(null, item.getKey().getVSensorConfig());
+                        consume(null, item.getKey().getVSensorConfig(), false);
                     }
                 } else {
                     removeListener(item.getKey());
@@ -430,17 +531,15 @@ public class DataDistributer implements VirtualSensorDataListener, VSensorStateC
      *                      DefaultDistributionRequest.
      */
     public boolean vsLoading(VSensorConfig config) {
-        synchronized (listeners) {
-            if (Main.getContainerConfig().isZMQEnabled() && getInstance(ZeroMQDeliverySync.class, "sync") == this) {
-                try {
-                    DeliverySystem delivery = new ZeroMQDeliveryAsync(config.getName());
-                    addListener(DefaultDistributionRequest.create(delivery, config, "select * from " + config.getName(),
-                            System.currentTimeMillis()));
-                } catch (IOException e1) {
-                    logger.error(e1.getMessage(), e1);
-                } catch (SQLException e1) {
-                    logger.error(e1.getMessage(), e1);
-                }
+        if (Main.getContainerConfig().isZMQEnabled() && getInstance(ZeroMQDeliverySync.class, "sync") == this) {
+            try {
+                DeliverySystem delivery = new ZeroMQDeliveryAsync(config.getName());
+                addListener(DefaultDistributionRequest.create(delivery, config, "select * from " + config.getName(),
+                        System.currentTimeMillis()));
+            } catch (IOException e1) {
+                logger.error(e1.getMessage(), e1);
+            } catch (SQLException e1) {
+                logger.error(e1.getMessage(), e1);
             }
         }
         return true;
@@ -483,23 +582,15 @@ public class DataDistributer implements VirtualSensorDataListener, VSensorStateC
      *                 information for data distribution.
      * @return A DataEnumerator object for iterating over data records.
      */
-    private DataEnumerator makeDataEnum(DistributionRequest listener) {
+    private DataEnumeratorIF makeDataEnum(DistributionRequest listener) {
+        return makeDataEnum(listener, listener.getLastVisitedPk());
+    }
 
-        PreparedStatement prepareStatement = preparedStatements.get(listener);
-        try {
-            // last time can be also used, but must change > to >= in the query for
-            // non-unique timestamps
-            // and it works only with totally ordered streams
-            prepareStatement.setLong(1, listener.getStartTime());
-            prepareStatement.setLong(2, listener.getLastVisitedPk());
-        } catch (SQLException e) {
-            logger.error(e.getMessage(), e);
-            return new DataEnumerator();
-        }
-
-        DataEnumerator dataEnum = new DataEnumerator(Main.getStorage(listener.getVSensorConfig().getName()),
-                prepareStatement, false, true);
-        return dataEnum;
+    /**
+     * @param lastPk the primary key after which the data records are read
+     */
+    private DataEnumeratorIF makeDataEnum(DistributionRequest listener, long lastPk) {
+        return queries.get(listener).read(listener, lastPk);
     }
 
     public void release() {
@@ -560,4 +651,453 @@ public class DataDistributer implements VirtualSensorDataListener, VSensorStateC
         return this.name;
     }
 
+
+    /**
+     * The stream elements pushed to a listener reading the whole output of a
+     * virtual sensor.
+     * <p>
+     * When the listener is added, the virtual sensor is paused (see
+     * {@link LocalChannel#attach(Runnable)}) to get the largest primary key
+     * of its table: the rows up to it are read from the table, the elements
+     * produced afterwards are kept in a ring buffer of {@link #FEED_CAPACITY}
+     * elements until they are delivered. If the buffer is full, it is dropped
+     * and the feed is attached again: the table is read after the row of the
+     * last element delivered, found by its timestamp among the rows written
+     * since the previous attachment. The elements are pushed before they are
+     * written with a write-behind buffer acknowledging them when queued, and
+     * may then fail to be written, the rows are hence not counted. As the
+     * primary keys follow the order in which the elements are produced, the
+     * row is the n-th of this timestamp, n being the number of elements of
+     * this timestamp delivered in a row. If there is no such row, the last
+     * element delivered was not written or the stream went back in time, and
+     * the rows written since the previous attachment are delivered again.
+     * <p>
+     * The ring buffer is filled by the threads producing the data, the other
+     * methods are called by the thread of the distributer.
+     */
+    private class Feed implements DataEnumeratorIF {
+
+        private final DistributionRequest listener;
+
+        private final StreamElement[] ring = new StreamElement[FEED_CAPACITY];
+
+        private int first = 0;
+
+        private int size = 0;
+
+        /** Number of elements taken from the ring since the last attachment */
+        private long delivered = 0;
+
+        /** Timestamp of the last element taken from the ring */
+        private long lastTimed;
+
+        /** Number of elements of this timestamp taken from the ring in a row */
+        private int ties = 0;
+
+        /** The rows up to this primary key are read from the table */
+        private long base = -1;
+
+        private boolean ready = false;
+
+        private boolean scheduled = false;
+
+        private boolean lost = false;
+
+        private boolean closed = false;
+
+        // read from the table, by the thread of the distributer only
+        private long lastPk;
+
+        private boolean tableRead = false;
+
+        private DataEnumeratorIF table = null;
+
+        private int pageRows = 0;
+
+        private StreamElement next = null;
+
+        private Feed(DistributionRequest listener) {
+            this.listener = listener;
+            lastPk = listener.getLastVisitedPk();
+        }
+
+        /**
+         * Starts keeping the elements produced by the virtual sensor.
+         */
+        private void attach() throws SQLException, InterruptedException {
+            long maxPk = LocalChannel.get(listener.getVSensorConfig().getName()).attach(new Runnable() {
+                public void run() {
+                    feeds.put(listener, Feed.this);
+                }
+            });
+            synchronized (this) {
+                base = maxPk;
+            }
+        }
+
+        /**
+         * Starts delivering, once the listener is registered.
+         */
+        private synchronized void start() {
+            ready = true;
+            schedule();
+        }
+
+        /**
+         * Called by the threads producing the data, with the listeners
+         * notified in order.
+         */
+        private synchronized void push(StreamElement se) {
+            if (closed || lost || se.getTimeStamp() <= listener.getStartTime()) {
+                return;
+            }
+            if (size == ring.length) {
+                lost = true;
+                Arrays.fill(ring, null);
+                first = 0;
+                size = 0;
+            } else {
+                // the listeners get their own copy, as for the rows read from the table
+                ring[(first + size) % ring.length] = new StreamElement(se);
+                size++;
+            }
+            if (ready && !scheduled) {
+                schedule();
+            }
+        }
+
+        private void schedule() {
+            scheduled = true;
+            candidateListeners.put(listener, this);
+            locker.add(listener);
+        }
+
+        /**
+         * Removes the feed from the candidates if it has nothing to deliver,
+         * it is scheduled again by the next element pushed.
+         */
+        private synchronized void idle() {
+            if (!closed && (next != null || !tableRead || lost || size > 0)) {
+                return;
+            }
+            scheduled = false;
+            candidateListeners.remove(listener);
+            locker.remove(listener);
+        }
+
+        public boolean hasMoreElements() {
+            if (closed) {
+                return false;
+            }
+            if (next != null) {
+                return true;
+            }
+            if (!tableRead) {
+                readTable();
+                if (next != null) {
+                    return true;
+                }
+            }
+            boolean reattach;
+            synchronized (this) {
+                reattach = lost;
+            }
+            if (reattach) {
+                // outside of the lock, the producers must be able to finish
+                reattach();
+                return hasMoreElements();
+            }
+            synchronized (this) {
+                return size > 0;
+            }
+        }
+
+        public StreamElement nextElement() throws RuntimeException {
+            if (!hasMoreElements()) {
+                throw new IndexOutOfBoundsException("The feed has no more StreamElement or is closed.");
+            }
+            if (next != null) {
+                StreamElement se = next;
+                next = null;
+                return se;
+            }
+            synchronized (this) {
+                StreamElement se = ring[first];
+                ring[first] = null;
+                first = (first + 1) % ring.length;
+                size--;
+                delivered++;
+                if (ties > 0 && se.getTimeStamp() == lastTimed) {
+                    ties++;
+                } else {
+                    lastTimed = se.getTimeStamp();
+                    ties = 1;
+                }
+                return se;
+            }
+        }
+
+        public synchronized void close() {
+            closed = true;
+            lost = false;
+            scheduled = false;
+            Arrays.fill(ring, null);
+            size = 0;
+        }
+
+        /**
+         * Reads the next row up to the base primary key from the table.
+         */
+        private void readTable() {
+            while (next == null && !tableRead) {
+                if (table == null) {
+                    table = makeDataEnum(listener, lastPk);
+                    pageRows = 0;
+                }
+                if (table.hasMoreElements()) {
+                    StreamElement se = table.nextElement();
+                    pageRows++;
+                    if (se.getInternalPrimayKey() > base) {
+                        // the newer rows are in the ring
+                        table.close();
+                        table = null;
+                        tableRead = true;
+                    } else {
+                        lastPk = se.getInternalPrimayKey();
+                        next = se;
+                    }
+                } else {
+                    table = null;
+                    tableRead = pageRows == 0;
+                }
+            }
+        }
+
+        /**
+         * Attaches the feed again after the ring buffer was dropped, and
+         * reads the elements dropped from the table.
+         */
+        private void reattach() {
+            long previousBase;
+            long pushed;
+            long pushedTimed;
+            int pushedTies;
+            synchronized (this) {
+                previousBase = base;
+                pushed = delivered;
+                pushedTimed = lastTimed;
+                pushedTies = ties;
+            }
+            String name = listener.getVSensorConfig().getName();
+            try {
+                long maxPk = LocalChannel.get(name).attach(new Runnable() {
+                    public void run() {
+                        synchronized (Feed.this) {
+                            lost = false;
+                            delivered = 0;
+                            ties = 0;
+                        }
+                    }
+                });
+                lastPk = pushed == 0 ? previousBase : findPushedPk(previousBase, pushedTimed, pushedTies, maxPk);
+                synchronized (this) {
+                    base = maxPk;
+                }
+                tableRead = false;
+                logger.warn(listener + " fell behind the output of " + name + " by more than " + FEED_CAPACITY
+                        + " elements, it is read from the table after pk " + lastPk + ".");
+            } catch (Exception e) {
+                logger.error("Reading the output of " + name + " for " + listener + " failed, the listener is removed: "
+                        + e.getMessage(), e);
+                close();
+                // takes it out of the candidates, the distributer would otherwise retry forever
+                removeListener(listener);
+            }
+        }
+
+        /**
+         * @return the primary key of the last element delivered from the
+         *         ring, the row of the given timestamp written after the
+         *         previous base, or the previous base if there is none
+         */
+        private long findPushedPk(long previousBase, long timed, int ties, long maxPk) throws SQLException {
+            StorageManager storage = Main.getStorage(listener.getVSensorConfig());
+            String query = storage.addLimit("select pk from " + listener.getVSensorConfig().getName()
+                    + " where timed = " + timed + " and pk > " + previousBase + " and pk <= " + maxPk
+                    + " order by pk asc", 1, ties - 1);
+            Connection conn = null;
+            ResultSet rs = null;
+            try {
+                rs = storage.executeQueryWithResultSet(new StringBuilder(query), conn = storage.getConnection());
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+            } finally {
+                storage.close(rs);
+                storage.close(conn);
+            }
+            logger.warn("The last element of " + listener.getVSensorConfig().getName() + " delivered to " + listener
+                    + " is not in the table, the rows after pk " + previousBase + " are delivered again.");
+            return previousBase;
+        }
+    }
+
+    /**
+     * The query of the listeners registered with the same query on the same
+     * virtual sensor, prepared once.
+     * <p>
+     * The last page of rows read is kept and each listener takes the rows
+     * following its own last visited primary key and start time from it. The
+     * table is read again, from the position of the listener asking, only if
+     * the page does not cover that position, or if the listener reached the
+     * end of the page and the virtual sensor produced data since. The members
+     * of the group reading the same rows hence share one query.
+     */
+    private class SharedQuery {
+
+        private static final int PAGE_SIZE = 1000;
+
+        private final String key;
+
+        private final PreparedStatement statement;
+
+        private final List<DistributionRequest> members = new ArrayList<DistributionRequest>();
+
+        private List<StreamElement> page = null;
+
+        /** The page holds the rows after fromPk, up to toPk, newer than fromStart */
+        private long fromStart;
+
+        private long fromPk;
+
+        private long toPk;
+
+        /** No row newer than toPk was written when the page was read */
+        private boolean complete;
+
+        private SharedQuery(String key, PreparedStatement statement) {
+            this.key = key;
+            this.statement = statement;
+        }
+
+        private synchronized void join(DistributionRequest listener) {
+            members.add(listener);
+        }
+
+        /**
+         * @return true if it was the last member, the statement is then
+         *         closed
+         */
+        private synchronized boolean leave(DistributionRequest listener) throws SQLException {
+            members.remove(listener);
+            if (!members.isEmpty()) {
+                return false;
+            }
+            page = null;
+            statement.close();
+            return true;
+        }
+
+        /**
+         * The virtual sensor produced data, the rows after the page must be
+         * read.
+         */
+        private synchronized void invalidate() {
+            complete = false;
+        }
+
+        /**
+         * @return the rows of the query the listener did not get yet, at most
+         *         a page
+         */
+        private synchronized DataEnumeratorIF read(DistributionRequest listener, long lastPk) {
+            if (members.isEmpty()) {
+                // removed in the meantime
+                return new PageEnumerator(new ArrayList<StreamElement>());
+            }
+            long start = listener.getStartTime();
+            if (page == null || start < fromStart || lastPk < fromPk || (lastPk >= toPk && !complete)) {
+                fetch(lastPk);
+            }
+            List<StreamElement> rows = select(start, lastPk);
+            // the rows of the page may all be older than the start of the listener
+            while (rows.isEmpty() && !complete && page.size() == PAGE_SIZE) {
+                fetch(toPk);
+                rows = select(start, lastPk);
+            }
+            return new PageEnumerator(rows);
+        }
+
+        private List<StreamElement> select(long start, long lastPk) {
+            List<StreamElement> rows = new ArrayList<StreamElement>();
+            for (StreamElement se : page) {
+                if (se.getInternalPrimayKey() > lastPk && se.getTimeStamp() > start) {
+                    rows.add(se);
+                }
+            }
+            return rows;
+        }
+
+        /**
+         * Reads the page after the primary key, for the earliest start of the
+         * members.
+         */
+        private void fetch(long lastPk) {
+            long start = Long.MAX_VALUE;
+            for (DistributionRequest member : members) {
+                start = Math.min(start, member.getStartTime());
+            }
+            List<StreamElement> rows = new ArrayList<StreamElement>();
+            try {
+                // last time can be also used, but must change > to >= in the query for
+                // non-unique timestamps
+                // and it works only with totally ordered streams
+                statement.setLong(1, start);
+                statement.setLong(2, lastPk);
+                DataEnumerator dataEnum = new DataEnumerator(Main.getStorage(members.get(0).getVSensorConfig()),
+                        statement, false, true);
+                while (dataEnum.hasMoreElements()) {
+                    rows.add(dataEnum.nextElement());
+                }
+            } catch (SQLException e) {
+                logger.error(e.getMessage(), e);
+            }
+            page = rows;
+            fromStart = start;
+            fromPk = lastPk;
+            toPk = rows.isEmpty() ? lastPk : rows.get(rows.size() - 1).getInternalPrimayKey();
+            complete = rows.size() < PAGE_SIZE;
+            if (logger.isDebugEnabled()) {
+                logger.debug("Read " + rows.size() + " rows of " + key + " after pk " + lastPk + " for "
+                        + members.size() + " listeners.");
+            }
+        }
+    }
+
+    /**
+     * The rows of a shared page for one listener, each listener gets its own
+     * copy of them.
+     */
+    private static class PageEnumerator implements DataEnumeratorIF {
+
+        private final Iterator<StreamElement> rows;
+
+        private PageEnumerator(List<StreamElement> rows) {
+            this.rows = rows.iterator();
+        }
+
+        public boolean hasMoreElements() {
+            return rows.hasNext();
+        }
+
+        public StreamElement nextElement() throws RuntimeException {
+            if (!rows.hasNext()) {
+                throw new IndexOutOfBoundsException("The page has no more StreamElement.");
+            }
+            return new StreamElement(rows.next());
+        }
+
+        public void close() {
+        }
+    }
 }
@@ -0,0 +1,123 @@
+package ch.epfl.gsn;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.beans.VSensorConfig;
+import ch.epfl.gsn.storage.DataEnumerator;
+
+/**
+ * Latest stream element published by each virtual sensor, or by each value of
+ * its partition field when it has one, so that the latest values are served
+ * without querying its table.
+ * <p>
+ * The cache is filled from the table of the virtual sensor when it is
+ * loaded, then updated with the stream elements once they are written to it,
+ * so that an element which failed to be stored is never served. It is served
+ * to the web services over the ZeroMQ metadata socket, see
+ * {@link ch.epfl.gsn.networking.zeromq.ZeroMQProxy}.
+ * <p>
+ * The values of the binary fields are not kept: the web services don't show
+ * them, and they may be large or held by the blob store.
+ */
+public class LatestValueCache {
+
+	private static final ConcurrentHashMap<String, Map<String, StreamElement>> latest = new ConcurrentHashMap<String, Map<String, StreamElement>>();
+
+	private LatestValueCache() {
+	}
+
+	/**
+	 * Fills the cache of the virtual sensor with the latest rows of its table.
+	 */
+	public static void load(VSensorConfig config) throws SQLException {
+		String table = config.getName().toLowerCase();
+		StringBuilder query = new StringBuilder("select * from ").append(table).append(" where pk ");
+		if (config.getPartitionField() == null) {
+			query.append("= (select max(pk) from ").append(table).append(")");
+		} else {
+			query.append("in (select max(pk) from ").append(table).append(" group by ")
+					.append(config.getPartitionField()).append(")");
+		}
+		List<StreamElement> rows = new ArrayList<StreamElement>();
+		DataEnumerator enumerator = Main.getStorage(config).executeQuery(query, false);
+		try {
+			while (enumerator.hasMoreElements()) {
+				rows.add(enumerator.nextElement());
+			}
+		} finally {
+			enumerator.close();
+		}
+		latest.put(table, new ConcurrentHashMap<String, StreamElement>());
+		if (!rows.isEmpty()) {
+			update(config, rows);
+		}
+	}
+
+	/**
+	 * Keeps the latest of the stream elements, by value of the partition
+	 * field of the virtual sensor if it has one.
+	 */
+	public static void update(VSensorConfig config, List<StreamElement> data) {
+		if (data.isEmpty()) {
+			return;
+		}
+		Map<String, StreamElement> values = latest.get(config.getName().toLowerCase());
+		if (values == null) {
+			values = new ConcurrentHashMap<String, StreamElement>();
+			Map<String, StreamElement> previous = latest.putIfAbsent(config.getName().toLowerCase(), values);
+			if (previous != null) {
+				values = previous;
+			}
+		}
+		String partitionField = config.getPartitionField();
+		if (partitionField == null) {
+			values.put("", withoutBinaries(data.get(data.size() - 1)));
+			return;
+		}
+		for (StreamElement se : data) {
+			values.put(String.valueOf(se.getData(partitionField)), withoutBinaries(se));
+		}
+	}
+
+	/**
+	 * @return a copy of the stream element with its binary fields set to
+	 *         null, or the element itself if it has none; the values held by
+	 *         the blob store are not read
+	 */
+	static StreamElement withoutBinaries(StreamElement se) {
+		Byte[] types = se.getFieldTypes();
+		StreamElement copy = se;
+		for (int i = 0; i < types.length; i++) {
+			if (types[i] != null && types[i] == DataTypes.BINARY) {
+				if (copy == se) {
+					copy = new StreamElement(se);
+				}
+				copy.setData(i, null);
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * @return the latest stream elements of the virtual sensor, one per
+	 *         partition value, or null if the virtual sensor isn't loaded
+	 */
+	public static StreamElement[] get(String vsName) {
+		Map<String, StreamElement> values = latest.get(vsName.toLowerCase());
+		if (values == null) {
+			return null;
+		}
+		List<StreamElement> toReturn = new ArrayList<StreamElement>(values.values());
+		return toReturn.toArray(new StreamElement[toReturn.size()]);
+	}
+
+	public static void remove(String vsName) {
+		latest.remove(vsName.toLowerCase());
+	}
+}
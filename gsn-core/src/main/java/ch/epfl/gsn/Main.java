@@ -40,6 +40,7 @@ package ch.epfl.gsn;
 import ch.epfl.gsn.config.GsnConf;
 import ch.epfl.gsn.config.VsConf;
 import ch.epfl.gsn.data.DataStore;
+import ch.epfl.gsn.data.blob.BlobStore;
 
 import java.awt.AlphaComposite;
 import java.awt.Color;
@@ -70,6 +71,8 @@ import ch.epfl.gsn.beans.BeansInitializer;
 import ch.epfl.gsn.beans.ContainerConfig;
 import ch.epfl.gsn.beans.StorageConfig;
 import ch.epfl.gsn.beans.VSensorConfig;
+import ch.epfl.gsn.beans.windowing.WindowCompactor;
+import ch.epfl.gsn.delivery.LocalChannel;
 import ch.epfl.gsn.delivery.LocalDeliveryWrapper;
 import ch.epfl.gsn.monitoring.MemoryMonitor;
 import ch.epfl.gsn.monitoring.Monitorable;
@@ -78,12 +81,17 @@ import ch.epfl.gsn.networking.zeromq.ZeroMQDeliveryAsync;
 import ch.epfl.gsn.networking.zeromq.ZeroMQDeliverySync;
 import ch.epfl.gsn.networking.zeromq.ZeroMQProxy;
 import ch.epfl.gsn.networking.zeromq.BacklogZeroMQ;
+import ch.epfl.gsn.storage.ConnectionPoolMonitor;
 import ch.epfl.gsn.storage.SQLValidator;
 import ch.epfl.gsn.storage.StorageManager;
 import ch.epfl.gsn.storage.StorageManagerFactory;
+import ch.epfl.gsn.storage.WriteBehindBuffer;
+import ch.epfl.gsn.storage.segment.SegmentStore;
 import ch.epfl.gsn.storage.hibernate.DBConnectionInfo;
+import ch.epfl.gsn.utils.TimingWheel;
 import ch.epfl.gsn.utils.ValidityTools;
 import ch.epfl.gsn.vsensor.SQLValidatorIntegration;
+import ch.epfl.gsn.wrappers.WrapperScheduler;
 import ch.epfl.gsn.wrappers.WrappersUtil;
 
 //import java.sql.Connection;
@@ -147,15 +155,21 @@ public final class Main {
 
 		int maxDBConnections = containerConfig.getMaxDBConnections();
 		int maxSlidingDBConnections = containerConfig.getMaxSlidingDBConnections();
+		VirtualSensorExecutor.configure(containerConfig.getVsWorkerThreads());
+		WrapperScheduler.configure(containerConfig.getWrapperRuntime(), containerConfig.getWrapperSchedulerThreads());
+		if (containerConfig.getBlobDirectory() != null) {
+			BlobStore.configure(containerConfig.getBlobDirectory());
+		}
 
 		DataStore ds = new DataStore(gsnConf);
 
 		mainStorage = StorageManagerFactory.getInstance(containerConfig.getStorage().getJdbcDriver(),
-				containerConfig.getStorage().getJdbcUsername(), containerConfig.getStorage().getJdbcPassword(),
-				containerConfig.getStorage().getJdbcURL(), maxDBConnections);
+				containerConfig.getStorage().getJdbcDialect(), containerConfig.getStorage().getJdbcUsername(),
+				containerConfig.getStorage().getJdbcPassword(), containerConfig.getStorage().getJdbcURL(),
+				maxDBConnections);
 
 		StorageConfig sc = containerConfig.getSliding() == null ? containerConfig.getStorage(): containerConfig.getSliding().getStorage();
-		windowStorage = StorageManagerFactory.getInstance(sc.getJdbcDriver(), sc.getJdbcUsername(),
+		windowStorage = StorageManagerFactory.getInstance(sc.getJdbcDriver(), sc.getJdbcDialect(), sc.getJdbcUsername(),
 				sc.getJdbcPassword(), sc.getJdbcURL(), maxSlidingDBConnections);
 
 		validationStorage = StorageManagerFactory.getInstance("org.h2.Driver", "sa", "", "jdbc:h2:mem:validator",
@@ -165,6 +179,7 @@ public final class Main {
 
 		// starting the monitoring socket
 		toMonitor.add(new MemoryMonitor());
+		toMonitor.add(ConnectionPoolMonitor.getInstance());
 		monitoringServer = new MonitoringServer(containerConfig.getMonitorPort());
 		monitoringServer.start();
 
@@ -311,6 +326,14 @@ public final class Main {
 					logger.info("Shutting down GSN...");
 					if (vsLoader != null) {
 						vsLoader.stopLoading();
+						VirtualSensorExecutor.shutdown();
+						WrapperScheduler.shutdown();
+						WindowCompactor.shutdown();
+						RetentionService.shutdown();
+						LocalChannel.shutdown();
+						WriteBehindBuffer.shutdown();
+						SegmentStore.shutdown();
+						TimingWheel.shutdown();
 						logger.info("All virtual sensors have been stopped, shutting down virtual machine.");
 					} else {
 						logger.warn(
@@ -499,8 +522,9 @@ public final class Main {
 			sm = storages.get(dci.hashCode());
 			if (sm == null) {
 				sm = StorageManagerFactory.getInstance(config.getStorage().getJdbcDriver(),
-						config.getStorage().getJdbcUsername(), config.getStorage().getJdbcPassword(),
-						config.getStorage().getJdbcURL(), DEFAULT_MAX_DB_CONNECTIONS);
+						config.getStorage().getJdbcDialect(), config.getStorage().getJdbcUsername(),
+						config.getStorage().getJdbcPassword(), config.getStorage().getJdbcURL(),
+						DEFAULT_MAX_DB_CONNECTIONS);
 				storages.put(dci.hashCode(), sm);
 				storagesConfigs.put(config, sm);
 			}
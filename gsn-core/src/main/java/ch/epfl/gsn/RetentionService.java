@@ -0,0 +1,234 @@
+package ch.epfl.gsn;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.LoggerFactory;
+
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.beans.VSensorConfig;
+import ch.epfl.gsn.data.blob.BlobReference;
+import ch.epfl.gsn.data.blob.BlobStore;
+import ch.epfl.gsn.storage.DataEnumeratorIF;
+import ch.epfl.gsn.storage.KeysetDataEnumerator;
+import ch.epfl.gsn.storage.StorageManager;
+import ch.epfl.gsn.storage.segment.SegmentStore;
+
+import org.slf4j.Logger;
+
+/**
+ * Enforces the storage-size of the virtual sensor output tables. The virtual
+ * sensors don't trim their table while producing data, a single thread checks
+ * them periodically and runs the removal (see
+ * {@link VirtualSensor#doUselessDataRemoval()}) for those which produced
+ * something since the previous check.
+ * <p>
+ * It also deletes the values of the blob store no row refers to anymore,
+ * every {@link #BLOB_COLLECTION_INTERVAL} milliseconds: the references held by
+ * the binary fields of the tables and segment stores of the loaded virtual
+ * sensors are collected, then the blob files which are not referenced and
+ * were not put during the last {@link #BLOB_GRACE_PERIOD} milliseconds are
+ * deleted. Nothing is deleted if a table can't be read, or if a table which
+ * ever referred to the blob store (see {@link BlobStore#getTables()}) has no
+ * loaded virtual sensor, e.g. while it is redeployed, as its rows are kept.
+ * <p>
+ * Each collection reads the primary key, the timestamp and the binary
+ * columns of every row of these tables, by pages of
+ * {@link KeysetDataEnumerator#DEFAULT_PAGE_SIZE} rows without holding a
+ * connection between two pages, and keeps every distinct reference in
+ * memory: its cost grows with the size of the tables, hence the long
+ * interval.
+ */
+public class RetentionService {
+
+	/**
+	 * Time in milliseconds between two checks of the virtual sensors.
+	 */
+	public static final long RETENTION_INTERVAL = 1000;
+
+	public static final long BLOB_COLLECTION_INTERVAL = 6 * 60 * 60 * 1000;
+
+	/**
+	 * Age in milliseconds under which a blob is kept without reference, the
+	 * rows referring to it may still be queued for writing.
+	 */
+	public static final long BLOB_GRACE_PERIOD = 60 * 60 * 1000;
+
+	private static final transient Logger logger = LoggerFactory.getLogger(RetentionService.class);
+
+	private static RetentionService singleton;
+
+	private final ScheduledExecutorService scheduler;
+
+	// number of outputs of each virtual sensor at its last removal
+	private final Map<VirtualSensor, Long> sensors = new ConcurrentHashMap<VirtualSensor, Long>();
+
+	private RetentionService() {
+		scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "vs-retention");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				enforceAll();
+			}
+		}, RETENTION_INTERVAL, RETENTION_INTERVAL, TimeUnit.MILLISECONDS);
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				collectBlobs();
+			}
+		}, BLOB_COLLECTION_INTERVAL, BLOB_COLLECTION_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	public static synchronized RetentionService getInstance() {
+		if (singleton == null) {
+			singleton = new RetentionService();
+		}
+		return singleton;
+	}
+
+	/**
+	 * Starts enforcing the storage-size of the virtual sensor, if it has one.
+	 */
+	public void register(VirtualSensor sensor) {
+		if (sensor.getConfig().getParsedStorageSize() == VSensorConfig.STORAGE_SIZE_NOT_SET) {
+			return;
+		}
+		if (!sensors.containsKey(sensor)) {
+			sensors.put(sensor, sensor.getOutputCount());
+		}
+	}
+
+	public void unregister(VirtualSensor sensor) {
+		sensors.remove(sensor);
+	}
+
+	private void enforceAll() {
+		for (Map.Entry<VirtualSensor, Long> entry : sensors.entrySet()) {
+			VirtualSensor sensor = entry.getKey();
+			long outputs = sensor.getOutputCount();
+			if (outputs == entry.getValue()) {
+				continue;
+			}
+			try {
+				sensor.doUselessDataRemoval();
+			} catch (Exception e) {
+				logger.error("Enforcing the storage size of " + sensor.getConfig().getName() + " failed: "
+						+ e.getMessage(), e);
+			}
+			// replace, not put: the sensor may have been unregistered meanwhile
+			sensors.replace(sensor, entry.getValue(), outputs);
+		}
+	}
+
+	/**
+	 * Deletes the blobs which are not referenced by the virtual sensor tables
+	 * anymore.
+	 *
+	 * @return the number of blobs deleted
+	 */
+	int collectBlobs() {
+		BlobStore blobs = BlobStore.getInstance();
+		if (blobs == null) {
+			return 0;
+		}
+		long started = System.currentTimeMillis();
+		for (String table : blobs.getTables()) {
+			if (Mappings.getConfig(table) == null) {
+				logger.warn("The virtual sensor of the table " + table
+						+ ", which refers to blobs, is not loaded, no blob is deleted.");
+				return 0;
+			}
+		}
+		Set<BlobReference> live = new HashSet<BlobReference>();
+		Iterator<VSensorConfig> configs = Mappings.getAllVSensorConfigs();
+		while (configs.hasNext()) {
+			VSensorConfig config = configs.next();
+			try {
+				markBlobs(config, live);
+			} catch (Exception e) {
+				logger.error("Reading the blob references of " + config.getName()
+						+ " failed, no blob is deleted: " + e.getMessage(), e);
+				return 0;
+			}
+		}
+		try {
+			int deleted = blobs.sweep(live, started - BLOB_GRACE_PERIOD);
+			logger.info("Deleted " + deleted + " unreferenced blobs, " + live.size() + " are referenced.");
+			return deleted;
+		} catch (IOException e) {
+			logger.error("Deleting the unreferenced blobs failed: " + e.getMessage(), e);
+			return 0;
+		}
+	}
+
+	private void markBlobs(VSensorConfig config, Set<BlobReference> live) throws SQLException {
+		StringBuilder columns = new StringBuilder();
+		for (DataField field : config.getOutputStructure()) {
+			if (field.getDataTypeID() == DataTypes.BINARY) {
+				columns.append(", ").append(field.getName());
+			}
+		}
+		if (columns.length() == 0) {
+			return;
+		}
+		StorageManager storage = Main.getStorage(config.getName());
+		// the values kept in the table are small, the others are references
+		KeysetDataEnumerator rows = new KeysetDataEnumerator(storage, config.getName(), "pk, timed" + columns,
+				null, false, KeysetDataEnumerator.DEFAULT_PAGE_SIZE);
+		try {
+			mark(rows, live);
+		} finally {
+			rows.close();
+		}
+		if (rows.isFailed()) {
+			throw new SQLException("Reading the table " + config.getName() + " failed.");
+		}
+		SegmentStore segments = SegmentStore.find(config.getName());
+		if (segments != null) {
+			DataEnumeratorIF archived = segments.scan(Long.MIN_VALUE, Long.MAX_VALUE);
+			try {
+				mark(archived, live);
+			} finally {
+				archived.close();
+			}
+		}
+	}
+
+	private static void mark(DataEnumeratorIF rows, Set<BlobReference> live) {
+		while (rows.hasMoreElements()) {
+			StreamElement se = rows.nextElement();
+			for (int i = 0; i < se.getFieldNames().length; i++) {
+				BlobReference reference = se.getBlobReference(i);
+				if (reference != null) {
+					live.add(reference);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops the retention thread.
+	 */
+	public static synchronized void shutdown() {
+		if (singleton == null) {
+			return;
+		}
+		singleton.scheduler.shutdownNow();
+		singleton = null;
+	}
+}
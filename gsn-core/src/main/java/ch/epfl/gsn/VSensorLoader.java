@@ -470,6 +470,15 @@ public class VSensorLoader extends Thread {
 					"That the name of the virutal sensor should starting by alphabetical character and they can contain numerical characters afterwards.");
 			return false;
 		}
+		if (configuration.getMailboxSize() > 0 && configuration.getBackpressure() != null
+				&& !VirtualSensorMailbox.isValidBackpressure(configuration.getBackpressure().trim().toLowerCase())) {
+			logger.error("Adding the virtual sensor specified in " + configuration.getFileName()
+					+ " failed because the backpressure policy " + configuration.getBackpressure() + " is unknown.");
+			logger.info("The backpressure policy should be one of " + VirtualSensorMailbox.BACKPRESSURE_BLOCK + ", "
+					+ VirtualSensorMailbox.BACKPRESSURE_DROP_OLDEST + " or " + VirtualSensorMailbox.BACKPRESSURE_SPILL
+					+ ".");
+			return false;
+		}
 		return true;
 	}
 
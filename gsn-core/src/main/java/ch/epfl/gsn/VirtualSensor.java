@@ -32,31 +32,88 @@ package ch.epfl.gsn;
 import org.slf4j.LoggerFactory;
 
 import ch.epfl.gsn.beans.InputStream;
+import ch.epfl.gsn.beans.StreamElement;
 import ch.epfl.gsn.beans.StreamSource;
 import ch.epfl.gsn.beans.VSensorConfig;
+import ch.epfl.gsn.storage.RollupMaintainer;
+import ch.epfl.gsn.storage.StorageManager;
+import ch.epfl.gsn.storage.WriteBehindBuffer;
+import ch.epfl.gsn.storage.segment.SegmentStore;
 import ch.epfl.gsn.vsensor.AbstractVirtualSensor;
+import ch.epfl.gsn.wrappers.AbstractPeriodicWrapper;
 import ch.epfl.gsn.wrappers.AbstractWrapper;
 
 import org.slf4j.Logger;
 
 import java.io.File;
+import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
 
 public class VirtualSensor {
 
     private static final transient Logger logger = LoggerFactory.getLogger(VirtualSensor.class);
-    private static final int GARBAGE_COLLECTOR_INTERVAL = 2;
 
     private AbstractVirtualSensor virtualSensor = null;
     private VSensorConfig config = null;
     private long lastModified = -1;
-    private int noOfCallsToReturnVS = 0;
+    private volatile long outputCount = 0;
+    private VirtualSensorMailbox mailbox = null;
 
     public VirtualSensor(VSensorConfig config) {
         this.config = config;
         this.lastModified = new File(config.getFileName()).lastModified();
+        if (config.getMailboxSize() > 0) {
+            this.mailbox = new VirtualSensorMailbox(this, config.getMailboxSize(), config.getBackpressure());
+        }
+    }
+
+    /**
+     * Hands the result of an input stream query over to the virtual sensor.
+     * If the virtual sensor has a mailbox the elements are queued and
+     * processed by the shared worker pool, otherwise they are processed
+     * directly on the calling (wrapper) thread.
+     *
+     * @param inputStreamName the name of the input stream producing the elements
+     * @param elements        the result of the input stream query
+     * @return false if the elements were discarded by the mailbox
+     */
+    public boolean process(String inputStreamName, List<StreamElement> elements) {
+        if (mailbox != null) {
+            return mailbox.submit(inputStreamName, elements);
+        }
+        deliver(inputStreamName, elements);
+        return true;
+    }
+
+    /**
+     * Processes the elements with the virtual sensor instance.
+     */
+    void deliver(String inputStreamName, List<StreamElement> elements) {
+        AbstractVirtualSensor sensor = null;
+        try {
+            sensor = borrowVS();
+            sensor.dataAvailableBatch_decorated(inputStreamName, elements);
+        } catch (final UnsupportedOperationException e) {
+            logger.warn("The stream element produced by the virtual sensor is dropped because of the following error : "
+                    + e.getMessage());
+        } catch (final VirtualSensorInitializationFailedException e) {
+            logger.error("The stream element can't deliver its data to the virtual sensor " + config.getName()
+                    + " because initialization of that virtual sensor failed: " + e.getMessage());
+        } finally {
+            returnVS(sensor);
+        }
+    }
+
+    /**
+     * @return the mailbox of the virtual sensor, or null if its inputs are
+     *         processed on the wrapper threads
+     */
+    public VirtualSensorMailbox getMailbox() {
+        return mailbox;
     }
 
     /**
@@ -95,7 +152,8 @@ public class VirtualSensor {
     }
 
     /**
-     * The method ignores the call if the input is null
+     * The method ignores the call if the input is null. The storage size of
+     * the output table is enforced in the background by the RetentionService.
      *
      * @param o
      */
@@ -103,10 +161,15 @@ public class VirtualSensor {
         if (o == null) {
             return;
         }
-        if (++noOfCallsToReturnVS % GARBAGE_COLLECTOR_INTERVAL == 0) {
-            doUselessDataRemoval();
-        }
+        outputCount++;
+    }
 
+    /**
+     * @return the number of times the virtual sensor processed some input,
+     *         used by the RetentionService to skip idle virtual sensors
+     */
+    public long getOutputCount() {
+        return outputCount;
     }
 
     /**
@@ -116,7 +179,39 @@ public class VirtualSensor {
      * If the virtual sensor is null, it logs a debug message indicating that the
      * virtual sensor was already released.
      */
-    public synchronized void closePool() {
+    public void closePool() {
+        RetentionService.getInstance().unregister(this);
+        if (mailbox != null) {
+            // outside of the lock, the input being processed may need it
+            mailbox.dispose();
+            Main.getInstance().getToMonitor().remove(mailbox);
+        }
+        closeVS();
+        releaseStorage();
+    }
+
+    /**
+     * Unregisters the write-behind buffer, the rollups, the latest values and
+     * the segments of the output table, those not registered are skipped.
+     */
+    private void releaseStorage() {
+        if (config.isWriteBehind()) {
+            WriteBehindBuffer buffer = WriteBehindBuffer.find(config.getName());
+            if (buffer != null) {
+                Main.getInstance().getToMonitor().remove(buffer);
+            }
+            WriteBehindBuffer.unregister(config.getName());
+        }
+        if (config.getRollupPeriods() != null) {
+            RollupMaintainer.unregister(config.getName());
+        }
+        LatestValueCache.remove(config.getName());
+        if (config.getSegmentDirectory() != null) {
+            SegmentStore.unregister(config.getName());
+        }
+    }
+
+    private synchronized void closeVS() {
         if (virtualSensor == null) {
             if(logger.isDebugEnabled()){
                 logger.debug("VS " + config.getName() + " was already released.");
@@ -132,30 +227,84 @@ public class VirtualSensor {
 
     /**
      * Starts the virtual sensor by starting the wrapper threads and storing their
-     * ids and names in a HashMap for monitoring.
+     * ids and names in a HashMap for monitoring. Periodic wrappers run by the
+     * shared WrapperScheduler are passed to the virtual sensor instead.
      * 
      * @throws VirtualSensorInitializationFailedException if the virtual sensor
      *                                                    initialization fails.
      */
     public void start() throws VirtualSensorInitializationFailedException {
+        try {
+            registerStorage();
+        } catch (VirtualSensorInitializationFailedException e) {
+            // the virtual sensor is not started, closePool is never called
+            releaseStorage();
+            throw e;
+        }
 
         /*
          * Starting wrapper threads and storing their ids and names in
          * AbstractVirtualSensor's
-         * HashMap threads for monitoring
+         * HashMap threads for monitoring. Wrappers run by the shared
+         * WrapperScheduler have no thread, they are monitored directly.
          */
 
         Map<Long, String> threads = new HashMap<Long, String>();
+        List<AbstractPeriodicWrapper> scheduledWrappers = new ArrayList<AbstractPeriodicWrapper>();
         for (InputStream inputStream : config.getInputStreams()) {
             for (StreamSource streamSource : inputStream.getSources()) {
                 AbstractWrapper wrapper = streamSource.getWrapper();
                 wrapper.start();
-                threads.put(wrapper.getId(), wrapper.getName());
+                if (wrapper instanceof AbstractPeriodicWrapper && ((AbstractPeriodicWrapper) wrapper).isScheduled()) {
+                    scheduledWrappers.add((AbstractPeriodicWrapper) wrapper);
+                } else {
+                    threads.put(wrapper.getId(), wrapper.getName());
+                }
             }
         }
         borrowVS();
 
         virtualSensor.setThreads(threads);
+        virtualSensor.setScheduledWrappers(scheduledWrappers);
+        if (mailbox != null) {
+            Main.getInstance().getToMonitor().add(mailbox);
+        }
+        RetentionService.getInstance().register(this);
+    }
+
+    /**
+     * Registers the write-behind buffer, the latest values, the rollups and
+     * the segments of the output table, as configured.
+     */
+    private void registerStorage() throws VirtualSensorInitializationFailedException {
+        if (config.isWriteBehind()) {
+            WriteBehindBuffer buffer = WriteBehindBuffer.register(Main.getStorage(config.getName()),
+                    config.getName(), config.getOutputStructure(), config.getWriteBatchSize(),
+                    config.getWriteMaxDelay());
+            Main.getInstance().getToMonitor().add(buffer);
+        }
+        try {
+            LatestValueCache.load(config);
+        } catch (SQLException e) {
+            logger.warn("Loading the latest values of " + config.getName() + " failed: " + e.getMessage());
+        }
+        if (config.getRollupPeriods() != null) {
+            try {
+                RollupMaintainer.register(Main.getStorage(config.getName()), config.getName(),
+                        config.getOutputStructure(), config.getRollupPeriods());
+            } catch (SQLException e) {
+                throw new VirtualSensorInitializationFailedException(
+                        "Creating the rollup tables of " + config.getName() + " failed: " + e.getMessage(), e);
+            }
+        }
+        if (config.getSegmentDirectory() != null) {
+            try {
+                SegmentStore.register(config.getName(), config.getOutputStructure(), config.getSegmentDirectory());
+            } catch (IOException e) {
+                throw new VirtualSensorInitializationFailedException(
+                        "Opening the segments of " + config.getName() + " failed: " + e.getMessage(), e);
+            }
+        }
     }
 
     /**
@@ -184,29 +333,42 @@ public class VirtualSensor {
      * If count-based, the specified number of rows will be removed from the
      * storage.
      * If time-based, the data older than the specified time will be removed from
-     * the storage.
+     * the storage. The partitions of the table holding only such data are
+     * dropped first when the storage supports it, leaving few rows to delete.
      * The number of rows affected by the removal operation is logged.
      */
     public void doUselessDataRemoval() {
         if (config.getParsedStorageSize() == VSensorConfig.STORAGE_SIZE_NOT_SET) {
             return;
         }
-        StringBuilder query;
-
-        if (config.isStorageCountBased()) {
-            query = Main.getStorage(config.getName()).getStatementRemoveUselessDataCountBased(config.getName(),
-                    config.getParsedStorageSize());
-        } else {
-            query = Main.getStorage(config.getName()).getStatementRemoveUselessDataTimeBased(config.getName(),
-                    config.getParsedStorageSize());
-        }
-
+        StorageManager storage = Main.getStorage(config.getName());
+        StringBuilder query = null;
         int effected = 0;
         try {
+            if (config.isStorageCountBased()) {
+                query = storage.getStatementRemoveUselessDataCountBased(config.getName(),
+                        config.getParsedStorageSize());
+            } else {
+                long maxTimed = storage.getMaxTimed(config.getName());
+                if (maxTimed == Long.MIN_VALUE) {
+                    return;
+                }
+                long cut = maxTimed - config.getParsedStorageSize();
+                try {
+                    int dropped = storage.dropPartitionsBefore(config.getName(), cut);
+                    if (dropped > 0 && logger.isDebugEnabled()) {
+                        logger.debug("There were " + dropped + " partitions dropped from " + config.getName());
+                    }
+                } catch (SQLException e) {
+                    logger.warn("Dropping the old partitions of " + config.getName()
+                            + " failed, its old rows are deleted instead: " + e.getMessage());
+                }
+                query = storage.getStatementRemoveDataBefore(config.getName(), cut);
+            }
             if(logger.isDebugEnabled()){
                 logger.debug("Enforcing the limit size on the VS table by : " + query);
             }
-            effected = Main.getStorage(config.getName()).executeUpdate(query);
+            effected = storage.executeUpdate(query);
         } catch (SQLException e) {
             logger.error("Error in executing: " + query + ". " + e.getMessage());
         }
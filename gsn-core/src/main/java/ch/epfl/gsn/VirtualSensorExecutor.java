@@ -0,0 +1,127 @@
+package ch.epfl.gsn;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.Logger;
+
+/**
+ * Worker pool shared by the mailboxes of all the virtual sensors (see
+ * {@link VirtualSensorMailbox}). A mailbox is drained by at most one worker
+ * at a time, so the pool size only bounds how many virtual sensors process
+ * data in parallel. Once shut down the pool is not started again, the work
+ * submitted afterwards is rejected.
+ */
+public class VirtualSensorExecutor {
+
+	private static final transient Logger logger = LoggerFactory.getLogger(VirtualSensorExecutor.class);
+
+	private static VirtualSensorExecutor singleton;
+
+	private static int configuredThreads = 0;
+
+	private final ThreadPoolExecutor pool;
+
+	private volatile boolean terminated = false;
+
+	private VirtualSensorExecutor(int threads) {
+		pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new WorkerFactory());
+		pool.allowCoreThreadTimeOut(true);
+		logger.info("Virtual sensor worker pool started with " + threads + " threads.");
+	}
+
+	/**
+	 * Sets the number of worker threads, 0 or less means one per available
+	 * processor. Only effective before the pool is first used.
+	 */
+	public static synchronized void configure(int threads) {
+		configuredThreads = threads;
+	}
+
+	public static synchronized VirtualSensorExecutor getInstance() {
+		if (singleton == null) {
+			int threads = configuredThreads > 0 ? configuredThreads : Runtime.getRuntime().availableProcessors();
+			singleton = new VirtualSensorExecutor(threads);
+		}
+		return singleton;
+	}
+
+	/**
+	 * @return false if the task was rejected because the pool is shut down
+	 */
+	public boolean execute(Runnable task) {
+		if (terminated) {
+			return false;
+		}
+		try {
+			pool.execute(task);
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	public boolean isTerminated() {
+		return terminated;
+	}
+
+	/**
+	 * @return true if the calling thread is one of the workers of the pool
+	 */
+	public static boolean isWorkerThread() {
+		return Thread.currentThread() instanceof Worker;
+	}
+
+	public int getActiveCount() {
+		return pool.getActiveCount();
+	}
+
+	public int getPoolSize() {
+		return pool.getMaximumPoolSize();
+	}
+
+	/**
+	 * Stops the pool, the mailboxes still scheduled are given a few seconds
+	 * to finish. The pool is kept so that the late submissions are rejected
+	 * instead of starting a new one.
+	 */
+	public static synchronized void shutdown() {
+		if (singleton == null || singleton.terminated) {
+			return;
+		}
+		singleton.terminated = true;
+		ExecutorService pool = singleton.pool;
+		pool.shutdown();
+		try {
+			if (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+				pool.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class Worker extends Thread {
+		Worker(Runnable r, String name) {
+			super(r, name);
+			setDaemon(true);
+		}
+	}
+
+	private static class WorkerFactory implements ThreadFactory {
+		private final AtomicInteger counter = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			return new Worker(r, "vs-worker-" + counter.incrementAndGet());
+		}
+	}
+}
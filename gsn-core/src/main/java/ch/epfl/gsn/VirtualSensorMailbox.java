@@ -0,0 +1,350 @@
+package ch.epfl.gsn;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.monitoring.Monitorable;
+
+import org.slf4j.Logger;
+
+/**
+ * Bounded mailbox of a virtual sensor. The input streams post the results of
+ * their queries into the mailbox and a worker of the shared
+ * {@link VirtualSensorExecutor} hands them over to the virtual sensor, so the
+ * wrapper threads don't run the processing class anymore.
+ * <p>
+ * The mailbox is drained by at most one worker at a time, which keeps the
+ * order in which the virtual sensor sees its inputs. When the mailbox is full
+ * the backpressure policy decides what happens to the producer:
+ * <ul>
+ * <li><code>block</code>: the producing wrapper waits until there is room.
+ * Workers of the pool (e.g. a virtual sensor feeding another one locally) are
+ * never blocked to avoid starving the pool, the bound is exceeded instead.</li>
+ * <li><code>drop-oldest</code>: the oldest pending input is discarded.</li>
+ * <li><code>spill</code>: inputs are written to disk until the virtual sensor
+ * catches up.</li>
+ * </ul>
+ */
+public class VirtualSensorMailbox implements Monitorable {
+
+	public static final String BACKPRESSURE_BLOCK = "block";
+
+	public static final String BACKPRESSURE_DROP_OLDEST = "drop-oldest";
+
+	public static final String BACKPRESSURE_SPILL = "spill";
+
+	/**
+	 * Maximum number of inputs a worker processes before giving the other
+	 * mailboxes a chance to run.
+	 */
+	private static final int MAX_INPUTS_PER_RUN = 32;
+
+	private static final transient Logger logger = LoggerFactory.getLogger(VirtualSensorMailbox.class);
+
+	private final VirtualSensor virtualSensor;
+
+	private final String vsName;
+
+	private final int capacity;
+
+	private final String backpressure;
+
+	private final ArrayDeque<Input> queue = new ArrayDeque<Input>();
+
+	private final ArrayDeque<File> spilled = new ArrayDeque<File>();
+
+	private File spillDirectory;
+
+	private long spillSequence = 0;
+
+	private boolean scheduled = false;
+
+	private boolean running = false;
+
+	private boolean disposed = false;
+
+	private long processedCount = 0;
+
+	private long droppedCount = 0;
+
+	private long spilledCount = 0;
+
+	private final Runnable drainTask = new Runnable() {
+		public void run() {
+			drain();
+		}
+	};
+
+	public VirtualSensorMailbox(VirtualSensor virtualSensor, int capacity, String backpressure) {
+		this.virtualSensor = virtualSensor;
+		this.vsName = virtualSensor.getConfig().getName();
+		this.capacity = Math.max(1, capacity);
+		this.backpressure = backpressure == null ? BACKPRESSURE_BLOCK : backpressure.trim().toLowerCase();
+		if (!isValidBackpressure(this.backpressure)) {
+			throw new IllegalArgumentException("Unknown backpressure policy " + backpressure + " for " + vsName
+					+ ", expected one of " + BACKPRESSURE_BLOCK + ", " + BACKPRESSURE_DROP_OLDEST + " or "
+					+ BACKPRESSURE_SPILL + ".");
+		}
+	}
+
+	public static boolean isValidBackpressure(String backpressure) {
+		return BACKPRESSURE_BLOCK.equals(backpressure) || BACKPRESSURE_DROP_OLDEST.equals(backpressure)
+				|| BACKPRESSURE_SPILL.equals(backpressure);
+	}
+
+	/**
+	 * Posts the result of an input stream query to the virtual sensor.
+	 *
+	 * @return false if the input was discarded because the mailbox is disposed,
+	 *         the producer was interrupted while waiting or the worker pool is
+	 *         shut down
+	 */
+	public boolean submit(String inputStreamName, List<StreamElement> elements) {
+		Input input = new Input(inputStreamName, elements);
+		synchronized (this) {
+			if (disposed) {
+				return false;
+			}
+			if (BACKPRESSURE_DROP_OLDEST.equals(backpressure)) {
+				while (queue.size() >= capacity) {
+					queue.poll();
+					droppedCount++;
+				}
+				queue.add(input);
+			} else if (BACKPRESSURE_SPILL.equals(backpressure)) {
+				if (!spilled.isEmpty() || queue.size() >= capacity) {
+					spill(input);
+				} else {
+					queue.add(input);
+				}
+			} else {
+				boolean isWorker = VirtualSensorExecutor.isWorkerThread();
+				while (queue.size() >= capacity && !isWorker && !disposed) {
+					try {
+						wait();
+					} catch (InterruptedException e) {
+						logger.warn("Interrupted while waiting for the mailbox of " + vsName
+								+ ", the input is dropped.");
+						droppedCount++;
+						Thread.currentThread().interrupt();
+						return false;
+					}
+				}
+				if (disposed) {
+					return false;
+				}
+				queue.add(input);
+			}
+			if (scheduled) {
+				return true;
+			}
+			scheduled = true;
+		}
+		return schedule();
+	}
+
+	/**
+	 * Hands the mailbox over to the worker pool, unless the pool is shut down.
+	 */
+	private boolean schedule() {
+		if (VirtualSensorExecutor.getInstance().execute(drainTask)) {
+			return true;
+		}
+		synchronized (this) {
+			scheduled = false;
+		}
+		logger.warn("The worker pool is shut down, the pending inputs of " + vsName + " are not processed.");
+		return false;
+	}
+
+	/**
+	 * Processes the pending inputs in order, run by a worker of the pool.
+	 */
+	private void drain() {
+		for (int i = 0; i < MAX_INPUTS_PER_RUN; i++) {
+			Input input;
+			synchronized (this) {
+				input = disposed ? null : next();
+				if (input == null) {
+					scheduled = false;
+					return;
+				}
+				running = true;
+				notifyAll();
+			}
+			try {
+				virtualSensor.deliver(input.inputStreamName, input.elements);
+			} catch (RuntimeException e) {
+				logger.error("Processing an input of " + vsName + " failed: " + e.getMessage(), e);
+			} finally {
+				synchronized (this) {
+					running = false;
+					processedCount++;
+					notifyAll();
+				}
+			}
+		}
+		synchronized (this) {
+			if (disposed || (queue.isEmpty() && spilled.isEmpty())) {
+				scheduled = false;
+				return;
+			}
+		}
+		// there is more, give the other mailboxes a chance first
+		schedule();
+	}
+
+	/**
+	 * Takes the next input and refills the queue from the spilled inputs.
+	 * Must be called while holding the lock of the mailbox.
+	 */
+	private Input next() {
+		Input input = queue.poll();
+		while (!spilled.isEmpty() && queue.size() < capacity) {
+			Input unspilled = unspill(spilled.poll());
+			if (unspilled == null) {
+				continue;
+			}
+			if (input == null) {
+				input = unspilled;
+			} else {
+				queue.add(unspilled);
+			}
+		}
+		return input;
+	}
+
+	private void spill(Input input) {
+		try {
+			if (spillDirectory == null) {
+				spillDirectory = new File(new File(System.getProperty("java.io.tmpdir"), "gsn-spill"),
+						vsName + "-" + System.identityHashCode(this));
+				if (!spillDirectory.isDirectory() && !spillDirectory.mkdirs()) {
+					throw new IOException("Can't create the directory " + spillDirectory);
+				}
+			}
+			File file = new File(spillDirectory, Long.toString(spillSequence++));
+			ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			try {
+				out.writeObject(input);
+			} finally {
+				out.close();
+			}
+			spilled.add(file);
+			spilledCount++;
+		} catch (IOException e) {
+			logger.error("Spilling an input of " + vsName + " to disk failed, the input is dropped: "
+					+ e.getMessage(), e);
+			droppedCount++;
+		}
+	}
+
+	private Input unspill(File file) {
+		try {
+			ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				return (Input) in.readObject();
+			} finally {
+				in.close();
+			}
+		} catch (Exception e) {
+			logger.error("Reading a spilled input of " + vsName + " from " + file + " failed, the input is dropped: "
+					+ e.getMessage(), e);
+			droppedCount++;
+			return null;
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Discards the pending inputs and waits (at most a few seconds) for the
+	 * input being processed, so that the virtual sensor can be released
+	 * safely afterwards.
+	 */
+	public synchronized void dispose() {
+		disposed = true;
+		if (!queue.isEmpty() || !spilled.isEmpty()) {
+			logger.warn("Discarding " + (queue.size() + spilled.size()) + " pending inputs of " + vsName + ".");
+		}
+		queue.clear();
+		for (File file : spilled) {
+			file.delete();
+		}
+		spilled.clear();
+		if (spillDirectory != null) {
+			spillDirectory.delete();
+		}
+		notifyAll();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (running && !VirtualSensorExecutor.isWorkerThread()) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				logger.warn("The virtual sensor " + vsName + " is still processing an input while being released.");
+				break;
+			}
+			try {
+				wait(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+	}
+
+	/**
+	 * @return the number of inputs waiting to be processed, including the
+	 *         spilled ones
+	 */
+	public synchronized int getQueueDepth() {
+		return queue.size() + spilled.size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public String getBackpressure() {
+		return backpressure;
+	}
+
+	public synchronized Hashtable<String, Object> getStatistics() {
+		Hashtable<String, Object> stat = new Hashtable<String, Object>();
+		String prefix = "vs." + vsName.replaceAll("\\.", "_") + ".mailbox.";
+		stat.put(prefix + "queue.depth", queue.size() + spilled.size());
+		stat.put(prefix + "spilled.depth", spilled.size());
+		stat.put(prefix + "processed.counter", processedCount);
+		stat.put(prefix + "dropped.counter", droppedCount);
+		stat.put(prefix + "spilled.counter", spilledCount);
+		return stat;
+	}
+
+	private static class Input implements Serializable {
+
+		private static final long serialVersionUID = -2964331547412658923L;
+
+		private final String inputStreamName;
+
+		private final ArrayList<StreamElement> elements;
+
+		Input(String inputStreamName, List<StreamElement> elements) {
+			this.inputStreamName = inputStreamName;
+			this.elements = elements instanceof ArrayList ? (ArrayList<StreamElement>) elements
+					: new ArrayList<StreamElement>(elements);
+		}
+	}
+}
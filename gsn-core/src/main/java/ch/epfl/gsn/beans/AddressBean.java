@@ -47,6 +47,8 @@ public final class AddressBean implements Serializable {
 
 	private String partialOrderKey;
 
+	private long maxLateness = 0;
+
 	private KeyValue[] predicates = EMPTY_PREDICATES;
 
 	private DataField[] wrapperOutputStructure = new DataField[0];
@@ -88,6 +90,18 @@ public final class AddressBean implements Serializable {
 
 	}
 
+	/**
+	 * @return how late (in milliseconds) a stream element may arrive and still
+	 *         be reordered instead of dropped, 0 to drop out of order elements
+	 */
+	public long getMaxLateness() {
+		return this.maxLateness;
+	}
+
+	public void setMaxLateness(long maxLateness) {
+		this.maxLateness = maxLateness;
+	}
+
 	public KeyValue[] getPredicates() {
 		return this.predicates;
 	}
@@ -33,6 +33,12 @@ public class BeansInitializer {
 				gsn.monitorPort(), gsn.timeFormat(),
 				gsn.zmqConf().enabled(), gsn.zmqConf().proxyPort(), gsn.zmqConf().metaPort(),
 				storage(gsn.storageConf()), sliding, gsn.maxDBConnections(), gsn.maxSlidingDBConnections(), gsn.backlogCommandsConf().enabled(), gsn.backlogCommandsConf().backlogCommandsPort());
+		con.setVsWorkerThreads(gsn.vsWorkerThreads());
+		con.setWrapperRuntime(gsn.wrapperRuntime());
+		con.setWrapperSchedulerThreads(gsn.wrapperSchedulerThreads());
+		if (gsn.blobDirectory().isDefined()) {
+			con.setBlobDirectory(gsn.blobDirectory().get());
+		}
 
 		return con;
 	}
@@ -56,6 +62,9 @@ public class BeansInitializer {
 		con.setJdbcURL(st.url());
 		con.setJdbcUsername(st.user());
 		con.setJdbcPassword(st.pass());
+		if (st.dialect().isDefined()) {
+			con.setJdbcDialect(st.dialect().get());
+		}
 		return con;
 	}
 
@@ -135,6 +144,10 @@ public class BeansInitializer {
 			s.setRawHistorySize(sc.storageSize().get());
 		}
 
+		if (sc.windowEngine().isDefined()) {
+			s.setWindowEngine(sc.windowEngine().get());
+		}
+
 		AddressBean[] add = new AddressBean[sc.wrappers().size()];
 		int i = 0;
 		for (WrapperConf w : JavaConversions.asJavaIterable(sc.wrappers())) {
@@ -166,6 +179,9 @@ public class BeansInitializer {
 		if (w.partialKey().isDefined()) {
 			a.setPartialOrderKey(w.partialKey().get());
 		}
+		if (w.maxLateness().isDefined()) {
+			a.setMaxLateness((Long) w.maxLateness().get());
+		}
 		DataField[] out = new DataField[(w.output().size())];
 		for (int j = 0; j < out.length; j++) {
 			out[j] = dataField(w.output().apply(j));
@@ -220,7 +236,16 @@ public class BeansInitializer {
 		if (vs.poolSize().isDefined()) {
 			v.setLifeCyclePoolSize(((Integer) vs.poolSize().get()));
 		}
+		if (vs.mailboxSize().isDefined()) {
+			v.setMailboxSize(((Integer) vs.mailboxSize().get()));
+		}
+		if (vs.backpressure().isDefined()) {
+			v.setBackpressure(vs.backpressure().get());
+		}
 
+		if (vs.processing().partitionField().isDefined()) {
+			v.setPartitionField(vs.processing().partitionField().get());
+		}
 		if (vs.processing().rate().isDefined()) {
 			v.setOutputStreamRate(((Integer) vs.processing().rate().get()));
 		}
@@ -279,6 +304,9 @@ public class BeansInitializer {
 			st.setJdbcURL(sc.url());
 			st.setJdbcUsername(sc.user());
 			st.setJdbcPassword(sc.pass());
+			if (sc.dialect().isDefined()) {
+				st.setJdbcDialect(sc.dialect().get());
+			}
 		}
 		if (st.getStorageSize() != null || st.getJdbcURL() != null) {
 			v.setStorage(st);
@@ -286,6 +314,24 @@ public class BeansInitializer {
 		if(vs.chunkSize().isDefined()){
 			v.setChunkSize(vs.chunkSize().get());
 		}
+		if (vs.aggregatePeriods().isDefined()) {
+			v.setAggregatePeriods(vs.aggregatePeriods().get());
+		}
+		if (vs.rollupPeriods().isDefined()) {
+			v.setRollupPeriods(vs.rollupPeriods().get());
+		}
+		if (vs.segmentDirectory().isDefined()) {
+			v.setSegmentDirectory(vs.segmentDirectory().get());
+		}
+		if (vs.blobThreshold().isDefined()) {
+			v.setBlobThreshold((Integer) vs.blobThreshold().get());
+		}
+		if (vs.writeBehind().isDefined()) {
+			WriteBehindConf wb = vs.writeBehind().get();
+			v.setWriteBatchSize(Math.max(1, wb.batchSize()));
+			v.setWriteMaxDelay(wb.maxDelay());
+			v.setWriteAck(wb.ack());
+		}
 		
 		return v;
 	}
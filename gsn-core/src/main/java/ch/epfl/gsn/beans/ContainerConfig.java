@@ -98,6 +98,10 @@ public class ContainerConfig {
 
 	private int maxDBConnections;
 	private int maxSlidingDBConnections;
+	private int vsWorkerThreads = 0;
+	private String wrapperRuntime = "thread";
+	private int wrapperSchedulerThreads = 0;
+	private String blobDirectory;
 	private ArrayList<KeyValueImp> msrMap;
 	private HashMap<String, String> msrMapCached;
 
@@ -212,6 +216,56 @@ public class ContainerConfig {
 		return this.maxSlidingDBConnections;
 	}
 
+	/**
+	 * @return Returns the number of threads processing the virtual sensor
+	 *         mailboxes, 0 for one per available processor.
+	 */
+	public int getVsWorkerThreads() {
+		return this.vsWorkerThreads;
+	}
+
+	public void setVsWorkerThreads(int vsWorkerThreads) {
+		this.vsWorkerThreads = vsWorkerThreads;
+	}
+
+	/**
+	 * @return Returns how the wrappers are run, either "thread" (one thread
+	 *         per wrapper) or "scheduled" (the periodic wrappers share the
+	 *         threads of the wrapper scheduler).
+	 */
+	public String getWrapperRuntime() {
+		return this.wrapperRuntime;
+	}
+
+	public void setWrapperRuntime(String wrapperRuntime) {
+		this.wrapperRuntime = wrapperRuntime;
+	}
+
+	/**
+	 * @return Returns the number of threads of the wrapper scheduler, 0 for
+	 *         one per available processor.
+	 */
+	public int getWrapperSchedulerThreads() {
+		return this.wrapperSchedulerThreads;
+	}
+
+	public void setWrapperSchedulerThreads(int wrapperSchedulerThreads) {
+		this.wrapperSchedulerThreads = wrapperSchedulerThreads;
+	}
+
+	/**
+	 * @return Returns the directory of the blob store, see
+	 *         {@link ch.epfl.gsn.data.blob.BlobStore}, or null if the binary
+	 *         values are always stored in the tables.
+	 */
+	public String getBlobDirectory() {
+		return this.blobDirectory;
+	}
+
+	public void setBlobDirectory(String blobDirectory) {
+		this.blobDirectory = blobDirectory;
+	}
+
 	/**
 	 * Reads a container configuration from the specified file and constructs a
 	 * ContainerConfig object.
@@ -34,17 +34,18 @@ package ch.epfl.gsn.beans;
 
 import java.io.Serializable;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.TreeMap;
 
 import org.slf4j.LoggerFactory;
 
 import ch.epfl.gsn.Main;
 import ch.epfl.gsn.VirtualSensor;
-import ch.epfl.gsn.VirtualSensorInitializationFailedException;
+import ch.epfl.gsn.beans.windowing.InMemoryQueryRewriter;
 import ch.epfl.gsn.utils.CaseInsensitiveComparator;
-import ch.epfl.gsn.vsensor.AbstractVirtualSensor;
 
 import org.slf4j.Logger;
 
@@ -292,9 +293,39 @@ public class InputStream implements Serializable {
 			}
 			streamSourceAliasNameToStreamSourceName.put(ss.getAlias(), ss);
 		}
+		for (StreamSource ss : sources) {
+			if (ss.isInMemoryWindow() && !isInMemoryWindowSupported(ss)) {
+				logger.warn("The Stream Source : " + ss.getAlias() + " specified in the Input Stream : "
+						+ getInputStreamName()
+						+ " can't use the in-memory window engine (it requires a single stream source and plain"
+						+ " 'select * from' queries), falling back to the sql window engine.");
+				ss.setWindowEngine(StreamSource.WINDOW_ENGINE_SQL);
+			}
+		}
 		return (cachedValidationResult = true);
 	}
 
+	/**
+	 * The in-memory window content is handed over to the virtual sensor as it
+	 * is, this is only possible if neither the stream source nor the input
+	 * stream query transform it.
+	 */
+	private boolean isInMemoryWindowSupported(StreamSource ss) {
+		if (sources.length != 1 || !ss.isInMemoryWindowSupported()) {
+			return false;
+		}
+		String q = getQuery() == null ? "" : getQuery().trim().replaceAll("\\s+", " ");
+		return q.equalsIgnoreCase("select * from " + ss.getAlias());
+	}
+
+	/**
+	 * @return true if the window of this input stream is maintained by the
+	 *         in-memory window engine.
+	 */
+	public boolean isInMemoryWindow() {
+		return sources != null && sources.length == 1 && sources[0].isInMemoryWindow();
+	}
+
 	/**
 	 * @return the pool
 	 */
@@ -354,6 +385,10 @@ public class InputStream implements Serializable {
 		}
 		this.lastVisited = currentTimeMillis;
 
+		if (isInMemoryWindow()) {
+			return executeInMemoryQuery();
+		}
+
 		if (!queryCached) {
 			rewriteQuery();
 			if (queryCached && logger.isDebugEnabled()) {
@@ -366,7 +401,6 @@ public class InputStream implements Serializable {
 		int elementCounterForDebugging = 0;
 		if (queryCached && Main.getWindowStorage().isThereAnyResult(this.rewrittenSQL)) {
 			this.currentCount++;
-			AbstractVirtualSensor sensor = null;
 			if(logger.isDebugEnabled()){
 				logger.debug(new StringBuilder().append("Executing the main query for InputStream : ")
 					.append(this.getInputStreamName()).toString());
@@ -374,25 +408,12 @@ public class InputStream implements Serializable {
 
 			final Enumeration<StreamElement> resultOfTheQuery = Main.getWindowStorage().executeQuery(this.rewrittenSQL,
 					false);
-			try {
-				sensor = pool.borrowVS();
-				while (resultOfTheQuery.hasMoreElements()) {
-					elementCounterForDebugging++;
-					StreamElement element = resultOfTheQuery.nextElement();
-					sensor.dataAvailable_decorated(this.getInputStreamName(), element);
-				}
-			} catch (final UnsupportedOperationException e) {
-				logger.warn(
-						"The stream element produced by the virtual sensor is dropped because of the following error : "
-								+ e.getMessage());
-			} catch (final VirtualSensorInitializationFailedException e) {
-				logger.error("The stream element can't deliver its data to the virtual sensor "
-						+ sensor.getVirtualSensorConfiguration().getName()
-						+ " because initialization of that virtual sensor failed: " + e.getMessage());
-			} finally {
-				this.pool.returnVS(sensor);
+			final List<StreamElement> elements = new ArrayList<StreamElement>();
+			while (resultOfTheQuery.hasMoreElements()) {
+				elements.add(resultOfTheQuery.nextElement());
 			}
-
+			elementCounterForDebugging = elements.size();
+			pool.process(this.getInputStreamName(), elements);
 		}
 		if(logger.isDebugEnabled()){
 			logger.debug(new StringBuilder().append("Input Stream's result has *").append(elementCounterForDebugging)
@@ -402,6 +423,27 @@ public class InputStream implements Serializable {
 		return true;
 	}
 
+	/**
+	 * Hands the content of the in-memory window over to the virtual sensor,
+	 * newest element first like the SQL views. No query is executed against
+	 * the window storage.
+	 *
+	 * @return always {@code true}
+	 */
+	private boolean executeInMemoryQuery() {
+		InMemoryQueryRewriter rewriter = (InMemoryQueryRewriter) sources[0].getQueryRewriter();
+		List<StreamElement> window = rewriter.getWindowContent();
+		if (!window.isEmpty()) {
+			this.currentCount++;
+			pool.process(this.getInputStreamName(), window);
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug(new StringBuilder().append("Input Stream's in-memory window has *").append(window.size())
+					.append("* stream elements").toString());
+		}
+		return true;
+	}
+
 	/**
 	 * Rewrites the query by applying rewriting rules from the stream sources.
 	 * If the rewriting fails for any source, an error message is logged and the
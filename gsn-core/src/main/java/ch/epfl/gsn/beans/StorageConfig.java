@@ -41,6 +41,8 @@ public class StorageConfig {
 
     private String identifier;
 
+    private String jdbcDialect;
+
     private String storageSize;
     
     private String storageDirectory;
@@ -77,6 +79,18 @@ public class StorageConfig {
         this.jdbcURL = jdbcURL;
     }
 
+    /**
+     * @return the flavour of the database selecting the storage manager (e.g.
+     *         "timescale" or "postgres" for the PostgreSQL driver), or null
+     */
+    public String getJdbcDialect() {
+        return jdbcDialect;
+    }
+
+    public void setJdbcDialect(String jdbcDialect) {
+        this.jdbcDialect = jdbcDialect;
+    }
+
     public String getStorageSize() {
         return storageSize;
     }
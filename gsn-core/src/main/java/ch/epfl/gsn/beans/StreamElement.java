@@ -38,6 +38,7 @@ import play.libs.Json;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.io.StringReader;
 import java.nio.file.Files;
@@ -54,21 +55,25 @@ import java.util.Set;
 import org.apache.commons.codec.binary.Base64;
 import org.slf4j.LoggerFactory;
 
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
 import com.fasterxml.jackson.databind.JsonNode;
 
 import ch.epfl.gsn.beans.json.*;
+import ch.epfl.gsn.data.blob.BlobReference;
 import ch.epfl.gsn.delivery.StreamElement4Rest;
-import ch.epfl.gsn.utils.CaseInsensitiveComparator;
 
 import org.slf4j.Logger;
 
-public final class StreamElement implements Serializable {
+public final class StreamElement implements Serializable, KryoSerializable {
 
 	private static final long serialVersionUID = 2000261462783698617L;
 
 	private static final transient Logger logger = LoggerFactory.getLogger(StreamElement.class);
 
-	private transient TreeMap<String, Integer> indexedFieldNames = null;
+	private transient StreamSchema schema = null;
 
 	private long timeStamp = -1;
 
@@ -78,14 +83,30 @@ public final class StreamElement implements Serializable {
 
 	private Byte[] fieldTypes;
 
+	/**
+	 * Unboxed values of the numeric fields of the schema (doubles and floats as
+	 * their raw long bits), followed by a null bitmap with one bit per field.
+	 * While set, the numeric entries of fieldValues are unused and only boxed
+	 * on demand; the array is dropped once the legacy {@link #getData()} hands
+	 * out the boxed values.
+	 */
+	private transient volatile long[] primitiveValues = null;
+
 	private transient long internalPrimayKey = -1;
 
 	private static final String NULL_ENCODING = "NULL"; // null encoding for transmission over xml-rpc
 
+	private static final byte KRYO_NULL = 0;
+
+	private static final byte KRYO_PRIMITIVE = 1;
+
+	private static final byte KRYO_OBJECT = 2;
+
 	private boolean timestampProvided = false;
 	private Long volume = null;
 
 	public StreamElement(StreamElement other) {
+		long[] otherPrimitives = other.primitiveValues;
 		this.fieldNames = new String[other.fieldNames.length];
 		this.fieldValues = new Serializable[other.fieldValues.length];
 		this.fieldTypes = new Byte[other.fieldTypes.length];
@@ -94,9 +115,13 @@ public final class StreamElement implements Serializable {
 			fieldValues[i] = other.fieldValues[i];
 			fieldTypes[i] = other.fieldTypes[i];
 		}
+		if (otherPrimitives != null) {
+			this.primitiveValues = otherPrimitives.clone();
+		}
 		this.timeStamp = other.timeStamp;
 		this.internalPrimayKey = other.internalPrimayKey;
 		this.volume = other.volume;
+		this.schema = other.schema;
 	}
 
 	public StreamElement() { // constructor for serialization
@@ -108,13 +133,18 @@ public final class StreamElement implements Serializable {
 	}
 
 	public StreamElement(DataField[] outputStructure, final Serializable[] data, final long timeStamp) {
-		this.fieldNames = new String[outputStructure.length];
-		this.fieldTypes = new Byte[outputStructure.length];
+		this(StreamSchema.of(outputStructure), data, timeStamp);
+	}
+
+	/**
+	 * Creates a stream element sharing the given schema, this is the cheapest
+	 * way to build elements of a known structure.
+	 */
+	public StreamElement(StreamSchema schema, final Serializable[] data, final long timeStamp) {
+		this.schema = schema;
+		this.fieldNames = schema.getFieldNames();
+		this.fieldTypes = schema.getFieldTypes();
 		this.timeStamp = timeStamp;
-		for (int i = 0; i < this.fieldNames.length; i++) {
-			this.fieldNames[i] = outputStructure[i].getName().toLowerCase();
-			this.fieldTypes[i] = outputStructure[i].getDataTypeID();
-		}
 		if (this.fieldNames.length != data.length) {
 			throw new IllegalArgumentException(
 					"The length of dataFileNames and the actual data provided in the constructor of StreamElement doesn't match.");
@@ -124,6 +154,24 @@ public final class StreamElement implements Serializable {
 		this.volume = null;
 	}
 
+	/**
+	 * Creates a stream element of the given schema which keeps its numeric
+	 * fields unboxed. All the fields are initially null, they are filled with
+	 * {@link #setLong(int, long)}, {@link #setDouble(int, double)} or
+	 * {@link #setData(int, Serializable)}.
+	 */
+	public StreamElement(StreamSchema schema, final long timeStamp) {
+		this.schema = schema;
+		this.fieldNames = schema.getFieldNames();
+		this.fieldTypes = schema.getFieldTypes();
+		this.timeStamp = timeStamp;
+		this.fieldValues = new Serializable[fieldNames.length];
+		this.volume = null;
+		if (schema.hasPrimitiveFields()) {
+			this.primitiveValues = newPrimitiveValues(fieldNames.length);
+		}
+	}
+
 	public StreamElement(final String[] dataFieldNames, final Byte[] dataFieldTypes, final Serializable[] data) {
 		this(dataFieldNames, dataFieldTypes, data, System.currentTimeMillis());
 	}
@@ -155,7 +203,6 @@ public final class StreamElement implements Serializable {
 		String fieldNames[] = new String[nbFields];
 		Byte fieldTypes[] = new Byte[nbFields];
 		Serializable fieldValues[] = new Serializable[nbFields];
-		TreeMap<String, Integer> indexedFieldNames = new TreeMap<String, Integer>(new CaseInsensitiveComparator());
 		int idx = 0;
 
 		long timestamp = System.currentTimeMillis();
@@ -173,14 +220,12 @@ public final class StreamElement implements Serializable {
 						fieldTypes[idx] = fields[i].getDataTypeID();
 					}
 				}
-				indexedFieldNames.put(key, idx);
 				idx++;
 			}
 		}
 		this.fieldNames = fieldNames;
 		this.fieldTypes = fieldTypes;
 		this.fieldValues = fieldValues;
-		this.indexedFieldNames = indexedFieldNames;
 		this.timeStamp = timestamp;
 		this.volume = null;
 	}
@@ -192,7 +237,7 @@ public final class StreamElement implements Serializable {
 		this.fieldTypes = new Byte[len];
 		for (int i = 0; i < other.fieldNames.length; i++) {
 			this.fieldNames[i] = other.fieldNames[i];
-			this.fieldValues[i] = other.fieldValues[i];
+			this.fieldValues[i] = other.getData(i);
 			this.fieldTypes[i] = other.fieldTypes[i];
 		}
 		for (int i = 0; i < outputStructure.length; i++) {
@@ -213,7 +258,7 @@ public final class StreamElement implements Serializable {
 		this.fieldTypes = new Byte[len];
 		for (int i = 0; i < other.fieldNames.length; i++) {
 			this.fieldNames[i] = other.fieldNames[i];
-			this.fieldValues[i] = other.fieldValues[i];
+			this.fieldValues[i] = other.getData(i);
 			this.fieldTypes[i] = other.fieldTypes[i];
 		}
 		for (int i = 0; i < dataFieldNames.length; i++) {
@@ -335,7 +380,7 @@ public final class StreamElement implements Serializable {
 		output.append(this.getTimeStamp()).append("\t");
 		for (int i = 0; i < this.fieldNames.length; i++) {
 			output.append(",").append(this.fieldNames[i]).append("/").append(this.fieldTypes[i]).append(" = ")
-					.append(this.fieldValues[i]);
+					.append(getData(i));
 		}
 
 		return output.toString();
@@ -352,14 +397,261 @@ public final class StreamElement implements Serializable {
 		return this.fieldTypes;
 	}
 
+	/**
+	 * Returns the boxed values of all the fields. The returned array can be
+	 * modified by the caller, hence the numeric fields of an unboxed stream
+	 * element are boxed for good.
+	 */
 	public final Serializable[] getData() {
+		boxPrimitiveValues();
+		resolveBlobs();
 		return this.fieldValues;
 	}
 
 	public void setData(int index, Serializable data) {
+		long[] slots = this.primitiveValues;
+		if (slots != null && schema.isPrimitive(index)) {
+			if (data == null) {
+				setNullBit(slots, index, true);
+				return;
+			} else if (data instanceof Double || data instanceof Float) {
+				setDouble(index, ((Number) data).doubleValue());
+				return;
+			} else if (data instanceof Number) {
+				setLong(index, ((Number) data).longValue());
+				return;
+			}
+			boxPrimitiveValues();
+		}
 		this.fieldValues[index] = data;
 	}
 
+	/**
+	 * Positional access to the value of a field, see
+	 * {@link StreamSchema#indexOf(String)} to resolve the position of a field.
+	 * Unboxed numeric values are boxed on each call, prefer the typed
+	 * accessors for them.
+	 */
+	public final Serializable getData(int index) {
+		long[] slots = this.primitiveValues;
+		if (slots != null && schema.isPrimitive(index)) {
+			return boxSlot(slots, index);
+		}
+		Serializable value = this.fieldValues[index];
+		if (value instanceof BlobReference) {
+			return resolveBlob(index, (BlobReference) value);
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the reference to the blob store held by the binary field at the
+	 * given position, or null if the field holds its value, so that large
+	 * values can be streamed from their file rather than read in memory.
+	 */
+	public final BlobReference getBlobReference(int index) {
+		Serializable value = this.fieldValues[index];
+		return value instanceof BlobReference ? (BlobReference) value : null;
+	}
+
+	/**
+	 * Returns true if the field at the given position is null.
+	 */
+	public final boolean isNull(int index) {
+		long[] slots = this.primitiveValues;
+		if (slots != null && schema.isPrimitive(index)) {
+			return isNullBit(slots, index);
+		}
+		return this.fieldValues[index] == null;
+	}
+
+	/**
+	 * Returns true if the numeric field at the given position is held
+	 * unboxed.
+	 */
+	public final boolean hasPrimitiveValue(int index) {
+		return this.primitiveValues != null && schema.isPrimitive(index);
+	}
+
+	/**
+	 * Typed access to a numeric field, floating point values are truncated.
+	 * Like {@link java.sql.ResultSet#getLong(int)} it returns 0 for null
+	 * values, use {@link #isNull(int)} to tell them apart.
+	 */
+	public final long getLong(int index) {
+		long[] slots = this.primitiveValues;
+		if (slots != null && schema.isPrimitive(index)) {
+			if (isNullBit(slots, index)) {
+				return 0;
+			}
+			return isFloatingPoint(fieldTypes[index]) ? (long) Double.longBitsToDouble(slots[index]) : slots[index];
+		}
+		Serializable value = this.fieldValues[index];
+		return value == null ? 0 : ((Number) value).longValue();
+	}
+
+	/**
+	 * Typed access to a numeric field. Like
+	 * {@link java.sql.ResultSet#getDouble(int)} it returns 0 for null values,
+	 * use {@link #isNull(int)} to tell them apart.
+	 */
+	public final double getDouble(int index) {
+		long[] slots = this.primitiveValues;
+		if (slots != null && schema.isPrimitive(index)) {
+			if (isNullBit(slots, index)) {
+				return 0;
+			}
+			return isFloatingPoint(fieldTypes[index]) ? Double.longBitsToDouble(slots[index]) : slots[index];
+		}
+		Serializable value = this.fieldValues[index];
+		return value == null ? 0 : ((Number) value).doubleValue();
+	}
+
+	/**
+	 * Sets a numeric field, the value is converted to the type of the field.
+	 */
+	public void setLong(int index, long value) {
+		long[] slots = this.primitiveValues;
+		if (slots != null && schema.isPrimitive(index)) {
+			slots[index] = isFloatingPoint(fieldTypes[index]) ? Double.doubleToRawLongBits(value) : value;
+			setNullBit(slots, index, false);
+		} else {
+			this.fieldValues[index] = boxLong(fieldTypes[index], value);
+		}
+	}
+
+	/**
+	 * Sets a numeric field, the value is converted to the type of the field.
+	 */
+	public void setDouble(int index, double value) {
+		long[] slots = this.primitiveValues;
+		if (slots != null && schema.isPrimitive(index)) {
+			slots[index] = isFloatingPoint(fieldTypes[index]) ? Double.doubleToRawLongBits(value) : (long) value;
+			setNullBit(slots, index, false);
+		} else {
+			this.fieldValues[index] = isFloatingPoint(fieldTypes[index]) ? boxDouble(fieldTypes[index], value)
+					: boxLong(fieldTypes[index], (long) value);
+		}
+	}
+
+	private static long[] newPrimitiveValues(int nbFields) {
+		long[] slots = new long[nbFields + ((nbFields + 63) >>> 6)];
+		Arrays.fill(slots, nbFields, slots.length, -1L);
+		return slots;
+	}
+
+	private boolean isNullBit(long[] slots, int index) {
+		return (slots[fieldNames.length + (index >>> 6)] & (1L << index)) != 0;
+	}
+
+	private void setNullBit(long[] slots, int index, boolean isNull) {
+		if (isNull) {
+			slots[fieldNames.length + (index >>> 6)] |= 1L << index;
+		} else {
+			slots[fieldNames.length + (index >>> 6)] &= ~(1L << index);
+		}
+	}
+
+	private static boolean isFloatingPoint(Byte type) {
+		return type == DataTypes.DOUBLE || type == DataTypes.FLOAT;
+	}
+
+	private Serializable boxSlot(long[] slots, int index) {
+		if (isNullBit(slots, index)) {
+			return null;
+		}
+		Byte type = fieldTypes[index];
+		if (isFloatingPoint(type)) {
+			return boxDouble(type, Double.longBitsToDouble(slots[index]));
+		}
+		return boxLong(type, slots[index]);
+	}
+
+	private static Serializable boxLong(Byte type, long value) {
+		switch (type) {
+			case DataTypes.TINYINT:
+				return (byte) value;
+			case DataTypes.SMALLINT:
+				return (short) value;
+			case DataTypes.INTEGER:
+				return (int) value;
+			case DataTypes.BIGINT:
+				return value;
+			case DataTypes.DOUBLE:
+				return (double) value;
+			case DataTypes.FLOAT:
+				return (float) value;
+			default:
+				throw new IllegalArgumentException(
+						"The field is defined as " + DataTypes.TYPE_NAMES[type] + " which is not a numeric type.");
+		}
+	}
+
+	private static Serializable boxDouble(Byte type, double value) {
+		return type == DataTypes.FLOAT ? (Serializable) (float) value : (Serializable) value;
+	}
+
+	/**
+	 * Moves the unboxed numeric values back into fieldValues, afterwards the
+	 * stream element behaves as one built from boxed values.
+	 */
+	private synchronized void boxPrimitiveValues() {
+		long[] slots = this.primitiveValues;
+		if (slots == null) {
+			return;
+		}
+		for (int i = 0; i < fieldNames.length; i++) {
+			if (schema.isPrimitive(i)) {
+				fieldValues[i] = boxSlot(slots, i);
+			}
+		}
+		this.primitiveValues = null;
+	}
+
+	/**
+	 * Reads a binary value kept in the blob store, it replaces the reference
+	 * so that it is read once.
+	 */
+	private Serializable resolveBlob(int index, BlobReference reference) {
+		try {
+			byte[] value = reference.resolve();
+			this.fieldValues[index] = value;
+			return value;
+		} catch (IOException e) {
+			logger.error("Reading the value of " + fieldNames[index] + " failed: " + e.getMessage(), e);
+			return null;
+		}
+	}
+
+	private void resolveBlobs() {
+		for (int i = 0; i < fieldValues.length; i++) {
+			if (fieldValues[i] instanceof BlobReference) {
+				resolveBlob(i, (BlobReference) fieldValues[i]);
+			}
+		}
+	}
+
+	public final Byte getType(int index) {
+		return this.fieldTypes[index];
+	}
+
+	/**
+	 * Returns the (shared) schema of this stream element.
+	 */
+	public final StreamSchema getSchema() {
+		generateIndex();
+		return schema;
+	}
+
+	/**
+	 * Returns the position of the given field or -1 if this stream element
+	 * doesn't have it.
+	 */
+	public final int indexOf(String fieldName) {
+		generateIndex();
+		return schema.indexOf(fieldName);
+	}
+
 	public long getTimeStamp() {
 		return this.timeStamp;
 	}
@@ -413,14 +705,13 @@ public final class StreamElement implements Serializable {
 	 * @return The value corresponding to the named tuple.
 	 */
 	public final Serializable getData(final String fieldName) {
-		generateIndex();
-		Integer index = indexedFieldNames.get(fieldName);
-		if (index == null) {
+		int index = indexOf(fieldName);
+		if (index < 0) {
 			logger.warn("There is a request for field " + fieldName + " for StreamElement: " + this.toString()
 					+ ". As the requested field doesn't exist, GSN returns Null to the callee.");
 			return null;
 		}
-		return this.fieldValues[index];
+		return getData(index);
 	}
 
 	/**
@@ -432,9 +723,8 @@ public final class StreamElement implements Serializable {
 	 * @return The type of the value corresponding to the named tuple.
 	 */
 	public final Byte getType(final String fieldName) {
-		generateIndex();
-		Integer index = indexedFieldNames.get(fieldName);
-		if (index == null) {
+		int index = indexOf(fieldName);
+		if (index < 0) {
 			if (logger.isDebugEnabled()) {
 				logger.warn("There is a request for type of field " + fieldName + " for StreamElement: "
 						+ this.toString() + ". As the requested field doesn't exist, GSN returns Null to the callee.");
@@ -471,7 +761,6 @@ public final class StreamElement implements Serializable {
 			return false;
 		}
 
-		Serializable[] fieldValues = se.getData();
 		String[] fieldNames = se.getFieldNames();
 		Byte[] fieldTypes = se.getFieldTypes();
 
@@ -497,52 +786,54 @@ public final class StreamElement implements Serializable {
 				continue;
 			}
 
-			if (this.fieldValues[i] == null && fieldValues[i] != null) {
+			Serializable value = this.getData(i);
+			Serializable otherValue = se.getData(i);
+			if (value == null && otherValue != null) {
 				return false;
 			}
 
-			if (this.fieldValues[i] != null && fieldValues[i] == null) {
+			if (value != null && otherValue == null) {
 				return false;
 			}
 
-			if (!(this.fieldValues[i] == null && fieldValues[i] == null)) {
+			if (!(value == null && otherValue == null)) {
 				switch (fieldTypes[i]) {
 					case DataTypes.DOUBLE:
-						if (((Double) this.fieldValues[i]).compareTo((Double) fieldValues[i]) != 0) {
+						if (((Double) value).compareTo((Double) otherValue) != 0) {
 							return false;
 						}
 						break;
 					case DataTypes.BIGINT:
-						if (((Long) this.fieldValues[i]).compareTo((Long) fieldValues[i]) != 0) {
+						if (((Long) value).compareTo((Long) otherValue) != 0) {
 							return false;
 						}
 						break;
 					case DataTypes.TINYINT:
-						if (((Byte) this.fieldValues[i]).compareTo((Byte) fieldValues[i]) != 0) {
+						if (((Byte) value).compareTo((Byte) otherValue) != 0) {
 							return false;
 						}
 
 						break;
 					case DataTypes.SMALLINT:
-						if (((Short) this.fieldValues[i]).compareTo((Short) fieldValues[i]) != 0) {
+						if (((Short) value).compareTo((Short) otherValue) != 0) {
 							return false;
 						}
 
 						break;
 					case DataTypes.INTEGER:
-						if (((Integer) this.fieldValues[i]).compareTo((Integer) fieldValues[i]) != 0) {
+						if (((Integer) value).compareTo((Integer) otherValue) != 0) {
 							return false;
 						}
 						break;
 					case DataTypes.CHAR:
 					case DataTypes.VARCHAR:
-						if (((String) this.fieldValues[i]).compareTo((String) fieldValues[i]) != 0) {
+						if (((String) value).compareTo((String) otherValue) != 0) {
 							return false;
 						}
 
 						break;
 					case DataTypes.BINARY:
-						if (!Arrays.equals((byte[]) this.fieldValues[i], (byte[]) fieldValues[i])) {
+						if (!Arrays.equals((byte[]) value, (byte[]) otherValue)) {
 							return false;
 						}
 						break;
@@ -559,6 +850,7 @@ public final class StreamElement implements Serializable {
 	 * @return
 	 */
 	public Object[] getDataInRPCFriendly() {
+		Serializable[] fieldValues = getData();
 		Object[] toReturn = new Object[fieldValues.length];
 		for (int i = 0; i < toReturn.length; i++) {
 			// process null values
@@ -940,22 +1232,99 @@ public final class StreamElement implements Serializable {
 		return new StreamElement(outputFormat, values.toArray(new Serializable[] {}), timestamp);
 	}
 
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		boxPrimitiveValues();
+		resolveBlobs();
+		out.defaultWriteObject();
+	}
+
+	/**
+	 * Kryo serialization, numeric values are written with their primitive
+	 * encoding and read back into an unboxed stream element. The volume is
+	 * kept as the values, e.g. of the blobs, may not be resolved.
+	 */
+	public void write(Kryo kryo, Output output) {
+		output.writeLong(timeStamp);
+		output.writeBoolean(timestampProvided);
+		output.writeBoolean(volume != null);
+		if (volume != null) {
+			output.writeLong(volume, true);
+		}
+		output.writeInt(fieldNames.length, true);
+		for (int i = 0; i < fieldNames.length; i++) {
+			output.writeString(fieldNames[i]);
+			output.writeByte(fieldTypes[i] == null ? -1 : fieldTypes[i]);
+		}
+		for (int i = 0; i < fieldNames.length; i++) {
+			if (isNull(i)) {
+				output.writeByte(KRYO_NULL);
+				continue;
+			}
+			if (!hasPrimitiveValue(i)
+					&& !(StreamSchema.isPrimitiveType(fieldTypes[i]) && fieldValues[i] instanceof Number)) {
+				output.writeByte(KRYO_OBJECT);
+				kryo.writeClassAndObject(output, getData(i));
+				continue;
+			}
+			output.writeByte(KRYO_PRIMITIVE);
+			if (isFloatingPoint(fieldTypes[i])) {
+				output.writeDouble(getDouble(i));
+			} else {
+				output.writeLong(getLong(i));
+			}
+		}
+	}
+
+	public void read(Kryo kryo, Input input) {
+		this.timeStamp = input.readLong();
+		this.timestampProvided = input.readBoolean();
+		this.volume = input.readBoolean() ? input.readLong(true) : null;
+		int nbFields = input.readInt(true);
+		String[] names = new String[nbFields];
+		Byte[] types = new Byte[nbFields];
+		for (int i = 0; i < nbFields; i++) {
+			names[i] = input.readString();
+			byte type = input.readByte();
+			types[i] = type == -1 ? null : type;
+		}
+		this.schema = StreamSchema.intern(names, types);
+		this.fieldNames = schema.getFieldNames();
+		this.fieldTypes = schema.getFieldTypes();
+		this.fieldValues = new Serializable[nbFields];
+		if (schema.hasPrimitiveFields()) {
+			this.primitiveValues = newPrimitiveValues(nbFields);
+		}
+		for (int i = 0; i < nbFields; i++) {
+			switch (input.readByte()) {
+				case KRYO_PRIMITIVE:
+					if (isFloatingPoint(fieldTypes[i])) {
+						setDouble(i, input.readDouble());
+					} else {
+						setLong(i, input.readLong());
+					}
+					break;
+				case KRYO_OBJECT:
+					setData(i, (Serializable) kryo.readClassAndObject(input));
+					break;
+				default:
+					setData(i, null);
+					break;
+			}
+		}
+	}
+
 	public StreamElement4Rest toRest() {
 		return new StreamElement4Rest(this);
 	}
 
 	/**
-	 * Build the index for mapping field name to their positions in the array if it
-	 * is not yet built
+	 * Looks up the shared schema for mapping field name to their positions in the
+	 * array if it is not yet set
 	 * This assumes that StreamElements cannot change their structure
 	 */
 	private void generateIndex() {
-		if (indexedFieldNames == null) {
-			indexedFieldNames = new TreeMap<String, Integer>(new CaseInsensitiveComparator());
-			for (int i = 0; i < this.fieldNames.length; i++) {
-				this.indexedFieldNames.put(fieldNames[i], i);
-			}
-
+		if (schema == null) {
+			schema = StreamSchema.intern(fieldNames, fieldTypes);
 		}
 	}
 
@@ -968,9 +1337,8 @@ public final class StreamElement implements Serializable {
 	 * @throws IllegalArgumentException
 	 */
 	public void setData(String fieldName, Serializable data) throws IllegalArgumentException {
-		generateIndex();
-		Integer index = indexedFieldNames.get(fieldName);
-		if (index == null) {
+		int index = indexOf(fieldName);
+		if (index < 0) {
 			logger.warn("There is a request for setting field " + fieldName + " for StreamElement: " + this.toString()
 					+ ". But the requested field doesn't exist.");
 		}
@@ -1000,7 +1368,7 @@ public final class StreamElement implements Serializable {
 		Serializable[] values = new Serializable[fields.length];
 		values[0] = getTimeStamp();
 		for (int j = 1; j < fields.length; j++) {
-			values[j] = fieldValues[j - 1];
+			values[j] = getData(j - 1);
 		}
 		GeoJsonProperties prop = new GeoJsonProperties();
 		prop.setVs_name(vs_name);
@@ -1027,7 +1395,7 @@ public final class StreamElement implements Serializable {
 		if (volume == null) {
 			volume = (long) 0;
 			for (int i = 0; i < fieldNames.length; i++) {
-				if (fieldValues[i] == null) {
+				if (isNull(i)) {
 					continue;
 				}
 				switch (fieldTypes[i]) {
@@ -1050,7 +1418,9 @@ public final class StreamElement implements Serializable {
 						volume += 4;
 						break;
 					case DataTypes.DOUBLE:
-						if (fieldValues[i] instanceof Float) {
+						if (hasPrimitiveValue(i)) {
+							volume += 8;
+						} else if (fieldValues[i] instanceof Float) {
 							volume += 4;
 						} else if (fieldValues[i] instanceof Double) {
 							volume += 8;
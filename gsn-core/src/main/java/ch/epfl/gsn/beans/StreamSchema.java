@@ -0,0 +1,202 @@
+package ch.epfl.gsn.beans;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable structure (field names and types) of stream elements. Schemas are
+ * interned, so all the stream elements produced by a wrapper or a virtual
+ * sensor share the same instance and the same name to position index.
+ * <p>
+ * Name lookups are case insensitive and ignore surrounding spaces, like the
+ * {@link ch.epfl.gsn.utils.CaseInsensitiveComparator} based index
+ * StreamElement used to build for each element.
+ * <p>
+ * The arrays returned by {@link #getFieldNames()} and {@link #getFieldTypes()}
+ * are shared and must not be modified.
+ */
+public final class StreamSchema {
+
+	/**
+	 * Upper bound on the number of interned schemas, afterwards schemas are
+	 * still created but not cached anymore.
+	 */
+	private static final int MAX_INTERNED_SCHEMAS = 10000;
+
+	private static final ConcurrentHashMap<StreamSchema, StreamSchema> interned = new ConcurrentHashMap<StreamSchema, StreamSchema>();
+
+	public static final StreamSchema EMPTY = intern(new String[0], new Byte[0]);
+
+	private final String[] fieldNames;
+
+	private final Byte[] fieldTypes;
+
+	private HashMap<String, Integer> index;
+
+	private final int hashCode;
+
+	private boolean[] primitive;
+
+	private boolean hasPrimitiveFields;
+
+	private StreamSchema(String[] fieldNames, Byte[] fieldTypes) {
+		if (fieldNames.length != fieldTypes.length) {
+			throw new IllegalArgumentException(
+					"The length of the field names and the field types of the schema doesn't match.");
+		}
+		this.fieldNames = fieldNames;
+		this.fieldTypes = fieldTypes;
+		this.hashCode = 31 * Arrays.hashCode(fieldNames) + Arrays.hashCode(fieldTypes);
+	}
+
+	/**
+	 * Builds the name to position index. Only called on schemas which are
+	 * about to be published, lookups in the intern cache don't need it.
+	 */
+	private StreamSchema buildIndex() {
+		HashMap<String, Integer> idx = new HashMap<String, Integer>(fieldNames.length * 2);
+		boolean[] prim = new boolean[fieldTypes.length];
+		for (int i = 0; i < fieldNames.length; i++) {
+			if (fieldNames[i] != null) {
+				idx.put(normalize(fieldNames[i]), i);
+			}
+			prim[i] = isPrimitiveType(fieldTypes[i]);
+			hasPrimitiveFields |= prim[i];
+		}
+		this.primitive = prim;
+		this.index = idx;
+		return this;
+	}
+
+	/**
+	 * Returns the shared schema for the given field names and types. The
+	 * arrays are kept by the schema if it was not interned yet, so the caller
+	 * must not modify them afterwards.
+	 */
+	public static StreamSchema intern(String[] fieldNames, Byte[] fieldTypes) {
+		StreamSchema schema = new StreamSchema(fieldNames, fieldTypes);
+		StreamSchema existing = interned.get(schema);
+		if (existing != null) {
+			return existing;
+		}
+		schema.buildIndex();
+		if (interned.size() >= MAX_INTERNED_SCHEMAS) {
+			return schema;
+		}
+		existing = interned.putIfAbsent(schema, schema);
+		return existing == null ? schema : existing;
+	}
+
+	/**
+	 * Returns the shared schema of the given output structure. Field names are
+	 * converted to lower case, as done by the StreamElement constructors.
+	 */
+	public static StreamSchema of(DataField[] outputStructure) {
+		String[] names = new String[outputStructure.length];
+		Byte[] types = new Byte[outputStructure.length];
+		for (int i = 0; i < outputStructure.length; i++) {
+			names[i] = outputStructure[i].getName().toLowerCase();
+			types[i] = outputStructure[i].getDataTypeID();
+		}
+		return intern(names, types);
+	}
+
+	/**
+	 * Returns true for the numeric types which stream elements can keep in
+	 * primitive slots instead of boxing them.
+	 */
+	public static boolean isPrimitiveType(Byte type) {
+		if (type == null) {
+			return false;
+		}
+		switch (type) {
+			case DataTypes.TINYINT:
+			case DataTypes.SMALLINT:
+			case DataTypes.INTEGER:
+			case DataTypes.BIGINT:
+			case DataTypes.DOUBLE:
+			case DataTypes.FLOAT:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private static String normalize(String fieldName) {
+		return fieldName.trim().toLowerCase();
+	}
+
+	/**
+	 * Returns the position of the field, or -1 if the schema doesn't contain it.
+	 */
+	public int indexOf(String fieldName) {
+		if (fieldName == null) {
+			return -1;
+		}
+		Integer i = index.get(fieldName);
+		if (i == null) {
+			i = index.get(normalize(fieldName));
+		}
+		return i == null ? -1 : i;
+	}
+
+	public int size() {
+		return fieldNames.length;
+	}
+
+	public String[] getFieldNames() {
+		return fieldNames;
+	}
+
+	public Byte[] getFieldTypes() {
+		return fieldTypes;
+	}
+
+	/**
+	 * Returns true if the field at the given position has a numeric type, see
+	 * {@link #isPrimitiveType(Byte)}.
+	 */
+	public boolean isPrimitive(int i) {
+		return primitive[i];
+	}
+
+	public boolean hasPrimitiveFields() {
+		return hasPrimitiveFields;
+	}
+
+	public String getFieldName(int i) {
+		return fieldNames[i];
+	}
+
+	public Byte getFieldType(int i) {
+		return fieldTypes[i];
+	}
+
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof StreamSchema)) {
+			return false;
+		}
+		StreamSchema other = (StreamSchema) o;
+		return hashCode == other.hashCode && Arrays.equals(fieldNames, other.fieldNames)
+				&& Arrays.equals(fieldTypes, other.fieldTypes);
+	}
+
+	public int hashCode() {
+		return hashCode;
+	}
+
+	public String toString() {
+		StringBuilder sb = new StringBuilder("StreamSchema [");
+		for (int i = 0; i < fieldNames.length; i++) {
+			if (i > 0) {
+				sb.append(", ");
+			}
+			sb.append(fieldNames[i]).append("/").append(fieldTypes[i]);
+		}
+		return sb.append("]").toString();
+	}
+}
@@ -93,6 +93,11 @@ public class StreamSource implements Serializable {
   public static final long DEFAULT_SLIDE_VALUE = 1;
   public static final WindowType DEFAULT_WINDOW_TYPE = WindowType.TUPLE_BASED_SLIDE_ON_EACH_TUPLE;
 
+  public static final String WINDOW_ENGINE_SQL = "sql";
+  public static final String WINDOW_ENGINE_MEMORY = "memory";
+
+  private String windowEngine = WINDOW_ENGINE_SQL;
+
   private transient long parsedStorageSize = STORAGE_SIZE_NOT_SET;
 
   private transient long parsedSlideValue = DEFAULT_SLIDE_VALUE;
@@ -133,6 +138,43 @@ public class StreamSource implements Serializable {
     return this;
   }
 
+  /**
+   * Selects the engine maintaining the window of this stream source, either
+   * <code>sql</code> (views on the window storage, default) or
+   * <code>memory</code> (ring buffers and time indexed deques).
+   */
+  public StreamSource setWindowEngine(String windowEngine) {
+    if (wrapper != null) {
+      throw new GSNRuntimeException("Window engine can't be changed anymore !");
+    }
+    if (windowEngine == null || windowEngine.trim().length() == 0) {
+      this.windowEngine = WINDOW_ENGINE_SQL;
+    } else if (windowEngine.trim().equalsIgnoreCase(WINDOW_ENGINE_SQL)
+        || windowEngine.trim().equalsIgnoreCase(WINDOW_ENGINE_MEMORY)) {
+      this.windowEngine = windowEngine.trim().toLowerCase();
+    } else {
+      throw new GSNRuntimeException("Invalid window engine is provided: " + windowEngine + ". Valid values are "
+          + WINDOW_ENGINE_SQL + " and " + WINDOW_ENGINE_MEMORY + ".");
+    }
+    return this;
+  }
+
+  public String getWindowEngine() {
+    return windowEngine;
+  }
+
+  public boolean isInMemoryWindow() {
+    return WINDOW_ENGINE_MEMORY.equals(windowEngine);
+  }
+
+  /**
+   * The in-memory window engine only materializes the raw window content, so
+   * it can only be used with the default stream source query.
+   */
+  public boolean isInMemoryWindowSupported() {
+    return getSqlQuery().trim().replaceAll("\\s+", " ").equalsIgnoreCase(DEFAULT_QUERY);
+  }
+
   public AddressBean[] getAddressing() {
     if (addressing == null) {
       addressing = EMPTY_ADDRESS_BEAN;
@@ -546,6 +588,7 @@ public class StreamSource implements Serializable {
     toReturn.append(" Alias: ").append(alias);
     toReturn.append(" uidS: ").append(uidS);
     toReturn.append(" Active source: ").append(activeAddressBean);
+    toReturn.append(" Window engine: ").append(windowEngine);
 
     return toReturn.toString();
   }
@@ -72,12 +72,18 @@ public class VSensorConfig implements Serializable {
 	@Deprecated
 	private int lifeCyclePoolSize = DEFAULT_POOL_SIZE;
 
+	private int mailboxSize = 0;
+
+	private String backpressure = null;
+
 	private int outputStreamRate;
 
 	private KeyValue[] addressing;
 
 	private DataField[] outputStructure;
 
+	private transient StreamSchema outputSchema;
+
 	private String webParameterPassword = null;
 
 	private String storageHistorySize = null;
@@ -119,6 +125,22 @@ public class VSensorConfig implements Serializable {
 
 	private String chunkSize;
 
+	private String aggregatePeriods;
+
+	private String rollupPeriods;
+
+	private String partitionField;
+
+	private String segmentDirectory;
+
+	private int blobThreshold = 0;
+
+	private int writeBatchSize = 0;
+
+	private int writeMaxDelay = 0;
+
+	private String writeAck = "async";
+
 	private boolean isTimestampUnique = false;
 
 	private boolean isGetMainClassInitParamsInitialized = false;
@@ -196,6 +218,30 @@ public class VSensorConfig implements Serializable {
 		return this.lifeCyclePoolSize;
 	}
 
+	/**
+	 * @return the capacity of the mailbox of the virtual sensor, 0 if the
+	 *         inputs are processed directly on the wrapper threads
+	 */
+	public int getMailboxSize() {
+		return mailboxSize;
+	}
+
+	public void setMailboxSize(int mailboxSize) {
+		this.mailboxSize = mailboxSize;
+	}
+
+	/**
+	 * @return the backpressure policy applied when the mailbox is full, see
+	 *         {@link ch.epfl.gsn.VirtualSensorMailbox}
+	 */
+	public String getBackpressure() {
+		return backpressure;
+	}
+
+	public void setBackpressure(String backpressure) {
+		this.backpressure = backpressure;
+	}
+
 	/**
 	 * @return Returns the mainClass.
 	 */
@@ -236,6 +282,16 @@ public class VSensorConfig implements Serializable {
 		return this.outputStructure;
 	}
 
+	/**
+	 * @return Returns the shared schema of the outputStructure.
+	 */
+	public StreamSchema getOutputSchema() {
+		if (this.outputSchema == null) {
+			this.outputSchema = StreamSchema.of(this.outputStructure);
+		}
+		return this.outputSchema;
+	}
+
 	/**
 	 * @return Returns the priority.
 	 */
@@ -309,6 +365,7 @@ public class VSensorConfig implements Serializable {
 	 */
 	public void setOutputStructure(DataField[] outputStructure) {
 		this.outputStructure = outputStructure;
+		this.outputSchema = null;
 	}
 
 	/**
@@ -445,6 +502,115 @@ public class VSensorConfig implements Serializable {
 		this.chunkSize = chunkSize;
 	}
 
+	/**
+	 * @return the comma separated periods in milliseconds of the continuous
+	 *         aggregates of the output table, or null for the defaults of the
+	 *         storage manager
+	 */
+	public String getAggregatePeriods() {
+		return aggregatePeriods;
+	}
+
+	public void setAggregatePeriods(String aggregatePeriods) {
+		this.aggregatePeriods = aggregatePeriods;
+	}
+
+	/**
+	 * @return the field whose values identify the series of the output, the
+	 *         latest values are given for each of them, or null
+	 */
+	public String getPartitionField() {
+		return partitionField;
+	}
+
+	public void setPartitionField(String partitionField) {
+		this.partitionField = partitionField;
+	}
+
+	/**
+	 * @return the comma separated periods in milliseconds of the rollup tables
+	 *         of the output, see {@link ch.epfl.gsn.storage.RollupMaintainer},
+	 *         or null
+	 */
+	public String getRollupPeriods() {
+		return rollupPeriods;
+	}
+
+	public void setRollupPeriods(String rollupPeriods) {
+		this.rollupPeriods = rollupPeriods;
+	}
+
+	/**
+	 * @return the directory in which the output is also archived in segments,
+	 *         see {@link ch.epfl.gsn.storage.segment.SegmentStore}, or null
+	 */
+	public String getSegmentDirectory() {
+		return segmentDirectory;
+	}
+
+	public void setSegmentDirectory(String segmentDirectory) {
+		this.segmentDirectory = segmentDirectory;
+	}
+
+	/**
+	 * @return the size in bytes from which the binary values are kept in the
+	 *         blob store instead of the table, see
+	 *         {@link ch.epfl.gsn.data.blob.BlobStore}, or 0 if they are
+	 *         always kept in the table
+	 */
+	public int getBlobThreshold() {
+		return blobThreshold;
+	}
+
+	public void setBlobThreshold(int blobThreshold) {
+		this.blobThreshold = blobThreshold;
+	}
+
+	/**
+	 * @return true if the output of the virtual sensor is written behind,
+	 *         see {@link ch.epfl.gsn.storage.WriteBehindBuffer}
+	 */
+	public boolean isWriteBehind() {
+		return writeBatchSize > 0;
+	}
+
+	/**
+	 * @return the number of rows written in one batch by the write-behind
+	 *         buffer, 0 if the output is written synchronously
+	 */
+	public int getWriteBatchSize() {
+		return writeBatchSize;
+	}
+
+	public void setWriteBatchSize(int writeBatchSize) {
+		this.writeBatchSize = writeBatchSize;
+	}
+
+	/**
+	 * @return the time in milliseconds after which a row is written, even if
+	 *         the batch is not full
+	 */
+	public int getWriteMaxDelay() {
+		return writeMaxDelay;
+	}
+
+	public void setWriteMaxDelay(int writeMaxDelay) {
+		this.writeMaxDelay = writeMaxDelay;
+	}
+
+	/**
+	 * @return when the rows written behind are acknowledged, "sync" (once
+	 *         committed), "async" (publishing doesn't wait, the listeners are
+	 *         notified once they are committed) or "queued" (once queued)
+	 */
+	public String getWriteAck() {
+		return writeAck;
+	}
+
+	public void setWriteAck(String writeAck) {
+		this.writeAck = writeAck;
+	}
+
 	public String getDirectoryQuery() {
 		return directoryQuery;
 	}
@@ -0,0 +1,116 @@
+package ch.epfl.gsn.beans.windowing;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.beans.StreamSource;
+
+import org.slf4j.Logger;
+
+/**
+ * Query rewriter for stream sources using the in-memory window engine. No
+ * view is created in the window storage, the content of the window is kept
+ * in an {@link InMemoryWindow} and handed over to the input stream directly
+ * when the window slides.
+ */
+public class InMemoryQueryRewriter extends QueryRewriter {
+
+	private static final transient Logger logger = LoggerFactory.getLogger(InMemoryQueryRewriter.class);
+
+	private InMemoryWindow window;
+
+	private long lastSlideTime = Long.MIN_VALUE;
+
+	@Override
+	public boolean initialize() {
+		if (streamSource == null) {
+			throw new RuntimeException("Null Pointer Exception: streamSource is null");
+		}
+		window = createWindow(streamSource);
+		return true;
+	}
+
+	/**
+	 * Creates a ring buffer for tuple based windows and a time indexed deque
+	 * for time based windows. Note that the window size is given by the
+	 * storage size, the slide value is handled by the
+	 * {@link InMemorySlidingHandler}.
+	 */
+	static InMemoryWindow createWindow(StreamSource streamSource) {
+		long size = streamSource.getParsedStorageSize();
+		if (streamSource.isStorageCountBased() || size == StreamSource.STORAGE_SIZE_NOT_SET) {
+			return new TupleRingBuffer((int) Math.min(Integer.MAX_VALUE, Math.max(1, size)));
+		}
+		return new TimeWindowDeque(size);
+	}
+
+	/**
+	 * The in-memory engine doesn't rewrite anything, the input stream
+	 * consumes the window content directly.
+	 */
+	@Override
+	public StringBuilder rewrite(String query) {
+		return new StringBuilder(query);
+	}
+
+	@Override
+	public void dispose() {
+		if (window != null) {
+			synchronized (window) {
+				window.clear();
+			}
+		}
+	}
+
+	public void add(StreamElement streamElement) {
+		synchronized (window) {
+			window.add(streamElement);
+		}
+	}
+
+	/**
+	 * Records the slide time and notifies the input stream of the stream
+	 * source.
+	 */
+	@Override
+	public boolean dataAvailable(long timestamp) {
+		lastSlideTime = timestamp;
+		try {
+			if (logger.isDebugEnabled()) {
+				logger.debug(streamSource.getWrapper().getWrapperName()
+						+ " - Output stream produced/received from a wrapper " + streamSource.toString());
+			}
+			return streamSource.windowSlided();
+		} catch (SQLException e) {
+			logger.error(e.getMessage(), e);
+		}
+		return false;
+	}
+
+	/**
+	 * Returns a copy of the elements of the window at the last slide, newest
+	 * first. The elements are copied so that virtual sensors modifying them
+	 * don't alter the window content.
+	 */
+	public List<StreamElement> getWindowContent() {
+		List<StreamElement> snapshot;
+		synchronized (window) {
+			snapshot = window.snapshot(lastSlideTime);
+		}
+		List<StreamElement> toReturn = new ArrayList<StreamElement>(snapshot.size());
+		for (StreamElement se : snapshot) {
+			toReturn.add(new StreamElement(se));
+		}
+		return toReturn;
+	}
+
+	public int getWindowSize() {
+		synchronized (window) {
+			return window.size();
+		}
+	}
+}
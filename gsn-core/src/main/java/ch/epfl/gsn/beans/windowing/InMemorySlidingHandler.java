@@ -0,0 +1,171 @@
+package ch.epfl.gsn.beans.windowing;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.LoggerFactory;
+
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.beans.StreamSource;
+import ch.epfl.gsn.wrappers.AbstractWrapper;
+
+import org.slf4j.Logger;
+
+/**
+ * Sliding handler for the stream sources configured with
+ * <code>window-engine="memory"</code>. It handles both tuple and time based
+ * windows without touching the window storage: tuple based windows are kept
+ * in a {@link TupleRingBuffer}, time based windows in a
+ * {@link TimeWindowDeque}.
+ * <p>
+ * Time based slides are evaluated on the timestamps of the incoming stream
+ * elements instead of a timer, i.e. the window slides on the first element
+ * arriving after the slide period elapsed.
+ */
+public class InMemorySlidingHandler implements SlidingHandler {
+
+	private static final transient Logger logger = LoggerFactory.getLogger(InMemorySlidingHandler.class);
+
+	/**
+	 * For tuple based slides: the number of tuples seen since the last slide.
+	 * For time based slides: the timestamp of the next slide.
+	 */
+	private Map<StreamSource, Long> slidingHashMap;
+
+	private AbstractWrapper wrapper;
+
+	public InMemorySlidingHandler(AbstractWrapper wrapper) {
+		slidingHashMap = Collections.synchronizedMap(new HashMap<StreamSource, Long>());
+		this.wrapper = wrapper;
+	}
+
+	/**
+	 * Adds a stream source to the sliding handler. The initial slide state
+	 * mirrors the SQL based handlers: a TUPLE_BASED window slides for the
+	 * first time once it is full, a TIME_BASED window once its time span
+	 * elapsed.
+	 *
+	 * @param streamSource the stream source to be added
+	 */
+	public void addStreamSource(StreamSource streamSource) {
+		InMemoryQueryRewriter rewriter = new InMemoryQueryRewriter();
+		rewriter.setStreamSource(streamSource);
+		rewriter.initialize();
+		if (streamSource.getWindowingType() == WindowType.TUPLE_BASED) {
+			slidingHashMap.put(streamSource, streamSource.getParsedSlideValue() - streamSource.getParsedStorageSize());
+		} else if (isSlidingOnTime(streamSource)) {
+			slidingHashMap.put(streamSource, Long.MIN_VALUE);
+		} else {
+			slidingHashMap.put(streamSource, 0L);
+		}
+		if (logger.isDebugEnabled()) {
+			logger.debug("In-memory window added for " + streamSource.getAlias() + " in the "
+					+ wrapper.getDBAliasInStr() + " wrapper");
+		}
+	}
+
+	private static boolean isSlidingOnTime(StreamSource streamSource) {
+		return streamSource.getWindowingType() == WindowType.TIME_BASED
+				|| streamSource.getWindowingType() == WindowType.TUPLE_BASED_WIN_TIME_BASED_SLIDE;
+	}
+
+	/**
+	 * Appends the stream element to the window of each stream source and
+	 * notifies the stream sources whose window slided.
+	 *
+	 * @param streamElement the new stream element
+	 * @return true if at least one window slided and produced a notification
+	 */
+	public boolean dataAvailable(StreamElement streamElement) {
+		boolean toReturn = false;
+		long timed = streamElement.getTimeStamp();
+		synchronized (slidingHashMap) {
+			for (Map.Entry<StreamSource, Long> entry : slidingHashMap.entrySet()) {
+				StreamSource streamSource = entry.getKey();
+				if (!isSampled(streamSource, timed)) {
+					continue;
+				}
+				InMemoryQueryRewriter rewriter = (InMemoryQueryRewriter) streamSource.getQueryRewriter();
+				rewriter.add(streamElement);
+				switch (streamSource.getWindowingType()) {
+					case TUPLE_BASED_SLIDE_ON_EACH_TUPLE:
+					case TIME_BASED_SLIDE_ON_EACH_TUPLE:
+						toReturn = rewriter.dataAvailable(timed) || toReturn;
+						break;
+					case TIME_BASED:
+					case TUPLE_BASED_WIN_TIME_BASED_SLIDE:
+						long nextSlide = entry.getValue();
+						if (nextSlide == Long.MIN_VALUE) {
+							long firstSlide = streamSource.getWindowingType() == WindowType.TIME_BASED
+									? streamSource.getParsedStorageSize()
+									: streamSource.getParsedSlideValue();
+							nextSlide = timed + firstSlide;
+						}
+						if (timed >= nextSlide) {
+							long slide = Math.max(1, streamSource.getParsedSlideValue());
+							nextSlide += ((timed - nextSlide) / slide + 1) * slide;
+							toReturn = rewriter.dataAvailable(timed) || toReturn;
+						}
+						entry.setValue(nextSlide);
+						break;
+					default:
+						long slideVar = entry.getValue() + 1;
+						if (slideVar >= streamSource.getParsedSlideValue()) {
+							toReturn = rewriter.dataAvailable(timed) || toReturn;
+							slideVar = 0;
+						}
+						entry.setValue(slideVar);
+				}
+			}
+		}
+		return toReturn;
+	}
+
+	/**
+	 * Applies the sampling rate of the stream source the same way the SQL
+	 * views do (<code>mod(timed, 100) &lt; samplingRate * 100</code>).
+	 */
+	private static boolean isSampled(StreamSource streamSource, long timed) {
+		float samplingRate = streamSource.getSamplingRate();
+		if (samplingRate >= 1) {
+			return true;
+		}
+		return samplingRate > 0 && (timed % 100) < samplingRate * 100;
+	}
+
+	/**
+	 * The in-memory windows never need rows in the window table.
+	 *
+	 * @return always Long.MAX_VALUE
+	 */
+	public long getCutPoint() {
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * Removes a stream source from the sliding handler.
+	 *
+	 * @param streamSource the stream source to be removed
+	 */
+	public void removeStreamSource(StreamSource streamSource) {
+		slidingHashMap.remove(streamSource);
+		streamSource.getQueryRewriter().dispose();
+	}
+
+	/**
+	 * Disposes the resources used by the InMemorySlidingHandler.
+	 */
+	public void dispose() {
+		synchronized (slidingHashMap) {
+			for (StreamSource streamSource : slidingHashMap.keySet()) {
+				streamSource.getQueryRewriter().dispose();
+			}
+			slidingHashMap.clear();
+		}
+	}
+
+	public boolean isInterestedIn(StreamSource streamSource) {
+		return streamSource.isInMemoryWindow();
+	}
+}
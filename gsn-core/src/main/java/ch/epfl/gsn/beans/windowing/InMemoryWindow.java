@@ -0,0 +1,27 @@
+package ch.epfl.gsn.beans.windowing;
+
+import java.util.List;
+
+import ch.epfl.gsn.beans.StreamElement;
+
+/**
+ * Content of a sliding window kept in memory instead of in the window
+ * storage. Implementations are not thread safe, callers synchronize on the
+ * window instance.
+ */
+public interface InMemoryWindow {
+
+	public void add(StreamElement streamElement);
+
+	/**
+	 * Returns the content of the window as seen at the given reference time,
+	 * ordered from the newest to the oldest element (the same order as the
+	 * SQL views, <code>order by timed desc</code>).
+	 */
+	public List<StreamElement> snapshot(long referenceTime);
+
+	public int size();
+
+	public void clear();
+
+}
@@ -34,16 +34,11 @@
 
 package ch.epfl.gsn.beans.windowing;
 
-import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.TreeMap;
 
 import org.slf4j.LoggerFactory;
@@ -54,6 +49,7 @@ import ch.epfl.gsn.beans.StreamSource;
 import ch.epfl.gsn.storage.SQLUtils;
 import ch.epfl.gsn.utils.CaseInsensitiveComparator;
 import ch.epfl.gsn.utils.GSNRuntimeException;
+import ch.epfl.gsn.utils.TimingWheel;
 import ch.epfl.gsn.wrappers.AbstractWrapper;
 
 import org.slf4j.Logger;
@@ -61,17 +57,15 @@ import org.slf4j.Logger;
 public class LocalTimeBasedSlidingHandler implements SlidingHandler {
 
     private static final transient Logger logger = LoggerFactory.getLogger(LocalTimeBasedSlidingHandler.class);
-    private static int timerCount = 0;
     private List<StreamSource> streamSources;
     private AbstractWrapper wrapper;
-    private Timer timer;
+    private TimingWheel.Timeout timer;
     private long timerTick = -1;
     private Map<StreamSource, Long> slidingHashMap;
 
     public LocalTimeBasedSlidingHandler(AbstractWrapper wrapper) {
         streamSources = Collections.synchronizedList(new ArrayList<StreamSource>());
         slidingHashMap = Collections.synchronizedMap(new HashMap<StreamSource, Long>());
-        timer = new Timer("LocalTimeBasedSlidingHandlerTimer" + (++timerCount));
         this.wrapper = wrapper;
     }
 
@@ -112,22 +106,31 @@ public class LocalTimeBasedSlidingHandler implements SlidingHandler {
                 }
             }
             if (oldTimerTick != timerTick) {
-                timer.cancel();
-                timer = new Timer();
-                if(logger.isDebugEnabled()){
-                    logger.debug("About to schedule new timer task at period " + timerTick + "ms in the "
-                        + wrapper.getDBAliasInStr() + " wrapper");
-                }
-                timer.schedule(new LTBTimerTask(), 500, timerTick);
+                reschedule();
             }
         }
     }
 
+    /**
+     * Replaces the periodic task of the handler on the shared timing wheel
+     * by one running at the current timer tick.
+     */
+    private synchronized void reschedule() {
+        if (timer != null) {
+            timer.cancel();
+        }
+        if(logger.isDebugEnabled()){
+            logger.debug("About to schedule new timer task at period " + timerTick + "ms in the "
+                + wrapper.getDBAliasInStr() + " wrapper");
+        }
+        timer = TimingWheel.getInstance().schedule(new LTBTimerTask(), 500, timerTick);
+    }
+
     public long GCD(long a, long b) {
         return WindowingUtil.GCD(a, b);
     }
 
-    private class LTBTimerTask extends TimerTask {
+    private class LTBTimerTask implements Runnable {
 
         /**
          * Executes the sliding window operation for each stream source in the
@@ -138,7 +141,6 @@ public class LocalTimeBasedSlidingHandler implements SlidingHandler {
          * source's query rewriter is called.
          * The slide variable is then updated in the slidingHashMap.
          */
-        @Override
         public void run() {
             synchronized (slidingHashMap) {
                 for (StreamSource streamSource : slidingHashMap.keySet()) {
@@ -172,19 +174,16 @@ public class LocalTimeBasedSlidingHandler implements SlidingHandler {
     }
 
     /**
-     * Retrieves the cutting condition for the windowing process.
-     * The cutting condition is a string representation of the condition used to
-     * determine the boundaries of the window.
-     * It is based on the maximum window size, maximum slide value, and maximum
-     * tuple count of the stream sources.
-     * If the cutting condition cannot be determined, the method returns a default
-     * condition.
+     * Retrieves the cut point for the windowing process.
+     * The cut point is based on the maximum window size, maximum slide value,
+     * and maximum tuple count of the stream sources, the tuple counts being
+     * resolved on the rows inserted last by the wrapper.
      *
-     * @return The cutting condition as a string.
+     * @return the timestamp before which the rows can be deleted
      */
-    public String getCuttingCondition() {
-        long timed1 = -1;
-        long timed2 = -1;
+    public long getCutPoint() {
+        long timed1 = Long.MIN_VALUE;
+        long timed2 = Long.MIN_VALUE;
         long maxTupleCount = 0;
         long maxSlideForTupleBased = 0;
         long maxWindowSize = 0;
@@ -212,44 +211,17 @@ public class LocalTimeBasedSlidingHandler implements SlidingHandler {
         }
 
         if (maxTupleCount > 0) {
-            StringBuilder query = new StringBuilder();
-            if (Main.getWindowStorage().isH2() || Main.getWindowStorage().isMysqlDB()) {
-                query.append(" select timed from ").append(wrapper.getDBAliasInStr()).append(" where timed <= ");
-                query.append(System.currentTimeMillis() - maxSlideForTupleBased)
-                        .append(" order by timed desc limit 1 offset ").append(
-                                maxTupleCount - 1);
-            } else if (Main.getWindowStorage().isSqlServer()) {
-                query.append(" select min(timed) from (select top ").append(maxTupleCount).append(" * ")
-                        .append(" from ").append(
-                                wrapper.getDBAliasInStr())
-                        .append(" where timed <= ").append(System.currentTimeMillis() - maxSlideForTupleBased)
-                        .append(" order by timed desc) as X  ");
-            }
-            
-            if(logger.isDebugEnabled()){
-                logger.debug("Query for getting oldest timestamp : " + query);
-            }
-            Connection conn = null;
-            try {
-                ResultSet resultSet = Main.getWindowStorage().executeQueryWithResultSet(query,
-                        conn = Main.getWindowStorage().getConnection());
-                if (resultSet.next()) {
-                    timed2 = resultSet.getLong(1);
-                } else {
-                    return "timed < -1";
-                }
-            } catch (SQLException e) {
-                logger.error(e.getMessage(), e);
-            } finally {
-                Main.getWindowStorage().close(conn);
-            }
+            timed2 = wrapper.getWindowCutPoints().nthNewestAtOrBefore(maxTupleCount,
+                    System.currentTimeMillis() - maxSlideForTupleBased);
         }
-
-        if (timed1 >= 0 && timed2 >= 0) {
-            return "timed < " + Math.min(timed1, timed2);
+        if(logger.isDebugEnabled()){
+            logger.debug("Cut points of " + wrapper.getDBAliasInStr() + " : " + timed1 + ", " + timed2);
         }
 
-        return "timed < " + ((timed1 == -1) ? timed2 : timed1);
+        if (maxWindowSize > 0 && maxTupleCount > 0) {
+            return Math.min(timed1, timed2);
+        }
+        return maxWindowSize > 0 ? timed1 : timed2;
     }
 
     /**
@@ -302,13 +274,7 @@ public class LocalTimeBasedSlidingHandler implements SlidingHandler {
             }
         }
         if (oldTimerTick != timerTick && timerTick > 0) {
-            timer.cancel();
-            timer = new Timer();
-            if(logger.isDebugEnabled()){
-                logger.debug("About to schedule new timer task at period " + timerTick + "ms in the "
-                    + wrapper.getDBAliasInStr() + " wrapper");
-            }
-            timer.schedule(new LTBTimerTask(), 500, timerTick);
+            reschedule();
         }
     }
 
@@ -318,6 +284,12 @@ public class LocalTimeBasedSlidingHandler implements SlidingHandler {
      * structures.
      */
     public void dispose() {
+        synchronized (this) {
+            if (timer != null) {
+                timer.cancel();
+                timer = null;
+            }
+        }
         synchronized (streamSources) {
             for (StreamSource streamSource : streamSources) {
                 streamSource.getQueryRewriter().dispose();
@@ -333,7 +305,7 @@ public class LocalTimeBasedSlidingHandler implements SlidingHandler {
     }
 
     public boolean isInterestedIn(StreamSource streamSource) {
-        return WindowType.isTimeBased(streamSource.getWindowingType());
+        return !streamSource.isInMemoryWindow() && WindowType.isTimeBased(streamSource.getWindowingType());
     }
 
     private class LTBSQLViewQueryRewriter extends SQLViewQueryRewriter {
@@ -33,9 +33,6 @@
 
 package ch.epfl.gsn.beans.windowing;
 
-import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -157,19 +154,17 @@ public class RemoteTimeBasedSlidingHandler implements SlidingHandler {
 	}
 
 	/**
-	 * Retrieves the cutting condition for the windowing operation.
-	 * The cutting condition is a string representation of the condition used to
-	 * determine the oldest timestamp in the window.
+	 * Retrieves the cut point for the windowing operation.
 	 * It is based on the maximum window size, slide value, and storage size of the
-	 * stream sources.
-	 * If the cutting condition cannot be determined, the string "timed < -1" is
-	 * returned.
+	 * stream sources, computed on the timestamps of the rows inserted by the
+	 * wrapper.
+	 * If the cut point cannot be determined, Long.MIN_VALUE is returned.
 	 * 
-	 * @return the cutting condition as a string
+	 * @return the timestamp before which the rows can be deleted
 	 */
-	public String getCuttingCondition() {
-		long timed1 = -1;
-		long timed2 = -1;
+	public long getCutPoint() {
+		long timed1 = Long.MIN_VALUE;
+		long timed2 = Long.MIN_VALUE;
 		long maxTupleCount = 0;
 		long maxSlideForTupleBased = 0;
 		long maxWindowSize = 0;
@@ -189,69 +184,22 @@ public class RemoteTimeBasedSlidingHandler implements SlidingHandler {
 			}
 		}
 
-		if (maxWindowSize > 0) {
-			StringBuilder query = new StringBuilder();
-			query.append("select max(timed) - ").append(maxWindowSize).append(" from ")
-					.append(wrapper.getDBAliasInStr());
-
-			if(logger.isDebugEnabled()){
-				logger.debug("Query1 for getting oldest timestamp : " + query);
-			}
-			
-			Connection conn = null;
-			try {
-				ResultSet resultSet = Main.getWindowStorage().executeQueryWithResultSet(query,
-						conn = Main.getWindowStorage().getConnection());
-				if (resultSet.next()) {
-					timed1 = resultSet.getLong(1);
-				} else {
-					return "timed < -1";
-				}
-			} catch (SQLException e) {
-				logger.error(e.getMessage(), e);
-			} finally {
-				Main.getWindowStorage().close(conn);
-			}
+		WindowCutPoints cutPoints = wrapper.getWindowCutPoints();
+		if (maxWindowSize > 0 && cutPoints.getMaxTimestamp() != Long.MIN_VALUE) {
+			timed1 = cutPoints.getMaxTimestamp() - maxWindowSize;
 		}
 		if (maxTupleCount > 0) {
-			StringBuilder query = new StringBuilder();
-			if (Main.getWindowStorage().isH2() || Main.getWindowStorage().isMysqlDB()
-					|| Main.getWindowStorage().isPostgres()) {
-				query.append(" select timed from ").append(wrapper.getDBAliasInStr()).append(" where timed <= ");
-				query.append(System.currentTimeMillis() - timediff - maxSlideForTupleBased)
-						.append(" order by timed desc limit 1 offset ").append(
-								maxTupleCount - 1);
-			} else if (Main.getWindowStorage().isSqlServer()) {
-				query.append(" select min(timed) from (select top ").append(maxTupleCount).append(" * ")
-						.append(" from ").append(
-								wrapper.getDBAliasInStr())
-						.append(" where timed <= ")
-						.append(System.currentTimeMillis() - timediff - maxSlideForTupleBased)
-						.append(" order by timed desc) as X  ");
-			}
-			if(logger.isDebugEnabled()){
-				logger.debug("Query2 for getting oldest timestamp : " + query);
-			}
-			Connection conn = null;
-			try {
-				ResultSet resultSet = Main.getWindowStorage().executeQueryWithResultSet(query,
-						conn = Main.getWindowStorage().getConnection());
-				if (resultSet.next()) {
-					timed2 = resultSet.getLong(1);
-				} else {
-					return "timed < -1";
-				}
-			} catch (SQLException e) {
-				logger.error(e.getMessage(), e);
-			} finally {
-				Main.getWindowStorage().close(conn);
-			}
+			timed2 = cutPoints.nthNewestAtOrBefore(maxTupleCount,
+					System.currentTimeMillis() - timediff - maxSlideForTupleBased);
+		}
+		if(logger.isDebugEnabled()){
+			logger.debug("Cut points of " + wrapper.getDBAliasInStr() + " : " + timed1 + ", " + timed2);
 		}
 
-		if (timed1 >= 0 && timed2 >= 0) {
-			return "timed < " + Math.min(timed1, timed2);
+		if (maxWindowSize > 0 && maxTupleCount > 0) {
+			return Math.min(timed1, timed2);
 		}
-		return "timed < " + ((timed1 == -1) ? timed2 : timed1);
+		return maxWindowSize > 0 ? timed1 : timed2;
 	}
 
 	/**
@@ -261,7 +209,7 @@ public class RemoteTimeBasedSlidingHandler implements SlidingHandler {
 	 * @return true if the stream source is time-based, false otherwise
 	 */
 	public boolean isInterestedIn(StreamSource streamSource) {
-		return WindowType.isTimeBased(streamSource.getWindowingType());
+		return !streamSource.isInMemoryWindow() && WindowType.isTimeBased(streamSource.getWindowingType());
 	}
 
 	private class RTBSQLViewQueryRewriter extends SQLViewQueryRewriter {
@@ -43,7 +43,16 @@ public interface SlidingHandler {
 
 	public boolean isInterestedIn(StreamSource streamSource);
 
-	public String getCuttingCondition();
+	/**
+	 * Returns the timestamp before which the rows of the window table are not
+	 * needed anymore by this handler. The cut point is computed from the
+	 * in-memory {@link WindowCutPoints} of the wrapper, without querying the
+	 * window table.
+	 * 
+	 * @return Long.MIN_VALUE if all the rows may still be needed,
+	 *         Long.MAX_VALUE if the handler doesn't use the window table
+	 */
+	public long getCutPoint();
 
 	public void dispose();
 
@@ -0,0 +1,69 @@
+package ch.epfl.gsn.beans.windowing;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import ch.epfl.gsn.beans.StreamElement;
+
+/**
+ * Time indexed deque holding the stream elements of a time based window.
+ * Elements are expected to arrive in timestamp order (the wrapper drops out
+ * of order elements before they reach the sliding handlers), so eviction
+ * only ever looks at the head of the deque.
+ */
+public class TimeWindowDeque implements InMemoryWindow {
+
+	private final ArrayDeque<StreamElement> deque = new ArrayDeque<StreamElement>();
+
+	private final long windowSize;
+
+	public TimeWindowDeque(long windowSize) {
+		this.windowSize = windowSize;
+	}
+
+	public void add(StreamElement streamElement) {
+		deque.addLast(streamElement);
+		evict(streamElement.getTimeStamp());
+	}
+
+	/**
+	 * Drops all the elements which are too old to be part of the window at
+	 * the given reference time.
+	 */
+	public void evict(long referenceTime) {
+		while (!deque.isEmpty() && deque.peekFirst().getTimeStamp() <= referenceTime - windowSize) {
+			deque.pollFirst();
+		}
+	}
+
+	/**
+	 * Returns the elements in <code>(referenceTime - windowSize, referenceTime]</code>,
+	 * newest first.
+	 */
+	public List<StreamElement> snapshot(long referenceTime) {
+		evict(referenceTime);
+		List<StreamElement> toReturn = new ArrayList<StreamElement>(deque.size());
+		Iterator<StreamElement> it = deque.descendingIterator();
+		while (it.hasNext()) {
+			StreamElement se = it.next();
+			if (se.getTimeStamp() <= referenceTime) {
+				toReturn.add(se);
+			}
+		}
+		return toReturn;
+	}
+
+	public int size() {
+		return deque.size();
+	}
+
+	public long getWindowSize() {
+		return windowSize;
+	}
+
+	public void clear() {
+		deque.clear();
+	}
+}
@@ -33,9 +33,6 @@
 
 package ch.epfl.gsn.beans.windowing;
 
-import java.sql.Connection;
-import java.sql.ResultSet;
-import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -131,16 +128,17 @@ public class TupleBasedSlidingHandler implements SlidingHandler {
 	}
 
 	/**
-	 * Retrieves the cutting condition for the sliding window.
-	 * The cutting condition is determined based on the maximum tuple count and
-	 * maximum window size
-	 * of the stream sources in the sliding window.
+	 * Retrieves the cut point for the sliding window.
+	 * The cut point is determined based on the maximum tuple count and
+	 * maximum window size of the stream sources in the sliding window, using
+	 * the rows inserted last by the wrapper instead of the primary keys of the
+	 * window table.
 	 * 
-	 * @return the cutting condition as a string in the format "pk < value"
+	 * @return the timestamp before which the rows can be deleted
 	 */
-	public String getCuttingCondition() {
-		long pk1 = -1;
-		long pk2 = -1;
+	public long getCutPoint() {
+		long cut1 = Long.MIN_VALUE;
+		long cut2 = Long.MIN_VALUE;
 		long maxTupleCount = 0;
 		long maxWindowSize = 0;
 
@@ -164,72 +162,21 @@ public class TupleBasedSlidingHandler implements SlidingHandler {
 			}
 		}
 
+		WindowCutPoints cutPoints = wrapper.getWindowCutPoints();
 		if (maxTupleCount > 0) {
-			StringBuilder query = new StringBuilder();
-			if (Main.getWindowStorage().isH2() || Main.getWindowStorage().isMysqlDB()
-					|| Main.getWindowStorage().isPostgres()) {
-				query.append(" select pk from ").append(wrapper.getDBAliasInStr());
-				query.append(" order by pk desc limit 1 offset ").append(maxTupleCount - 1);
-			} else if (Main.getWindowStorage().isSqlServer()) {
-				query.append(" select min(pk) from (select top ").append(maxTupleCount).append(" * ").append(" from ")
-						.append(
-								wrapper.getDBAliasInStr())
-						.append(" order by pk desc )as X  ");
-			} else if (Main.getWindowStorage().isOracle()) {
-				query.append(" select pk from (select pk from ")
-						.append(Main.getWindowStorage().tableNameGeneratorInString(wrapper.getDBAliasInStr()));
-				query.append(" order by pk desc) where rownum = ").append(maxTupleCount);
-			}
-			if(logger.isDebugEnabled()){
-				logger.debug("Query1 for getting oldest timestamp : " + query);
-			}
-			
-			Connection conn = null;
-			try {
-				ResultSet resultSet = Main.getWindowStorage().executeQueryWithResultSet(query,
-						conn = Main.getWindowStorage().getConnection());
-				if (resultSet.next()) {
-					pk1 = resultSet.getLong(1);
-				} else {
-					return "pk < -1";
-				}
-			} catch (SQLException e) {
-				logger.error(e.getMessage(), e);
-			} finally {
-				Main.getWindowStorage().close(conn);
-			}
+			cut1 = cutPoints.oldestOfLast(maxTupleCount);
 		}
-
-		if (maxWindowSize > 0) {
-			StringBuilder query = new StringBuilder();
-			query.append(" select min(pk) from ").append(wrapper.getDBAliasInStr())
-					.append(" where timed > (select max(timed) from ").append(wrapper.getDBAliasInStr()).append(") - ")
-					.append(maxWindowSize);
-			
-			if(logger.isDebugEnabled()){
-				logger.debug("Query2 for getting oldest timestamp : " + query);
-			}
-			
-			Connection conn = null;
-			try {
-				ResultSet resultSet = Main.getWindowStorage().executeQueryWithResultSet(query,
-						conn = Main.getWindowStorage().getConnection());
-				if (resultSet.next()) {
-					pk2 = resultSet.getLong(1);
-				} else {
-					return "pk < -1";
-				}
-			} catch (SQLException e) {
-				logger.error(e.getMessage(), e);
-			} finally {
-				Main.getWindowStorage().close(conn);
-			}
+		if (maxWindowSize > 0 && cutPoints.getMaxTimestamp() != Long.MIN_VALUE) {
+			cut2 = cutPoints.getMaxTimestamp() - maxWindowSize;
+		}
+		if(logger.isDebugEnabled()){
+			logger.debug("Cut points of " + wrapper.getDBAliasInStr() + " : " + cut1 + ", " + cut2);
 		}
 
-		if (pk1 >= 0 && pk2 >= 0) {
-			return "pk < " + Math.min(pk1, pk2);
+		if (maxTupleCount > 0 && maxWindowSize > 0) {
+			return Math.min(cut1, cut2);
 		}
-		return "pk < " + ((pk1 == -1) ? pk2 : pk1);
+		return maxTupleCount > 0 ? cut1 : cut2;
 	}
 
 	/**
@@ -271,7 +218,7 @@ public class TupleBasedSlidingHandler implements SlidingHandler {
 	 *         otherwise
 	 */
 	public boolean isInterestedIn(StreamSource streamSource) {
-		return WindowType.isTupleBased(streamSource.getWindowingType());
+		return !streamSource.isInMemoryWindow() && WindowType.isTupleBased(streamSource.getWindowingType());
 	}
 
 	private class TupleBasedSQLViewQueryRewriter extends SQLViewQueryRewriter {
@@ -0,0 +1,68 @@
+package ch.epfl.gsn.beans.windowing;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.gsn.beans.StreamElement;
+
+/**
+ * Fixed size ring buffer holding the last <code>capacity</code> stream
+ * elements of a tuple based window.
+ */
+public class TupleRingBuffer implements InMemoryWindow {
+
+	private final StreamElement[] buffer;
+
+	private int head = 0;
+
+	private int size = 0;
+
+	public TupleRingBuffer(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("The capacity of the ring buffer can't be negative: " + capacity);
+		}
+		buffer = new StreamElement[capacity];
+	}
+
+	public void add(StreamElement streamElement) {
+		if (buffer.length == 0) {
+			return;
+		}
+		buffer[head] = streamElement;
+		head = (head + 1) % buffer.length;
+		if (size < buffer.length) {
+			size++;
+		}
+	}
+
+	/**
+	 * Returns the buffered elements which are not newer than the reference
+	 * time, newest first.
+	 */
+	public List<StreamElement> snapshot(long referenceTime) {
+		List<StreamElement> toReturn = new ArrayList<StreamElement>(size);
+		for (int i = 1; i <= size; i++) {
+			StreamElement se = buffer[(head - i + buffer.length) % buffer.length];
+			if (se.getTimeStamp() <= referenceTime) {
+				toReturn.add(se);
+			}
+		}
+		return toReturn;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return buffer.length;
+	}
+
+	public void clear() {
+		for (int i = 0; i < buffer.length; i++) {
+			buffer[i] = null;
+		}
+		head = 0;
+		size = 0;
+	}
+}
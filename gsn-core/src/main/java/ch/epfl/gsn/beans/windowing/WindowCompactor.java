@@ -0,0 +1,116 @@
+package ch.epfl.gsn.beans.windowing;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.LoggerFactory;
+
+import ch.epfl.gsn.wrappers.AbstractWrapper;
+
+import org.slf4j.Logger;
+
+/**
+ * Background garbage collection of the window tables. The wrappers don't
+ * delete the rows their windows don't need anymore while posting data, a
+ * single thread checks them periodically and runs one delete per wrapper
+ * (see {@link AbstractWrapper#removeUselessValues()}) once enough rows were
+ * inserted or enough time elapsed since the previous one.
+ */
+public class WindowCompactor {
+
+	/**
+	 * Number of rows inserted into a window table after which it is compacted
+	 * at the next check.
+	 */
+	public static final int COMPACT_AFTER_ROWS = 256;
+
+	/**
+	 * Time in milliseconds after which a window table which received rows is
+	 * compacted, whatever their number.
+	 */
+	public static final long COMPACT_INTERVAL = 1000;
+
+	private static final long CHECK_PERIOD = 250;
+
+	private static final transient Logger logger = LoggerFactory.getLogger(WindowCompactor.class);
+
+	private static WindowCompactor singleton;
+
+	private final ScheduledExecutorService scheduler;
+
+	private final Map<AbstractWrapper, State> wrappers = new ConcurrentHashMap<AbstractWrapper, State>();
+
+	private WindowCompactor() {
+		scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "window-compactor");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				compactAll();
+			}
+		}, CHECK_PERIOD, CHECK_PERIOD, TimeUnit.MILLISECONDS);
+	}
+
+	public static synchronized WindowCompactor getInstance() {
+		if (singleton == null) {
+			singleton = new WindowCompactor();
+		}
+		return singleton;
+	}
+
+	public void register(AbstractWrapper wrapper) {
+		if (!wrappers.containsKey(wrapper)) {
+			wrappers.put(wrapper, new State());
+		}
+	}
+
+	public void unregister(AbstractWrapper wrapper) {
+		wrappers.remove(wrapper);
+	}
+
+	private void compactAll() {
+		long now = System.currentTimeMillis();
+		for (Map.Entry<AbstractWrapper, State> entry : wrappers.entrySet()) {
+			AbstractWrapper wrapper = entry.getKey();
+			State state = entry.getValue();
+			long inserted = wrapper.getWindowCutPoints().getInsertedCount();
+			long pending = inserted - state.compactedCount;
+			if (pending == 0 || (pending < COMPACT_AFTER_ROWS && now - state.lastCompaction < COMPACT_INTERVAL)) {
+				continue;
+			}
+			try {
+				if (wrapper.isActive()) {
+					wrapper.removeUselessValues();
+				}
+			} catch (Exception e) {
+				logger.error("Compacting the window table of " + wrapper.getName() + " failed: " + e.getMessage(), e);
+			}
+			state.compactedCount = inserted;
+			state.lastCompaction = now;
+		}
+	}
+
+	/**
+	 * Stops the compaction thread.
+	 */
+	public static synchronized void shutdown() {
+		if (singleton == null) {
+			return;
+		}
+		singleton.scheduler.shutdownNow();
+		singleton = null;
+	}
+
+	private static class State {
+		private long compactedCount = 0;
+		private long lastCompaction = System.currentTimeMillis();
+	}
+}
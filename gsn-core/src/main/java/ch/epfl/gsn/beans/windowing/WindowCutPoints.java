@@ -0,0 +1,141 @@
+package ch.epfl.gsn.beans.windowing;
+
+import java.util.Arrays;
+
+/**
+ * In-memory record of the timestamps of the rows a wrapper inserted into its
+ * window table, used by the sliding handlers to compute their cut points
+ * without querying the table.
+ * <p>
+ * Only the timestamps of the most recent rows are kept, in a ring whose
+ * capacity grows on demand with the largest tuple count asked for. The cut
+ * points are conservative: when the ring doesn't hold enough rows to be sure,
+ * nothing is cut.
+ */
+public class WindowCutPoints {
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Tuple counts above this bound are not tracked, such windows are only
+	 * trimmed by their time bounds.
+	 */
+	public static final int MAX_CAPACITY = 1 << 20;
+
+	private long[] ring = new long[INITIAL_CAPACITY];
+
+	private long insertedCount = 0;
+
+	// number of valid timestamps in the ring
+	private int size = 0;
+
+	private long maxTimestamp = Long.MIN_VALUE;
+
+	/**
+	 * Records a row inserted into the window table.
+	 */
+	public synchronized void add(long timestamp) {
+		ring[(int) (insertedCount % ring.length)] = timestamp;
+		insertedCount++;
+		if (size < ring.length) {
+			size++;
+		}
+		if (timestamp > maxTimestamp) {
+			maxTimestamp = timestamp;
+		}
+	}
+
+	/**
+	 * @return the number of rows inserted so far
+	 */
+	public synchronized long getInsertedCount() {
+		return insertedCount;
+	}
+
+	/**
+	 * @return the newest timestamp inserted, or Long.MIN_VALUE if the table
+	 *         is empty
+	 */
+	public synchronized long getMaxTimestamp() {
+		return maxTimestamp;
+	}
+
+	/**
+	 * Returns the cut point keeping the <code>n</code> rows inserted last:
+	 * every row older than all of them can be deleted.
+	 *
+	 * @return the smallest timestamp of the last n rows, or Long.MIN_VALUE if
+	 *         nothing can be cut
+	 */
+	public synchronized long oldestOfLast(long n) {
+		if (n <= 0 || insertedCount <= n || !ensureCapacity(n)) {
+			return Long.MIN_VALUE;
+		}
+		if (size < n) {
+			return Long.MIN_VALUE;
+		}
+		long min = Long.MAX_VALUE;
+		for (long i = insertedCount - n; i < insertedCount; i++) {
+			min = Math.min(min, ring[(int) (i % ring.length)]);
+		}
+		return min;
+	}
+
+	/**
+	 * Returns the cut point keeping the rows newer than <code>limit</code> and
+	 * the <code>n</code> newest rows at or before it. Rows older than the n-th
+	 * newest one found in the ring are not part of the n newest, wherever the
+	 * rows missing from the ring are.
+	 *
+	 * @return the timestamp of the n-th newest row at or before limit, or
+	 *         Long.MIN_VALUE if nothing can be cut
+	 */
+	public synchronized long nthNewestAtOrBefore(long n, long limit) {
+		if (n <= 0 || insertedCount <= n) {
+			return Long.MIN_VALUE;
+		}
+		long[] candidates = new long[size];
+		int found = 0;
+		for (long i = insertedCount - size; i < insertedCount; i++) {
+			long timestamp = ring[(int) (i % ring.length)];
+			if (timestamp <= limit) {
+				candidates[found++] = timestamp;
+			}
+		}
+		if (found < n) {
+			// the ring is too small to hold n rows older than the limit
+			if (size == ring.length) {
+				ensureCapacity(Math.max(n, 2L * ring.length));
+			}
+			return Long.MIN_VALUE;
+		}
+		Arrays.sort(candidates, 0, found);
+		return candidates[found - (int) n];
+	}
+
+	/**
+	 * Grows the ring so that it can hold n rows, keeping the most recent
+	 * timestamps.
+	 *
+	 * @return false if n is beyond {@link #MAX_CAPACITY}
+	 */
+	private boolean ensureCapacity(long n) {
+		if (n > MAX_CAPACITY) {
+			return false;
+		}
+		if (n <= ring.length) {
+			return true;
+		}
+		int capacity = ring.length;
+		while (capacity < n) {
+			capacity *= 2;
+		}
+		long[] grown = new long[Math.min(capacity, MAX_CAPACITY)];
+		// keep the ring positions consistent with insertedCount % length
+		for (long i = insertedCount - size; i < insertedCount; i++) {
+			grown[(int) (i % grown.length)] = ring[(int) (i % ring.length)];
+		}
+		ring = grown;
+		return true;
+	}
+}
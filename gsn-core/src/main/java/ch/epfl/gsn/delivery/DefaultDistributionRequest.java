@@ -145,8 +145,9 @@ public class DefaultDistributionRequest implements DistributionRequest {
 	public boolean deliverStreamElement(StreamElement se) {
 		boolean success = deliverySystem.writeStreamElement(se);
 		// boolean success = true;
-		if (success) {
+		if (success && se.getInternalPrimayKey() != -1) {
 			// startTime=se.getTimeStamp();
+			// the elements pushed in memory have no primary key yet
 			lastVisitedPk = se.getInternalPrimayKey();
 		}
 		return success;
@@ -0,0 +1,312 @@
+package ch.epfl.gsn.delivery;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.LoggerFactory;
+
+import ch.epfl.gsn.Main;
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.storage.StorageManager;
+import ch.epfl.gsn.storage.WriteBehindBuffer;
+
+import org.slf4j.Logger;
+
+/**
+ * In-memory path between a virtual sensor and the local-wrappers reading its
+ * whole output (see {@link LocalDeliveryWrapper}).
+ * <p>
+ * While a virtual sensor has such subscribers, the stream elements it
+ * produces are handed to them directly, in order, and its output table is
+ * written asynchronously: the writes (and the notification of the other
+ * data listeners, which read the table back) are queued and run one after
+ * the other on a small shared pool. Without subscribers nor pending writes
+ * the output is written synchronously, as before. At most
+ * {@value #MAX_PENDING} batches are queued per channel, publishing blocks
+ * while the queue is full.
+ * <p>
+ * A new subscriber waits for the pending writes and gets the largest primary
+ * key of the table: the rows up to it are read from the table, the newer ones
+ * are pushed in memory, so no element is lost or delivered twice.
+ */
+public class LocalChannel {
+
+	private static final int WRITER_THREADS = 2;
+
+	// batches queued per channel before the virtual sensor is slowed down
+	private static final int MAX_PENDING = 256;
+
+	// batches written before a writer is handed to the other channels
+	private static final int MAX_BATCHES_PER_RUN = 16;
+
+	private static final transient Logger logger = LoggerFactory.getLogger(LocalChannel.class);
+
+	private static final ConcurrentHashMap<String, LocalChannel> channels = new ConcurrentHashMap<String, LocalChannel>();
+
+	private static volatile ThreadPoolExecutor writers;
+
+	private final String name;
+
+	private final CopyOnWriteArrayList<LocalDeliveryWrapper> subscribers = new CopyOnWriteArrayList<LocalDeliveryWrapper>();
+
+	// writes of the output table not done yet, in order
+	private final ArrayDeque<Persistence> pending = new ArrayDeque<Persistence>();
+
+	private boolean writing = false;
+
+	private final Runnable drainTask = new Runnable() {
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * Writes a batch of the output of the virtual sensor into its table and
+	 * notifies the data listeners.
+	 */
+	public interface Persistence {
+		void persist() throws SQLException;
+	}
+
+	private LocalChannel(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * @param vsName the name of the virtual sensor, in any case
+	 * @return the channel of the virtual sensor, created if needed
+	 */
+	public static LocalChannel get(String vsName) {
+		String key = vsName.toLowerCase();
+		LocalChannel channel = channels.get(key);
+		if (channel == null) {
+			LocalChannel created = new LocalChannel(key);
+			channel = channels.putIfAbsent(key, created);
+			if (channel == null) {
+				channel = created;
+			}
+		}
+		return channel;
+	}
+
+	/**
+	 * Publishes a batch produced by the virtual sensor: pushes it to the
+	 * subscribers and queues its persistence, or persists it right away if
+	 * nobody subscribed and nothing is queued.
+	 *
+	 * @throws SQLException if the synchronous persistence fails, or if the
+	 *                      thread is interrupted while the queue is full
+	 */
+	public synchronized void publish(List<StreamElement> data, Persistence persistence) throws SQLException {
+		if (subscribers.isEmpty()) {
+			synchronized (pending) {
+				if (pending.isEmpty() && !writing) {
+					persistence.persist();
+					return;
+				}
+			}
+		} else {
+			for (LocalDeliveryWrapper subscriber : subscribers) {
+				List<StreamElement> copies = new ArrayList<StreamElement>(data.size());
+				for (StreamElement se : data) {
+					copies.add(new StreamElement(se));
+				}
+				subscriber.deliverLocal(copies);
+			}
+		}
+		enqueue(persistence);
+	}
+
+	/**
+	 * Starts pushing the output of the virtual sensor to the wrapper.
+	 *
+	 * @return the largest primary key of the output table once the queued
+	 *         writes are done: older rows must be read from the table, newer
+	 *         ones are pushed
+	 */
+	public synchronized long subscribe(LocalDeliveryWrapper subscriber) throws SQLException, InterruptedException {
+		long maxPk = attach(null);
+		subscribers.addIfAbsent(subscriber);
+		logger.info("Local-wrapper " + subscriber.getWrapperName() + " reads the output of " + name + " in memory.");
+		return maxPk;
+	}
+
+	/**
+	 * Waits until every batch published so far is written and its data
+	 * listeners notified, then runs the action before the next batch is
+	 * published. A data listener keeping the elements it is notified of from
+	 * the action on gets all those with a primary key above the one returned.
+	 *
+	 * @param action run while no batch is published, may be null
+	 * @return the largest primary key of the output table once the queued
+	 *         writes are done
+	 */
+	public synchronized long attach(Runnable action) throws SQLException, InterruptedException {
+		awaitPersisted();
+		WriteBehindBuffer buffer = WriteBehindBuffer.find(name);
+		if (buffer != null) {
+			buffer.flush();
+		}
+		long maxPk = getMaxPk();
+		if (action != null) {
+			action.run();
+		}
+		return maxPk;
+	}
+
+	public void unsubscribe(LocalDeliveryWrapper subscriber) {
+		subscribers.remove(subscriber);
+	}
+
+	public int getSubscriberCount() {
+		return subscribers.size();
+	}
+
+	/**
+	 * @return the number of batches waiting to be written
+	 */
+	public int getPendingCount() {
+		synchronized (pending) {
+			return pending.size();
+		}
+	}
+
+	private void enqueue(Persistence persistence) throws SQLException {
+		synchronized (pending) {
+			try {
+				while (pending.size() >= MAX_PENDING) {
+					pending.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting for the queued writes of " + name, e);
+			}
+			pending.add(persistence);
+			if (writing) {
+				return;
+			}
+			writing = true;
+		}
+		if (!execute(getWriters())) {
+			// the writers were stopped meanwhile, the publisher writes the queue
+			drain();
+		}
+	}
+
+	private void drain() {
+		while (true) {
+			for (int i = 0; i < MAX_BATCHES_PER_RUN; i++) {
+				Persistence persistence;
+				synchronized (pending) {
+					persistence = pending.poll();
+					if (persistence == null) {
+						writing = false;
+						pending.notifyAll();
+						return;
+					}
+					// room for the blocked publishers
+					pending.notifyAll();
+				}
+				try {
+					persistence.persist();
+				} catch (Exception e) {
+					logger.error("Writing the output of " + name + " failed: " + e.getMessage(), e);
+				}
+			}
+			// there is more, give the other channels a chance first
+			if (execute(writers)) {
+				return;
+			}
+			// the writers are shut down, the rest of the queue is written by this thread
+		}
+	}
+
+	/**
+	 * Hands the writing of the queue to a writer.
+	 *
+	 * @return false if the writers are shut down, the caller must then write
+	 *         the queue itself
+	 */
+	private boolean execute(ExecutorService pool) {
+		if (pool == null || pool.isShutdown()) {
+			return false;
+		}
+		try {
+			pool.execute(drainTask);
+			return true;
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+	}
+
+	private void awaitPersisted() throws InterruptedException {
+		synchronized (pending) {
+			while (!pending.isEmpty() || writing) {
+				pending.wait();
+			}
+		}
+	}
+
+	private long getMaxPk() throws SQLException {
+		StorageManager storage = Main.getStorage(name);
+		Connection conn = null;
+		ResultSet rs = null;
+		try {
+			rs = storage.executeQueryWithResultSet(new StringBuilder("select max(pk) from ").append(name),
+					conn = storage.getConnection());
+			return rs.next() ? rs.getLong(1) : 0;
+		} finally {
+			storage.close(rs);
+			storage.close(conn);
+		}
+	}
+
+	private static synchronized ExecutorService getWriters() {
+		if (writers == null) {
+			writers = new ThreadPoolExecutor(WRITER_THREADS, WRITER_THREADS, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "local-channel-writer-" + count.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			writers.allowCoreThreadTimeOut(true);
+		}
+		return writers;
+	}
+
+	/**
+	 * Waits a few seconds for the queued writes and stops the writer pool.
+	 */
+	public static synchronized void shutdown() {
+		if (writers == null) {
+			return;
+		}
+		writers.shutdown();
+		try {
+			if (!writers.awaitTermination(5, TimeUnit.SECONDS)) {
+				writers.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			writers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		writers = null;
+	}
+}
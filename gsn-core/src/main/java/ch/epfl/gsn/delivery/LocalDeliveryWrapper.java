@@ -34,7 +34,9 @@ package ch.epfl.gsn.delivery;
 import java.io.IOException;
 import java.io.Serializable;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 
 import javax.naming.OperationNotSupportedException;
 
@@ -49,7 +51,9 @@ import ch.epfl.gsn.beans.DataField;
 import ch.epfl.gsn.beans.StreamElement;
 import ch.epfl.gsn.beans.VSensorConfig;
 import ch.epfl.gsn.storage.SQLUtils;
+import ch.epfl.gsn.storage.DataEnumerator;
 import ch.epfl.gsn.storage.SQLValidator;
+import ch.epfl.gsn.storage.StorageManager;
 import ch.epfl.gsn.utils.Helpers;
 import ch.epfl.gsn.vsensor.AbstractVirtualSensor;
 import ch.epfl.gsn.wrappers.AbstractWrapper;
@@ -67,6 +71,12 @@ import org.joda.time.format.ISODateTimeFormat;
  * This class acts as a wrapper around the actual delivery system
  * implementation,
  * providing an abstraction layer for interacting with the delivery system.
+ * <p>
+ * A local-wrapper reading the whole output of a virtual sensor (no query, or
+ * <code>select * from vs</code>) gets the stream elements in memory through
+ * the {@link LocalChannel} of the virtual sensor instead of reading them
+ * back from its table through the DataDistributer. Setting the
+ * <code>in-memory</code> parameter to false disables it.
  */
 public class LocalDeliveryWrapper extends AbstractWrapper implements DeliverySystem {
 
@@ -79,6 +89,28 @@ public class LocalDeliveryWrapper extends AbstractWrapper implements DeliverySys
 
 	private DefaultDistributionRequest distributionRequest;
 
+	private static final int CATCH_UP_PAGE_SIZE = 1000;
+
+	// attempts to read a page of the table before the wrapper is closed
+	private static final int CATCH_UP_ATTEMPTS = 5;
+
+	private static final long CATCH_UP_RETRY_DELAY = 1000;
+
+	// elements kept while catching up, the others are read from the table
+	private static final int MAX_BACKLOG = 10 * CATCH_UP_PAGE_SIZE;
+
+	private boolean inMemory = false;
+
+	private LocalChannel channel;
+
+	private final Object liveLock = new Object();
+
+	// elements pushed while the older ones are read from the table
+	private List<StreamElement> backlog = null;
+
+	// the backlog was dropped, its elements must be read from the table
+	private boolean backlogOverflow = false;
+
 	public VSensorConfig getVSensorConfig() {
 		return vSensorConfig;
 	}
@@ -176,6 +208,8 @@ public class LocalDeliveryWrapper extends AbstractWrapper implements DeliverySys
 			}
 
 			vSensorConfig = Mappings.getConfig(vsName);
+			inMemory = Boolean.parseBoolean(params.getPredicateValueWithDefault("in-memory", "true"))
+					&& query.trim().replaceAll("\\s+", " ").equalsIgnoreCase("select * from " + vsName);
 
 			if (startTime.equals("continue")) {
 				try {
@@ -259,7 +293,8 @@ public class LocalDeliveryWrapper extends AbstractWrapper implements DeliverySys
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
 		sb.append("LocalDistributionReq => [").append(distributionRequest.getQuery()).append(", Start-Time: ")
-				.append(new Date(distributionRequest.getStartTime())).append("]");
+				.append(new Date(distributionRequest.getStartTime())).append(inMemory ? ", in-memory" : "")
+				.append("]");
 		return sb.toString();
 	}
 
@@ -273,10 +308,151 @@ public class LocalDeliveryWrapper extends AbstractWrapper implements DeliverySys
 	 * local distribution.
 	 */
 	public void run() {
+		if (inMemory) {
+			runInMemory();
+			return;
+		}
 		DataDistributer localDistributer = DataDistributer.getInstance(LocalDeliveryWrapper.class, "local");
 		localDistributer.addListener(this.distributionRequest);
 	}
 
+	/**
+	 * Subscribes to the channel of the virtual sensor, reads the rows written
+	 * before from its table, then posts the elements pushed in the meantime.
+	 * At most {@link #MAX_BACKLOG} pushed elements are kept while catching up:
+	 * beyond, they are dropped and read from the table as well, up to the
+	 * largest primary key once the queued writes are done. The wrapper is
+	 * closed if the table can't be read.
+	 */
+	private void runInMemory() {
+		synchronized (liveLock) {
+			backlog = new ArrayList<StreamElement>();
+			backlogOverflow = false;
+		}
+		channel = LocalChannel.get(vSensorConfig.getName());
+		long maxPk;
+		try {
+			maxPk = channel.subscribe(this);
+		} catch (Exception e) {
+			logger.error("Subscribing to the output of " + vSensorConfig.getName()
+					+ " failed, reading it from its table instead: " + e.getMessage(), e);
+			synchronized (liveLock) {
+				backlog = null;
+			}
+			channel = null;
+			inMemory = false;
+			DataDistributer.getInstance(LocalDeliveryWrapper.class, "local").addListener(this.distributionRequest);
+			return;
+		}
+		long lastPk = -1;
+		try {
+			while (true) {
+				lastPk = catchUp(lastPk, maxPk);
+				synchronized (liveLock) {
+					if (!backlogOverflow || !isActive()) {
+						postStreamElements(backlog);
+						backlog = null;
+						return;
+					}
+				}
+				maxPk = channel.attach(new Runnable() {
+					public void run() {
+						synchronized (liveLock) {
+							backlog = new ArrayList<StreamElement>();
+							backlogOverflow = false;
+						}
+					}
+				});
+			}
+		} catch (Exception e) {
+			logger.error("Reading the output of " + vSensorConfig.getName() + " failed, closing " + this + ": "
+					+ e.getMessage(), e);
+			synchronized (liveLock) {
+				backlog = null;
+			}
+			close();
+		}
+	}
+
+	/**
+	 * Posts the rows of the table after lastPk up to maxPk, a page at a time.
+	 *
+	 * @return the primary key of the last row posted
+	 * @throws SQLException if a page could not be read after
+	 *                      {@link #CATCH_UP_ATTEMPTS} attempts
+	 */
+	private long catchUp(long lastPk, long maxPk) throws SQLException, InterruptedException {
+		StorageManager storage = Main.getStorage(vSensorConfig);
+		int failures = 0;
+		int read = 0;
+		while (isActive()) {
+			read = 0;
+			StringBuilder query = new StringBuilder(storage.addLimit(new StringBuilder("select * from ")
+					.append(vSensorConfig.getName()).append(" where timed > ").append(distributionRequest.getStartTime())
+					.append(" and pk > ").append(lastPk).append(" and pk <= ").append(maxPk)
+					.append(" order by pk asc").toString(), CATCH_UP_PAGE_SIZE, 0));
+			List<StreamElement> page = new ArrayList<StreamElement>();
+			DataEnumerator data = null;
+			try {
+				data = storage.executeQuery(query, false);
+				while (data.hasMoreElements()) {
+					StreamElement se = data.nextElement();
+					lastPk = se.getInternalPrimayKey();
+					page.add(se);
+					read++;
+				}
+				failures = 0;
+			} catch (SQLException e) {
+				if (++failures >= CATCH_UP_ATTEMPTS) {
+					throw e;
+				}
+				logger.warn("Reading the output of " + vSensorConfig.getName() + " failed, retrying: "
+						+ e.getMessage(), e);
+				read = -1;
+			} finally {
+				if (data != null) {
+					data.close();
+				}
+			}
+			// the rows read before a failure are posted, the page is read again after them
+			postStreamElements(page);
+			if (read == -1) {
+				Thread.sleep(failures * CATCH_UP_RETRY_DELAY);
+			} else if (read < CATCH_UP_PAGE_SIZE) {
+				break;
+			}
+		}
+		return lastPk;
+	}
+
+	/**
+	 * Called by the channel with the elements the virtual sensor just
+	 * produced.
+	 */
+	void deliverLocal(List<StreamElement> elements) {
+		List<StreamElement> selected = new ArrayList<StreamElement>(elements.size());
+		for (StreamElement se : elements) {
+			if (se.getTimeStamp() > distributionRequest.getStartTime()) {
+				selected.add(se);
+			}
+		}
+		synchronized (liveLock) {
+			if (backlog != null) {
+				if (!backlogOverflow && backlog.size() + selected.size() > MAX_BACKLOG) {
+					logger.warn(this + " is catching up with more than " + MAX_BACKLOG
+							+ " new elements, they will be read from the table.");
+					backlogOverflow = true;
+					backlog.clear();
+				}
+				if (!backlogOverflow) {
+					backlog.addAll(selected);
+				}
+			} else {
+				postStreamElements(selected);
+			}
+		}
+	}
+
 	public void writeStructure(DataField[] fields) throws IOException {
 		this.structure = fields;
 
@@ -327,7 +503,9 @@ public class LocalDeliveryWrapper extends AbstractWrapper implements DeliverySys
 	}
 
 	public void dispose() {
-
+		if (channel != null) {
+			channel.unsubscribe(this);
+		}
 	}
 
 }
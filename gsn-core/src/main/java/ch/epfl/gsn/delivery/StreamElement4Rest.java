@@ -61,7 +61,7 @@ public class StreamElement4Rest {
 	public StreamElement4Rest(StreamElement se) {
 		this.timestamp = new Date(se.getTimeStamp());
 		for (int i = 0; i < se.getFieldNames().length; i++) {
-			fields.add(new Field4Rest(se.getFieldNames()[i], se.getFieldTypes()[i], se.getData()[i]));
+			fields.add(new Field4Rest(se.getFieldNames()[i], se.getFieldTypes()[i], se.getData(i)));
 		}
 	}
 
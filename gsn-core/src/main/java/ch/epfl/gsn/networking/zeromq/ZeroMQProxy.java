@@ -40,13 +40,22 @@ import com.esotericsoftware.kryo.io.Output;
 
 import ch.epfl.gsn.ContainerImpl;
 import ch.epfl.gsn.DataDistributer;
+import ch.epfl.gsn.LatestValueCache;
 import ch.epfl.gsn.Main;
 import ch.epfl.gsn.Mappings;
 import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.StreamElement;
 import ch.epfl.gsn.delivery.DefaultDistributionRequest;
 
 public class ZeroMQProxy extends Thread implements Runnable {
 
+	/**
+	 * Prefix of the requests on the metadata port for the latest values of a
+	 * virtual sensor, see {@link LatestValueCache}. The answer is their number
+	 * (-1 if the virtual sensor isn't loaded) followed by the stream elements.
+	 */
+	public static final String LATEST_VALUES_REQUEST = "latest/";
+
 	private static transient Logger logger = LoggerFactory.getLogger(ZeroMQProxy.class);
 
 	private ZContext ctx;
@@ -102,6 +111,10 @@ public class ZeroMQProxy extends Thread implements Runnable {
 			public void run() {
 				while (true) {
 					String request = clients.recvStr(0);
+					if (request.startsWith(LATEST_VALUES_REQUEST)) {
+						clients.send(latestValues(request.substring(LATEST_VALUES_REQUEST.length())), 0);
+						continue;
+					}
 					logger.info("ZMQ request: " + request);
 					String[] parts = request.split("\\?");
 					if (parts.length > 1) {
@@ -135,6 +148,20 @@ public class ZeroMQProxy extends Thread implements Runnable {
 		metaResponder.start();
 	}
 
+	private byte[] latestValues(String vsName) {
+		StreamElement[] values = LatestValueCache.get(vsName);
+		ByteArrayOutputStream bais = new ByteArrayOutputStream();
+		Output o = new Output(bais);
+		o.writeInt(values == null ? -1 : values.length);
+		if (values != null) {
+			for (StreamElement se : values) {
+				kryo.writeObjectOrNull(o, se, StreamElement.class);
+			}
+		}
+		o.close();
+		return bais.toByteArray();
+	}
+
 	/**
 	 * Connects the subscriberX socket to the specified virtual sensor using an
 	 * inproc connection.
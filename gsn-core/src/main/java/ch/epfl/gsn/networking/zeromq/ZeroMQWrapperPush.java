@@ -28,6 +28,8 @@
 package ch.epfl.gsn.networking.zeromq;
 
 import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.zeromq.ZContext;
 import org.slf4j.LoggerFactory;
@@ -124,6 +126,8 @@ public class ZeroMQWrapperPush extends AbstractWrapper {
 	 * the success or failure of the operation. In case of a protocol error or
 	 * exception, the socket is re-initialized, and
 	 * the loop continues.
+	 * A multipart request carries a batch of elements, one per frame, which is
+	 * posted at once and acknowledged by a single response.
 	 */
 	@Override
 	public void run() {
@@ -132,9 +136,12 @@ public class ZeroMQWrapperPush extends AbstractWrapper {
 			try {
 				byte[] rec = receiver.recv();
 				if (rec != null) {
-					ByteArrayInputStream bais = new ByteArrayInputStream(rec);
-					StreamElement se = kryo.readObjectOrNull(new Input(bais), StreamElement.class);
-					boolean success = postStreamElement(se);
+					List<StreamElement> batch = new ArrayList<StreamElement>();
+					batch.add(read(rec));
+					while (receiver.hasReceiveMore()) {
+						batch.add(read(receiver.recv()));
+					}
+					boolean success = batch.size() == 1 ? postStreamElement(batch.get(0)) : postStreamElements(batch);
 					receiver.send(success ? new byte[] { (byte) 0 } : new byte[] { (byte) 1 });
 				}
 			} catch (IllegalStateException z) {
@@ -157,6 +164,10 @@ public class ZeroMQWrapperPush extends AbstractWrapper {
 		receiver.close();
 	}
 
+	private StreamElement read(byte[] frame) {
+		return kryo.readObjectOrNull(new Input(new ByteArrayInputStream(frame)), StreamElement.class);
+	}
+
 	/**
 	 * if the structure is not defined in the xml file, throws an exception.
 	 */
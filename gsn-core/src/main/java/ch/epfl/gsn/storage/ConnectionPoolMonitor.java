@@ -0,0 +1,364 @@
+package ch.epfl.gsn.storage;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.slf4j.LoggerFactory;
+
+import ch.epfl.gsn.monitoring.Monitorable;
+import ch.epfl.gsn.utils.TimingWheel;
+
+import org.slf4j.Logger;
+
+/**
+ * Instruments the connection pools of the storage managers.
+ * <p>
+ * For each pool it records how long borrowing a connection waits (as a
+ * histogram), how long the connections are held and how busy the pool is.
+ * The connections held longer than {@link #LONG_HOLD} are reported once with
+ * the stack trace of the code which borrowed them, those held longer than
+ * the abandoned timeout of the pool are counted as leaked. Capturing a stack
+ * trace is costly: it is only done for one borrow out of
+ * {@link #STACK_SAMPLING}, or for all of them with the debug level enabled.
+ * <p>
+ * A connection is given back when the proxy returned by {@link Pool#borrow()}
+ * is closed, when {@link Pool#release(Connection)} is called with it or with
+ * the connection of the pool it wraps (which is what the statements and the
+ * result sets return), or at the latest when the check finds it closed.
+ * <p>
+ * The idle connections kept by each pool follow its load: every
+ * {@link #RESIZE_PERIOD} milliseconds the maximum number of idle connections
+ * is set to the peak number of active connections of the past period, and
+ * the minimum to half of it, both bounded by the size of the pool.
+ * <p>
+ * The statistics of all the pools are exported on the monitoring port.
+ */
+public class ConnectionPoolMonitor implements Monitorable {
+
+	/**
+	 * Time in milliseconds after which a held connection is reported.
+	 */
+	public static final long LONG_HOLD = 60000;
+
+	public static final long RESIZE_PERIOD = 60000;
+
+	/**
+	 * The stack trace of one borrow out of this many is captured.
+	 */
+	public static final int STACK_SAMPLING = 32;
+
+	private static final long CHECK_PERIOD = 15000;
+
+	/**
+	 * Upper bounds in milliseconds of the buckets of the borrow wait
+	 * histogram, the last bucket holds the longer waits.
+	 */
+	private static final long[] WAIT_BUCKETS = { 1, 10, 100, 1000 };
+
+	private static final String[] WAIT_LABELS = { "1ms", "10ms", "100ms", "1s", "longer" };
+
+	private static final transient Logger logger = LoggerFactory.getLogger(ConnectionPoolMonitor.class);
+
+	private static final ConnectionPoolMonitor instance = new ConnectionPoolMonitor();
+
+	private final ConcurrentHashMap<BasicDataSource, Pool> pools = new ConcurrentHashMap<BasicDataSource, Pool>();
+
+	private final AtomicInteger poolCount = new AtomicInteger();
+
+	private TimingWheel.Timeout checks = null;
+
+	private int checkCount = 0;
+
+	private ConnectionPoolMonitor() {
+	}
+
+	public static ConnectionPoolMonitor getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @return the instrumented pool of the data source, shared by the storage
+	 *         managers using the same data source
+	 */
+	public synchronized Pool instrument(BasicDataSource dataSource) {
+		Pool pool = pools.get(dataSource);
+		if (pool == null) {
+			pool = new Pool(dataSource, "pool" + poolCount.incrementAndGet());
+			// the minimum of idle connections is kept by the evictor
+			dataSource.setTimeBetweenEvictionRunsMillis(RESIZE_PERIOD);
+			pools.put(dataSource, pool);
+			logger.info("The connections to " + dataSource.getUrl() + " are monitored as core.db." + pool.name + ".");
+		}
+		if (checks == null) {
+			checks = TimingWheel.getInstance().schedule(new Runnable() {
+				public void run() {
+					check();
+				}
+			}, CHECK_PERIOD, CHECK_PERIOD);
+		}
+		return pool;
+	}
+
+	private synchronized void check() {
+		boolean resize = ++checkCount % (RESIZE_PERIOD / CHECK_PERIOD) == 0;
+		for (Pool pool : pools.values()) {
+			pool.checkHolds();
+			if (resize) {
+				pool.resize();
+			}
+		}
+	}
+
+	public Hashtable<String, Object> getStatistics() {
+		Hashtable<String, Object> stat = new Hashtable<String, Object>();
+		for (Pool pool : pools.values()) {
+			pool.addStatistics(stat);
+		}
+		return stat;
+	}
+
+	/**
+	 * A connection pool whose connections are borrowed through
+	 * {@link #borrow()}.
+	 */
+	public static class Pool {
+
+		private final BasicDataSource dataSource;
+
+		private final String name;
+
+		private final AtomicLongArray waitHistogram = new AtomicLongArray(WAIT_LABELS.length);
+
+		private final AtomicInteger waiting = new AtomicInteger();
+
+		// by the connection of the pool, which may be closed without the proxy
+		private final Map<Connection, Hold> holds = Collections
+				.synchronizedMap(new IdentityHashMap<Connection, Hold>());
+
+		private final AtomicInteger borrows = new AtomicInteger();
+
+		private volatile long waitTotal = 0;
+
+		private volatile long waitMax = 0;
+
+		private volatile long holdMax = 0;
+
+		private volatile int peakActive = 0;
+
+		private volatile long longHolds = 0;
+
+		private volatile long leaks = 0;
+
+		private Pool(BasicDataSource dataSource, String name) {
+			this.dataSource = dataSource;
+			this.name = name;
+		}
+
+		/**
+		 * Borrows a connection from the pool, it must be closed to be given
+		 * back.
+		 */
+		public Connection borrow() throws SQLException {
+			long start = System.nanoTime();
+			Connection connection;
+			waiting.incrementAndGet();
+			try {
+				connection = dataSource.getConnection();
+			} finally {
+				waiting.decrementAndGet();
+			}
+			long now = System.nanoTime();
+			recordWait((now - start) / 1000000);
+			int active = dataSource.getNumActive();
+			if (active > peakActive) {
+				peakActive = active;
+			}
+			boolean sampled = logger.isDebugEnabled() || borrows.incrementAndGet() % STACK_SAMPLING == 0;
+			Hold hold = new Hold(connection, now, sampled ? new Throwable("borrowed here") : null);
+			holds.put(connection, hold);
+			return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+					new Class<?>[] { Connection.class }, hold);
+		}
+
+		private void recordWait(long millis) {
+			int bucket = 0;
+			while (bucket < WAIT_BUCKETS.length && millis > WAIT_BUCKETS[bucket]) {
+				bucket++;
+			}
+			waitHistogram.incrementAndGet(bucket);
+			synchronized (this) {
+				waitTotal += millis;
+				if (millis > waitMax) {
+					waitMax = millis;
+				}
+			}
+		}
+
+		/**
+		 * Records that the connection was given back to the pool.
+		 *
+		 * @param connection a connection returned by {@link #borrow()}, or the
+		 *                   connection of the pool it wraps
+		 */
+		public void release(Connection connection) {
+			if (connection == null) {
+				return;
+			}
+			if (Proxy.isProxyClass(connection.getClass())
+					&& Proxy.getInvocationHandler(connection) instanceof Hold) {
+				connection = ((Hold) Proxy.getInvocationHandler(connection)).connection;
+			}
+			Hold hold = holds.get(connection);
+			if (hold != null) {
+				released(hold);
+			}
+		}
+
+		private void released(Hold hold) {
+			if (holds.remove(hold.connection) != hold) {
+				return;
+			}
+			long millis = (System.nanoTime() - hold.borrowed) / 1000000;
+			synchronized (this) {
+				if (millis > holdMax) {
+					holdMax = millis;
+				}
+			}
+		}
+
+		private void checkHolds() {
+			long now = System.nanoTime();
+			long abandoned = dataSource.getRemoveAbandonedTimeout() * 1000L;
+			ArrayList<Hold> current;
+			synchronized (holds) {
+				current = new ArrayList<Hold>(holds.values());
+			}
+			for (Hold hold : current) {
+				try {
+					if (hold.connection.isClosed()) {
+						// closed through a statement or a result set
+						released(hold);
+						continue;
+					}
+				} catch (SQLException e) {
+					// checked again below
+				}
+				long millis = (now - hold.borrowed) / 1000000;
+				if (millis > abandoned) {
+					// the pool reclaims it on a later borrow
+					holds.remove(hold.connection);
+					leaks++;
+					logger.warn("A connection of core.db." + name + " was not closed after " + millis
+							+ " ms, it was borrowed by " + hold.thread + (hold.stack == null ? "." : ":"), hold.stack);
+				} else if (millis > LONG_HOLD && !hold.reported) {
+					hold.reported = true;
+					longHolds++;
+					logger.warn("A connection of core.db." + name + " is held for " + millis
+							+ " ms, it was borrowed by " + hold.thread + (hold.stack == null ? "." : ":"), hold.stack);
+				}
+			}
+		}
+
+		/**
+		 * @return the number of connections borrowed and not given back yet
+		 */
+		public int getHoldCount() {
+			return holds.size();
+		}
+
+		private void resize() {
+			int peak = Math.max(peakActive, dataSource.getNumActive());
+			peakActive = 0;
+			int maxIdle = Math.min(Math.max(peak, 1), dataSource.getMaxTotal());
+			int minIdle = maxIdle / 2;
+			if (maxIdle != dataSource.getMaxIdle() || minIdle != dataSource.getMinIdle()) {
+				dataSource.setMaxIdle(maxIdle);
+				dataSource.setMinIdle(minIdle);
+				if (logger.isDebugEnabled()) {
+					logger.debug("The idle connections of core.db." + name + " are kept between " + minIdle + " and "
+							+ maxIdle + ".");
+				}
+			}
+		}
+
+		private void addStatistics(Map<String, Object> stat) {
+			String prefix = "core.db." + name + ".";
+			int active = dataSource.getNumActive();
+			int maxTotal = dataSource.getMaxTotal();
+			stat.put(prefix + "active.gauge", active);
+			stat.put(prefix + "idle.gauge", dataSource.getNumIdle());
+			stat.put(prefix + "waiting.gauge", waiting.get());
+			stat.put(prefix + "max.gauge", maxTotal);
+			stat.put(prefix + "idle.min.gauge", dataSource.getMinIdle());
+			stat.put(prefix + "idle.max.gauge", dataSource.getMaxIdle());
+			stat.put(prefix + "utilization.gauge", maxTotal > 0 ? active * 100 / maxTotal : 0);
+			long borrows = 0;
+			for (int i = 0; i < WAIT_LABELS.length; i++) {
+				long count = waitHistogram.get(i);
+				borrows += count;
+				stat.put(prefix + "borrow.wait." + WAIT_LABELS[i] + ".counter", count);
+			}
+			stat.put(prefix + "borrow.counter", borrows);
+			synchronized (this) {
+				stat.put(prefix + "borrow.wait.total", waitTotal);
+				stat.put(prefix + "borrow.wait.max", waitMax);
+				stat.put(prefix + "hold.max", holdMax);
+			}
+			stat.put(prefix + "hold.long.counter", longHolds);
+			stat.put(prefix + "hold.leaked.counter", leaks);
+		}
+
+		/**
+		 * A borrowed connection, the proxy given to the borrower records when
+		 * it is closed.
+		 */
+		private class Hold implements InvocationHandler {
+
+			private final Connection connection;
+
+			private final long borrowed;
+
+			private final String thread = Thread.currentThread().getName();
+
+			// null if the borrow was not sampled
+			private final Throwable stack;
+
+			private volatile boolean reported = false;
+
+			private Hold(Connection connection, long borrowed, Throwable stack) {
+				this.connection = connection;
+				this.borrowed = borrowed;
+				this.stack = stack;
+			}
+
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String methodName = method.getName();
+				if (args == null && "close".equals(methodName)) {
+					released(this);
+				} else if (args != null && args.length == 1 && "equals".equals(methodName)) {
+					return proxy == args[0];
+				} else if (args == null && "hashCode".equals(methodName)) {
+					return System.identityHashCode(proxy);
+				}
+				try {
+					return method.invoke(connection, args);
+				} catch (InvocationTargetException e) {
+					throw e.getCause();
+				}
+			}
+		}
+	}
+}
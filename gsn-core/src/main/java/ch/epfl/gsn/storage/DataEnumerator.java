@@ -35,9 +35,9 @@
 
 package ch.epfl.gsn.storage;
 
-import java.io.Serializable;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.Vector;
 
@@ -45,6 +45,8 @@ import org.slf4j.LoggerFactory;
 
 import ch.epfl.gsn.beans.DataTypes;
 import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.beans.StreamSchema;
+import ch.epfl.gsn.data.blob.BlobReference;
 
 import org.slf4j.Logger;
 
@@ -69,6 +71,19 @@ public class DataEnumerator implements DataEnumeratorIF {
 
 	private Byte[] dataFieldTypes;
 
+	/**
+	 * Index in the result set of each data field, read once from the metadata
+	 * instead of for every row.
+	 */
+	private int[] columnIndexes;
+
+	/**
+	 * Link to the value of each binary field, without the primary key.
+	 */
+	private String[] binaryLinks;
+
+	private StreamSchema schema;
+
 	private boolean hasNext = false;
 
 	boolean hasTimedFieldInResultSet = false;
@@ -131,16 +146,11 @@ public class DataEnumerator implements DataEnumeratorIF {
 			return;
 		}
 
-		// try {
-		// preparedStatement.setFetchSize(50);
-		// } catch (SQLException e1) {
-		// logger.warn(e1.getMessage(),e1);
-		// return;
-		// }
-
 		this.linkBinaryData = binaryLinked;
 		Vector<String> fieldNames = new Vector<String>();
 		Vector<Byte> fieldTypes = new Vector<Byte>();
+		Vector<Integer> fieldIndexes = new Vector<Integer>();
+		Vector<String> fieldLinks = new Vector<String>();
 		try {
 			this.resultSet = preparedStatement.executeQuery();
 			hasNext = resultSet.next();
@@ -149,26 +159,32 @@ public class DataEnumerator implements DataEnumeratorIF {
 			// if the timed field is present in the result set.
 			String tableName = null;
 			int problematicColumn = -1;
-			for (int i = 1; i <= resultSet.getMetaData().getColumnCount(); i++) {
+			ResultSetMetaData metaData = resultSet.getMetaData();
+			int columnCount = metaData.getColumnCount();
+			for (int i = 1; i <= columnCount; i++) {
 				if (i == 1) {
-					tableName = resultSet.getMetaData().getTableName(1);
+					tableName = metaData.getTableName(1);
 				}
 
-				String colName = resultSet.getMetaData().getColumnLabel(i);
-				int colTypeInJDBCFormat = resultSet.getMetaData().getColumnType(i);
-				int colScale = resultSet.getMetaData().getScale(i);
+				String colName = metaData.getColumnLabel(i);
+				int colTypeInJDBCFormat = metaData.getColumnType(i);
+				int colScale = metaData.getScale(i);
 				if (colName.equalsIgnoreCase("PK")) {
 					indexofPK = i;
 				} else if (colName.equalsIgnoreCase("timed")) {
 					indexOfTimedField = i;
 				} else {
 					fieldNames.add(colName);
+					fieldIndexes.add(i);
 					byte gsnType = storageManager.convertLocalTypeToGSN(colTypeInJDBCFormat, colScale);
+					fieldLinks.add(gsnType == DataTypes.BINARY && linkBinaryData
+							? "field?vs=" + metaData.getTableName(i) + "&amp;field=" + colName + "&amp;pk="
+							: null);
 					if (gsnType == -100) {
 						logger.error("The type can't be converted to GSN form - error description: ");
 						logger.warn("Table name: " + tableName);
 						logger.warn("Column name: " + colName);
-						logger.warn("Column type name: " + resultSet.getMetaData().getColumnTypeName(i));
+						logger.warn("Column type name: " + metaData.getColumnTypeName(i));
 						logger.warn("Query result: " + preparedStatement.toString());
 						problematicColumn = i;
 					}
@@ -186,6 +202,12 @@ public class DataEnumerator implements DataEnumeratorIF {
 			}
 			dataFieldNames = fieldNames.toArray(new String[] {});
 			dataFieldTypes = fieldTypes.toArray(new Byte[] {});
+			columnIndexes = new int[fieldIndexes.size()];
+			for (int i = 0; i < columnIndexes.length; i++) {
+				columnIndexes[i] = fieldIndexes.get(i);
+			}
+			binaryLinks = fieldLinks.toArray(new String[] {});
+			schema = StreamSchema.intern(dataFieldNames, dataFieldTypes);
 			if (indexofPK == -1 && linkBinaryData) {
 				throw new RuntimeException("The specified query can't be used with binaryLinked paramter set to true.");
 			}
@@ -220,60 +242,56 @@ public class DataEnumerator implements DataEnumeratorIF {
 			if (indexofPK != -1) {
 				pkValue = resultSet.getLong(indexofPK);
 			}
-			Serializable[] output = new Serializable[dataFieldNames.length];
-			for (int actualColIndex = 1,
-					innerIndex = 0; actualColIndex <= resultSet.getMetaData().getColumnCount(); actualColIndex++) {
-				if (actualColIndex == indexOfTimedField) {
-					timestamp = resultSet.getLong(actualColIndex);
-					continue;
-				} else if (actualColIndex == indexofPK) {
-					continue;
-				} else {
-					switch (dataFieldTypes[innerIndex]) {
-						case DataTypes.VARCHAR:
-						case DataTypes.CHAR:
-							output[innerIndex] = resultSet.getString(actualColIndex);
-							break;
-						case DataTypes.INTEGER:
-							output[innerIndex] = resultSet.getInt(actualColIndex);
-							break;
-						case DataTypes.TINYINT:
-							output[innerIndex] = resultSet.getByte(actualColIndex);
-							break;
-						case DataTypes.SMALLINT:
-							output[innerIndex] = resultSet.getShort(actualColIndex);
-							break;
-						case DataTypes.DOUBLE:
-							output[innerIndex] = resultSet.getDouble(actualColIndex);
-							break;
-						case DataTypes.FLOAT:
-							output[innerIndex] = resultSet.getFloat(actualColIndex);
-							break;
-						case DataTypes.BIGINT:
-							output[innerIndex] = resultSet.getLong(actualColIndex);
-							break;
-						case DataTypes.BINARY:
-							if (linkBinaryData) {
-								output[innerIndex] = "field?vs=" + resultSet.getMetaData().getTableName(actualColIndex)
-										+ "&amp;field=" + resultSet.getMetaData().getColumnLabel(actualColIndex)
-										+ "&amp;pk=" + pkValue;
-								resultSet.getBytes(actualColIndex);
-							} else {
-								output[innerIndex] = resultSet.getBytes(actualColIndex);
-							}
-							break;
-						default:
-							break;
-					}
-					if (resultSet.wasNull()) {
-						output[innerIndex] = null;
-					}
-
-					innerIndex++;
-				}
+			if (indexOfTimedField != -1) {
+				timestamp = resultSet.getLong(indexOfTimedField);
 			}
-			streamElement = new StreamElement(dataFieldNames, dataFieldTypes, output,
+			// numeric columns are kept unboxed in the stream element
+			StreamElement output = new StreamElement(schema,
 					indexOfTimedField == -1 ? System.currentTimeMillis() : timestamp);
+			for (int innerIndex = 0; innerIndex < columnIndexes.length; innerIndex++) {
+				int actualColIndex = columnIndexes[innerIndex];
+				switch (dataFieldTypes[innerIndex]) {
+					case DataTypes.VARCHAR:
+					case DataTypes.CHAR:
+						output.setData(innerIndex, resultSet.getString(actualColIndex));
+						break;
+					case DataTypes.INTEGER:
+						output.setLong(innerIndex, resultSet.getInt(actualColIndex));
+						break;
+					case DataTypes.TINYINT:
+						output.setLong(innerIndex, resultSet.getByte(actualColIndex));
+						break;
+					case DataTypes.SMALLINT:
+						output.setLong(innerIndex, resultSet.getShort(actualColIndex));
+						break;
+					case DataTypes.DOUBLE:
+						output.setDouble(innerIndex, resultSet.getDouble(actualColIndex));
+						break;
+					case DataTypes.FLOAT:
+						output.setDouble(innerIndex, resultSet.getFloat(actualColIndex));
+						break;
+					case DataTypes.BIGINT:
+						output.setLong(innerIndex, resultSet.getLong(actualColIndex));
+						break;
+					case DataTypes.BINARY:
+						if (linkBinaryData) {
+							output.setData(innerIndex, binaryLinks[innerIndex] + pkValue);
+							resultSet.getBytes(actualColIndex);
+						} else {
+							// the values kept in the blob store are read when accessed
+							byte[] bytes = resultSet.getBytes(actualColIndex);
+							BlobReference reference = BlobReference.parse(bytes);
+							output.setData(innerIndex, reference == null ? bytes : reference);
+						}
+						break;
+					default:
+						break;
+				}
+				if (resultSet.wasNull()) {
+					output.setData(innerIndex, null);
+				}
+			}
+			streamElement = output;
 			if (indexofPK != -1) {
 				streamElement.setInternalPrimayKey(pkValue);
 			}
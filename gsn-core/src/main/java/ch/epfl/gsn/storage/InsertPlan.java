@@ -0,0 +1,270 @@
+package ch.epfl.gsn.storage;
+
+import java.io.Serializable;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.LoggerFactory;
+
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.beans.StreamSchema;
+
+import org.slf4j.Logger;
+
+/**
+ * Compiled insert statement of a table: the SQL string, built once, and one
+ * binder per column chosen from its type.
+ * <p>
+ * The positions of the columns in the stream elements are resolved once per
+ * schema: as the schemas are interned, all the elements produced by a virtual
+ * sensor share the same instance and the lookup is an identity check.
+ */
+class InsertPlan {
+
+    private static final transient Logger logger = LoggerFactory.getLogger(InsertPlan.class);
+
+    private final DataField[] fields;
+
+    private final String sql;
+
+    private final String[] names;
+
+    private final Binder[] binders;
+
+    private volatile Positions positions;
+
+    InsertPlan(DataField[] fields, StringBuilder statement) {
+        this.fields = fields;
+        this.sql = statement.toString();
+        List<DataField> columns = new ArrayList<DataField>(fields.length);
+        for (DataField dataField : fields) {
+            if (!dataField.getName().equalsIgnoreCase("timed")) {
+                columns.add(dataField);
+            }
+        }
+        names = new String[columns.size()];
+        binders = new Binder[columns.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = columns.get(i).getName();
+            binders[i] = Binder.of(columns.get(i).getDataTypeID());
+        }
+    }
+
+    /**
+     * @return true if the plan was compiled for these fields
+     */
+    boolean isFor(DataField[] fields) {
+        if (this.fields == fields) {
+            return true;
+        }
+        if (this.fields.length != fields.length) {
+            return false;
+        }
+        for (int i = 0; i < fields.length; i++) {
+            if (!this.fields[i].getName().equalsIgnoreCase(fields[i].getName())
+                    || this.fields[i].getDataTypeID() != fields[i].getDataTypeID()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    String getSql() {
+        return sql;
+    }
+
+    /**
+     * Binds the values of the stream element to the parameters of the
+     * statement, the timestamp last.
+     */
+    void bind(PreparedStatement ps, StreamElement streamElement) throws SQLException {
+        int[] index = positionsOf(streamElement.getSchema());
+        for (int i = 0; i < binders.length; i++) {
+            binders[i].bind(ps, i + 1, streamElement, index[i], names[i]);
+        }
+        ps.setLong(binders.length + 1, streamElement.getTimeStamp());
+    }
+
+    private int[] positionsOf(StreamSchema schema) {
+        Positions cached = positions;
+        if (cached != null && cached.schema == schema) {
+            return cached.index;
+        }
+        int[] index = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            index[i] = schema.indexOf(names[i]);
+        }
+        positions = new Positions(schema, index);
+        return index;
+    }
+
+    private static final class Positions {
+
+        private final StreamSchema schema;
+
+        private final int[] index;
+
+        private Positions(StreamSchema schema, int[] index) {
+            this.schema = schema;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Sets a parameter from a column of a stream element.
+     */
+    private abstract static class Binder {
+
+        final int sqlType;
+
+        private Binder(int sqlType) {
+            this.sqlType = sqlType;
+        }
+
+        static Binder of(byte type) {
+            switch (type) {
+                case DataTypes.VARCHAR:
+                    return new StringBinder(Types.VARCHAR);
+                case DataTypes.CHAR:
+                    return new StringBinder(Types.CHAR);
+                case DataTypes.INTEGER:
+                    return new NumberBinder(Types.INTEGER);
+                case DataTypes.SMALLINT:
+                    return new NumberBinder(Types.SMALLINT);
+                case DataTypes.TINYINT:
+                    return new NumberBinder(Types.TINYINT);
+                case DataTypes.DOUBLE:
+                    return new NumberBinder(Types.DOUBLE);
+                case DataTypes.FLOAT:
+                    return new NumberBinder(Types.FLOAT);
+                case DataTypes.BIGINT:
+                    return new NumberBinder(Types.BIGINT);
+                case DataTypes.BINARY:
+                    return new BinaryBinder();
+                default:
+                    return new UnsupportedBinder(type);
+            }
+        }
+
+        void bind(PreparedStatement ps, int parameter, StreamElement se, int index, String name)
+                throws SQLException {
+            Serializable value = index < 0 ? se.getData(name) : se.getData(index);
+            if (value == null) {
+                ps.setNull(parameter, sqlType);
+            } else {
+                setValue(ps, parameter, value);
+            }
+        }
+
+        abstract void setValue(PreparedStatement ps, int parameter, Serializable value) throws SQLException;
+    }
+
+    private static final class StringBinder extends Binder {
+
+        private StringBinder(int sqlType) {
+            super(sqlType);
+        }
+
+        void setValue(PreparedStatement ps, int parameter, Serializable value) throws SQLException {
+            ps.setString(parameter, value.toString());
+        }
+    }
+
+    private static final class BinaryBinder extends Binder {
+
+        private BinaryBinder() {
+            super(Types.BINARY);
+        }
+
+        void setValue(PreparedStatement ps, int parameter, Serializable value) throws SQLException {
+            ps.setBytes(parameter, (byte[]) value);
+        }
+    }
+
+    /**
+     * Binds the numeric values through the typed accessors of the stream
+     * element, without boxing them.
+     */
+    private static final class NumberBinder extends Binder {
+
+        private NumberBinder(int sqlType) {
+            super(sqlType);
+        }
+
+        void bind(PreparedStatement ps, int parameter, StreamElement se, int index, String name)
+                throws SQLException {
+            if (index < 0 || !se.hasPrimitiveValue(index)) {
+                super.bind(ps, parameter, se, index, name);
+            } else if (se.isNull(index)) {
+                ps.setNull(parameter, sqlType);
+            } else {
+                switch (sqlType) {
+                    case Types.INTEGER:
+                        ps.setInt(parameter, (int) se.getLong(index));
+                        break;
+                    case Types.SMALLINT:
+                        ps.setShort(parameter, (short) se.getLong(index));
+                        break;
+                    case Types.TINYINT:
+                        ps.setByte(parameter, (byte) se.getLong(index));
+                        break;
+                    case Types.DOUBLE:
+                        ps.setDouble(parameter, se.getDouble(index));
+                        break;
+                    case Types.FLOAT:
+                        ps.setFloat(parameter, (float) se.getDouble(index));
+                        break;
+                    default:
+                        ps.setLong(parameter, se.getLong(index));
+                        break;
+                }
+            }
+        }
+
+        void setValue(PreparedStatement ps, int parameter, Serializable value) throws SQLException {
+            Number number = (Number) value;
+            switch (sqlType) {
+                case Types.INTEGER:
+                    ps.setInt(parameter, number.intValue());
+                    break;
+                case Types.SMALLINT:
+                    ps.setShort(parameter, number.shortValue());
+                    break;
+                case Types.TINYINT:
+                    ps.setByte(parameter, number.byteValue());
+                    break;
+                case Types.DOUBLE:
+                    ps.setDouble(parameter, number.doubleValue());
+                    break;
+                case Types.FLOAT:
+                    ps.setFloat(parameter, number.floatValue());
+                    break;
+                default:
+                    ps.setLong(parameter, number.longValue());
+                    break;
+            }
+        }
+    }
+
+    private static final class UnsupportedBinder extends Binder {
+
+        private final byte type;
+
+        private UnsupportedBinder(byte type) {
+            super(Types.NULL);
+            this.type = type;
+        }
+
+        void bind(PreparedStatement ps, int parameter, StreamElement se, int index, String name) {
+            logger.error("The type conversion is not supported for : " + name + "(" + type + ") : ");
+        }
+
+        void setValue(PreparedStatement ps, int parameter, Serializable value) {
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ch.epfl.gsn.storage;
+
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.NoSuchElementException;
+
+import org.slf4j.LoggerFactory;
+
+import ch.epfl.gsn.beans.StreamElement;
+
+import org.slf4j.Logger;
+
+/**
+ * Enumerates all the stream elements of a virtual sensor table, in the order
+ * of their primary key or of their timestamp, one page at a time.
+ * <p>
+ * Each page is read by a short query starting after the key of the last
+ * element of the previous page, instead of an offset, so that reading a page
+ * does not get slower as the scan goes on, and no connection is held between
+ * two pages. At most one page is kept in memory.
+ */
+public class KeysetDataEnumerator implements DataEnumeratorIF {
+
+	public static final int DEFAULT_PAGE_SIZE = 1000;
+
+	private static final transient Logger logger = LoggerFactory.getLogger(KeysetDataEnumerator.class);
+
+	private final StorageManager storage;
+
+	private final String tableName;
+
+	private final String columns;
+
+	private final String condition;
+
+	private final boolean byTimed;
+
+	private final int pageSize;
+
+	private final ArrayDeque<StreamElement> page = new ArrayDeque<StreamElement>();
+
+	private long lastPk = Long.MIN_VALUE;
+
+	private long lastTimed = Long.MIN_VALUE;
+
+	private boolean lastPage = false;
+
+	private boolean failed = false;
+
+	/**
+	 * @param storage   the storage of the table
+	 * @param tableName the virtual sensor table to read
+	 * @param condition an SQL condition on the rows to read, or null to read
+	 *                  them all
+	 * @param byTimed   true to read the rows by increasing timestamp, false by
+	 *                  increasing primary key
+	 * @param pageSize  the number of rows read by each query
+	 */
+	public KeysetDataEnumerator(StorageManager storage, String tableName, String condition, boolean byTimed,
+			int pageSize) {
+		this(storage, tableName, "*", condition, byTimed, pageSize);
+	}
+
+	/**
+	 * @param columns the columns to read, separated by commas, they must
+	 *                include pk and timed
+	 */
+	public KeysetDataEnumerator(StorageManager storage, String tableName, String columns, String condition,
+			boolean byTimed, int pageSize) {
+		this.storage = storage;
+		this.tableName = tableName;
+		this.columns = columns;
+		this.condition = condition;
+		this.byTimed = byTimed;
+		this.pageSize = pageSize;
+	}
+
+	public boolean hasMoreElements() {
+		if (page.isEmpty() && !lastPage) {
+			readPage();
+		}
+		return !page.isEmpty();
+	}
+
+	public StreamElement nextElement() throws RuntimeException {
+		if (!hasMoreElements()) {
+			throw new NoSuchElementException("The table " + tableName + " doesn't have anymore elements.");
+		}
+		return page.poll();
+	}
+
+	public void close() {
+		lastPage = true;
+		page.clear();
+	}
+
+	/**
+	 * @return true if reading a page failed, the enumeration then ended
+	 *         before the last row
+	 */
+	public boolean isFailed() {
+		return failed;
+	}
+
+	private void readPage() {
+		StringBuilder query = new StringBuilder("select ").append(columns).append(" from ").append(tableName).append(" where ");
+		if (condition != null) {
+			query.append("(").append(condition).append(") and ");
+		}
+		if (byTimed) {
+			// the timestamps are not unique, the primary key breaks the ties
+			query.append("(timed > ").append(lastTimed).append(" or (timed = ").append(lastTimed)
+					.append(" and pk > ").append(lastPk).append(")) order by timed asc, pk asc");
+		} else {
+			query.append("pk > ").append(lastPk).append(" order by pk asc");
+		}
+		DataEnumerator rows = null;
+		try {
+			rows = storage.executeQuery(new StringBuilder(storage.addLimit(query.toString(), pageSize, 0)), false);
+			while (rows.hasMoreElements()) {
+				StreamElement se = rows.nextElement();
+				lastPk = se.getInternalPrimayKey();
+				lastTimed = se.getTimeStamp();
+				page.add(se);
+			}
+		} catch (SQLException e) {
+			logger.error("Reading the table " + tableName + " failed: " + e.getMessage(), e);
+			lastPage = true;
+			failed = true;
+			return;
+		} finally {
+			if (rows != null) {
+				rows.close();
+			}
+		}
+		lastPage = page.size() < pageSize;
+		if (logger.isDebugEnabled()) {
+			logger.debug("Read " + page.size() + " rows of " + tableName + " up to pk " + lastPk + ".");
+		}
+	}
+}
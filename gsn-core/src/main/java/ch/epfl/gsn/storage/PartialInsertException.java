@@ -0,0 +1,39 @@
+package ch.epfl.gsn.storage;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+import ch.epfl.gsn.beans.StreamElement;
+
+/**
+ * Thrown when only some of the stream elements of a batch could be inserted,
+ * see {@link StorageManager#executeBatchInsert(CharSequence, ch.epfl.gsn.beans.DataField[], List)}.
+ * The elements inserted are committed, the caller may go on with them.
+ */
+public class PartialInsertException extends SQLException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final List<StreamElement> inserted;
+
+	/**
+	 * @param tableName the table inserted into
+	 * @param count     the number of stream elements of the batch
+	 * @param inserted  the stream elements inserted, the same instances as in
+	 *                  the batch
+	 * @param cause     the failure of the last element not inserted
+	 */
+	public PartialInsertException(CharSequence tableName, int count, List<StreamElement> inserted, SQLException cause) {
+		super("Only " + inserted.size() + " of " + count + " stream elements were inserted into " + tableName + ": "
+				+ cause.getMessage(), cause.getSQLState(), cause.getErrorCode(), cause);
+		this.inserted = Collections.unmodifiableList(inserted);
+	}
+
+	/**
+	 * @return the stream elements inserted, the same instances as in the batch
+	 */
+	public List<StreamElement> getInserted() {
+		return inserted;
+	}
+}
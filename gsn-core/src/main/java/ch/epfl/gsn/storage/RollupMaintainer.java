@@ -0,0 +1,388 @@
+package ch.epfl.gsn.storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.LoggerFactory;
+
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.beans.StreamSchema;
+
+import org.slf4j.Logger;
+
+/**
+ * Rollup tables of the output of a virtual sensor, updated as its stream
+ * elements are published.
+ * <p>
+ * For each period of <code>rollups</code> (in milliseconds) the table
+ * <code>&lt;table&gt;_rollup_&lt;period&gt;</code> holds a row per bucket of
+ * the period that has at least one stream element. The <code>timed</code>
+ * column is the start of the bucket, a multiple of the period, and
+ * <code>last_timed</code> the timestamp of its latest stream element. For
+ * each numeric field the {@link #FUNCTIONS} are kept in the columns
+ * <code>&lt;function&gt;_&lt;field&gt;</code>: the minimum, maximum, sum and
+ * number of the values which are not null, and the value of the latest stream
+ * element. The averages are the sums divided by the counts.
+ * <p>
+ * The latest bucket of each period is cached, so that a stream element
+ * costs a single update per period. A rollup table created for a virtual
+ * sensor which already has data is filled from its output table.
+ */
+public class RollupMaintainer {
+
+	public static final String[] FUNCTIONS = { "min", "max", "sum", "count", "last" };
+
+	private static final transient Logger logger = LoggerFactory.getLogger(RollupMaintainer.class);
+
+	private static final ConcurrentHashMap<String, RollupMaintainer> maintainers = new ConcurrentHashMap<String, RollupMaintainer>();
+
+	private final StorageManager storage;
+
+	private final String tableName;
+
+	private final String[] columns;
+
+	private final long[] periods;
+
+	private final String[] selects;
+
+	private final String[] inserts;
+
+	private final String[] updates;
+
+	private final Bucket[] latest;
+
+	private StreamSchema schema;
+
+	private int[] index;
+
+	private RollupMaintainer(StorageManager storage, String tableName, String[] columns, long[] periods) {
+		this.storage = storage;
+		this.tableName = tableName;
+		this.columns = columns;
+		this.periods = periods;
+		selects = new String[periods.length];
+		inserts = new String[periods.length];
+		updates = new String[periods.length];
+		latest = new Bucket[periods.length];
+		for (int l = 0; l < periods.length; l++) {
+			String rollup = getTableName(tableName, periods[l]);
+			StringBuilder names = new StringBuilder("last_timed");
+			StringBuilder values = new StringBuilder("?");
+			StringBuilder sets = new StringBuilder("last_timed = ?");
+			for (String column : columns) {
+				for (String function : FUNCTIONS) {
+					names.append(", ").append(function).append('_').append(column);
+					values.append(", ?");
+					sets.append(", ").append(function).append('_').append(column).append(" = ?");
+				}
+			}
+			selects[l] = "select " + names + " from " + rollup + " where timed = ?";
+			inserts[l] = "insert into " + rollup + " (" + names + ", timed) values (" + values + ", ?)";
+			updates[l] = "update " + rollup + " set " + sets + " where timed = ?";
+		}
+	}
+
+	/**
+	 * Creates the missing rollup tables of a table and maintains them from
+	 * now on, replacing the previous maintainer.
+	 *
+	 * @param fields  the fields of the table, the rollups are computed for
+	 *                the numeric ones
+	 * @param periods the comma separated periods in milliseconds
+	 */
+	public static RollupMaintainer register(StorageManager storage, String tableName, DataField[] fields,
+			String periods) throws SQLException {
+		String table = tableName.toLowerCase();
+		List<String> numeric = new ArrayList<String>();
+		for (DataField field : fields) {
+			if (isNumeric(field.getDataTypeID()) && !field.getName().equalsIgnoreCase("timed")
+					&& !field.getName().equalsIgnoreCase("pk")) {
+				numeric.add(field.getName().toLowerCase());
+			}
+		}
+		RollupMaintainer maintainer = new RollupMaintainer(storage, table, numeric.toArray(new String[0]),
+				parsePeriods(periods));
+		for (long period : maintainer.periods) {
+			maintainer.createTable(period);
+		}
+		maintainers.put(table, maintainer);
+		return maintainer;
+	}
+
+	public static void unregister(String tableName) {
+		maintainers.remove(tableName.toLowerCase());
+	}
+
+	/**
+	 * @return the maintainer of the rollups of the table, or null if it has
+	 *         none
+	 */
+	public static RollupMaintainer find(String tableName) {
+		return maintainers.get(tableName.toLowerCase());
+	}
+
+	public static String getTableName(String tableName, long period) {
+		return tableName.toLowerCase() + "_rollup_" + period;
+	}
+
+	/**
+	 * @return the structure of the rollup tables of the given numeric columns,
+	 *         the timed column excluded
+	 */
+	static DataField[] getStructure(String[] columns) {
+		List<DataField> structure = new ArrayList<DataField>();
+		structure.add(new DataField("last_timed", DataTypes.BIGINT));
+		for (String column : columns) {
+			for (String function : FUNCTIONS) {
+				structure.add(new DataField(function + "_" + column,
+						function.equals("count") ? DataTypes.BIGINT : DataTypes.DOUBLE));
+			}
+		}
+		return structure.toArray(new DataField[0]);
+	}
+
+	static long[] parsePeriods(String periods) {
+		List<Long> parsed = new ArrayList<Long>();
+		for (String period : periods.split(",")) {
+			if (!period.trim().isEmpty() && Long.parseLong(period.trim()) > 0) {
+				parsed.add(Long.parseLong(period.trim()));
+			}
+		}
+		long[] toReturn = new long[parsed.size()];
+		for (int i = 0; i < toReturn.length; i++) {
+			toReturn[i] = parsed.get(i);
+		}
+		return toReturn;
+	}
+
+	private void createTable(long period) throws SQLException {
+		String rollup = getTableName(tableName, period);
+		DataField[] structure = getStructure(columns);
+		if (storage.tableExists(rollup, structure)) {
+			return;
+		}
+		storage.executeCreateTable(rollup, structure, true);
+		// fills the rollup from the rows already in the table
+		StringBuilder names = new StringBuilder("timed, last_timed");
+		StringBuilder bucket = new StringBuilder("floor(timed / ").append(period).append(") * ").append(period);
+		StringBuilder inner = new StringBuilder("select ").append(bucket).append(" as bucket, max(timed) as latest");
+		StringBuilder outer = new StringBuilder("select b.bucket, b.latest");
+		for (String column : columns) {
+			names.append(", min_").append(column).append(", max_").append(column).append(", sum_").append(column)
+					.append(", count_").append(column).append(", last_").append(column);
+			inner.append(", min(").append(column).append(") as min_").append(column).append(", max(")
+					.append(column).append(") as max_").append(column).append(", sum(").append(column)
+					.append(") as sum_").append(column).append(", count(").append(column).append(") as count_")
+					.append(column);
+			outer.append(", b.min_").append(column).append(", b.max_").append(column).append(", b.sum_")
+					.append(column).append(", b.count_").append(column).append(", (select max(").append(column)
+					.append(") from ").append(tableName).append(" r where r.timed = b.latest)");
+		}
+		inner.append(" from ").append(tableName).append(" group by ").append(bucket);
+		outer.append(" from (").append(inner).append(") b");
+		int rows = storage.executeUpdate(new StringBuilder("insert into ").append(rollup).append(" (")
+				.append(names).append(") ").append(outer));
+		logger.info("Created the rollup table " + rollup + " with " + rows + " buckets.");
+	}
+
+	/**
+	 * Adds the stream elements to the buckets of all the periods, in a single
+	 * transaction.
+	 */
+	public synchronized void update(List<StreamElement> rows) throws SQLException {
+		if (rows.isEmpty()) {
+			return;
+		}
+		Connection connection = null;
+		boolean autoCommit = true;
+		try {
+			connection = storage.getConnection();
+			autoCommit = connection.getAutoCommit();
+			connection.setAutoCommit(false);
+			for (int l = 0; l < periods.length; l++) {
+				Map<Long, Bucket> touched = new LinkedHashMap<Long, Bucket>();
+				for (StreamElement se : rows) {
+					long start = Math.floorDiv(se.getTimeStamp(), periods[l]) * periods[l];
+					Bucket bucket = touched.get(start);
+					if (bucket == null) {
+						bucket = load(connection, l, start);
+						touched.put(start, bucket);
+					}
+					add(bucket, se);
+				}
+				for (Bucket bucket : touched.values()) {
+					store(connection, l, bucket);
+					if (latest[l] == null || bucket.start >= latest[l].start) {
+						latest[l] = bucket;
+					}
+				}
+			}
+			connection.commit();
+		} catch (SQLException e) {
+			// the cached buckets may hold rows which were not stored
+			for (int l = 0; l < latest.length; l++) {
+				latest[l] = null;
+			}
+			if (connection != null) {
+				connection.rollback();
+			}
+			throw e;
+		} finally {
+			if (connection != null) {
+				connection.setAutoCommit(autoCommit);
+			}
+			storage.close(connection);
+		}
+	}
+
+	private Bucket load(Connection connection, int level, long start) throws SQLException {
+		if (latest[level] != null && latest[level].start == start) {
+			return latest[level];
+		}
+		Bucket bucket = new Bucket(start, columns.length);
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try {
+			ps = connection.prepareStatement(selects[level]);
+			ps.setLong(1, start);
+			rs = ps.executeQuery();
+			if (rs.next()) {
+				bucket.stored = true;
+				bucket.lastTimed = rs.getLong(1);
+				for (int c = 0; c < columns.length; c++) {
+					int i = 2 + c * FUNCTIONS.length;
+					bucket.min[c] = rs.getDouble(i);
+					bucket.max[c] = rs.getDouble(i + 1);
+					bucket.sum[c] = rs.getDouble(i + 2);
+					bucket.count[c] = rs.getLong(i + 3);
+					bucket.last[c] = rs.getDouble(i + 4);
+					bucket.lastNull[c] = rs.wasNull();
+				}
+			}
+		} finally {
+			storage.close(rs);
+			storage.close(ps);
+		}
+		return bucket;
+	}
+
+	private void add(Bucket bucket, StreamElement se) {
+		if (se.getSchema() != schema) {
+			schema = se.getSchema();
+			index = new int[columns.length];
+			for (int c = 0; c < columns.length; c++) {
+				index[c] = schema.indexOf(columns[c]);
+			}
+		}
+		boolean newest = se.getTimeStamp() >= bucket.lastTimed;
+		if (newest) {
+			bucket.lastTimed = se.getTimeStamp();
+		}
+		for (int c = 0; c < columns.length; c++) {
+			boolean isNull = index[c] < 0 || se.isNull(index[c]);
+			double value = isNull ? 0 : se.getDouble(index[c]);
+			if (newest) {
+				bucket.last[c] = value;
+				bucket.lastNull[c] = isNull;
+			}
+			if (isNull) {
+				continue;
+			}
+			if (bucket.count[c] == 0) {
+				bucket.min[c] = value;
+				bucket.max[c] = value;
+			} else {
+				bucket.min[c] = Math.min(bucket.min[c], value);
+				bucket.max[c] = Math.max(bucket.max[c], value);
+			}
+			bucket.sum[c] += value;
+			bucket.count[c]++;
+		}
+	}
+
+	private void store(Connection connection, int level, Bucket bucket) throws SQLException {
+		PreparedStatement ps = null;
+		try {
+			ps = connection.prepareStatement(bucket.stored ? updates[level] : inserts[level]);
+			ps.setLong(1, bucket.lastTimed);
+			for (int c = 0; c < columns.length; c++) {
+				int i = 2 + c * FUNCTIONS.length;
+				boolean empty = bucket.count[c] == 0;
+				setDouble(ps, i, bucket.min[c], empty);
+				setDouble(ps, i + 1, bucket.max[c], empty);
+				setDouble(ps, i + 2, bucket.sum[c], empty);
+				ps.setLong(i + 3, bucket.count[c]);
+				setDouble(ps, i + 4, bucket.last[c], bucket.lastNull[c]);
+			}
+			ps.setLong(2 + columns.length * FUNCTIONS.length, bucket.start);
+			ps.executeUpdate();
+			bucket.stored = true;
+		} finally {
+			storage.close(ps);
+		}
+	}
+
+	private static void setDouble(PreparedStatement ps, int i, double value, boolean isNull) throws SQLException {
+		if (isNull) {
+			ps.setNull(i, Types.DOUBLE);
+		} else {
+			ps.setDouble(i, value);
+		}
+	}
+
+	private static boolean isNumeric(byte type) {
+		switch (type) {
+			case DataTypes.DOUBLE:
+			case DataTypes.FLOAT:
+			case DataTypes.BIGINT:
+			case DataTypes.INTEGER:
+			case DataTypes.SMALLINT:
+			case DataTypes.TINYINT:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private static class Bucket {
+
+		private final long start;
+
+		private boolean stored = false;
+
+		private long lastTimed = Long.MIN_VALUE;
+
+		private final double[] min;
+
+		private final double[] max;
+
+		private final double[] sum;
+
+		private final long[] count;
+
+		private final double[] last;
+
+		private final boolean[] lastNull;
+
+		private Bucket(long start, int columns) {
+			this.start = start;
+			min = new double[columns];
+			max = new double[columns];
+			sum = new double[columns];
+			count = new long[columns];
+			last = new double[columns];
+			lastNull = new boolean[columns];
+		}
+	}
+}
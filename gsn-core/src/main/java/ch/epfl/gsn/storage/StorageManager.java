@@ -37,9 +37,10 @@
 
 package ch.epfl.gsn.storage;
 
-import java.io.Serializable;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.dbcp2.*;
 import org.slf4j.LoggerFactory;
@@ -63,8 +64,28 @@ public abstract class StorageManager {
 
     private BasicDataSource pool;
 
+    private ConnectionPoolMonitor.Pool connections;
+
     private int Idcounter = 0;
 
+    /**
+     * Maximum number of prepared statements kept open per pooled connection.
+     */
+    public static final int MAX_OPEN_PREPARED_STATEMENTS = 100;
+
+    /**
+     * Number of stream elements from which a batch is written with
+     * {@link #executeBulkInsert(CharSequence, DataField[], List)}.
+     */
+    public static final int BULK_INSERT_THRESHOLD = 200;
+
+    /**
+     * Number of rows fetched at a time by the streamed queries.
+     */
+    public static final int STREAMED_FETCH_SIZE = 1000;
+
+    private final ConcurrentHashMap<String, InsertPlan> insertPlans = new ConcurrentHashMap<String, InsertPlan>();
+
     protected boolean isH2;
     protected boolean isMysql;
     protected boolean isOracle;
@@ -87,9 +108,14 @@ public abstract class StorageManager {
         pool = DataSources.getDataSource(new DBConnectionInfo(databaseDriver, databaseURL, username, password));
         pool.setMaxTotal(maxDBConnections);
         pool.setMaxIdle(maxDBConnections);
+        // the insert statements are prepared again for each batch, the pool
+        // keeps them parsed per connection
+        pool.setPoolPreparedStatements(true);
+        pool.setMaxOpenPreparedStatements(MAX_OPEN_PREPARED_STATEMENTS);
 
         pool.setRemoveAbandonedOnBorrow(true); // removing unused connections, used to clean after poorly written code
         pool.setRemoveAbandonedTimeout(300); // 5 minutes
+        connections = ConnectionPoolMonitor.getInstance().instrument(pool);
         //
         Connection con = null;
         try {
@@ -162,26 +188,73 @@ public abstract class StorageManager {
     public abstract StringBuilder getStatementRemoveUselessDataCountBased(String virtualSensorName, long storageSize);
 
     public StringBuilder getStatementRemoveUselessDataTimeBased(String virtualSensorName, long storageSize) {
-        StringBuilder query = null;
         long timedToRemove = -1;
-        Connection conn = null;
         try {
-            ResultSet rs = Main.getStorage(virtualSensorName).executeQueryWithResultSet(
-                    new StringBuilder("SELECT MAX(timed) FROM ").append(virtualSensorName),
-                    conn = Main.getStorage(virtualSensorName).getConnection());
-            if (rs.next()) {
-                timedToRemove = rs.getLong(1);
+            timedToRemove = getMaxTimed(virtualSensorName);
+            if (timedToRemove == Long.MIN_VALUE) {
+                timedToRemove = 0;
             }
-
         } catch (SQLException e) {
             logger.error(e.getMessage(), e);
+        }
+        return getStatementRemoveDataBefore(virtualSensorName, timedToRemove - storageSize);
+    }
+
+    /**
+     * Generates a SQL statement removing the rows of a table older than the
+     * given timestamp.
+     *
+     * @param tableName the name of the table
+     * @param timed     the timestamp of the oldest row to keep
+     * @return a StringBuilder containing the delete statement
+     */
+    public StringBuilder getStatementRemoveDataBefore(String tableName, long timed) {
+        return new StringBuilder().append("delete from ").append(tableName).append(" where ")
+                .append(tableName).append(".timed < ").append(timed);
+    }
+
+    /**
+     * Returns the newest timestamp of a table.
+     *
+     * @param tableName the name of the table
+     * @return the largest timed value, or Long.MIN_VALUE if the table is empty
+     * @throws SQLException if the query fails
+     */
+    public long getMaxTimed(String tableName) throws SQLException {
+        Connection conn = null;
+        ResultSet rs = null;
+        try {
+            rs = executeQueryWithResultSet(new StringBuilder("SELECT MAX(timed) FROM ").append(tableName),
+                    conn = getConnection());
+            if (rs.next()) {
+                long timed = rs.getLong(1);
+                if (!rs.wasNull()) {
+                    return timed;
+                }
+            }
+            return Long.MIN_VALUE;
         } finally {
-            Main.getStorage(virtualSensorName).close(conn);
+            close(rs);
+            close(conn);
         }
-        query = new StringBuilder().append("delete from ").append(virtualSensorName).append(" where ")
-                .append(virtualSensorName).append(".timed < ").append(timedToRemove);
-        query.append(" - ").append(storageSize);
-        return query;
+    }
+
+    /**
+     * Drops the time partitions of a table which only hold rows older than the
+     * given timestamp. Dropping a whole partition is much cheaper than
+     * deleting its rows, the rows left in the partition holding the timestamp
+     * still have to be deleted afterwards.
+     * <p>
+     * Tables are not partitioned by default, storages laying them out in time
+     * partitions override this method.
+     *
+     * @param tableName the name of the table
+     * @param timed     the timestamp of the oldest row to keep
+     * @return the number of partitions dropped
+     * @throws SQLException if dropping the partitions fails
+     */
+    public int dropPartitionsBefore(String tableName, long timed) throws SQLException {
+        return 0;
     }
 
     /**
@@ -463,6 +536,9 @@ public abstract class StorageManager {
             if(logger.isDebugEnabled()){
                 logger.debug(e.getMessage(), e);
 		    }
+        } finally {
+            // the connection may come from a statement, it is then not the borrowed proxy
+            connections.release(conn);
         }
     }
 
@@ -553,6 +629,7 @@ public abstract class StorageManager {
 		    }
             prepareStatement = connection.prepareStatement(stmt);
             prepareStatement.execute();
+            insertPlans.remove(tableName.toString().toLowerCase());
         } catch (SQLException e) {
             logger.info(e.getMessage(), e);
         }
@@ -823,7 +900,27 @@ public abstract class StorageManager {
      */
     public DataEnumerator streamedExecuteQuery(String query, boolean binaryFieldsLinked, Connection conn)
             throws SQLException {
-        return new DataEnumerator(this, conn.prepareStatement(query), binaryFieldsLinked);
+        return streamedExecuteQuery(query, binaryFieldsLinked, conn, STREAMED_FETCH_SIZE);
+    }
+
+    /**
+     * Executes a query and returns a DataEnumerator reading the results through
+     * a server-side cursor, fetchSize rows at a time, so that the memory used
+     * does not depend on the number of rows.
+     *
+     * @param query              the SQL query to execute
+     * @param binaryFieldsLinked a flag indicating whether binary fields are linked
+     * @param conn               the database connection, closed with the
+     *                           enumerator
+     * @param fetchSize          the number of rows fetched at a time
+     * @return a DataEnumerator object for streaming the query results
+     * @throws SQLException if an error occurs while executing the query
+     */
+    public DataEnumerator streamedExecuteQuery(String query, boolean binaryFieldsLinked, Connection conn,
+            int fetchSize) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        ps.setFetchSize(fetchSize);
+        return new DataEnumerator(this, ps, binaryFieldsLinked);
     }
 
     /**
@@ -987,92 +1084,11 @@ public abstract class StorageManager {
     public void executeInsert(CharSequence tableName, DataField[] fields, StreamElement streamElement,
             Connection connection) throws SQLException {
         PreparedStatement ps = null;
-        String query = getStatementInsert(tableName, fields).toString();
+        InsertPlan plan = getInsertPlan(tableName, fields);
+        String query = plan.getSql();
         try {
             ps = connection.prepareStatement(query);
-            int counter = 1;
-            for (DataField dataField : fields) {
-                if (dataField.getName().equalsIgnoreCase("timed")) {
-                    continue;
-                }
-
-                Serializable value = streamElement.getData(dataField.getName());
-
-                switch (dataField.getDataTypeID()) {
-                    case DataTypes.VARCHAR:
-                        if (value == null) {
-                            ps.setNull(counter, Types.VARCHAR);
-                        } else {
-                            ps.setString(counter, value.toString());
-                        }
-                        break;
-                    case DataTypes.CHAR:
-                        if (value == null) {
-                            ps.setNull(counter, Types.CHAR);
-                        } else {
-                            ps.setString(counter, value.toString());
-                        }
-                        break;
-                    case DataTypes.INTEGER:
-                        if (value == null) {
-                            ps.setNull(counter, Types.INTEGER);
-                        } else {
-                            ps.setInt(counter, ((Number) value).intValue());
-                        }
-                        break;
-                    case DataTypes.SMALLINT:
-                        if (value == null) {
-                            ps.setNull(counter, Types.SMALLINT);
-                        } else {
-                            ps.setShort(counter, ((Number) value).shortValue());
-                        }
-                        break;
-                    case DataTypes.TINYINT:
-                        if (value == null) {
-                            ps.setNull(counter, Types.TINYINT);
-                        } else {
-                            ps.setByte(counter, ((Number) value).byteValue());
-                        }
-                        break;
-                    case DataTypes.DOUBLE:
-                        if (value == null) {
-                            ps.setNull(counter, Types.DOUBLE);
-                        } else {
-                            ps.setDouble(counter, ((Number) value).doubleValue());
-                        }
-                        break;
-                    case DataTypes.FLOAT:
-                        if (value == null) {
-                            ps.setNull(counter, Types.FLOAT);
-                        } else {
-                            ps.setFloat(counter, ((Number) value).floatValue());
-                        }
-                        break;
-                    case DataTypes.BIGINT:
-                        if (value == null) {
-                            ps.setNull(counter, Types.BIGINT);
-                        } else {
-                            ps.setLong(counter, ((Number) value).longValue());
-                        }
-
-                        break;
-                    case DataTypes.BINARY:
-                        if (value == null) {
-                            ps.setNull(counter, Types.BINARY);
-                        } else {
-                            ps.setBytes(counter, (byte[]) value);
-                        }
-
-                        break;
-                    default:
-                        logger.error("The type conversion is not supported for : "
-                                + dataField.getName() + "("
-                                + dataField.getDataTypeID() + ") : ");
-                        break;
-                }
-                counter++;
-            }
-            ps.setLong(counter, streamElement.getTimeStamp());
+            plan.bind(ps, streamElement);
             ps.execute();
         } catch (GSNRuntimeException e) {
             // if (e.getType() == GSNRuntimeException.UNEXPECTED_VIRTUAL_SENSOR_REMOVAL) {
@@ -1098,6 +1114,129 @@ public abstract class StorageManager {
         }
     }
 
+    /**
+     * Returns the compiled insert statement of the table, compiling it the
+     * first time or when the fields changed.
+     */
+    InsertPlan getInsertPlan(CharSequence tableName, DataField[] fields) {
+        String key = tableName.toString().toLowerCase();
+        InsertPlan plan = insertPlans.get(key);
+        if (plan == null || !plan.isFor(fields)) {
+            plan = new InsertPlan(fields, getStatementInsert(tableName, fields));
+            insertPlans.put(key, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Inserts the stream elements into the specified table in a single JDBC
+     * batch and transaction. If the batch fails (e.g. because of a duplicate
+     * entry), it is rolled back and the elements are inserted one by one so
+     * that only the faulty elements are dropped.
+     *
+     * @param tableName      the name of the table to insert into
+     * @param fields         the array of data fields to insert
+     * @param streamElements the stream elements to insert
+     * @throws PartialInsertException if only some of the elements could be
+     *                                inserted, it holds them
+     * @throws SQLException if an error occurs during the insert operation
+     */
+    public void executeBatchInsert(CharSequence tableName, DataField[] fields, List<StreamElement> streamElements)
+            throws SQLException {
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            executeBatchInsert(tableName, fields, streamElements, connection);
+        } finally {
+            close(connection);
+        }
+    }
+
+    /**
+     * Same as {@link #executeBatchInsert(CharSequence, DataField[], List)} on
+     * the given connection.
+     */
+    public void executeBatchInsert(CharSequence tableName, DataField[] fields, List<StreamElement> streamElements,
+            Connection connection) throws SQLException {
+        if (streamElements.size() == 1) {
+            executeInsert(tableName, fields, streamElements.get(0), connection);
+            return;
+        }
+        PreparedStatement ps = null;
+        InsertPlan plan = getInsertPlan(tableName, fields);
+        boolean autoCommit = connection.getAutoCommit();
+        try {
+            connection.setAutoCommit(false);
+            ps = connection.prepareStatement(plan.getSql());
+            for (StreamElement streamElement : streamElements) {
+                plan.bind(ps, streamElement);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            close(ps);
+            ps = null;
+            connection.setAutoCommit(autoCommit);
+            if(logger.isDebugEnabled()){
+                logger.debug("Batch insert of " + streamElements.size() + " stream elements into " + tableName
+                    + " failed (" + e.getMessage() + "), falling back to single inserts.");
+            }
+            SQLException last = null;
+            List<StreamElement> inserted = new ArrayList<StreamElement>(streamElements.size());
+            for (StreamElement streamElement : streamElements) {
+                try {
+                    executeInsert(tableName, fields, streamElement, connection);
+                    inserted.add(streamElement);
+                } catch (SQLException se) {
+                    last = se;
+                }
+            }
+            if (last != null && inserted.isEmpty()) {
+                throw last;
+            }
+            if (last != null) {
+                throw new PartialInsertException(tableName, streamElements.size(), inserted, last);
+            }
+        } finally {
+            close(ps);
+            if (connection.getAutoCommit() != autoCommit) {
+                connection.setAutoCommit(autoCommit);
+            }
+        }
+    }
+
+    /**
+     * Inserts a large number of stream elements, e.g. a backfill, with the
+     * fastest way the database offers. By default the same as
+     * {@link #executeBatchInsert(CharSequence, DataField[], List)}.
+     *
+     * @param tableName      the name of the table to insert into
+     * @param fields         the array of data fields to insert
+     * @param streamElements the stream elements to insert
+     * @throws SQLException if an error occurs during the insert operation
+     */
+    public void executeBulkInsert(CharSequence tableName, DataField[] fields, List<StreamElement> streamElements)
+            throws SQLException {
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            executeBulkInsert(tableName, fields, streamElements, connection);
+        } finally {
+            close(connection);
+        }
+    }
+
+    /**
+     * Same as {@link #executeBulkInsert(CharSequence, DataField[], List)} on
+     * the given connection.
+     */
+    public void executeBulkInsert(CharSequence tableName, DataField[] fields, List<StreamElement> streamElements,
+            Connection connection) throws SQLException {
+        executeBatchInsert(tableName, fields, streamElements, connection);
+    }
+
     /***************************************************************************
      * Statement Generators
      **************************************************************************/
@@ -1260,7 +1399,7 @@ public abstract class StorageManager {
             logger.debug("Asking a con. to DB: " + pool.getUrl() + " => busy: " + pool.getNumActive() + ", max-size: "
                 + pool.getMaxTotal() + ", idle: " + pool.getNumIdle());
         }
-        return pool.getConnection();
+        return connections.borrow();
     }
 
     /**
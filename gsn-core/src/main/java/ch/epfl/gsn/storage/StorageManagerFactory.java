@@ -52,6 +52,20 @@ public class StorageManagerFactory {
      */
     public static StorageManager getInstance(String driver, String username, String password, String databaseURL,
             int maxDBConnections) {
+        return getInstance(driver, null, username, password, databaseURL, maxDBConnections);
+    }
+
+    /**
+     * Same as {@link #getInstance(String, String, String, String, int)}, the
+     * dialect selecting between the implementations for the same driver: with
+     * the PostgreSQL driver "postgres" gives a plain
+     * {@link PostgresStorageManager}, otherwise (by default) a
+     * {@link TimescaleStorageManager}.
+     *
+     * @param dialect the flavour of the database, may be null
+     */
+    public static StorageManager getInstance(String driver, String dialect, String username, String password,
+            String databaseURL, int maxDBConnections) {
         //
         StorageManager storageManager = null;
         // Select the correct implementation
@@ -64,7 +78,11 @@ public class StorageManagerFactory {
         } else if ("org.h2.Driver".equalsIgnoreCase(driver)) {
             storageManager = new H2StorageManager();
         } else if ("org.postgresql.Driver".equalsIgnoreCase(driver)) {
-            storageManager = new PostgresStorageManager();
+            if ("postgres".equalsIgnoreCase(dialect) || "postgresql".equalsIgnoreCase(dialect)) {
+                storageManager = new PostgresStorageManager();
+            } else {
+                storageManager = new TimescaleStorageManager();
+            }
         } else {
             logger.error(new StringBuilder().append("The GSN doesn't support the database driver : ").append(driver)
                     .toString());
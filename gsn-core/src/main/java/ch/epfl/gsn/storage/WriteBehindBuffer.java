@@ -0,0 +1,439 @@
+package ch.epfl.gsn.storage;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.LoggerFactory;
+
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.monitoring.Monitorable;
+import ch.epfl.gsn.utils.TimingWheel;
+
+import org.slf4j.Logger;
+
+/**
+ * Write-behind buffer of the output table of a virtual sensor.
+ * <p>
+ * The rows published by the virtual sensor are queued in memory and written
+ * by the writer threads of its storage in JDBC batches of up to
+ * <code>batchSize</code> rows, each committed once. Each storage has its own
+ * writer threads, so that a slow database doesn't hold back the tables of the
+ * other ones, and the rows of a table are written by one thread at a time, in
+ * the order they were queued. Writing starts as soon as a batch is full, or
+ * <code>maxDelay</code> milliseconds after the first row was queued, and
+ * goes on with the rows queued in the meantime until the buffer is empty, one
+ * batch per task so that the tables share the writer threads. The
+ * buffer holds at most {@link #CAPACITY_IN_BATCHES} batches, publishing
+ * blocks while it is full.
+ * <p>
+ * When the rows are acknowledged depends on the write-ack of the virtual
+ * sensor:
+ * <ul>
+ * <li><code>sync</code>: publishing waits until the rows are committed.</li>
+ * <li><code>async</code>: publishing goes on, the callback given with the rows
+ * (e.g. the notification of the data listeners) runs once they are
+ * written, or failed to be.</li>
+ * <li><code>queued</code>: the rows are acknowledged as soon as they are
+ * queued, the data listeners don't wait for the database.</li>
+ * </ul>
+ * The buffers are flushed when the virtual sensor is unloaded and on
+ * shutdown. The time the oldest queued row has been waiting is monitored as
+ * the lag of the buffer.
+ */
+public class WriteBehindBuffer implements Monitorable {
+
+	public static final String ACK_SYNC = "sync";
+
+	public static final String ACK_ASYNC = "async";
+
+	public static final String ACK_QUEUED = "queued";
+
+	public static final int CAPACITY_IN_BATCHES = 8;
+
+	private static final int WRITER_THREADS = 2;
+
+	private static final transient Logger logger = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+	private static final ConcurrentHashMap<String, WriteBehindBuffer> buffers = new ConcurrentHashMap<String, WriteBehindBuffer>();
+
+	private static final ConcurrentHashMap<StorageManager, ThreadPoolExecutor> writers = new ConcurrentHashMap<StorageManager, ThreadPoolExecutor>();
+
+	private static final AtomicInteger writerCount = new AtomicInteger();
+
+	private final StorageManager storage;
+
+	private final String tableName;
+
+	private final DataField[] fields;
+
+	private final int batchSize;
+
+	private final int maxDelay;
+
+	private final int capacity;
+
+	private final ArrayDeque<Pending> pending = new ArrayDeque<Pending>();
+
+	private int pendingRows = 0;
+
+	private boolean writing = false;
+
+	private long writingQueuedAt = -1;
+
+	private TimingWheel.Timeout deadline = null;
+
+	private final Runnable drainTask = new Runnable() {
+		public void run() {
+			drain();
+		}
+	};
+
+	private long writtenRows = 0;
+
+	private long batchCount = 0;
+
+	private long failedRows = 0;
+
+	/**
+	 * Called by the writer thread once the rows given to
+	 * {@link WriteBehindBuffer#add(List, Callback, boolean)} are written.
+	 */
+	public interface Callback {
+		/**
+		 * @param error null if the rows were written, the cause of the
+		 *              failure otherwise, a {@link PartialInsertException}
+		 *              holding the rows written if only some of them were
+		 */
+		void written(SQLException error);
+	}
+
+	private WriteBehindBuffer(StorageManager storage, String tableName, DataField[] fields, int batchSize,
+			int maxDelay) {
+		this.storage = storage;
+		this.tableName = tableName;
+		this.fields = fields;
+		this.batchSize = batchSize;
+		this.maxDelay = maxDelay;
+		this.capacity = batchSize * CAPACITY_IN_BATCHES;
+	}
+
+	/**
+	 * Creates the buffer of a table, replacing (after flushing it) the
+	 * previous one.
+	 */
+	public static WriteBehindBuffer register(StorageManager storage, String tableName, DataField[] fields,
+			int batchSize, int maxDelay) {
+		WriteBehindBuffer buffer = new WriteBehindBuffer(storage, tableName.toLowerCase(), fields,
+				Math.max(1, batchSize), Math.max(0, maxDelay));
+		WriteBehindBuffer previous = buffers.put(buffer.tableName, buffer);
+		if (previous != null) {
+			previous.flush();
+		}
+		logger.info("Rows of " + tableName + " are written behind in batches of " + buffer.batchSize
+				+ " rows or after " + buffer.maxDelay + " ms.");
+		return buffer;
+	}
+
+	/**
+	 * Flushes and removes the buffer of a table, if any.
+	 */
+	public static void unregister(String tableName) {
+		WriteBehindBuffer buffer = buffers.remove(tableName.toLowerCase());
+		if (buffer != null) {
+			buffer.flush();
+		}
+	}
+
+	/**
+	 * @return the buffer of the table, or null if its rows are written
+	 *         synchronously
+	 */
+	public static WriteBehindBuffer find(String tableName) {
+		return buffers.get(tableName.toLowerCase());
+	}
+
+	/**
+	 * Queues rows to be written.
+	 *
+	 * @param rows      the stream elements to insert
+	 * @param onWritten called after the rows were written or failed to be,
+	 *                  may be null
+	 * @param ack       if true, waits until the rows are committed
+	 * @throws SQLException if ack is set and writing the rows failed
+	 */
+	public void add(List<StreamElement> rows, Callback onWritten, boolean ack) throws SQLException {
+		Pending entry = new Pending(rows, onWritten, ack);
+		synchronized (pending) {
+			try {
+				while (pendingRows > 0 && pendingRows + rows.size() > capacity) {
+					pending.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting for the write-behind buffer of " + tableName, e);
+			}
+			pending.add(entry);
+			pendingRows += rows.size();
+			if (pendingRows >= batchSize || maxDelay == 0) {
+				startWriting();
+			} else if (deadline == null && !writing) {
+				deadline = TimingWheel.getInstance().schedule(new Runnable() {
+					public void run() {
+						synchronized (pending) {
+							deadline = null;
+							startWriting();
+						}
+					}
+				}, maxDelay);
+			}
+		}
+		if (ack) {
+			entry.await();
+		}
+	}
+
+	/**
+	 * Writes all the queued rows and waits for them to be committed.
+	 */
+	public void flush() {
+		synchronized (pending) {
+			try {
+				while (writing || !pending.isEmpty()) {
+					startWriting();
+					pending.wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return the number of rows waiting to be written
+	 */
+	public int getPendingRows() {
+		synchronized (pending) {
+			return pendingRows;
+		}
+	}
+
+	public long getWrittenRows() {
+		synchronized (pending) {
+			return writtenRows;
+		}
+	}
+
+	public long getBatchCount() {
+		synchronized (pending) {
+			return batchCount;
+		}
+	}
+
+	/**
+	 * @return the time in milliseconds the oldest row not yet written has
+	 *         been waiting, 0 if all the rows are written
+	 */
+	public long getLag() {
+		synchronized (pending) {
+			long oldest = writingQueuedAt;
+			if (oldest < 0 && !pending.isEmpty()) {
+				oldest = pending.peek().queuedAt;
+			}
+			return oldest < 0 ? 0 : System.currentTimeMillis() - oldest;
+		}
+	}
+
+	public Hashtable<String, Object> getStatistics() {
+		Hashtable<String, Object> stat = new Hashtable<String, Object>();
+		String prefix = "vs." + tableName.replaceAll("\\.", "_") + ".write-behind.";
+		synchronized (pending) {
+			stat.put(prefix + "queue.depth", pendingRows);
+			stat.put(prefix + "written.counter", writtenRows);
+			stat.put(prefix + "failed.counter", failedRows);
+			stat.put(prefix + "batch.counter", batchCount);
+		}
+		stat.put(prefix + "queue.lag", getLag());
+		return stat;
+	}
+
+	// called with the pending lock held
+	private void startWriting() {
+		if (writing || pending.isEmpty()) {
+			return;
+		}
+		writing = true;
+		if (deadline != null) {
+			deadline.cancel();
+			deadline = null;
+		}
+		getWriters(storage).execute(drainTask);
+	}
+
+	/**
+	 * Writes one batch, then hands the writer thread over to the other tables
+	 * of the storage: the rest of the buffer is written by a new task queued
+	 * behind theirs.
+	 */
+	private void drain() {
+		List<Pending> batch = new ArrayList<Pending>();
+		List<StreamElement> rows = new ArrayList<StreamElement>();
+		synchronized (pending) {
+			while (!pending.isEmpty() && (rows.isEmpty() || rows.size() + pending.peek().rows.size() <= batchSize)) {
+				Pending entry = pending.poll();
+				batch.add(entry);
+				rows.addAll(entry.rows);
+			}
+			if (batch.isEmpty()) {
+				writing = false;
+				writingQueuedAt = -1;
+				pending.notifyAll();
+				return;
+			}
+			writingQueuedAt = batch.get(0).queuedAt;
+		}
+		SQLException error = write(rows);
+		Set<StreamElement> inserted = null;
+		if (error instanceof PartialInsertException) {
+			inserted = Collections.newSetFromMap(new IdentityHashMap<StreamElement, Boolean>());
+			inserted.addAll(((PartialInsertException) error).getInserted());
+		}
+		synchronized (pending) {
+			pendingRows -= rows.size();
+			int written = error == null ? rows.size() : inserted == null ? 0 : inserted.size();
+			writtenRows += written;
+			failedRows += rows.size() - written;
+			batchCount++;
+			writingQueuedAt = -1;
+			pending.notifyAll();
+		}
+		for (Pending entry : batch) {
+			// the rows of the other entries may be the ones which failed
+			entry.done(inserted != null && inserted.containsAll(entry.rows) ? null : error);
+		}
+		synchronized (pending) {
+			if (pending.isEmpty()) {
+				writing = false;
+				pending.notifyAll();
+				return;
+			}
+		}
+		getWriters(storage).execute(drainTask);
+	}
+
+	private SQLException write(List<StreamElement> rows) {
+		Connection connection = null;
+		try {
+			connection = storage.getConnection();
+			if (rows.size() >= StorageManager.BULK_INSERT_THRESHOLD) {
+				storage.executeBulkInsert(tableName, fields, rows, connection);
+			} else {
+				storage.executeBatchInsert(tableName, fields, rows, connection);
+			}
+			return null;
+		} catch (SQLException e) {
+			logger.error("Writing " + rows.size() + " rows into " + tableName + " failed: " + e.getMessage(), e);
+			return e;
+		} finally {
+			storage.close(connection);
+		}
+	}
+
+	private static synchronized ThreadPoolExecutor getWriters(StorageManager storage) {
+		ThreadPoolExecutor executor = writers.get(storage);
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(WRITER_THREADS, WRITER_THREADS, 60, TimeUnit.SECONDS,
+					new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "write-behind-" + writerCount.incrementAndGet());
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			executor.allowCoreThreadTimeOut(true);
+			writers.put(storage, executor);
+		}
+		return executor;
+	}
+
+	/**
+	 * Flushes all the buffers and stops the writer threads.
+	 */
+	public static void shutdown() {
+		for (WriteBehindBuffer buffer : buffers.values()) {
+			buffer.flush();
+		}
+		buffers.clear();
+		synchronized (WriteBehindBuffer.class) {
+			for (ThreadPoolExecutor executor : writers.values()) {
+				executor.shutdown();
+			}
+			writers.clear();
+		}
+	}
+
+	private static class Pending {
+
+		private final List<StreamElement> rows;
+
+		private final Callback onWritten;
+
+		private final boolean ack;
+
+		private final long queuedAt = System.currentTimeMillis();
+
+		private boolean done = false;
+
+		private SQLException error;
+
+		private Pending(List<StreamElement> rows, Callback onWritten, boolean ack) {
+			this.rows = rows;
+			this.onWritten = onWritten;
+			this.ack = ack;
+		}
+
+		private void done(SQLException error) {
+			if (onWritten != null) {
+				try {
+					onWritten.written(error);
+				} catch (Exception e) {
+					logger.error(e.getMessage(), e);
+				}
+			}
+			if (ack) {
+				synchronized (this) {
+					this.error = error;
+					this.done = true;
+					notifyAll();
+				}
+			}
+		}
+
+		private synchronized void await() throws SQLException {
+			try {
+				while (!done) {
+					wait();
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new SQLException("Interrupted while waiting for the rows to be written", e);
+			}
+			if (error != null) {
+				throw error;
+			}
+		}
+	}
+}
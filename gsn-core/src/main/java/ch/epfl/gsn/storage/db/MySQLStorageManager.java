@@ -345,13 +345,14 @@ public class MySQLStorageManager extends StorageManager {
      *                           linked.
      * @param conn               The database connection to use for executing the
      *                           query.
+     * @param fetchSize          Ignored, MySQL only streams the rows one by one.
      * @return A DataEnumerator for streaming the query results.
      * @throws SQLException If a database access error occurs or the SQL query is
      *                      invalid.
      */
     @Override
-    public DataEnumerator streamedExecuteQuery(String query, boolean binaryFieldsLinked, Connection conn)
-            throws SQLException {
+    public DataEnumerator streamedExecuteQuery(String query, boolean binaryFieldsLinked, Connection conn,
+            int fetchSize) throws SQLException {
         PreparedStatement ps = null;
         // Support streamed queries for MySQL -- see MySQL Implementation notes:
         // http://dev.mysql.com/doc/refman/5.0/en/connector-j-reference-implementation-notes.html
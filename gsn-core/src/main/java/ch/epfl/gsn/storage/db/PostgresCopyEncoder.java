@@ -0,0 +1,185 @@
+package ch.epfl.gsn.storage.db;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.beans.StreamSchema;
+
+/**
+ * Encodes stream elements in the binary format of the PostgreSQL
+ * <code>COPY ... FROM STDIN (FORMAT binary)</code> command, for the columns
+ * created by {@link PostgresStorageManager#getStatementCreateTable(String, DataField[])}.
+ * <p>
+ * The values are written with the length prefix and the network byte order
+ * the server expects: BIGINT as int8, INTEGER as int4, SMALLINT and TINYINT
+ * as int2, DOUBLE as float8, FLOAT as float4, the strings in UTF-8 and the
+ * binaries as bytea. The timestamp is the last column.
+ */
+public class PostgresCopyEncoder {
+
+    private static final byte[] SIGNATURE = { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0 };
+
+    private final String[] names;
+
+    private final byte[] types;
+
+    private final String statement;
+
+    private DataOutputStream out;
+
+    private StreamSchema schema;
+
+    private int[] index;
+
+    /**
+     * @param tableName the table to copy into
+     * @param fields    the fields of the table, the timed and pk ones are
+     *                  skipped
+     */
+    public PostgresCopyEncoder(CharSequence tableName, DataField[] fields) {
+        List<DataField> columns = new ArrayList<DataField>(fields.length);
+        for (DataField field : fields) {
+            if (!field.getName().equalsIgnoreCase("timed") && !field.getName().equalsIgnoreCase("pk")) {
+                columns.add(field);
+            }
+        }
+        names = new String[columns.size()];
+        types = new byte[columns.size()];
+        StringBuilder sb = new StringBuilder("COPY ").append(tableName).append(" (");
+        for (int i = 0; i < names.length; i++) {
+            names[i] = columns.get(i).getName();
+            types[i] = columns.get(i).getDataTypeID();
+            sb.append(names[i]).append(", ");
+        }
+        statement = sb.append("timed) FROM STDIN (FORMAT binary)").toString();
+    }
+
+    /**
+     * @return the COPY statement reading the encoded rows
+     */
+    public String getStatement() {
+        return statement;
+    }
+
+    /**
+     * Writes the header, the rows and the trailer of the copy.
+     */
+    public void encode(List<StreamElement> rows, OutputStream target) throws IOException {
+        out = new DataOutputStream(target);
+        writeHeader();
+        for (StreamElement se : rows) {
+            writeRow(se);
+        }
+        writeTrailer();
+    }
+
+    private void writeHeader() throws IOException {
+        out.write(SIGNATURE);
+        out.writeInt(0); // flags
+        out.writeInt(0); // header extension length
+    }
+
+    private void writeRow(StreamElement se) throws IOException {
+        if (se.getSchema() != schema) {
+            schema = se.getSchema();
+            index = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                index[i] = schema.indexOf(names[i]);
+            }
+        }
+        out.writeShort(names.length + 1);
+        for (int i = 0; i < names.length; i++) {
+            writeValue(se, i);
+        }
+        out.writeInt(8);
+        out.writeLong(se.getTimeStamp());
+    }
+
+    private void writeTrailer() throws IOException {
+        out.writeShort(-1);
+        out.flush();
+    }
+
+    private void writeValue(StreamElement se, int i) throws IOException {
+        int idx = index[i];
+        byte type = types[i];
+        if (idx >= 0 && se.hasPrimitiveValue(idx)) {
+            if (se.isNull(idx)) {
+                out.writeInt(-1);
+                return;
+            }
+            switch (type) {
+                case DataTypes.DOUBLE:
+                case DataTypes.FLOAT:
+                    writeNumber(type, se.getDouble(idx), 0);
+                    return;
+                case DataTypes.BIGINT:
+                case DataTypes.INTEGER:
+                case DataTypes.SMALLINT:
+                case DataTypes.TINYINT:
+                    writeNumber(type, 0, se.getLong(idx));
+                    return;
+                default:
+                    break;
+            }
+        }
+        Serializable value = idx < 0 ? se.getData(names[i]) : se.getData(idx);
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        switch (type) {
+            case DataTypes.VARCHAR:
+            case DataTypes.CHAR:
+                byte[] text = value.toString().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(text.length);
+                out.write(text);
+                break;
+            case DataTypes.BINARY:
+                byte[] bytes = (byte[]) value;
+                out.writeInt(bytes.length);
+                out.write(bytes);
+                break;
+            default:
+                Number number = (Number) value;
+                writeNumber(type, number.doubleValue(), number.longValue());
+                break;
+        }
+    }
+
+    private void writeNumber(byte type, double d, long l) throws IOException {
+        switch (type) {
+            case DataTypes.DOUBLE:
+                out.writeInt(8);
+                out.writeDouble(d);
+                break;
+            case DataTypes.FLOAT:
+                out.writeInt(4);
+                out.writeFloat((float) d);
+                break;
+            case DataTypes.BIGINT:
+                out.writeInt(8);
+                out.writeLong(l);
+                break;
+            case DataTypes.INTEGER:
+                out.writeInt(4);
+                out.writeInt((int) l);
+                break;
+            case DataTypes.SMALLINT:
+            case DataTypes.TINYINT:
+                out.writeInt(2);
+                out.writeShort((short) l);
+                break;
+            default:
+                throw new IOException("The type " + type + " can't be copied.");
+        }
+    }
+}
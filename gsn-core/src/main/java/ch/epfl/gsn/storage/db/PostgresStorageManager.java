@@ -31,26 +31,31 @@ package ch.epfl.gsn.storage.db;
 
 import org.slf4j.LoggerFactory;
 
-import ch.epfl.gsn.Main;
-import ch.epfl.gsn.VirtualSensor;
-import ch.epfl.gsn.beans.BeansInitializer;
 import ch.epfl.gsn.beans.DataField;
 import ch.epfl.gsn.beans.DataTypes;
-import ch.epfl.gsn.beans.StorageConfig;
-import ch.epfl.gsn.beans.VSensorConfig;
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.storage.DataEnumerator;
 import ch.epfl.gsn.storage.StorageManager;
-import ch.epfl.gsn.config.VsConf;
 
 import org.slf4j.Logger;
 
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.sql.Types;
-import java.util.Map;
+import java.util.List;
 
 public class PostgresStorageManager extends StorageManager {
     private static final transient Logger logger = LoggerFactory.getLogger(PostgresStorageManager.class);
 
+    /**
+     * Size in bytes of the buffer between the encoder and the COPY stream.
+     */
+    private static final int COPY_BUFFER_SIZE = 65536;
+
     public PostgresStorageManager() {
         super();
         this.isPostgres = true;
@@ -120,6 +125,18 @@ public class PostgresStorageManager extends StorageManager {
         return 0; // TODO: check error code in Postgres reference
     }
 
+    /**
+     * The PostgreSQL driver only uses a cursor, instead of reading all the rows
+     * at once, when auto-commit is off. The pool restores it when the
+     * connection is given back.
+     */
+    @Override
+    public DataEnumerator streamedExecuteQuery(String query, boolean binaryFieldsLinked, Connection conn,
+            int fetchSize) throws SQLException {
+        conn.setAutoCommit(false);
+        return super.streamedExecuteQuery(query, binaryFieldsLinked, conn, fetchSize);
+    }
+
     /**
      * Adds a LIMIT and OFFSET clause to the given SQL query.
      *
@@ -231,32 +248,9 @@ public class PostgresStorageManager extends StorageManager {
             result.append(" ,");
         }
         
-        //15724800000 -> 6 months
-        long defaulttimerange= 15724800000L;
-        Map<String, VsConf> configs= Main.getInstance().getVsConf();
-        VsConf vs = null;
-        for (String key : configs.keySet()) {
-            if (key.equalsIgnoreCase(tableName)) {
-                vs = configs.get(key);
-                VSensorConfig vsc= BeansInitializer.vsensor(vs);
-                String timerangeString= vsc.getChunkSize();
-                if(timerangeString == null || timerangeString.isEmpty()){
-                    defaulttimerange= 15724800000L;
-                } else {
-                    defaulttimerange= Long.parseLong(timerangeString);
-                }
-                break;
-            }
-        }
-        
-       
         result.append("PRIMARY KEY (PK,timed)");
         ///result.delete(result.length() - 2, result.length());
         result.append(")");
-        result.append("; ");
-        result.append("SELECT create_hypertable(");
-        result.append("'"+tableName+"' ,by_range('timed',"+ defaulttimerange+"));"); //set 7 days range for hypertable
-        //logger.error("result"+result);
         return result;
     }
 
@@ -321,4 +315,39 @@ public class PostgresStorageManager extends StorageManager {
     public String getStatementDifferenceTimeInMillis() {
         return "SELECT extract(epoch FROM now())*1000";
     }
+
+    /**
+     * Streams the stream elements to the table with a binary
+     * <code>COPY FROM STDIN</code> (see {@link PostgresCopyEncoder}), in a
+     * single round trip and without parsing the values on the server. If the
+     * copy fails, e.g. because of a duplicate key, nothing is inserted and
+     * the elements are inserted through a JDBC batch instead.
+     */
+    @Override
+    public void executeBulkInsert(CharSequence tableName, DataField[] fields, List<StreamElement> streamElements,
+            Connection connection) throws SQLException {
+        PostgresCopyEncoder encoder = new PostgresCopyEncoder(tableName, fields);
+        PGCopyOutputStream copy = null;
+        try {
+            copy = new PGCopyOutputStream(connection.unwrap(PGConnection.class), encoder.getStatement(),
+                    COPY_BUFFER_SIZE);
+            encoder.encode(streamElements, copy);
+            copy.endCopy();
+            copy = null;
+            if(logger.isDebugEnabled()){
+                logger.debug("Copied " + streamElements.size() + " stream elements into " + tableName + ".");
+            }
+        } catch (IOException | SQLException e) {
+            logger.warn("Copying " + streamElements.size() + " stream elements into " + tableName
+                    + " failed, falling back to a batch insert: " + e.getMessage());
+            if (copy != null) {
+                try {
+                    copy.cancelCopy();
+                } catch (SQLException ce) {
+                    logger.debug(ce.getMessage(), ce);
+                }
+            }
+            executeBatchInsert(tableName, fields, streamElements, connection);
+        }
+    }
 }
@@ -0,0 +1,303 @@
+package ch.epfl.gsn.storage.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.LoggerFactory;
+
+import ch.epfl.gsn.Main;
+import ch.epfl.gsn.beans.BeansInitializer;
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.beans.VSensorConfig;
+import ch.epfl.gsn.config.VsConf;
+
+import org.slf4j.Logger;
+
+/**
+ * Storage manager for PostgreSQL with the TimescaleDB extension, the default
+ * for the PostgreSQL driver (<code>dialect="postgres"</code> in the storage
+ * element selects the plain {@link PostgresStorageManager}).
+ * <p>
+ * The tables are created as hypertables partitioned on <code>timed</code> in
+ * chunks of <code>timescale-chunk-size</code> milliseconds (6 months by
+ * default). For the output tables of the virtual sensors, in addition:
+ * <ul>
+ * <li>the chunks are compressed once all their rows are older than
+ * {@link #COMPRESS_AFTER_CHUNKS} chunk sizes,</li>
+ * <li>a continuous aggregate <code>&lt;table&gt;_agg_&lt;period&gt;</code> is
+ * created for each period of <code>timescale-aggregates</code> (an hour and
+ * a day by default), holding for each numeric column the
+ * {@link #AGGREGATE_FUNCTIONS} per bucket, named
+ * <code>&lt;function&gt;_&lt;column&gt;</code>. The buckets start at
+ * multiples of the period and are in the <code>timed</code> column.</li>
+ * </ul>
+ * The storage-size of the virtual sensors is enforced by dropping the old
+ * chunks (see {@link #dropPartitionsBefore(String, long)}).
+ */
+public class TimescaleStorageManager extends PostgresStorageManager {
+
+    private static final transient Logger logger = LoggerFactory.getLogger(TimescaleStorageManager.class);
+
+    /**
+     * Default time range in milliseconds of the chunks: 6 months.
+     */
+    public static final long DEFAULT_CHUNK_SIZE = 15724800000L;
+
+    public static final int COMPRESS_AFTER_CHUNKS = 2;
+
+    public static final long[] DEFAULT_AGGREGATE_PERIODS = { 3600000L, 86400000L };
+
+    public static final String[] AGGREGATE_FUNCTIONS = { "avg", "min", "max", "sum", "count" };
+
+    /**
+     * Number of periods of a continuous aggregate refreshed by its policy.
+     */
+    private static final int REFRESH_PERIODS = 3;
+
+    // gives the current time in the unit of timed to the policies
+    private static final String NOW_FUNCTION = "gsn_now_millis";
+
+    private final Set<String> plainTables = ConcurrentHashMap.newKeySet();
+
+    // the continuous aggregates of the tables, looked up once
+    private final Map<String, List<String>> aggregates = new ConcurrentHashMap<String, List<String>>();
+
+    @Override
+    public void initDatabaseAccess(Connection con) throws Exception {
+        executeCommand("CREATE OR REPLACE FUNCTION " + NOW_FUNCTION
+                + "() RETURNS BIGINT LANGUAGE SQL STABLE AS $$ SELECT (extract(epoch FROM now()) * 1000)::BIGINT $$",
+                con);
+        super.initDatabaseAccess(con);
+    }
+
+    @Override
+    public StringBuilder getStatementCreateTable(String tableName, DataField[] structure) {
+        StringBuilder result = super.getStatementCreateTable(tableName, structure);
+        result.append("; SELECT create_hypertable('").append(tableName).append("', by_range('timed', ")
+                .append(getChunkSize(getVSensorConfig(tableName))).append("))");
+        return result;
+    }
+
+    /**
+     * Creates the table as a hypertable and, for the output table of a
+     * virtual sensor, sets up its compression and continuous aggregates. A
+     * failure of the latter is logged, the table is usable without them.
+     */
+    @Override
+    public void executeCreateTable(CharSequence tableName, DataField[] structure, boolean unique,
+            Connection connection) throws SQLException {
+        super.executeCreateTable(tableName, structure, unique, connection);
+        VSensorConfig config = getVSensorConfig(tableName.toString());
+        if (config == null) {
+            return;
+        }
+        String table = tableName.toString().toLowerCase();
+        long chunkSize = getChunkSize(config);
+        executeCommand("SELECT set_integer_now_func('" + table + "', '" + NOW_FUNCTION + "')", connection);
+        executeCommand("ALTER TABLE " + table
+                + " SET (timescaledb.compress, timescaledb.compress_orderby = 'timed DESC')", connection);
+        executeCommand("SELECT add_compression_policy('" + table + "', compress_after => BIGINT '"
+                + chunkSize * COMPRESS_AFTER_CHUNKS + "')", connection);
+
+        List<String> numeric = new ArrayList<String>();
+        for (DataField field : structure) {
+            if (isNumeric(field.getDataTypeID()) && !field.getName().equalsIgnoreCase("timed")
+                    && !field.getName().equalsIgnoreCase("pk")) {
+                numeric.add(field.getName().toLowerCase());
+            }
+        }
+        if (numeric.isEmpty()) {
+            return;
+        }
+        for (long period : getAggregatePeriods(config)) {
+            String view = table + "_agg_" + period;
+            StringBuilder sql = new StringBuilder("CREATE MATERIALIZED VIEW ").append(view)
+                    .append(" WITH (timescaledb.continuous, timescaledb.materialized_only = false)")
+                    .append(" AS SELECT time_bucket(BIGINT '").append(period).append("', timed) AS timed");
+            for (String column : numeric) {
+                for (String function : AGGREGATE_FUNCTIONS) {
+                    sql.append(", ").append(function).append('(').append(column).append(") AS ").append(function)
+                            .append('_').append(column);
+                }
+            }
+            sql.append(" FROM ").append(table).append(" GROUP BY 1 WITH NO DATA");
+            executeCommand(sql.toString(), connection);
+            executeCommand("SELECT add_continuous_aggregate_policy('" + view + "', start_offset => BIGINT '"
+                    + period * REFRESH_PERIODS + "', end_offset => BIGINT '" + period
+                    + "', schedule_interval => INTERVAL '" + Math.min(period, 3600000L) + " milliseconds')",
+                    connection);
+        }
+        // listed again from the catalog, in case a creation failed
+        aggregates.remove(table);
+    }
+
+    /**
+     * Copies the stream elements, then refreshes the continuous aggregates
+     * over the part of their time range older than the range the policies
+     * refresh, e.g. for a backfill.
+     */
+    @Override
+    public void executeBulkInsert(CharSequence tableName, DataField[] fields, List<StreamElement> streamElements,
+            Connection connection) throws SQLException {
+        super.executeBulkInsert(tableName, fields, streamElements, connection);
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (StreamElement se : streamElements) {
+            min = Math.min(min, se.getTimeStamp());
+            max = Math.max(max, se.getTimeStamp());
+        }
+        long now = System.currentTimeMillis();
+        for (String view : getAggregates(tableName.toString().toLowerCase(), connection)) {
+            long period = Long.parseLong(view.substring(view.lastIndexOf('_') + 1));
+            long start = Math.floorDiv(min, period) * period;
+            long end = Math.min((Math.floorDiv(max, period) + 1) * period,
+                    Math.floorDiv(now - period * REFRESH_PERIODS, period) * period);
+            if (start >= end) {
+                continue;
+            }
+            executeCommand("CALL refresh_continuous_aggregate('" + view + "', " + start + ", " + end + ")",
+                    connection);
+        }
+    }
+
+    /**
+     * Drops the chunks of the hypertable holding only rows older than the
+     * given timestamp. Tables which are not hypertables (e.g. created before
+     * TimescaleDB was used) are remembered and only trimmed by deletes. Any
+     * other failure is thrown, the table is tried again next time.
+     */
+    @Override
+    public int dropPartitionsBefore(String tableName, long timed) throws SQLException {
+        if (plainTables.contains(tableName)) {
+            return 0;
+        }
+        StringBuilder query = new StringBuilder("SELECT drop_chunks('").append(tableName)
+                .append("', older_than => ").append(timed).append("::bigint)");
+        Connection conn = null;
+        ResultSet rs = null;
+        int dropped = 0;
+        try {
+            conn = getConnection();
+            if (!isHypertable(tableName, conn)) {
+                plainTables.add(tableName);
+                logger.info("The table " + tableName + " is not a hypertable, its old rows are deleted instead.");
+                return 0;
+            }
+            rs = executeQueryWithResultSet(query, conn);
+            while (rs.next()) {
+                dropped++;
+            }
+        } finally {
+            close(rs);
+            close(conn);
+        }
+        return dropped;
+    }
+
+    private boolean isHypertable(String tableName, Connection connection) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            // the unquoted table names are stored in lower case
+            ps = connection.prepareStatement("SELECT 1 FROM timescaledb_information.hypertables"
+                    + " WHERE hypertable_name = ?");
+            ps.setString(1, tableName.toLowerCase());
+            rs = ps.executeQuery();
+            return rs.next();
+        } finally {
+            close(rs);
+            close(ps);
+        }
+    }
+
+    private List<String> getAggregates(String table, Connection connection) {
+        List<String> views = aggregates.get(table);
+        if (views != null) {
+            return views;
+        }
+        views = new ArrayList<String>();
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = connection.prepareStatement("SELECT view_name FROM timescaledb_information.continuous_aggregates"
+                    + " WHERE hypertable_name = ?");
+            ps.setString(1, table);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                String view = rs.getString(1);
+                if (view.matches(table + "_agg_\\d+")) {
+                    views.add(view);
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("Listing the continuous aggregates of " + table + " failed: " + e.getMessage());
+        } finally {
+            close(rs);
+            close(ps);
+        }
+        aggregates.put(table, views);
+        return views;
+    }
+
+    private static boolean isNumeric(byte type) {
+        switch (type) {
+            case DataTypes.DOUBLE:
+            case DataTypes.FLOAT:
+            case DataTypes.BIGINT:
+            case DataTypes.INTEGER:
+            case DataTypes.SMALLINT:
+            case DataTypes.TINYINT:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static long getChunkSize(VSensorConfig config) {
+        if (config == null || config.getChunkSize() == null || config.getChunkSize().trim().isEmpty()) {
+            return DEFAULT_CHUNK_SIZE;
+        }
+        return Long.parseLong(config.getChunkSize().trim());
+    }
+
+    private static long[] getAggregatePeriods(VSensorConfig config) {
+        String periods = config.getAggregatePeriods();
+        if (periods == null) {
+            return DEFAULT_AGGREGATE_PERIODS;
+        }
+        List<Long> parsed = new ArrayList<Long>();
+        for (String period : periods.split(",")) {
+            if (!period.trim().isEmpty()) {
+                parsed.add(Long.parseLong(period.trim()));
+            }
+        }
+        long[] toReturn = new long[parsed.size()];
+        for (int i = 0; i < toReturn.length; i++) {
+            toReturn[i] = parsed.get(i);
+        }
+        return toReturn;
+    }
+
+    /**
+     * @return the configuration of the virtual sensor writing into the table,
+     *         or null if it is not the output table of a virtual sensor
+     */
+    private static VSensorConfig getVSensorConfig(String tableName) {
+        Map<String, VsConf> configs = Main.getInstance().getVsConf();
+        for (Map.Entry<String, VsConf> entry : configs.entrySet()) {
+            if (entry.getKey().equalsIgnoreCase(tableName)) {
+                return BeansInitializer.vsensor(entry.getValue());
+            }
+        }
+        return null;
+    }
+}
@@ -41,10 +41,12 @@ import org.slf4j.Logger;
 import org.hibernate.Criteria;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
+import org.hibernate.criterion.Restrictions;
 
 import java.io.Serializable;
 import java.util.*;
@@ -61,6 +63,12 @@ public class HibernateStorage implements VirtualSensorStorage {
 
     private static final int PAGE_SIZE = 1000;
 
+    /**
+     * Number of inserts sent to the database in one JDBC batch by
+     * {@link #saveStreamElements(List)}.
+     */
+    public static final int BATCH_SIZE = 50;
+
     /**
      * Creates a new instance of HibernateStorage.
      * 
@@ -125,6 +133,45 @@ public class HibernateStorage implements VirtualSensorStorage {
         }
     }
 
+    /**
+     * Saves a list of StreamElement objects to the database in a single
+     * transaction and returns their generated identifiers.
+     * <p>
+     * The elements are inserted through a stateless session, which keeps no
+     * copy of them, and the inserts are sent to the database by JDBC batches
+     * of {@link #BATCH_SIZE}. Either all the elements are saved or none.
+     *
+     * @param ses the StreamElement objects to be saved
+     * @return the generated identifiers, in the order of the elements
+     * @throws GSNRuntimeException if an error occurs while saving the objects
+     */
+    public List<Serializable> saveStreamElements(List<StreamElement> ses) throws GSNRuntimeException {
+        List<Serializable> pks = new ArrayList<Serializable>(ses.size());
+        StatelessSession session = sf.openStatelessSession();
+        Transaction tx = null;
+        try {
+            tx = session.beginTransaction();
+            for (StreamElement se : ses) {
+                pks.add(session.insert(identifier, se2dm(se)));
+            }
+            tx.commit();
+            return pks;
+        } catch (RuntimeException e) {
+            try {
+                if (tx != null) {
+                    tx.rollback();
+                }
+            } catch (RuntimeException ex) {
+                logger.error("Couldn't roll back transaction.");
+            }
+            logger.warn("Error occurred on inserting data to the database, " + ses.size()
+                    + " stream elements dropped due to: " + e.getMessage());
+            throw new GSNRuntimeException(e.getMessage());
+        } finally {
+            session.close();
+        }
+    }
+
     /**
      * Retrieves a StreamElement from the database based on the provided primary
      * key.
@@ -386,21 +433,39 @@ public class HibernateStorage implements VirtualSensorStorage {
 
     //
 
+    /**
+     * Enumerates the results of a query one page at a time. Each page starts
+     * after the last element of the previous one, on the ordered property and
+     * then on the primary key, instead of an offset which the database would
+     * have to skip row by row.
+     */
     private class PaginatedDataEnumerator implements DataEnumeratorIF {
 
         /** The global max number of result returned */
         private int maxResults;
 
-        private int currentPage;
+        /** The number of elements read so far */
+        private int offset;
 
         private int pageSize;
 
         private Order order;
 
+        private Order pkOrder;
+
+        private String orderProperty;
+
+        private boolean ascending;
+
         private Criterion[] crits;
 
         private Iterator<Map<String, Serializable>> pci;
 
+        /** The ordered property and the primary key of the last element read */
+        private Object lastValue;
+
+        private Object lastPk;
+
         private boolean closed;
 
         private PaginatedDataEnumerator(int pageSize, Order order, Criterion[] crits, int maxResults) {
@@ -408,7 +473,12 @@ public class HibernateStorage implements VirtualSensorStorage {
             this.pageSize = pageSize;
             this.order = order;
             this.crits = crits;
-            currentPage = 0;
+            // Hibernate 3 has no accessor for the property and the direction of an order
+            String[] spec = order.toString().split(" ");
+            orderProperty = spec[0];
+            ascending = spec.length < 2 || "asc".equalsIgnoreCase(spec[1]);
+            pkOrder = ascending ? Order.asc("pk") : Order.desc("pk");
+            offset = 0;
             pci = null; // page content iterator
             if (maxResults == 0) {
                 close();
@@ -436,12 +506,15 @@ public class HibernateStorage implements VirtualSensorStorage {
             }
 
             // Compute the next number of elements to fetch
-            int offset = currentPage * pageSize;
             int mr = pageSize;
             if (maxResults > 0) {
                 int remaining = maxResults - offset;
                 mr = remaining > 0 ? remaining >= pageSize ? pageSize : remaining % pageSize : 0;
             }
+            if (mr == 0) {
+                close();
+                return false;
+            }
 
             // Try to load the next page
             pci = null;
@@ -454,15 +527,29 @@ public class HibernateStorage implements VirtualSensorStorage {
                 for (Criterion criterion : crits) {
                     criteria.add(criterion);
                 }
+                if (lastPk != null && lastValue != null) {
+                    criteria.add(after());
+                } else if (offset > 0) {
+                    // the ordered property of the last element is null
+                    criteria.setFirstResult(offset);
+                }
                 criteria.addOrder(order);
+                if (!"pk".equals(orderProperty)) {
+                    criteria.addOrder(pkOrder);
+                }
                 criteria.setCacheable(true);
                 criteria.setReadOnly(true);
-                criteria.setFirstResult(offset);
                 criteria.setMaxResults(mr);
                 //
-                pci = criteria.list().iterator();
+                List<Map<String, Serializable>> page = criteria.list();
                 tx.commit();
-                currentPage++;
+                if (!page.isEmpty()) {
+                    Map<String, Serializable> last = page.get(page.size() - 1);
+                    lastValue = last.get(orderProperty);
+                    lastPk = last.get("pk");
+                    offset += page.size();
+                }
+                pci = page.iterator();
 
             } catch (RuntimeException e) {
                 try {
@@ -482,6 +569,20 @@ public class HibernateStorage implements VirtualSensorStorage {
             }
         }
 
+        /**
+         * @return the restriction on the elements following the last element
+         *         read, in the order of the query
+         */
+        private Criterion after() {
+            if ("pk".equals(orderProperty)) {
+                return ascending ? Restrictions.gt("pk", lastPk) : Restrictions.lt("pk", lastPk);
+            }
+            Criterion next = ascending ? Restrictions.gt(orderProperty, lastValue)
+                    : Restrictions.lt(orderProperty, lastValue);
+            Criterion tie = ascending ? Restrictions.gt("pk", lastPk) : Restrictions.lt("pk", lastPk);
+            return Restrictions.or(next, Restrictions.and(Restrictions.eq(orderProperty, lastValue), tie));
+        }
+
         /**
          * Retrieves the next StreamElement from the DataEnumerator.
          *
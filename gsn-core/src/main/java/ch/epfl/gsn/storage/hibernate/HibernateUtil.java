@@ -70,6 +70,7 @@ public class HibernateUtil {
         cfg.setProperty("hibernate.jndi.class", GSNContextFactory.class.getCanonicalName());
         cfg.setProperty("hibernate.show_sql", "false");
         cfg.setProperty("hibernate.format_sql", "true");
+        cfg.setProperty("hibernate.jdbc.batch_size", Integer.toString(HibernateStorage.BATCH_SIZE));
         cfg.addXML(entityMapping);
         //
         SessionFactory session = null;
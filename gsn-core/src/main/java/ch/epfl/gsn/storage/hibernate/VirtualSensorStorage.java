@@ -30,6 +30,7 @@
 package ch.epfl.gsn.storage.hibernate;
 
 import java.io.Serializable;
+import java.util.List;
 
 import ch.epfl.gsn.beans.StreamElement;
 import ch.epfl.gsn.utils.GSNRuntimeException;
@@ -47,6 +48,16 @@ public interface VirtualSensorStorage {
      */
     public Serializable saveStreamElement(StreamElement se) throws GSNRuntimeException;
 
+    /**
+     * @param ses The {@link ch.epfl.gsn.beans.StreamElement}s to be stored, in a
+     *            single transaction.
+     * @return The generated identifiers for the primary keys, in the order of
+     *         the elements.
+     * @throws GSNRuntimeException if one of the elements could not be stored, in
+     *                             which case none is stored.
+     */
+    public List<Serializable> saveStreamElements(List<StreamElement> ses) throws GSNRuntimeException;
+
     /**
      * @param pk the primary key.
      * @return the StreamElement associated to the pk primary key or null if it does
@@ -0,0 +1,49 @@
+package ch.epfl.gsn.storage.segment;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the bits written by a {@link BitWriter} from a region of a buffer,
+ * without copying it.
+ */
+final class BitReader {
+
+	private final ByteBuffer buffer;
+
+	private final int offset;
+
+	private long position = 0;
+
+	BitReader(ByteBuffer buffer, int offset) {
+		this.buffer = buffer;
+		this.offset = offset;
+	}
+
+	/**
+	 * Reads n bits, n being at most 64.
+	 */
+	long readBits(int n) {
+		long value = 0;
+		while (n > 0) {
+			int used = (int) (position & 7);
+			int take = Math.min(8 - used, n);
+			int b = buffer.get(offset + (int) (position >>> 3)) & 0xff;
+			value = (value << take) | ((b >>> (8 - used - take)) & ((1 << take) - 1));
+			position += take;
+			n -= take;
+		}
+		return value;
+	}
+
+	boolean readBit() {
+		return readBits(1) == 1;
+	}
+
+	byte[] readBytes() {
+		byte[] bytes = new byte[(int) readBits(32)];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) readBits(8);
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,53 @@
+package ch.epfl.gsn.storage.segment;
+
+import java.util.Arrays;
+
+/**
+ * Growable buffer written bit by bit, most significant bit first.
+ */
+final class BitWriter {
+
+	private byte[] buffer = new byte[1024];
+
+	private long position = 0;
+
+	/**
+	 * Writes the n lowest bits of the value, n being at most 64.
+	 */
+	void writeBits(long value, int n) {
+		ensureCapacity(n);
+		while (n > 0) {
+			int free = 8 - (int) (position & 7);
+			int take = Math.min(free, n);
+			int bits = (int) (value >>> (n - take)) & ((1 << take) - 1);
+			buffer[(int) (position >>> 3)] |= (byte) (bits << (free - take));
+			position += take;
+			n -= take;
+		}
+	}
+
+	void writeBit(boolean bit) {
+		writeBits(bit ? 1 : 0, 1);
+	}
+
+	void writeBytes(byte[] bytes) {
+		writeBits(bytes.length, 32);
+		for (byte b : bytes) {
+			writeBits(b, 8);
+		}
+	}
+
+	/**
+	 * @return the bytes written, the last one padded with zeros
+	 */
+	byte[] toByteArray() {
+		return Arrays.copyOf(buffer, (int) ((position + 7) >>> 3));
+	}
+
+	private void ensureCapacity(int bits) {
+		long needed = (position + bits + 7) >>> 3;
+		if (needed > buffer.length) {
+			buffer = Arrays.copyOf(buffer, (int) Math.max(needed, buffer.length * 2L));
+		}
+	}
+}
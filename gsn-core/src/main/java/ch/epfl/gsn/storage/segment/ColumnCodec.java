@@ -0,0 +1,161 @@
+package ch.epfl.gsn.storage.segment;
+
+/**
+ * Compressed encodings of the columns of a segment.
+ * <ul>
+ * <li>the timestamps are encoded as the difference between successive
+ * deltas, in 1 bit when the rows are regularly spaced,</li>
+ * <li>the floating point values are XORed with the previous value and only
+ * the meaningful bits of the result are written, in 1 bit when the value
+ * didn't change,</li>
+ * <li>the integer values are encoded as the difference with the previous
+ * value, in 1 bit when the value didn't change.</li>
+ * </ul>
+ * Small signed values are zigzag encoded and prefixed with their size class.
+ */
+final class ColumnCodec {
+
+	private static final int[] TIMESTAMP_CLASSES = { 7, 9, 12 };
+
+	private static final int[] INTEGER_CLASSES = { 8, 16, 32 };
+
+	private ColumnCodec() {
+	}
+
+	static void encodeTimestamps(BitWriter out, long[] values, int count) {
+		if (count == 0) {
+			return;
+		}
+		out.writeBits(values[0], 64);
+		long previousDelta = 0;
+		for (int i = 1; i < count; i++) {
+			long delta = values[i] - values[i - 1];
+			writeSigned(out, delta - previousDelta, TIMESTAMP_CLASSES);
+			previousDelta = delta;
+		}
+	}
+
+	static long[] decodeTimestamps(BitReader in, int count) {
+		long[] values = new long[count];
+		if (count == 0) {
+			return values;
+		}
+		values[0] = in.readBits(64);
+		long delta = 0;
+		for (int i = 1; i < count; i++) {
+			delta += readSigned(in, TIMESTAMP_CLASSES);
+			values[i] = values[i - 1] + delta;
+		}
+		return values;
+	}
+
+	static void encodeLongs(BitWriter out, long[] values, int count) {
+		long previous = 0;
+		for (int i = 0; i < count; i++) {
+			writeSigned(out, values[i] - previous, INTEGER_CLASSES);
+			previous = values[i];
+		}
+	}
+
+	static long[] decodeLongs(BitReader in, int count) {
+		long[] values = new long[count];
+		long previous = 0;
+		for (int i = 0; i < count; i++) {
+			previous += readSigned(in, INTEGER_CLASSES);
+			values[i] = previous;
+		}
+		return values;
+	}
+
+	static void encodeDoubles(BitWriter out, double[] values, int count) {
+		if (count == 0) {
+			return;
+		}
+		long previous = Double.doubleToRawLongBits(values[0]);
+		out.writeBits(previous, 64);
+		int previousLeading = -1;
+		int previousTrailing = 0;
+		for (int i = 1; i < count; i++) {
+			long current = Double.doubleToRawLongBits(values[i]);
+			long xor = current ^ previous;
+			previous = current;
+			if (xor == 0) {
+				out.writeBit(false);
+				continue;
+			}
+			out.writeBit(true);
+			int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+			int trailing = Long.numberOfTrailingZeros(xor);
+			if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+				// the meaningful bits fit in those of the previous value
+				out.writeBit(false);
+				out.writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+			} else {
+				int meaningful = 64 - leading - trailing;
+				out.writeBit(true);
+				out.writeBits(leading, 5);
+				out.writeBits(meaningful - 1, 6);
+				out.writeBits(xor >>> trailing, meaningful);
+				previousLeading = leading;
+				previousTrailing = trailing;
+			}
+		}
+	}
+
+	static double[] decodeDoubles(BitReader in, int count) {
+		double[] values = new double[count];
+		if (count == 0) {
+			return values;
+		}
+		long previous = in.readBits(64);
+		values[0] = Double.longBitsToDouble(previous);
+		int leading = 0;
+		int trailing = 0;
+		for (int i = 1; i < count; i++) {
+			if (in.readBit()) {
+				if (in.readBit()) {
+					leading = (int) in.readBits(5);
+					int meaningful = (int) in.readBits(6) + 1;
+					trailing = 64 - leading - meaningful;
+				}
+				previous ^= in.readBits(64 - leading - trailing) << trailing;
+			}
+			values[i] = Double.longBitsToDouble(previous);
+		}
+		return values;
+	}
+
+	private static void writeSigned(BitWriter out, long value, int[] classes) {
+		long zigzag = (value << 1) ^ (value >> 63);
+		if (zigzag == 0) {
+			out.writeBit(false);
+			return;
+		}
+		for (int i = 0; i < classes.length; i++) {
+			if (zigzag >>> classes[i] == 0) {
+				// i + 1 ones then a zero
+				out.writeBits(((1L << (i + 1)) - 1) << 1, i + 2);
+				out.writeBits(zigzag, classes[i]);
+				return;
+			}
+		}
+		out.writeBits((1L << (classes.length + 1)) - 1, classes.length + 1);
+		out.writeBits(zigzag, 64);
+	}
+
+	private static long readSigned(BitReader in, int[] classes) {
+		int ones = 0;
+		while (ones <= classes.length && in.readBit()) {
+			ones++;
+		}
+		long zigzag;
+		if (ones == 0) {
+			return 0;
+		} else if (ones <= classes.length) {
+			zigzag = in.readBits(classes[ones - 1]);
+		} else {
+			zigzag = in.readBits(64);
+		}
+		return (zigzag >>> 1) ^ -(zigzag & 1);
+	}
+}
@@ -0,0 +1,328 @@
+package ch.epfl.gsn.storage.segment;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.beans.StreamSchema;
+import ch.epfl.gsn.data.blob.BlobReference;
+
+/**
+ * Immutable file holding a run of consecutive stream elements column by
+ * column, see {@link ColumnCodec} for the encodings.
+ * <p>
+ * The file starts with a magic number and the format version, followed by the
+ * encoded timestamps and the encoded columns. A column starts with the bitmap
+ * of its null values, the values that are not null follow. The footer holds
+ * the number of rows, the primary key of the first one, the minimum and
+ * maximum timestamps, and the name, type, offset and length of each column.
+ * The file ends with the offset of the footer and the magic number.
+ * <p>
+ * The segments are mapped in memory when opened, the footer is read at once
+ * and the columns are only decoded when a scan overlaps the time range of the
+ * segment.
+ */
+final class Segment {
+
+	static final String EXTENSION = ".seg";
+
+	private static final int MAGIC = 0x4753534e; // GSSN
+
+	private static final byte VERSION = 1;
+
+	private final Path file;
+
+	private final ByteBuffer buffer;
+
+	private final int rows;
+
+	private final long firstPk;
+
+	private final long minTimed;
+
+	private final long maxTimed;
+
+	private final DataField[] fields;
+
+	private final int timedOffset;
+
+	private final int[] offsets;
+
+	private Segment(Path file, ByteBuffer buffer) throws IOException {
+		this.file = file;
+		this.buffer = buffer;
+		int size = buffer.limit();
+		if (size < 13 || buffer.getInt(0) != MAGIC || buffer.getInt(size - 4) != MAGIC) {
+			throw new IOException("The file " + file + " is not a segment.");
+		}
+		if (buffer.get(4) != VERSION) {
+			throw new IOException("The segment " + file + " has the unsupported version " + buffer.get(4) + ".");
+		}
+		ByteBuffer footer = buffer.duplicate();
+		footer.position(buffer.getInt(size - 8));
+		rows = footer.getInt();
+		firstPk = footer.getLong();
+		minTimed = footer.getLong();
+		maxTimed = footer.getLong();
+		timedOffset = footer.getInt();
+		fields = new DataField[footer.getShort()];
+		offsets = new int[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			byte[] name = new byte[footer.getShort()];
+			footer.get(name);
+			fields[i] = new DataField(new String(name, StandardCharsets.UTF_8), footer.get());
+			offsets[i] = footer.getInt();
+		}
+	}
+
+	/**
+	 * Maps a segment file in memory.
+	 */
+	static Segment open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			return new Segment(file, buffer);
+		}
+	}
+
+	/**
+	 * Writes the stream elements into a new segment file, through a temporary
+	 * file so that a segment is never seen half written.
+	 *
+	 * @param fields  the columns to write, the values of each stream element
+	 *                are looked up by name
+	 * @param firstPk the primary key of the first row, the next ones are
+	 *                numbered consecutively
+	 */
+	static Segment write(Path file, DataField[] fields, List<StreamElement> rows, long firstPk) throws IOException {
+		int count = rows.size();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+
+		long[] timestamps = new long[count];
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		for (int i = 0; i < count; i++) {
+			timestamps[i] = rows.get(i).getTimeStamp();
+			min = Math.min(min, timestamps[i]);
+			max = Math.max(max, timestamps[i]);
+		}
+		BitWriter timed = new BitWriter();
+		ColumnCodec.encodeTimestamps(timed, timestamps, count);
+		int timedOffset = out.size();
+		out.write(timed.toByteArray());
+
+		int[] offsets = new int[fields.length];
+		for (int i = 0; i < fields.length; i++) {
+			offsets[i] = out.size();
+			out.write(encodeColumn(fields[i], rows));
+		}
+
+		int footerOffset = out.size();
+		out.writeInt(count);
+		out.writeLong(firstPk);
+		out.writeLong(min);
+		out.writeLong(max);
+		out.writeInt(timedOffset);
+		out.writeShort(fields.length);
+		for (int i = 0; i < fields.length; i++) {
+			byte[] name = fields[i].getName().toLowerCase().getBytes(StandardCharsets.UTF_8);
+			out.writeShort(name.length);
+			out.write(name);
+			out.writeByte(fields[i].getDataTypeID());
+			out.writeInt(offsets[i]);
+		}
+		out.writeInt(footerOffset);
+		out.writeInt(MAGIC);
+		out.flush();
+
+		Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (OutputStream target = Files.newOutputStream(tmp)) {
+			bytes.writeTo(target);
+		}
+		Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		return open(file);
+	}
+
+	private static byte[] encodeColumn(DataField field, List<StreamElement> rows) {
+		String name = field.getName().toLowerCase();
+		byte type = field.getDataTypeID();
+		int count = rows.size();
+		BitWriter out = new BitWriter();
+		boolean[] nulls = new boolean[count];
+		long[] longs = null;
+		double[] doubles = null;
+		Serializable[] objects = null;
+		switch (type) {
+			case DataTypes.DOUBLE:
+			case DataTypes.FLOAT:
+				doubles = new double[count];
+				break;
+			case DataTypes.BIGINT:
+			case DataTypes.INTEGER:
+			case DataTypes.SMALLINT:
+			case DataTypes.TINYINT:
+				longs = new long[count];
+				break;
+			default:
+				objects = new Serializable[count];
+				break;
+		}
+		StreamSchema schema = null;
+		int index = -1;
+		int values = 0;
+		for (int i = 0; i < count; i++) {
+			StreamElement se = rows.get(i);
+			if (se.getSchema() != schema) {
+				schema = se.getSchema();
+				index = schema.indexOf(name);
+			}
+			nulls[i] = index < 0 || se.isNull(index);
+			out.writeBit(nulls[i]);
+			if (nulls[i]) {
+				continue;
+			}
+			if (doubles != null) {
+				doubles[values++] = se.getDouble(index);
+			} else if (longs != null) {
+				longs[values++] = se.getLong(index);
+			} else {
+				objects[values++] = se.getData(index);
+			}
+		}
+		if (doubles != null) {
+			ColumnCodec.encodeDoubles(out, doubles, values);
+		} else if (longs != null) {
+			ColumnCodec.encodeLongs(out, longs, values);
+		} else {
+			for (int i = 0; i < values; i++) {
+				if (type == DataTypes.BINARY) {
+					out.writeBytes((byte[]) objects[i]);
+				} else {
+					out.writeBytes(objects[i].toString().getBytes(StandardCharsets.UTF_8));
+				}
+			}
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Decodes the rows with a timestamp in the given range.
+	 *
+	 * @param from the minimum timestamp, inclusive
+	 * @param to   the maximum timestamp, inclusive
+	 */
+	List<StreamElement> read(long from, long to) {
+		List<StreamElement> result = new ArrayList<StreamElement>();
+		if (!overlaps(from, to)) {
+			return result;
+		}
+		long[] timestamps = ColumnCodec.decodeTimestamps(new BitReader(buffer, timedOffset), rows);
+		StreamSchema schema = StreamSchema.of(fields);
+		StreamElement[] elements = new StreamElement[rows];
+		for (int i = 0; i < rows; i++) {
+			elements[i] = new StreamElement(schema, timestamps[i]);
+			elements[i].setInternalPrimayKey(firstPk + i);
+		}
+		for (int c = 0; c < fields.length; c++) {
+			decodeColumn(c, elements);
+		}
+		for (int i = 0; i < rows; i++) {
+			if (timestamps[i] >= from && timestamps[i] <= to) {
+				result.add(elements[i]);
+			}
+		}
+		return result;
+	}
+
+	private void decodeColumn(int column, StreamElement[] elements) {
+		BitReader in = new BitReader(buffer, offsets[column]);
+		boolean[] nulls = new boolean[rows];
+		int values = 0;
+		for (int i = 0; i < rows; i++) {
+			nulls[i] = in.readBit();
+			if (nulls[i]) {
+				elements[i].setData(column, null);
+			} else {
+				values++;
+			}
+		}
+		byte type = fields[column].getDataTypeID();
+		switch (type) {
+			case DataTypes.DOUBLE:
+			case DataTypes.FLOAT:
+				double[] doubles = ColumnCodec.decodeDoubles(in, values);
+				for (int i = 0, v = 0; i < rows; i++) {
+					if (!nulls[i]) {
+						elements[i].setDouble(column, doubles[v++]);
+					}
+				}
+				break;
+			case DataTypes.BIGINT:
+			case DataTypes.INTEGER:
+			case DataTypes.SMALLINT:
+			case DataTypes.TINYINT:
+				long[] longs = ColumnCodec.decodeLongs(in, values);
+				for (int i = 0, v = 0; i < rows; i++) {
+					if (!nulls[i]) {
+						elements[i].setLong(column, longs[v++]);
+					}
+				}
+				break;
+			default:
+				for (int i = 0; i < rows; i++) {
+					if (!nulls[i]) {
+						byte[] bytes = in.readBytes();
+						if (type != DataTypes.BINARY) {
+							elements[i].setData(column, new String(bytes, StandardCharsets.UTF_8));
+						} else {
+							BlobReference reference = BlobReference.parse(bytes);
+							elements[i].setData(column, reference == null ? bytes : reference);
+						}
+					}
+				}
+				break;
+		}
+	}
+
+	boolean overlaps(long from, long to) {
+		return rows > 0 && minTimed <= to && maxTimed >= from;
+	}
+
+	Path getFile() {
+		return file;
+	}
+
+	int getRows() {
+		return rows;
+	}
+
+	long getFirstPk() {
+		return firstPk;
+	}
+
+	long getMinTimed() {
+		return minTimed;
+	}
+
+	long getMaxTimed() {
+		return maxTimed;
+	}
+}
@@ -0,0 +1,76 @@
+package ch.epfl.gsn.storage.segment;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.storage.DataEnumeratorIF;
+
+/**
+ * Enumerates the stream elements of a time range of a {@link SegmentStore},
+ * in insertion order. The segments are decoded one at a time, when the
+ * enumeration reaches them.
+ */
+public class SegmentEnumerator implements DataEnumeratorIF {
+
+	private final Iterator<Segment> segments;
+
+	private final List<StreamElement> tail;
+
+	private final long tailFirstPk;
+
+	private final long from;
+
+	private final long to;
+
+	private final ArrayDeque<StreamElement> current = new ArrayDeque<StreamElement>();
+
+	private boolean tailRead = false;
+
+	SegmentEnumerator(List<Segment> segments, List<StreamElement> tail, long tailFirstPk, long from, long to) {
+		this.segments = segments.iterator();
+		this.tail = tail;
+		this.tailFirstPk = tailFirstPk;
+		this.from = from;
+		this.to = to;
+	}
+
+	public boolean hasMoreElements() {
+		while (current.isEmpty()) {
+			if (segments.hasNext()) {
+				current.addAll(segments.next().read(from, to));
+			} else if (!tailRead) {
+				tailRead = true;
+				for (int i = 0; i < tail.size(); i++) {
+					StreamElement se = tail.get(i);
+					if (se.getTimeStamp() >= from && se.getTimeStamp() <= to) {
+						// the published elements are shared, they are numbered on a copy
+						StreamElement copy = new StreamElement(se);
+						copy.setInternalPrimayKey(tailFirstPk + i);
+						current.add(copy);
+					}
+				}
+			} else {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public StreamElement nextElement() throws RuntimeException {
+		if (!hasMoreElements()) {
+			throw new NoSuchElementException();
+		}
+		return current.poll();
+	}
+
+	public void close() {
+		current.clear();
+		tailRead = true;
+		while (segments.hasNext()) {
+			segments.next();
+		}
+	}
+}
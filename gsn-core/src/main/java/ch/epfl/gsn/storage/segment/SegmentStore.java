@@ -0,0 +1,227 @@
+package ch.epfl.gsn.storage.segment;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.slf4j.LoggerFactory;
+
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.storage.DataEnumeratorIF;
+import ch.epfl.gsn.utils.TimingWheel;
+
+import org.slf4j.Logger;
+
+/**
+ * Append-only columnar archive of the output of a virtual sensor, kept in a
+ * directory of {@link Segment} files next to its output table.
+ * <p>
+ * The published rows are appended to an in-memory tail, which is written as a
+ * new segment once it holds {@link #SEGMENT_ROWS} rows, or
+ * {@link #FLUSH_DELAY} milliseconds after its first row was appended. The
+ * tail is also written when the virtual sensor is unloaded and on shutdown.
+ * The rows are numbered in the order they are appended, the numbers are
+ * their primary keys when they are read back.
+ * <p>
+ * A time range is scanned without reading the segments whose timestamps are
+ * all outside of it, see {@link #scan(long, long)}. The
+ * {@link ch.epfl.gsn.wrappers.ReplayWrapper} replays an archived virtual
+ * sensor from its segments rather than from its table.
+ */
+public class SegmentStore {
+
+	public static final int SEGMENT_ROWS = 4096;
+
+	/**
+	 * Maximum time in milliseconds rows wait in the tail, so that a slow
+	 * sensor doesn't keep them in memory for days.
+	 */
+	public static final long FLUSH_DELAY = 600000;
+
+	private static final transient Logger logger = LoggerFactory.getLogger(SegmentStore.class);
+
+	private static final ConcurrentHashMap<String, SegmentStore> stores = new ConcurrentHashMap<String, SegmentStore>();
+
+	private final String tableName;
+
+	private final Path directory;
+
+	private final DataField[] fields;
+
+	private final CopyOnWriteArrayList<Segment> segments = new CopyOnWriteArrayList<Segment>();
+
+	private final List<StreamElement> tail = new ArrayList<StreamElement>();
+
+	private long nextPk = 1;
+
+	private TimingWheel.Timeout deadline = null;
+
+	SegmentStore(String tableName, Path directory, DataField[] fields) throws IOException {
+		this.tableName = tableName;
+		this.directory = directory;
+		this.fields = fields;
+		Files.createDirectories(directory);
+		List<Path> files = new ArrayList<Path>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + Segment.EXTENSION)) {
+			for (Path file : stream) {
+				files.add(file);
+			}
+		}
+		// the names are the zero-padded primary key of the first row
+		files.sort(null);
+		for (Path file : files) {
+			Segment segment = Segment.open(file);
+			segments.add(segment);
+			nextPk = segment.getFirstPk() + segment.getRows();
+		}
+	}
+
+	/**
+	 * Opens the store of a table in a sub-directory of the given directory,
+	 * replacing (after flushing it) the previous one.
+	 */
+	public static SegmentStore register(String tableName, DataField[] fields, String directory) throws IOException {
+		String table = tableName.toLowerCase();
+		SegmentStore store = new SegmentStore(table, Paths.get(directory, table), fields);
+		SegmentStore previous = stores.put(table, store);
+		if (previous != null) {
+			previous.flushQuietly();
+		}
+		logger.info("Rows of " + tableName + " are archived in " + store.directory + " (" + store.segments.size()
+				+ " segments).");
+		return store;
+	}
+
+	/**
+	 * Flushes and removes the store of a table, if any.
+	 */
+	public static void unregister(String tableName) {
+		SegmentStore store = stores.remove(tableName.toLowerCase());
+		if (store != null) {
+			store.flushQuietly();
+		}
+	}
+
+	/**
+	 * @return the store of the table, or null if it is not archived
+	 */
+	public static SegmentStore find(String tableName) {
+		return stores.get(tableName.toLowerCase());
+	}
+
+	/**
+	 * Flushes all the stores, called on shutdown.
+	 */
+	public static void shutdown() {
+		for (SegmentStore store : stores.values()) {
+			store.flushQuietly();
+		}
+	}
+
+	/**
+	 * Appends rows to the tail, writing it as a segment each time it is full.
+	 */
+	public synchronized void append(List<StreamElement> rows) throws IOException {
+		for (StreamElement se : rows) {
+			tail.add(se);
+			if (tail.size() >= SEGMENT_ROWS) {
+				flush();
+			}
+		}
+		if (deadline == null && !tail.isEmpty()) {
+			deadline = TimingWheel.getInstance().schedule(new Runnable() {
+				public void run() {
+					synchronized (SegmentStore.this) {
+						deadline = null;
+						flushQuietly();
+					}
+				}
+			}, FLUSH_DELAY);
+		}
+	}
+
+	/**
+	 * Writes the rows of the tail as a new segment.
+	 */
+	public synchronized void flush() throws IOException {
+		if (deadline != null) {
+			deadline.cancel();
+			deadline = null;
+		}
+		if (tail.isEmpty()) {
+			return;
+		}
+		Path file = directory.resolve(String.format("%020d", nextPk) + Segment.EXTENSION);
+		Segment segment = Segment.write(file, fields, tail, nextPk);
+		segments.add(segment);
+		nextPk += tail.size();
+		tail.clear();
+		if (logger.isDebugEnabled()) {
+			logger.debug("Wrote " + segment.getRows() + " rows of " + tableName + " in " + file + " ("
+					+ Files.size(file) + " bytes).");
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (IOException e) {
+			logger.error("Writing the segment of " + tableName + " failed: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Enumerates the rows with a timestamp in the given range, in the order
+	 * they were appended.
+	 *
+	 * @param from the minimum timestamp, inclusive
+	 * @param to   the maximum timestamp, inclusive
+	 */
+	public DataEnumeratorIF scan(long from, long to) {
+		List<Segment> overlapping = new ArrayList<Segment>();
+		List<StreamElement> rows;
+		long tailFirstPk;
+		synchronized (this) {
+			for (Segment segment : segments) {
+				if (segment.overlaps(from, to)) {
+					overlapping.add(segment);
+				}
+			}
+			rows = new ArrayList<StreamElement>(tail);
+			tailFirstPk = nextPk;
+		}
+		return new SegmentEnumerator(overlapping, rows, tailFirstPk, from, to);
+	}
+
+	/**
+	 * Deletes the segments holding only rows older than the given timestamp.
+	 *
+	 * @return the number of deleted segments
+	 */
+	public synchronized int dropBefore(long timed) throws IOException {
+		int dropped = 0;
+		for (Segment segment : segments) {
+			if (segment.getMaxTimed() < timed) {
+				segments.remove(segment);
+				Files.deleteIfExists(segment.getFile());
+				dropped++;
+			}
+		}
+		return dropped;
+	}
+
+	public int getSegmentCount() {
+		return segments.size();
+	}
+
+	public synchronized int getTailRows() {
+		return tail.size();
+	}
+}
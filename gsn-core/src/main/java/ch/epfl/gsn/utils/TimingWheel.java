@@ -0,0 +1,354 @@
+package ch.epfl.gsn.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.Logger;
+
+/**
+ * Process-wide timer shared by the time-based windows and the scheduled
+ * virtual sensors, replacing one java.util.Timer thread per user.
+ * <p>
+ * The timeouts are kept in a hierarchical timing wheel: the first wheel has
+ * {@link #WHEEL_SIZE} buckets of {@link #TICK} milliseconds, each overflow
+ * wheel has buckets spanning a whole turn of the previous one. Adding or
+ * cancelling a timeout is O(1) whatever their number, and only the non empty
+ * buckets are waited for, through a DelayQueue, so that the clock thread
+ * doesn't wake up on every tick. When a bucket of an overflow wheel expires
+ * its timeouts are moved down to the finer wheels, the expired ones are run
+ * by a small worker pool.
+ * <p>
+ * The timeouts fire at most one tick late. A periodic timeout is not run
+ * again before its previous run finished.
+ */
+public class TimingWheel {
+
+	/**
+	 * Duration in milliseconds of a bucket of the first wheel.
+	 */
+	public static final long TICK = 10;
+
+	public static final int WHEEL_SIZE = 64;
+
+	private static final transient Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+	private static TimingWheel singleton;
+
+	private final DelayQueue<Bucket> queue = new DelayQueue<Bucket>();
+
+	private final Wheel wheel;
+
+	private final ThreadPoolExecutor workers;
+
+	private final Thread clock;
+
+	private volatile boolean running = true;
+
+	private TimingWheel(int threads) {
+		wheel = new Wheel(TICK, now());
+		workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "timing-wheel-worker-" + count.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		workers.allowCoreThreadTimeOut(true);
+		clock = new Thread(new Runnable() {
+			public void run() {
+				runClock();
+			}
+		}, "timing-wheel");
+		clock.setDaemon(true);
+		clock.start();
+	}
+
+	public static synchronized TimingWheel getInstance() {
+		if (singleton == null) {
+			singleton = new TimingWheel(Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+		}
+		return singleton;
+	}
+
+	/**
+	 * Runs the task once after the given delay.
+	 */
+	public Timeout schedule(Runnable task, long delay) {
+		return add(new Timeout(task, now() + Math.max(0, delay), 0, false));
+	}
+
+	/**
+	 * Runs the task after the initial delay, then with the given delay between
+	 * the end of a run and the start of the next one, like
+	 * {@link java.util.Timer#schedule(java.util.TimerTask, long, long)}.
+	 */
+	public Timeout schedule(Runnable task, long initialDelay, long period) {
+		return add(new Timeout(task, now() + Math.max(0, initialDelay), checkPeriod(period), false));
+	}
+
+	/**
+	 * Runs the task after the initial delay, then every period milliseconds
+	 * from that first deadline, like
+	 * {@link java.util.Timer#scheduleAtFixedRate(java.util.TimerTask, long, long)}.
+	 * Runs missed because the task was slower than its period are caught up.
+	 */
+	public Timeout scheduleAtFixedRate(Runnable task, long initialDelay, long period) {
+		return add(new Timeout(task, now() + Math.max(0, initialDelay), checkPeriod(period), true));
+	}
+
+	private static long checkPeriod(long period) {
+		if (period <= 0) {
+			throw new IllegalArgumentException("Non-positive period: " + period);
+		}
+		return period;
+	}
+
+	/**
+	 * @return the number of timeouts waiting to fire
+	 */
+	public int getPendingCount() {
+		synchronized (wheel) {
+			return wheel.count();
+		}
+	}
+
+	private Timeout add(Timeout timeout) {
+		if (!running) {
+			throw new IllegalStateException("The timing wheel is shut down.");
+		}
+		addOrRun(timeout);
+		return timeout;
+	}
+
+	private void addOrRun(Timeout timeout) {
+		if (timeout.cancelled) {
+			return;
+		}
+		boolean added;
+		synchronized (wheel) {
+			added = wheel.add(timeout);
+		}
+		if (!added) {
+			workers.execute(timeout);
+		}
+	}
+
+	private void runClock() {
+		List<Timeout> expired = new ArrayList<Timeout>();
+		while (running) {
+			Bucket bucket;
+			try {
+				bucket = queue.take();
+			} catch (InterruptedException e) {
+				break;
+			}
+			synchronized (wheel) {
+				while (bucket != null) {
+					wheel.advanceClock(bucket.expiration);
+					bucket.flush(expired);
+					bucket = queue.poll();
+				}
+			}
+			// re-adding moves them down to the finer wheels or runs them
+			for (Timeout timeout : expired) {
+				try {
+					addOrRun(timeout);
+				} catch (Exception e) {
+					logger.error("Running a timeout failed: " + e.getMessage(), e);
+				}
+			}
+			expired.clear();
+		}
+	}
+
+	private static long now() {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+	}
+
+	/**
+	 * Stops the clock thread and the workers, the pending timeouts are
+	 * dropped.
+	 */
+	public static synchronized void shutdown() {
+		if (singleton == null) {
+			return;
+		}
+		singleton.running = false;
+		singleton.clock.interrupt();
+		ExecutorService workers = singleton.workers;
+		workers.shutdown();
+		try {
+			if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+				workers.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			workers.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+		singleton = null;
+	}
+
+	/**
+	 * Handle of a scheduled task.
+	 */
+	public final class Timeout implements Runnable {
+
+		private final Runnable task;
+
+		private final long period;
+
+		private final boolean fixedRate;
+
+		private long deadline;
+
+		private volatile boolean cancelled = false;
+
+		private Timeout(Runnable task, long deadline, long period, boolean fixedRate) {
+			this.task = task;
+			this.deadline = deadline;
+			this.period = period;
+			this.fixedRate = fixedRate;
+		}
+
+		/**
+		 * Prevents the next runs of the task, the current one (if any) is not
+		 * interrupted. The timeout is removed from its bucket lazily, when the
+		 * bucket expires.
+		 */
+		public void cancel() {
+			cancelled = true;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		public void run() {
+			if (cancelled) {
+				return;
+			}
+			try {
+				task.run();
+			} catch (Throwable e) {
+				logger.error("The scheduled task " + task + " failed: " + e.getMessage(), e);
+			}
+			if (period > 0 && !cancelled && running) {
+				deadline = fixedRate ? deadline + period : now() + period;
+				addOrRun(this);
+			}
+		}
+	}
+
+	private final class Wheel {
+
+		private final long tick;
+
+		private final long interval;
+
+		private final Bucket[] buckets = new Bucket[WHEEL_SIZE];
+
+		private long currentTime;
+
+		private Wheel overflow;
+
+		private Wheel(long tick, long startTime) {
+			this.tick = tick;
+			this.interval = tick * WHEEL_SIZE;
+			this.currentTime = startTime - (startTime % tick);
+			for (int i = 0; i < WHEEL_SIZE; i++) {
+				buckets[i] = new Bucket();
+			}
+		}
+
+		/**
+		 * @return false if the timeout already expired and must be run
+		 */
+		private boolean add(Timeout timeout) {
+			long deadline = timeout.deadline;
+			if (deadline < currentTime + tick) {
+				return false;
+			}
+			if (deadline < currentTime + interval) {
+				long virtualId = deadline / tick;
+				Bucket bucket = buckets[(int) (virtualId % WHEEL_SIZE)];
+				bucket.timeouts.add(timeout);
+				// a bucket is reused once its previous round was flushed
+				if (bucket.setExpiration(virtualId * tick)) {
+					queue.offer(bucket);
+				}
+				return true;
+			}
+			if (overflow == null) {
+				overflow = new Wheel(interval, currentTime);
+			}
+			return overflow.add(timeout);
+		}
+
+		private void advanceClock(long time) {
+			if (time >= currentTime + tick) {
+				currentTime = time - (time % tick);
+				if (overflow != null) {
+					overflow.advanceClock(currentTime);
+				}
+			}
+		}
+
+		private int count() {
+			int count = 0;
+			for (Bucket bucket : buckets) {
+				count += bucket.timeouts.size();
+			}
+			return overflow == null ? count : count + overflow.count();
+		}
+	}
+
+	private static final class Bucket implements Delayed {
+
+		private final List<Timeout> timeouts = new ArrayList<Timeout>();
+
+		private volatile long expiration = -1;
+
+		/**
+		 * @return true if the expiration changed, i.e. the bucket must be
+		 *         queued
+		 */
+		private boolean setExpiration(long expiration) {
+			if (this.expiration == expiration) {
+				return false;
+			}
+			this.expiration = expiration;
+			return true;
+		}
+
+		private void flush(List<Timeout> out) {
+			for (Timeout timeout : timeouts) {
+				if (!timeout.cancelled) {
+					out.add(timeout);
+				}
+			}
+			timeouts.clear();
+			expiration = -1;
+		}
+
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(expiration - now(), TimeUnit.MILLISECONDS);
+		}
+
+		public int compareTo(Delayed other) {
+			return Long.compare(expiration, ((Bucket) other).expiration);
+		}
+	}
+}
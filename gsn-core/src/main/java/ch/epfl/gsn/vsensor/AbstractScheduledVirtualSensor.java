@@ -32,7 +32,6 @@ package ch.epfl.gsn.vsensor;
 import java.io.Serializable;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.Timer;
 import java.util.TreeMap;
 
 import org.apache.commons.lang.time.DateUtils;
@@ -42,12 +41,11 @@ import ch.epfl.gsn.beans.DataField;
 import ch.epfl.gsn.beans.DataTypes;
 import ch.epfl.gsn.beans.StreamElement;
 import ch.epfl.gsn.utils.Helpers;
+import ch.epfl.gsn.utils.TimingWheel;
 
 import org.slf4j.Logger;
 import org.joda.time.format.ISODateTimeFormat;
 
-import java.util.TimerTask;
-
 /**
  * Extends AbstractVirtualSensor to allow scheduled output.
  * Parameters:
@@ -69,12 +67,12 @@ public abstract class AbstractScheduledVirtualSensor extends AbstractVirtualSens
 
 	protected StreamElement dataItem; // Buffer for most recent stream element
 	protected static final transient Logger logger = LoggerFactory.getLogger(AbstractScheduledVirtualSensor.class);
-	protected Timer timer0;
+	protected TimingWheel.Timeout timer0;
 
 	/**
 	 * Called once while initializing an instance of the virtual sensor
-	 * Gets schedule parameters from VSD, calculates timer parameters and
-	 * instantiates timer instance.
+	 * Gets schedule parameters from VSD and calculates timer parameters, the
+	 * sub classes start their task with {@link #scheduleAtFixedRate(Runnable)}.
 	 * 
 	 * @return True if the initialization is done successfully.
 	 */
@@ -117,12 +115,28 @@ public abstract class AbstractScheduledVirtualSensor extends AbstractVirtualSens
 		logger.warn(
 				getVirtualSensorConfiguration().getName() + " scheduled to start at " + new Date(startTime).toString());
 
-		// startTime is used in the virtual sensor class to start a timer
-		timer0 = new Timer();
 		// timer task is started in the sub class
 		return true;
 	}
 
+	/**
+	 * Runs the task on the shared timing wheel every clock_rate milliseconds
+	 * from startTime.
+	 */
+	protected void scheduleAtFixedRate(Runnable task) {
+		timer0 = TimingWheel.getInstance().scheduleAtFixedRate(task, startTime - System.currentTimeMillis(),
+				clock_rate);
+	}
+
+	/**
+	 * Cancels the task started by {@link #scheduleAtFixedRate(Runnable)}.
+	 */
+	protected void cancelSchedule() {
+		if (timer0 != null) {
+			timer0.cancel();
+		}
+	}
+
 	/**
 	 * Handles new data received from the input stream.
 	 * Validates the data against the output structure defined in the
@@ -235,7 +249,7 @@ public abstract class AbstractScheduledVirtualSensor extends AbstractVirtualSens
 		return true;
 	}
 
-	public abstract class MyTimerTask extends TimerTask {};
+	public abstract class MyTimerTask implements Runnable {};
 
 	public abstract void dispose();
 
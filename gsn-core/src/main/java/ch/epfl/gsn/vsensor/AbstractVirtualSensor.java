@@ -33,6 +33,8 @@ package ch.epfl.gsn.vsensor;
 
 import java.io.Serializable;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import javax.naming.OperationNotSupportedException;
@@ -51,10 +53,12 @@ import ch.epfl.gsn.beans.DataTypes;
 import ch.epfl.gsn.beans.InputInfo;
 import ch.epfl.gsn.beans.InputStream;
 import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.beans.StreamSchema;
 import ch.epfl.gsn.beans.StreamSource;
 import ch.epfl.gsn.beans.VSensorConfig;
 import ch.epfl.gsn.monitoring.AnomalyDetector;
 import ch.epfl.gsn.monitoring.Monitorable;
+import ch.epfl.gsn.wrappers.AbstractPeriodicWrapper;
 
 import org.slf4j.Logger;
 
@@ -77,6 +81,12 @@ public abstract class AbstractVirtualSensor implements Monitorable {
 	 * thread is started
 	 */
 	private Map<Long, String> threads = new HashMap<Long, String>();
+	/*
+	 * Wrappers of this Virtual Sensor which are run by the shared
+	 * WrapperScheduler, they have no thread of their own and keep track of
+	 * their CPU time themselves
+	 */
+	private List<AbstractPeriodicWrapper> scheduledWrappers = new ArrayList<AbstractPeriodicWrapper>();
 	private AnomalyDetector anomalyDetector;
 
 	/**
@@ -115,7 +125,8 @@ public abstract class AbstractVirtualSensor implements Monitorable {
 	 * @throws RuntimeException if adjust is false and the structures do not match
 	 */
 	private void validateStreamElement(StreamElement streamElement, boolean adjust) {
-		if (!compatibleStructure(streamElement, getVirtualSensorConfiguration().getOutputStructure(), adjust)) {
+		if (!compatibleStructure(streamElement, getVirtualSensorConfiguration().getOutputStructure(),
+				getVirtualSensorConfiguration().getOutputSchema(), adjust)) {
 			StringBuilder exceptionMessage = new StringBuilder().append("The streamElement produced by :")
 					.append(getVirtualSensorConfiguration().getName()).append(
 							" Virtual Sensor is not compatible with the defined streamElement.\n");
@@ -179,6 +190,52 @@ public abstract class AbstractVirtualSensor implements Monitorable {
 		}
 	}
 
+	/**
+	 * Batch version of {@link #dataProduced(StreamElement, boolean)}. The valid
+	 * stream elements are published with a single call to the container, which
+	 * stores them in one batch and then notifies the listeners in order.
+	 * If an output rate is configured, the elements are published one by one
+	 * so that the rate limit keeps applying to each element.
+	 * 
+	 * @param streamElements
+	 * @param adjust         Default is false.
+	 */
+	protected synchronized void dataProduced(List<StreamElement> streamElements, boolean adjust) {
+		if (getVirtualSensorConfiguration().getOutputStreamRate() > 0) {
+			for (StreamElement streamElement : streamElements) {
+				dataProduced(streamElement, adjust);
+			}
+			return;
+		}
+		List<StreamElement> valid = new ArrayList<StreamElement>(streamElements.size());
+		for (StreamElement streamElement : streamElements) {
+			try {
+				validateStreamElement(streamElement, adjust);
+			} catch (Exception e) {
+				logger.error(e.getMessage(), e);
+				continue;
+			}
+			if (!streamElement.isTimestampSet()) {
+				streamElement.setTimeStamp(System.currentTimeMillis());
+			}
+			valid.add(streamElement);
+		}
+		if (valid.isEmpty()) {
+			return;
+		}
+		lastOutputedTime = System.currentTimeMillis();
+		try {
+			ContainerImpl.getInstance().publishData(this, valid);
+			outputCount = outputCount > Long.MAX_VALUE - valid.size() ? 0 : outputCount + valid.size();
+		} catch (SQLException e) {
+			if (e.getMessage().toLowerCase().contains("duplicate entry")) {
+				logger.info(e.getMessage(), e);
+			} else {
+				logger.error(e.getMessage(), e);
+			}
+		}
+	}
+
 	/**
 	 * Calls the dataProduced with adjust = false.
 	 * 
@@ -203,19 +260,26 @@ public abstract class AbstractVirtualSensor implements Monitorable {
 	 * 
 	 * @param se
 	 * @param outputStructure
+	 * @param outputSchema    the schema of the output structure, if the stream
+	 *                        element shares it the fields are accessed by
+	 *                        position.
 	 * @param adjust          default is false.
 	 * @return
 	 */
-	private static boolean compatibleStructure(StreamElement se, DataField[] outputStructure, boolean adjust) {
+	private static boolean compatibleStructure(StreamElement se, DataField[] outputStructure,
+			StreamSchema outputSchema, boolean adjust) {
 		if (!adjust && outputStructure.length != se.getFieldNames().length) {
 			logger.warn(
 					"Validation problem, the number of field doesn't match the number of output data strcture of the virtual sensor");
 			return false;
 		}
+		StreamSchema schema = se.getSchema();
+		boolean samePositions = schema == outputSchema;
 		int i = -1;
 		for (DataField field : outputStructure) {
-			Serializable value = se.getData(field.getName());
 			i++;
+			int index = samePositions ? i : schema.indexOf(field.getName());
+			Serializable value = index < 0 ? null : se.getData(index);
 			if (value == null) {
 				continue;
 			}
@@ -305,12 +369,21 @@ public abstract class AbstractVirtualSensor implements Monitorable {
 		this.threads = threads;
 	}
 
+	public List<AbstractPeriodicWrapper> getScheduledWrappers() {
+		return scheduledWrappers;
+	}
+
+	public void setScheduledWrappers(List<AbstractPeriodicWrapper> scheduledWrappers) {
+		this.scheduledWrappers = scheduledWrappers;
+	}
+
 	/**
 	 * Gets statistics related to this virtual sensor instance.
 	 * Adds output count and last output time statistics.
 	 * Adds input count and last input time statistics.
-	 * Sums the CPU times of the threads associated with this
-	 * virtual sensor and adds the total CPU time statistic.
+	 * Sums the CPU times of the threads and of the scheduled wrappers
+	 * associated with this virtual sensor and adds the total CPU time
+	 * statistic.
 	 * 
 	 * @return A map containing the statistics.
 	 */
@@ -359,6 +432,15 @@ public abstract class AbstractVirtualSensor implements Monitorable {
 			}
 		}
 
+		for (AbstractPeriodicWrapper wrapper : scheduledWrappers) {
+			long cpuTime = wrapper.getScheduledCpuTime();
+			if (Long.MAX_VALUE - totalCpuTime > cpuTime) {
+				totalCpuTime += cpuTime;
+			} else {
+				totalCpuTime = cpuTime - (Long.MAX_VALUE - totalCpuTime);
+			}
+		}
+
 		stat.put("vs." + virtualSensorConfiguration.getName().replaceAll("\\.", "_") + ".cputime.totalCpuTime.counter",
 				totalCpuTime);
 
@@ -383,6 +465,38 @@ public abstract class AbstractVirtualSensor implements Monitorable {
 		lastInputTime = currentTime;
 	}
 
+	/**
+	 * Decorated version of {@link #dataAvailableBatch(String, List)}, updating
+	 * the same counters as {@link #dataAvailable_decorated(String, StreamElement)}.
+	 */
+	public final void dataAvailableBatch_decorated(String inputStreamName, List<StreamElement> streamElements) {
+		if (streamElements.isEmpty()) {
+			return;
+		}
+		dataAvailableBatch(inputStreamName, streamElements);
+		final long currentTime = System.currentTimeMillis();
+		inputCount = inputCount > Long.MAX_VALUE - streamElements.size() ? 0 : inputCount + streamElements.size();
+		lastInputTime = currentTime;
+	}
+
+	/**
+	 * Called by the container with all the stream elements an input stream
+	 * produced for one evaluation of its query (e.g. the content of a window).
+	 * The default implementation hands them one by one to
+	 * {@link #dataAvailable(String, StreamElement)}; virtual sensors which can
+	 * process several elements at once should override it and may publish
+	 * their results with {@link #dataProduced(List, boolean)}.
+	 * 
+	 * @param inputStreamName the name of the input stream
+	 * @param streamElements  the stream elements in the order produced by the
+	 *                        input stream query
+	 */
+	public void dataAvailableBatch(String inputStreamName, List<StreamElement> streamElements) {
+		for (StreamElement streamElement : streamElements) {
+			dataAvailable(inputStreamName, streamElement);
+		}
+	}
+
 	/**
 	 * This method is going to be called by the container when one of the input
 	 * streams has a data to be delivered to this virtual sensor. After receiving
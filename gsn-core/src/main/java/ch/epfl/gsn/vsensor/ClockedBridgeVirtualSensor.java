@@ -32,34 +32,31 @@
 
 package ch.epfl.gsn.vsensor;
 
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.TreeMap;
 
-import javax.swing.Timer;
-
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
 
 import ch.epfl.gsn.Main;
 import ch.epfl.gsn.beans.StreamElement;
 import ch.epfl.gsn.storage.DataEnumerator;
+import ch.epfl.gsn.utils.TimingWheel;
 
 /**
  * ClockedBridgeVirtualSensor extends AbstractVirtualSensor and implements
- * ActionListener.
- * VirtualSensor implementation that uses a Timer to periodically
- * poll a data source and generate VirtualSensor output.
+ * Runnable.
+ * VirtualSensor implementation that uses the shared TimingWheel to
+ * periodically poll a data source and generate VirtualSensor output.
  */
-public class ClockedBridgeVirtualSensor extends AbstractVirtualSensor implements ActionListener {
+public class ClockedBridgeVirtualSensor extends AbstractVirtualSensor implements Runnable {
 
 	private static final String RATE_PARAM = "rate";
 	private static final String TABLE_NAME_PARAM = "table_name";
 
-	private Timer timer;
+	private TimingWheel.Timeout timer;
 	private int clock_rate;
 	private String table_name;
 	private long last_updated;
@@ -98,9 +95,7 @@ public class ClockedBridgeVirtualSensor extends AbstractVirtualSensor implements
 
 		table_name = table_name_value;
 
-		timer = new Timer(clock_rate, this);
-
-		timer.start();
+		timer = TimingWheel.getInstance().schedule(this, clock_rate, clock_rate);
 
 		last_updated = -1; // reading the whole table, this value can be overriden, if some tuples were
 							// already read
@@ -153,7 +148,7 @@ public class ClockedBridgeVirtualSensor extends AbstractVirtualSensor implements
 	}
 
 	public void dispose() {
-		timer.stop();
+		timer.cancel();
 
 	}
 
@@ -162,7 +157,7 @@ public class ClockedBridgeVirtualSensor extends AbstractVirtualSensor implements
 	 * by timestamp, calls dataProduced() on each new row, and updates last_updated
 	 * to the latest timestamp.
 	 */
-	public void actionPerformed(ActionEvent actionEvent) {
+	public void run() {
 
 		// check if new data is available since last update then call
 		// dataProduced(StreamElement se)
@@ -30,8 +30,6 @@
 package ch.epfl.gsn.vsensor;
 
 import java.sql.SQLException;
-import java.util.Date;
-import java.util.TimerTask;
 
 import ch.epfl.gsn.ContainerImpl;
 
@@ -48,23 +46,22 @@ public class ScheduledBridgeVirtualSensor extends AbstractScheduledVirtualSensor
 	 * to run at the configured fixed rate.
 	 *
 	 * Super class initialize is called to get timer settings.
-	 * A TimerTask is created and scheduled using the start time and clock rate.
+	 * A timer task is created and scheduled using the start time and clock rate.
 	 * 
 	 * @return true if initialization succeeded, false otherwise
 	 */
 	public boolean initialize() {
 		super.initialize(); // get the timer settings
-		TimerTask timerTask = new MyTimerTask();
-		timer0.scheduleAtFixedRate(timerTask, new Date(startTime), clock_rate);
+		scheduleAtFixedRate(new MyTimerTask());
 		return true;
 	}
 
 	/**
-	 * TimerTask subclass that runs periodically to publish sensor data.
+	 * Timer task that runs periodically to publish sensor data.
 	 * Retrieves the latest dataItem, sets the timestamp, logs a message,
 	 * and publishes the dataItem to the Container.
 	 */
-	class MyTimerTask extends TimerTask {
+	class MyTimerTask implements Runnable {
 
 		public void run() {
 			if (dataItem == null) {
@@ -90,7 +87,7 @@ public class ScheduledBridgeVirtualSensor extends AbstractScheduledVirtualSensor
 	 * This cleans up the timer resource when the virtual sensor is disposed.
 	 */
 	public void dispose() {
-		timer0.cancel();
+		cancelSchedule();
 
 	}
 
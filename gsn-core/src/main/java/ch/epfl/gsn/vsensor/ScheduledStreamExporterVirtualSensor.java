@@ -33,9 +33,7 @@ package ch.epfl.gsn.vsensor;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.util.Date;
 import java.util.TreeMap;
-import java.util.TimerTask;
 
 import org.slf4j.LoggerFactory;
 
@@ -127,20 +125,19 @@ public class ScheduledStreamExporterVirtualSensor extends AbstractScheduledVirtu
 		}
 		super.initialize(); // get the timer settings
 
-		TimerTask timerTask = new MyTimerTask();
-		timer0.scheduleAtFixedRate(timerTask, new Date(startTime), clock_rate);
+		scheduleAtFixedRate(new MyTimerTask());
 		return true;
 	}
 
 	/**
-	 * TimerTask subclass that runs periodically.
+	 * Timer task that runs periodically.
 	 * It retrieves the latest data item, sets the timestamp, logs a message,
 	 * builds the insert query, gets a DB connection, executes the insert,
 	 * closes the connection, publishes the data item, and catches any errors.
 	 * This handles the core logic of exporting the data stream to the database
 	 * on a scheduled interval.
 	 */
-	class MyTimerTask extends TimerTask {
+	class MyTimerTask implements Runnable {
 
 		public void run() {
 
@@ -195,7 +192,7 @@ public class ScheduledStreamExporterVirtualSensor extends AbstractScheduledVirtu
 	 * Cancels the timer, closes the database connection, and logs any errors.
 	 */
 	public void dispose() {
-		timer0.cancel();
+		cancelSchedule();
 		try {
 			this.connection.close();
 		} catch (SQLException e) {
@@ -6,8 +6,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.TreeMap;
 import java.util.concurrent.Semaphore;
 import java.util.Map.Entry;
@@ -16,6 +14,7 @@ import ch.epfl.gsn.beans.DataField;
 import ch.epfl.gsn.beans.DataTypes;
 import ch.epfl.gsn.beans.StreamElement;
 import ch.epfl.gsn.beans.VSensorConfig;
+import ch.epfl.gsn.utils.TimingWheel;
 
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
@@ -85,7 +84,7 @@ public class StreamMergingVirtualSensor extends BridgeVirtualSensorPermasense {
 	private DataField[] mergedDataFields;
 	private Long totalBufferedStreams = 0L;
 	private Semaphore cleanupLock = new Semaphore(1);
-	Timer cleanupTimer = new Timer();
+	TimingWheel.Timeout cleanupTimer = null;
 
 	private static final DataField[] statisticsDataFields = {
 			new DataField("MERGED_STREAMS", "INTEGER"),
@@ -355,8 +354,8 @@ public class StreamMergingVirtualSensor extends BridgeVirtualSensorPermasense {
 		}
 
 		// start clean-up timer
-		CleanupTimerTask timerTask = new CleanupTimerTask();
-		cleanupTimer.scheduleAtFixedRate(timerTask, CLEANUP_TIMER_PERIOD, CLEANUP_TIMER_PERIOD);
+		cleanupTimer = TimingWheel.getInstance().scheduleAtFixedRate(new CleanupTimerTask(), CLEANUP_TIMER_PERIOD,
+				CLEANUP_TIMER_PERIOD);
 
 		return ret;
 	}
@@ -519,7 +518,9 @@ public class StreamMergingVirtualSensor extends BridgeVirtualSensorPermasense {
 
 	@Override
 	public synchronized void dispose() {
-		cleanupTimer.cancel();
+		if (cleanupTimer != null) {
+			cleanupTimer.cancel();
+		}
 		cleanupBuffers(true);
 		super.dispose();
 	}
@@ -1107,8 +1108,7 @@ public class StreamMergingVirtualSensor extends BridgeVirtualSensorPermasense {
 		}
 	}
 
-	class CleanupTimerTask extends TimerTask {
-		@Override
+	class CleanupTimerTask implements Runnable {
 		public void run() {
 			cleanupBuffers(false);
 		}
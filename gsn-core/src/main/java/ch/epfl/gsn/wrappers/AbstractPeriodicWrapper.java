@@ -0,0 +1,141 @@
+package ch.epfl.gsn.wrappers;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.sql.SQLException;
+import java.util.concurrent.ScheduledFuture;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.Logger;
+
+/**
+ * Base class of the wrappers which take a sample every few milliseconds.
+ * Subclasses implement {@link #sample()} instead of run(). With the default
+ * <code>thread</code> wrapper runtime the wrapper has its own thread sleeping
+ * {@link #getSamplingPeriod()} between two samples, as before. With the
+ * <code>scheduled</code> runtime the thread of the wrapper is never started,
+ * the samples are taken by the threads of the shared {@link WrapperScheduler}.
+ * A wrapper waiting longer than a period, e.g. after an error, calls
+ * {@link #pauseSampling(long)}: the samples are skipped until then.
+ */
+public abstract class AbstractPeriodicWrapper extends AbstractWrapper {
+
+	private final static transient Logger logger = LoggerFactory.getLogger(AbstractPeriodicWrapper.class);
+
+	private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+	private ScheduledFuture<?> scheduledSampling;
+
+	private volatile long scheduledCpuTime = 0;
+
+	private volatile long pausedUntil = 0;
+
+	/**
+	 * @return the time to wait between two samples, in milliseconds
+	 */
+	protected abstract long getSamplingPeriod();
+
+	/**
+	 * Takes one sample and posts the resulting stream elements. Called from
+	 * the thread of the wrapper or from a thread of the scheduler, never
+	 * concurrently.
+	 */
+	protected abstract void sample() throws Exception;
+
+	public synchronized void start() {
+		if (WrapperScheduler.isScheduledRuntime()) {
+			scheduledSampling = WrapperScheduler.getInstance().schedule(new Runnable() {
+				public void run() {
+					runScheduledSample();
+				}
+			}, Math.max(1, getSamplingPeriod()));
+		} else {
+			super.start();
+		}
+	}
+
+	/**
+	 * Takes no sample during the given time, the next one is taken at the
+	 * first period after it.
+	 *
+	 * @param delay the time to wait, in milliseconds
+	 */
+	protected void pauseSampling(long delay) {
+		pausedUntil = System.currentTimeMillis() + delay;
+	}
+
+	public final void run() {
+		while (isActive()) {
+			try {
+				Thread.sleep(Math.max(getSamplingPeriod(), pausedUntil - System.currentTimeMillis()));
+			} catch (InterruptedException e) {
+				logger.error(e.getMessage(), e);
+			}
+			if (!isActive()) {
+				break;
+			}
+			takeSample();
+		}
+	}
+
+	private void runScheduledSample() {
+		if (!isActive()) {
+			cancelScheduledSampling();
+			return;
+		}
+		// the scheduler thread takes the name of the wrapper while sampling,
+		// so that logs and thread dumps still tell which wrapper is running
+		Thread current = Thread.currentThread();
+		String schedulerName = current.getName();
+		current.setName(schedulerName + "[" + getName() + "]");
+		long cpuStart = threadBean.getCurrentThreadCpuTime();
+		try {
+			takeSample();
+		} finally {
+			if (cpuStart >= 0) {
+				scheduledCpuTime += threadBean.getCurrentThreadCpuTime() - cpuStart;
+			}
+			current.setName(schedulerName);
+		}
+	}
+
+	private void takeSample() {
+		if (System.currentTimeMillis() < pausedUntil) {
+			return;
+		}
+		try {
+			sample();
+		} catch (Exception e) {
+			logger.error(getName() + ": " + e.getMessage(), e);
+		}
+	}
+
+	private synchronized void cancelScheduledSampling() {
+		if (scheduledSampling != null) {
+			scheduledSampling.cancel(false);
+			scheduledSampling = null;
+		}
+	}
+
+	/**
+	 * @return true if the samples are taken by the shared scheduler instead of
+	 *         the thread of the wrapper
+	 */
+	public synchronized boolean isScheduled() {
+		return scheduledSampling != null;
+	}
+
+	/**
+	 * @return the CPU time in nanoseconds spent by the scheduler taking the
+	 *         samples of this wrapper
+	 */
+	public long getScheduledCpuTime() {
+		return scheduledCpuTime;
+	}
+
+	public void releaseResources() throws SQLException {
+		cancelScheduledSampling();
+		super.releaseResources();
+	}
+}
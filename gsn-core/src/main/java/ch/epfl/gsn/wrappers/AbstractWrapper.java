@@ -35,7 +35,6 @@ package ch.epfl.gsn.wrappers;
 
 import java.io.Serializable;
 import java.sql.Connection;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -51,14 +50,19 @@ import ch.epfl.gsn.Main;
 import ch.epfl.gsn.beans.AddressBean;
 import ch.epfl.gsn.beans.DataField;
 import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.beans.StreamSchema;
 import ch.epfl.gsn.beans.StreamSource;
+import ch.epfl.gsn.beans.windowing.InMemorySlidingHandler;
 import ch.epfl.gsn.beans.windowing.LocalTimeBasedSlidingHandler;
 import ch.epfl.gsn.beans.windowing.RemoteTimeBasedSlidingHandler;
 import ch.epfl.gsn.beans.windowing.SlidingHandler;
 import ch.epfl.gsn.beans.windowing.TupleBasedSlidingHandler;
+import ch.epfl.gsn.beans.windowing.WindowCompactor;
+import ch.epfl.gsn.beans.windowing.WindowCutPoints;
 import ch.epfl.gsn.beans.windowing.WindowType;
 import ch.epfl.gsn.monitoring.Monitorable;
 import ch.epfl.gsn.utils.GSNRuntimeException;
+import ch.epfl.gsn.utils.TimingWheel;
 import ch.epfl.gsn.wrappers.AbstractWrapper;
 import ch.epfl.gsn.statistics.StatisticsElement;
 import ch.epfl.gsn.statistics.StatisticsHandler;
@@ -80,18 +84,51 @@ public abstract class AbstractWrapper extends Thread implements Monitorable {
 
 	private SlidingHandler timeBasedSlidingHandler;
 
+	private SlidingHandler inMemorySlidingHandler;
+
 	private HashMap<Class<? extends SlidingHandler>, SlidingHandler> slidingHandlers = new HashMap<Class<? extends SlidingHandler>, SlidingHandler>();
 
 	private boolean usingRemoteTimestamp = false;
 
-	private Hashtable<Object, Long> lastInOrderTimestamp = new Hashtable<Object, Long>();
+	private DataField[] outputSchemaSource;
+
+	private StreamSchema outputSchema;
+
+	/*
+	 * Ordering state (and pending late elements) per value of the partial
+	 * order key, TOTAL_ORDER_KEY is used if the wrapper has no such key
+	 */
+	private final HashMap<Object, ReorderBuffer> reorderBuffers = new HashMap<Object, ReorderBuffer>();
+
+	private static final Integer TOTAL_ORDER_KEY = 0;
+
+	// shortest period in milliseconds of the release of the reorder buffers
+	private static final long MIN_REORDER_RELEASE_PERIOD = 100;
 
-	public static final int GARBAGE_COLLECT_AFTER_SPECIFIED_NO_OF_ELEMENTS = 2;
+	// releases the elements of the quiet keys, started by the first element buffered
+	private TimingWheel.Timeout reorderRelease = null;
+
+	// held from the release of elements to their propagation, which keeps their order
+	private final Object reorderPropagation = new Object();
 
 	private Long oooCount = 0L;
 
+	private Long reorderedCount = 0L;
+
 	private Long elementCount = 0L;
-	private long noOfCallsToPostSE = 0;
+
+	private final WindowCutPoints windowCutPoints = new WindowCutPoints();
+
+	// rows of the window table older than this were already deleted
+	private long lastCutPoint = Long.MIN_VALUE;
+
+	private final Object compactionLock = new Object();
+
+	private long reclaimedRowCount = 0;
+
+	private long compactionCount = 0;
+
+	private long compactionTime = 0;
 
 	private final transient int aliasCode = Main.getWindowStorage().tableNameGenerator();
 	private final CharSequence aliasCodeS = Main.getWindowStorage().tableNameGeneratorInString(aliasCode);
@@ -103,7 +140,12 @@ public abstract class AbstractWrapper extends Thread implements Monitorable {
 	 * @throws SQLException
 	 */
 	public void addListener(StreamSource ss) throws SQLException {
-		if (WindowType.isTimeBased(ss.getWindowingType())) {
+		if (ss.isInMemoryWindow()) {
+			if (inMemorySlidingHandler == null) {
+				inMemorySlidingHandler = new InMemorySlidingHandler(this);
+				addSlidingHandler(inMemorySlidingHandler);
+			}
+		} else if (WindowType.isTimeBased(ss.getWindowingType())) {
 			if (timeBasedSlidingHandler == null) {
 				timeBasedSlidingHandler = isUsingRemoteTimestamp() == false ? new LocalTimeBasedSlidingHandler(
 						this)
@@ -116,6 +158,9 @@ public abstract class AbstractWrapper extends Thread implements Monitorable {
 			}
 			addSlidingHandler(tupleBasedSlidingHandler);
 		}
+		if (!ss.isInMemoryWindow()) {
+			WindowCompactor.getInstance().register(this);
+		}
 
 		for (SlidingHandler slidingHandler : slidingHandlers.values()) {
 			if (slidingHandler.isInterestedIn(ss)) {
@@ -230,14 +275,38 @@ public abstract class AbstractWrapper extends Thread implements Monitorable {
 		return isActive;
 	}
 
+	/**
+	 * Returns the shared schema of the output format. It is looked up again
+	 * whenever the wrapper returns a different output format array.
+	 */
+	public StreamSchema getOutputSchema() {
+		DataField[] outputFormat = getOutputFormat();
+		if (outputFormat != outputSchemaSource || outputSchema == null) {
+			outputSchema = StreamSchema.of(outputFormat);
+			outputSchemaSource = outputFormat;
+		}
+		return outputSchema;
+	}
+
+	/**
+	 * Creates an empty stream element of the output format which keeps its
+	 * numeric fields unboxed. Wrappers producing numeric readings fill it with
+	 * {@link StreamElement#setLong(int, long)} or
+	 * {@link StreamElement#setDouble(int, double)} and post it with
+	 * {@link #postStreamElement(StreamElement)}.
+	 */
+	protected StreamElement createStreamElement(long timestamp) {
+		return new StreamElement(getOutputSchema(), timestamp);
+	}
+
 	protected boolean postStreamElement(Serializable... values) {
-		StreamElement se = new StreamElement(getOutputFormat(), values, System
+		StreamElement se = new StreamElement(getOutputSchema(), values, System
 				.currentTimeMillis());
 		return postStreamElement(se);
 	}
 
 	protected boolean postStreamElement(long timestamp, Serializable[] values) {
-		StreamElement se = new StreamElement(getOutputFormat(), values,
+		StreamElement se = new StreamElement(getOutputSchema(), values,
 				timestamp);
 		return postStreamElement(se);
 	}
@@ -258,6 +327,15 @@ public abstract class AbstractWrapper extends Thread implements Monitorable {
 					+ getWrapperName() + " might have a problem !");
 			return false;
 		}
+		if (getMaxLateness() > 0) {
+			synchronized (reorderPropagation) {
+				return propagateStreamElements(reorder(Collections.singletonList(streamElement)));
+			}
+		}
+		return propagateStreamElement(streamElement);
+	}
+
+	private boolean propagateStreamElement(StreamElement streamElement) {
 		try {
 			if (!isActive() || listeners.isEmpty()) {
 				return false;
@@ -274,10 +352,6 @@ public abstract class AbstractWrapper extends Thread implements Monitorable {
 				toReturn = slidingHandler.dataAvailable(streamElement)
 						|| toReturn;
 			}
-			if (++noOfCallsToPostSE
-					% GARBAGE_COLLECT_AFTER_SPECIFIED_NO_OF_ELEMENTS == 0) {
-				removeUselessValues();
-			}
 			return toReturn;
 		} catch (Exception e) {
 			logger.error(e.getMessage(), e);
@@ -286,6 +360,174 @@ public abstract class AbstractWrapper extends Thread implements Monitorable {
 		}
 	}
 
+	/**
+	 * Batch version of {@link #postStreamElement(StreamElement)}. The elements
+	 * are processed in the given order and the sliding handlers are notified
+	 * after each element, so the windows observe the same sequence as with
+	 * single posts. The window storage connection is borrowed once for the
+	 * whole batch.
+	 * 
+	 * @param streamElements
+	 * @return If the method returns false, it means none of the insertions
+	 *         effected any input stream.
+	 */
+	protected boolean postStreamElements(List<StreamElement> streamElements) {
+		if (streamElements == null || streamElements.isEmpty()) {
+			return false;
+		}
+		if (getMaxLateness() > 0) {
+			synchronized (reorderPropagation) {
+				return propagateStreamElements(reorder(streamElements));
+			}
+		}
+		return propagateStreamElements(streamElements);
+	}
+
+	private boolean propagateStreamElements(List<StreamElement> streamElements) {
+		if (streamElements.isEmpty()) {
+			return false;
+		}
+		if (streamElements.size() == 1) {
+			return propagateStreamElement(streamElements.get(0));
+		}
+		Connection conn = null;
+		try {
+			if (!isActive() || listeners.isEmpty()) {
+				return false;
+			}
+			if (hasSQLWindowListeners()) {
+				conn = Main.getWindowStorage().getConnection();
+			}
+			boolean toReturn = false;
+			long inserted = 0;
+			for (StreamElement streamElement : streamElements) {
+				if (streamElement == null || !insertIntoWrapperTable(streamElement, conn)) {
+					continue;
+				}
+				inserted++;
+				for (SlidingHandler slidingHandler : slidingHandlers.values()) {
+					toReturn = slidingHandler.dataAvailable(streamElement)
+							|| toReturn;
+				}
+			}
+			if (logger.isDebugEnabled()) {
+				logger.debug(inserted + " of " + streamElements.size() + " stream elements of the batch propagated by "
+						+ getWrapperName());
+			}
+			return toReturn;
+		} catch (Exception e) {
+			logger.error(e.getMessage(), e);
+			logger.error("Produced batch of data items from the wrapper couldn't be propagated inside the system.");
+			return false;
+		} finally {
+			Main.getWindowStorage().close(conn);
+		}
+	}
+
+	/**
+	 * Passes the posted stream elements through the reorder buffers of their
+	 * partial order keys. Elements older than the last propagated one of their
+	 * key are dropped, the others wait until the watermark of their key passes
+	 * them (or the key stays quiet for the maximum lateness).
+	 * 
+	 * @return the stream elements to propagate, in timestamp order per key
+	 */
+	private List<StreamElement> reorder(List<StreamElement> streamElements) {
+		List<StreamElement> released = new ArrayList<StreamElement>();
+		if (!isActive() || listeners.isEmpty()) {
+			return released;
+		}
+		long now = System.currentTimeMillis();
+		synchronized (reorderBuffers) {
+			for (StreamElement se : streamElements) {
+				if (se == null) {
+					continue;
+				}
+				ReorderBuffer buffer = getReorderBuffer(se);
+				if (buffer.isLate(se.getTimeStamp(), isTimeStampUnique())) {
+					outOfOrderDropped(se);
+					continue;
+				}
+				if (buffer.offer(se, now)) {
+					reorderedCount = reorderedCount == Long.MAX_VALUE ? 0 : reorderedCount + 1;
+				}
+			}
+			for (ReorderBuffer buffer : reorderBuffers.values()) {
+				buffer.release(released, now);
+			}
+			if (reorderRelease == null && getReorderBufferSize() > 0) {
+				long period = Math.max(MIN_REORDER_RELEASE_PERIOD, getMaxLateness() / 2);
+				reorderRelease = TimingWheel.getInstance().schedule(new Runnable() {
+					public void run() {
+						releaseReorderBuffers();
+					}
+				}, period, period);
+			}
+		}
+		return released;
+	}
+
+	/**
+	 * Propagates the stream elements whose key didn't receive anything during
+	 * the maximum lateness, which no posted element would release.
+	 */
+	private void releaseReorderBuffers() {
+		synchronized (reorderPropagation) {
+			List<StreamElement> released = new ArrayList<StreamElement>();
+			long now = System.currentTimeMillis();
+			synchronized (reorderBuffers) {
+				for (ReorderBuffer buffer : reorderBuffers.values()) {
+					buffer.release(released, now);
+				}
+			}
+			if (!released.isEmpty()) {
+				propagateStreamElements(released);
+			}
+		}
+	}
+
+	/**
+	 * Propagates the stream elements still waiting in the reorder buffers
+	 * without waiting for the watermark, e.g. at the end of a burst of
+	 * historical data.
+	 * 
+	 * @return If the method returns false, it means none of the elements
+	 *         effected any input stream.
+	 */
+	protected boolean flushReorderBuffers() {
+		synchronized (reorderPropagation) {
+			List<StreamElement> released = new ArrayList<StreamElement>();
+			synchronized (reorderBuffers) {
+				for (ReorderBuffer buffer : reorderBuffers.values()) {
+					buffer.releaseAll(released);
+				}
+			}
+			return propagateStreamElements(released);
+		}
+	}
+
+	/**
+	 * Returns the ordering state of the partial order key of the stream
+	 * element. Must be called while holding the lock of reorderBuffers.
+	 */
+	private ReorderBuffer getReorderBuffer(StreamElement se) {
+		Object key = getPartialOrdersKey() == null ? TOTAL_ORDER_KEY : se.getData(getPartialOrdersKey());
+		ReorderBuffer buffer = reorderBuffers.get(key);
+		if (buffer == null) {
+			buffer = new ReorderBuffer(getMaxLateness());
+			reorderBuffers.put(key, buffer);
+		}
+		return buffer;
+	}
+
+	private void outOfOrderDropped(StreamElement se) {
+		oooCount = oooCount == Long.MAX_VALUE ? 0 : oooCount + 1;
+		if(logger.isDebugEnabled()){
+			logger.debug("Out of order data item detected, it is not propagated into the system : [" + se.toString()
+				+ "]");
+		}
+	}
+
 	/**
 	 * Updates the table representing the data items produced by the stream
 	 * element. Returns false if the update fails or doesn't change the state of
@@ -303,30 +545,59 @@ public abstract class AbstractWrapper extends Thread implements Monitorable {
 		}
 		Connection conn = null;
 		try {
-			if (isOutOfOrder(se)) {
-				oooCount = oooCount == Long.MAX_VALUE ? 0 : oooCount + 1;
-				if(logger.isDebugEnabled()){
-					logger.debug("Out of order data item detected, it is not propagated into the system : [" + se.toString()
-						+ "]");
-				}
-				return false;
-			}
-			conn = Main.getWindowStorage().getConnection();
-			Main.getWindowStorage().executeInsert(aliasCodeS, getOutputFormat(), se, conn);
-			if (getPartialOrdersKey() == null) {
-				lastInOrderTimestamp.put(0, se.getTimeStamp());
-			} else {
-				lastInOrderTimestamp.put(se.getData(getPartialOrdersKey()), se.getTimeStamp());
+			if (hasSQLWindowListeners()) {
+				conn = Main.getWindowStorage().getConnection();
 			}
-			elementCount = elementCount == Long.MAX_VALUE ? 0 : elementCount + 1;
-			return true;
+			return insertIntoWrapperTable(se, conn);
 		} finally {
 			Main.getWindowStorage().close(conn);
 		}
 	}
 
 	/**
-	 * Checks if the given stream element is out of order.
+	 * Same as {@link #insertIntoWrapperTable(StreamElement)} but using the
+	 * given connection, which may be null if no listener uses the window table.
+	 */
+	private boolean insertIntoWrapperTable(StreamElement se, Connection conn) throws SQLException {
+		if (listeners.isEmpty()) {
+			return false;
+		}
+		if (isOutOfOrder(se)) {
+			outOfOrderDropped(se);
+			return false;
+		}
+		if (conn != null) {
+			Main.getWindowStorage().executeInsert(aliasCodeS, getOutputFormat(), se, conn);
+			windowCutPoints.add(se.getTimeStamp());
+		}
+		synchronized (reorderBuffers) {
+			getReorderBuffer(se).setLastTimestamp(se.getTimeStamp());
+		}
+		elementCount = elementCount == Long.MAX_VALUE ? 0 : elementCount + 1;
+		return true;
+	}
+
+	/**
+	 * Returns true if at least one listener reads its window from the window
+	 * table. Listeners using the in-memory window engine don't need the
+	 * stream elements to be inserted into the window storage.
+	 */
+	private boolean hasSQLWindowListeners() {
+		synchronized (listeners) {
+			for (StreamSource ss : listeners) {
+				if (!ss.isInMemoryWindow()) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if the given stream element is out of order, i.e. older than the
+	 * last stream element propagated with the same partial order key. The
+	 * ordering state is kept in memory: the window table of a wrapper only
+	 * contains what the wrapper inserted itself.
 	 * 
 	 * @param se The stream element to be checked.
 	 * @return true if the stream element is out of order, false otherwise.
@@ -336,42 +607,8 @@ public abstract class AbstractWrapper extends Thread implements Monitorable {
 		if (listeners.isEmpty()) {
 			return false;
 		}
-
-		Connection conn = null;
-		Object key = 0;
-		if (getPartialOrdersKey() != null) {
-			key = se.getData(getPartialOrdersKey());
-		}
-		try {
-			// Checks if the stream element is out of order
-			if (lastInOrderTimestamp.get(key) == null) {
-				conn = Main.getWindowStorage().getConnection();
-				StringBuilder query = new StringBuilder();
-				query.append("select max(timed) from ").append(aliasCodeS);
-				StringBuilder query2 = new StringBuilder();
-				query2.append("select count(*) from ").append(aliasCodeS);
-				if (getPartialOrdersKey() != null) {
-					query.append(" where " + getPartialOrdersKey() + "=" + key); // code injection !!!
-					query2.append(" where " + getPartialOrdersKey() + "=" + key);
-				}
-				ResultSet rs = Main.getWindowStorage().executeQueryWithResultSet(query, conn);
-				ResultSet rs2 = Main.getWindowStorage().executeQueryWithResultSet(query2, conn);
-				int n = rs2.next() ? rs2.getInt(1) : 0;
-
-				if (rs.next() && n > 0) {
-					lastInOrderTimestamp.put(key, rs.getLong(1));
-				} else {
-					lastInOrderTimestamp.put(key, Long.MIN_VALUE); // Table is empty
-				}
-			}
-			if (isTimeStampUnique()) {
-				return (se.getTimeStamp() <= lastInOrderTimestamp.get(key));
-			} else {
-				return (se.getTimeStamp() < lastInOrderTimestamp.get(key));
-			}
-
-		} finally {
-			Main.getWindowStorage().close(conn);
+		synchronized (reorderBuffers) {
+			return getReorderBuffer(se).isLate(se.getTimeStamp(), isTimeStampUnique());
 		}
 	}
 
@@ -408,61 +645,74 @@ public abstract class AbstractWrapper extends Thread implements Monitorable {
 	}
 
 	/**
-	 * Removes all the listeners, drops the views representing them, drops the
-	 * sensor table, stops the TableSizeEnforce thread.
-	 * 
+	 * Returns the statement deleting the rows of the window table which none
+	 * of the sliding handlers needs anymore, or null if the cut point didn't
+	 * move since the previous call. The cut point is the earliest of the cut
+	 * points of the handlers, computed in memory (see
+	 * {@link #getWindowCutPoints()}).
 	 */
 	public StringBuilder getUselessWindow() {
-		StringBuilder condition = new StringBuilder("");
+		long cutPoint = Long.MAX_VALUE;
 		synchronized (slidingHandlers) {
 			for (SlidingHandler slidingHandler : slidingHandlers.values()) {
-				if (condition.length() > 0) {
-					condition.append(" and ");
-				}
-				condition.append(slidingHandler.getCuttingCondition());
+				cutPoint = Math.min(cutPoint, slidingHandler.getCutPoint());
 			}
 		}
 		if(logger.isDebugEnabled()){
-			logger.debug("Cutting condition : " + condition);
+			logger.debug("Cut point of " + getDBAliasInStr() + " : " + cutPoint);
 		}
-		if (condition.length() == 0) {
+		if (cutPoint == Long.MAX_VALUE || cutPoint <= lastCutPoint) {
 			return null;
 		}
+		lastCutPoint = cutPoint;
 		StringBuilder sb = new StringBuilder("delete from ").append(
-				getDBAliasInStr()).append(" where ");
-		sb.append(condition);
+				getDBAliasInStr()).append(" where timed < ").append(cutPoint);
 		return sb;
 	}
 
 	/**
 	 * Removes useless values from the database table.
-	 * This method executes a query to identify and remove rows that are considered
-	 * useless.
-	 * The query is generated by the getUselessWindow() method.
-	 * If the query is null, indicating that there are no useless rows, this method
-	 * returns 0.
+	 * This method executes the single statement generated by the
+	 * getUselessWindow() method. It is called in the background by the
+	 * {@link WindowCompactor} rather than for each posted stream element.
+	 * If there is no statement, indicating that there are no new useless rows,
+	 * this method returns 0.
 	 * Otherwise, the query is executed and the number of deleted rows is returned.
 	 *
 	 * @return The number of rows deleted from the database table.
 	 * @throws SQLException If an error occurs while executing the query.
 	 */
 	public int removeUselessValues() throws SQLException {
-		StringBuilder query = getUselessWindow();
-		if (query == null) {
-			return 0;
-		}
-		if(logger.isDebugEnabled()){
-			logger.debug(new StringBuilder().append(
-				"RESULTING QUERY FOR Table Size Enforce ").append(query)
-				.toString());
-		}
-		int deletedRows = Main.getWindowStorage().executeUpdate(query);
-		if(logger.isDebugEnabled()){
-			logger.debug(new StringBuilder().append(deletedRows).append(
-				" old rows dropped from ").append(getDBAliasInStr())
-				.toString());
+		synchronized (compactionLock) {
+			long start = System.nanoTime();
+			StringBuilder query = getUselessWindow();
+			if (query == null) {
+				return 0;
+			}
+			if(logger.isDebugEnabled()){
+				logger.debug(new StringBuilder().append(
+					"RESULTING QUERY FOR Table Size Enforce ").append(query)
+					.toString());
+			}
+			int deletedRows = Main.getWindowStorage().executeUpdate(query);
+			if(logger.isDebugEnabled()){
+				logger.debug(new StringBuilder().append(deletedRows).append(
+					" old rows dropped from ").append(getDBAliasInStr())
+					.toString());
+			}
+			reclaimedRowCount += Math.max(0, deletedRows);
+			compactionCount++;
+			compactionTime += (System.nanoTime() - start) / 1000000;
+			return deletedRows;
 		}
-		return deletedRows;
+	}
+
+	/**
+	 * @return the timestamps of the rows inserted into the window table, from
+	 *         which the sliding handlers compute their cut points
+	 */
+	public WindowCutPoints getWindowCutPoints() {
+		return windowCutPoints;
 	}
 
 	/**
@@ -475,7 +725,16 @@ public abstract class AbstractWrapper extends Thread implements Monitorable {
 	 * @throws SQLException if an error occurs while releasing the resources.
 	 */
 	public void releaseResources() throws SQLException {
+		synchronized (reorderBuffers) {
+			if (reorderRelease != null) {
+				reorderRelease.cancel();
+				reorderRelease = null;
+			}
+		}
+		// the elements still waiting for their watermark
+		flushReorderBuffers();
 		isActive = false;
+		WindowCompactor.getInstance().unregister(this);
 		Main.getInstance().getToMonitor().remove(this);
 		dispose();
 		logger.info("dispose called");
@@ -554,6 +813,16 @@ public abstract class AbstractWrapper extends Thread implements Monitorable {
 		return activeAddressBean.getPartialOrderKey();
 	}
 
+	/**
+	 * Returns how late (in milliseconds, compared to the newest stream element
+	 * with the same partial order key) a stream element may be posted and
+	 * still be propagated in timestamp order. 0 (default) means out of order
+	 * stream elements are dropped right away.
+	 */
+	public long getMaxLateness() {
+		return activeAddressBean.getMaxLateness();
+	}
+
 	public boolean manualDataInsertion(StreamElement se) {
 		throw new RuntimeException(
 				"Manual data insertion is not supported by this wrapper");
@@ -561,8 +830,11 @@ public abstract class AbstractWrapper extends Thread implements Monitorable {
 
 	/**
 	 * Retrieves the statistics of the wrapper.
-	 * The statistics include the out-of-order counter and the produced counter for
-	 * the active virtual sensor and input stream.
+	 * The statistics include the out-of-order (dropped) counter, the reordered
+	 * counter, the number of stream elements waiting in the reorder buffers,
+	 * the produced counter and the window compaction counters (rows reclaimed,
+	 * compactions and milliseconds spent) for the active virtual sensor and
+	 * input stream.
 	 * 
 	 * @return a Hashtable containing the statistics
 	 */
@@ -572,13 +844,45 @@ public abstract class AbstractWrapper extends Thread implements Monitorable {
 				"vs." + activeAddressBean.getVirtualSensorName().replaceAll("\\.", "_") + ".input."
 						+ activeAddressBean.getInputStreamName().replaceAll("\\.", "_") + ".outOfOrder.counter",
 				oooCount);
+		stat.put(
+				"vs." + activeAddressBean.getVirtualSensorName().replaceAll("\\.", "_") + ".input."
+						+ activeAddressBean.getInputStreamName().replaceAll("\\.", "_") + ".reordered.counter",
+				reorderedCount);
+		stat.put(
+				"vs." + activeAddressBean.getVirtualSensorName().replaceAll("\\.", "_") + ".input."
+						+ activeAddressBean.getInputStreamName().replaceAll("\\.", "_") + ".reorderBuffer.size",
+				getReorderBufferSize());
 		stat.put(
 				"vs." + activeAddressBean.getVirtualSensorName().replaceAll("\\.", "_") + ".input."
 						+ activeAddressBean.getInputStreamName().replaceAll("\\.", "_") + ".produced.counter",
 				elementCount);
+		synchronized (compactionLock) {
+			stat.put(
+					"vs." + activeAddressBean.getVirtualSensorName().replaceAll("\\.", "_") + ".input."
+							+ activeAddressBean.getInputStreamName().replaceAll("\\.", "_") + ".window.reclaimed.counter",
+					reclaimedRowCount);
+			stat.put(
+					"vs." + activeAddressBean.getVirtualSensorName().replaceAll("\\.", "_") + ".input."
+							+ activeAddressBean.getInputStreamName().replaceAll("\\.", "_") + ".window.compaction.counter",
+					compactionCount);
+			stat.put(
+					"vs." + activeAddressBean.getVirtualSensorName().replaceAll("\\.", "_") + ".input."
+							+ activeAddressBean.getInputStreamName().replaceAll("\\.", "_") + ".window.compactionTime.counter",
+					compactionTime);
+		}
 		return stat;
 	}
 
+	private int getReorderBufferSize() {
+		int pending = 0;
+		synchronized (reorderBuffers) {
+			for (ReorderBuffer buffer : reorderBuffers.values()) {
+				pending += buffer.getPendingCount();
+			}
+		}
+		return pending;
+	}
+
 	protected boolean inputEvent(long timestamp, long volume) {
 		return inputEvent(timestamp, getActiveAddressBean().getInputStreamName(), volume);
 	}
@@ -42,7 +42,7 @@ import ch.epfl.gsn.beans.StreamElement;
 
 import org.slf4j.Logger;
 
-public class DiskSpaceWrapper extends AbstractWrapper {
+public class DiskSpaceWrapper extends AbstractPeriodicWrapper {
 
     private static final int DEFAULT_SAMPLING_RATE = 1000;
 
@@ -68,32 +68,27 @@ public class DiskSpaceWrapper extends AbstractWrapper {
         return true;
     }
 
+    protected long getSamplingPeriod() {
+        return samplingRate;
+    }
+
     /**
-     * Runs the disk space monitoring process in a separate thread.
-     * This method continuously checks the available free space on the disk and
-     * posts the information as a stream element.
-     * The monitoring process runs until the wrapper is active.
+     * Checks the available free space on the disk and posts the information as
+     * a stream element.
      */
-    public void run() {
-        while (isActive()) {
-            try {
-                Thread.sleep(samplingRate);
-            } catch (InterruptedException e) {
-                logger.error(e.getMessage(), e);
-            }
-            roots = File.listRoots();
-            long totalFreeSpace = 0;
-            for (int i = 0; i < roots.length; i++) {
-                totalFreeSpace += roots[i].getFreeSpace();
-            }
-
-            // convert to MB
-            totalFreeSpace = totalFreeSpace / (1024 * 1024);
-            StreamElement streamElement = new StreamElement(new String[] { "FREE_SPACE" },
-                    new Byte[] { DataTypes.BIGINT }, new Serializable[] { totalFreeSpace
-                    }, System.currentTimeMillis());
-            postStreamElement(streamElement);
+    protected void sample() {
+        roots = File.listRoots();
+        long totalFreeSpace = 0;
+        for (int i = 0; i < roots.length; i++) {
+            totalFreeSpace += roots[i].getFreeSpace();
         }
+
+        // convert to MB
+        totalFreeSpace = totalFreeSpace / (1024 * 1024);
+        StreamElement streamElement = new StreamElement(new String[] { "FREE_SPACE" },
+                new Byte[] { DataTypes.BIGINT }, new Serializable[] { totalFreeSpace
+                }, System.currentTimeMillis());
+        postStreamElement(streamElement);
     }
 
     public void dispose() {
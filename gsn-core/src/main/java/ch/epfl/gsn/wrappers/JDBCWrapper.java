@@ -51,6 +51,8 @@ import java.sql.ResultSet;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -59,9 +61,10 @@ import java.util.regex.Matcher;
  * a database.
  * parameters: table: table name, start-time: starting time to replay from
  */
-public class JDBCWrapper extends AbstractWrapper {
+public class JDBCWrapper extends AbstractPeriodicWrapper {
 
     private static long DEFAULT_RATE = 1000; // 1 second in milliseconds
+    private static long INITIAL_DELAY = 2000;
     private static long DEFAULT_BUFFER_SIZE = 100;
 
     private transient Logger logger = LoggerFactory.getLogger(this.getClass());
@@ -224,6 +227,7 @@ public class JDBCWrapper extends AbstractWrapper {
             dataFieldTypes[i] = outputFormat[i].getDataTypeID();
         }
 
+        pauseSampling(INITIAL_DELAY);
         return true;
     }
 
@@ -242,102 +246,94 @@ public class JDBCWrapper extends AbstractWrapper {
         return lastItem;
     }
 
+    protected long getSamplingPeriod() {
+        return rate;
+    }
+
     /**
-     * Executes the main logic of the JDBCWrapper in a separate thread.
-     * Retrieves data from the database using a specified query and processes it.
-     * The retrieved data is converted into StreamElements and sent to the
-     * postStreamElement method.
-     * The method also updates the checkpoint file with the latest timestamp.
+     * Retrieves the next rows of the table, at most the buffer size, converts
+     * them into StreamElements and posts them. The checkpoint file is updated
+     * with the latest timestamp. The first sample is taken a few seconds
+     * after the initialization.
      */
-    public void run() {
-
-        try {
-            Thread.sleep(2000);
-        } catch (InterruptedException e) {
-            logger.error(e.getMessage(), e);
-        }
-
+    protected void sample() {
         Connection conn = null;
         ResultSet resultSet = null;
 
-        while (isActive()) {
-            try {
-                conn = sm.getConnection();
-                StringBuilder query = new StringBuilder("select * from ").append(table_name)
-                        .append(" where timed > " + latest_timed + " limit 0," + buffer_size);
-
-                resultSet = sm.executeQueryWithResultSet(query, conn);
-
-                // logger.debug(query);
-
-                while (resultSet.next()) {
-                    Serializable[] output = new Serializable[this.getOutputFormat().length];
-
-                    long timed = resultSet.getLong(2);
-
-                    // logger.warn("pk => "+ pk);
-                    // logger.warn("timed => "+ timed);
-
-                    for (int i = 0; i < dataFieldsLength; i++) {
-
-                        switch (dataFieldTypes[i]) {
-                            case DataTypes.VARCHAR:
-                            case DataTypes.CHAR:
-                                output[i] = resultSet.getString(i + 3);
-                                break;
-                            case DataTypes.INTEGER:
-                                output[i] = resultSet.getInt(i + 3);
-                                break;
-                            case DataTypes.TINYINT:
-                                output[i] = resultSet.getByte(i + 3);
-                                break;
-                            case DataTypes.SMALLINT:
-                                output[i] = resultSet.getShort(i + 3);
-                                break;
-                            case DataTypes.DOUBLE:
-                                output[i] = resultSet.getDouble(i + 3);
-                                break;
-                            case DataTypes.FLOAT:
-                                output[i] = resultSet.getFloat(i + 3);
-                                break;
-                            case DataTypes.BIGINT:
-                                output[i] = resultSet.getLong(i + 3);
-                                break;
-                            case DataTypes.BINARY:
-                                output[i] = resultSet.getBytes(i + 3);
-                                break;
-                            default:
-                                break;
-                        }
-                        // logger.warn(i+" (type: "+dataFieldTypes[i]+" ) => "+output[i]);
+        try {
+            conn = sm.getConnection();
+            StringBuilder query = new StringBuilder("select * from ").append(table_name)
+                    .append(" where timed > " + latest_timed + " limit 0," + buffer_size);
+
+            resultSet = sm.executeQueryWithResultSet(query, conn);
+
+            // logger.debug(query);
+
+            List<StreamElement> batch = new ArrayList<StreamElement>();
+            while (resultSet.next()) {
+                Serializable[] output = new Serializable[this.getOutputFormat().length];
+
+                long timed = resultSet.getLong(2);
+
+                // logger.warn("pk => "+ pk);
+                // logger.warn("timed => "+ timed);
+
+                for (int i = 0; i < dataFieldsLength; i++) {
+
+                    switch (dataFieldTypes[i]) {
+                        case DataTypes.VARCHAR:
+                        case DataTypes.CHAR:
+                            output[i] = resultSet.getString(i + 3);
+                            break;
+                        case DataTypes.INTEGER:
+                            output[i] = resultSet.getInt(i + 3);
+                            break;
+                        case DataTypes.TINYINT:
+                            output[i] = resultSet.getByte(i + 3);
+                            break;
+                        case DataTypes.SMALLINT:
+                            output[i] = resultSet.getShort(i + 3);
+                            break;
+                        case DataTypes.DOUBLE:
+                            output[i] = resultSet.getDouble(i + 3);
+                            break;
+                        case DataTypes.FLOAT:
+                            output[i] = resultSet.getFloat(i + 3);
+                            break;
+                        case DataTypes.BIGINT:
+                            output[i] = resultSet.getLong(i + 3);
+                            break;
+                        case DataTypes.BINARY:
+                            output[i] = resultSet.getBytes(i + 3);
+                            break;
+                        default:
+                            break;
                     }
+                    // logger.warn(i+" (type: "+dataFieldTypes[i]+" ) => "+output[i]);
+                }
 
-                    StreamElement se = new StreamElement(dataFieldNames, dataFieldTypes, output, timed);
-                    latest_timed = se.getTimeStamp();
-
-                    // logger.warn(" Latest => " + latest_timed);
-
-                    this.postStreamElement(se);
+                StreamElement se = new StreamElement(dataFieldNames, dataFieldTypes, output, timed);
+                latest_timed = se.getTimeStamp();
 
-                    updateCheckPointFile(latest_timed);
+                // logger.warn(" Latest => " + latest_timed);
 
-                    // logger.warn(se);
-                }
+                batch.add(se);
 
-            } catch (java.io.IOException e) {
-                logger.error(e.getMessage(), e);
-            } catch (SQLException e) {
-                logger.error(e.getMessage(), e);
-            } finally {
-                sm.close(resultSet);
-                sm.close(conn);
+                // logger.warn(se);
             }
 
-            try {
-                Thread.sleep(rate);
-            } catch (InterruptedException e) {
-                logger.error(e.getMessage(), e);
+            if (!batch.isEmpty()) {
+                this.postStreamElements(batch);
+                updateCheckPointFile(latest_timed);
             }
+
+        } catch (java.io.IOException e) {
+            logger.error(e.getMessage(), e);
+        } catch (SQLException e) {
+            logger.error(e.getMessage(), e);
+        } finally {
+            sm.close(resultSet);
+            sm.close(conn);
         }
     }
 
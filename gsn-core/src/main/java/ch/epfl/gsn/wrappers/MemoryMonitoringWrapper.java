@@ -44,7 +44,7 @@ import ch.epfl.gsn.utils.ParamParser;
 
 import org.slf4j.Logger;
 
-public class MemoryMonitoringWrapper extends AbstractWrapper {
+public class MemoryMonitoringWrapper extends AbstractPeriodicWrapper {
 
    private static final int DEFAULT_SAMPLING_RATE = 1000;
 
@@ -93,29 +93,24 @@ public class MemoryMonitoringWrapper extends AbstractWrapper {
       return true;
    }
 
+   protected long getSamplingPeriod() {
+      return samplingRate;
+   }
+
    /**
-    * Executes the memory monitoring process in a loop until the wrapper is active.
-    * It periodically collects memory usage information and posts it as a stream
-    * element.
+    * Collects the memory usage information and posts it as a stream element.
     */
-   public void run() {
-      while (isActive()) {
-         try {
-            Thread.sleep(samplingRate);
-         } catch (InterruptedException e) {
-            logger.error(e.getMessage(), e);
-         }
-         long heapMemoryUsage = mbean.getHeapMemoryUsage().getUsed();
-         long nonHeapMemoryUsage = mbean.getNonHeapMemoryUsage().getUsed();
-         int pendingFinalizationCount = mbean.getObjectPendingFinalizationCount();
-
-         StreamElement streamElement = new StreamElement(FIELD_NAMES,
-               new Byte[] { DataTypes.BIGINT, DataTypes.BIGINT, DataTypes.INTEGER },
-               new Serializable[] { heapMemoryUsage,
-                     nonHeapMemoryUsage, pendingFinalizationCount },
-               System.currentTimeMillis());
-         postStreamElement(streamElement);
-      }
+   protected void sample() {
+      long heapMemoryUsage = mbean.getHeapMemoryUsage().getUsed();
+      long nonHeapMemoryUsage = mbean.getNonHeapMemoryUsage().getUsed();
+      int pendingFinalizationCount = mbean.getObjectPendingFinalizationCount();
+
+      StreamElement streamElement = new StreamElement(FIELD_NAMES,
+            new Byte[] { DataTypes.BIGINT, DataTypes.BIGINT, DataTypes.INTEGER },
+            new Serializable[] { heapMemoryUsage,
+                  nonHeapMemoryUsage, pendingFinalizationCount },
+            System.currentTimeMillis());
+      postStreamElement(streamElement);
    }
 
    public void dispose() {
@@ -50,7 +50,7 @@ import org.slf4j.Logger;
  * latter is for the sensors equipped with both temperature and light sensors.
  * 
  */
-public class MultiFormatWrapper extends AbstractWrapper {
+public class MultiFormatWrapper extends AbstractPeriodicWrapper {
   private DataField[] collection = new DataField[] { new DataField("packet_type", "int", "packet type"),
       new DataField("temperature", "double", "Presents the temperature sensor."),
       new DataField("light", "double", "Presents the light sensor.") };
@@ -77,32 +77,22 @@ public class MultiFormatWrapper extends AbstractWrapper {
     return true;
   }
 
+  protected long getSamplingPeriod() {
+    return rate;
+  }
+
   /**
-   * Runs the wrapper by continuously generating random readings for light and
-   * temperature,
-   * and posting the data to GSN.
+   * Generates random readings for light and temperature and posts the data to
+   * GSN.
    */
-  public void run() {
-    Double light = 0.0, 
-           temperature = 0.0;
-    int packetType = 0;
-
-    while (isActive()) {
-      try {
-        // delay
-        Thread.sleep(rate);
-      } catch (InterruptedException e) {
-        logger.error(e.getMessage(), e);
-      }
-
-      // create some random readings
-      light = ((int) (Math.random() * 10000)) / 10.0;
-      temperature = ((int) (Math.random() * 1000)) / 10.0;
-      packetType = 2;
-
-      // post the data to GSN
-      postStreamElement(new Serializable[] { packetType, temperature, light });
-    }
+  protected void sample() {
+    // create some random readings
+    Double light = ((int) (Math.random() * 10000)) / 10.0;
+    Double temperature = ((int) (Math.random() * 1000)) / 10.0;
+    int packetType = 2;
+
+    // post the data to GSN
+    postStreamElement(new Serializable[] { packetType, temperature, light });
   }
 
   public DataField[] getOutputFormat() {
@@ -0,0 +1,197 @@
+package ch.epfl.gsn.wrappers;
+
+import java.util.Arrays;
+import java.util.List;
+
+import ch.epfl.gsn.beans.StreamElement;
+
+/**
+ * Ordering state of one partial-order key of a wrapper (see
+ * {@link AbstractWrapper#getPartialOrdersKey()}).
+ * <p>
+ * It keeps the timestamp of the last stream element propagated for the key
+ * and, when the wrapper accepts a bounded lateness, a heap of the elements
+ * waiting for the watermark. The watermark is the highest timestamp seen for
+ * the key minus the maximum lateness: elements at or below it can't be
+ * overtaken anymore and are released in timestamp order. The heap is keyed
+ * on the primitive timestamps, elements with the same timestamp are released
+ * in arrival order.
+ * <p>
+ * Instances are not thread safe, the wrapper synchronizes the accesses.
+ */
+public final class ReorderBuffer {
+
+	/**
+	 * Upper bound on the number of elements waiting for the watermark, the
+	 * oldest ones are released early when it is reached.
+	 */
+	public static final int MAX_PENDING = 10000;
+
+	private final long maxLateness;
+
+	private long lastTimestamp = Long.MIN_VALUE;
+
+	private long maxTimestamp = Long.MIN_VALUE;
+
+	private long lastOfferTime;
+
+	private long sequence = 0;
+
+	private long[] timestamps;
+
+	private long[] sequences;
+
+	private StreamElement[] elements;
+
+	private int size = 0;
+
+	/**
+	 * @param maxLateness
+	 *            how far behind (in milliseconds) the newest element of the
+	 *            key an element may arrive and still be propagated in order,
+	 *            0 to only keep the ordering state
+	 */
+	public ReorderBuffer(long maxLateness) {
+		this.maxLateness = Math.max(0, maxLateness);
+	}
+
+	/**
+	 * @return the timestamp of the last element propagated for the key, or
+	 *         Long.MIN_VALUE if none was
+	 */
+	public long getLastTimestamp() {
+		return lastTimestamp;
+	}
+
+	public void setLastTimestamp(long lastTimestamp) {
+		this.lastTimestamp = lastTimestamp;
+	}
+
+	/**
+	 * @return true if the element is older than the last propagated one (or
+	 *         as old, if the timestamps are unique) and must be dropped
+	 */
+	public boolean isLate(long timestamp, boolean timeStampUnique) {
+		return timeStampUnique ? timestamp <= lastTimestamp : timestamp < lastTimestamp;
+	}
+
+	/**
+	 * Adds an element to the heap.
+	 *
+	 * @return true if the element arrived after a newer one, i.e. it is being
+	 *         reordered
+	 */
+	public boolean offer(StreamElement se, long now) {
+		long timestamp = se.getTimeStamp();
+		boolean reordered = timestamp < maxTimestamp;
+		if (timestamp > maxTimestamp) {
+			maxTimestamp = timestamp;
+		}
+		lastOfferTime = now;
+		if (elements == null) {
+			timestamps = new long[16];
+			sequences = new long[16];
+			elements = new StreamElement[16];
+		} else if (size == elements.length) {
+			int capacity = size * 2;
+			timestamps = Arrays.copyOf(timestamps, capacity);
+			sequences = Arrays.copyOf(sequences, capacity);
+			elements = Arrays.copyOf(elements, capacity);
+		}
+		int i = size++;
+		long seq = sequence++;
+		// sift up
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!before(timestamp, seq, timestamps[parent], sequences[parent])) {
+				break;
+			}
+			move(parent, i);
+			i = parent;
+		}
+		timestamps[i] = timestamp;
+		sequences[i] = seq;
+		elements[i] = se;
+		return reordered;
+	}
+
+	/**
+	 * Moves the elements which passed the watermark to the given list, in
+	 * timestamp order. All of them are released if the key didn't receive
+	 * anything during the last maxLateness milliseconds. The wrapper calls it
+	 * for each post and periodically, for the keys which stay quiet.
+	 *
+	 * @return the number of elements released
+	 */
+	public int release(List<StreamElement> out, long now) {
+		if (size == 0) {
+			return 0;
+		}
+		long watermark = now - lastOfferTime >= maxLateness ? Long.MAX_VALUE : maxTimestamp - maxLateness;
+		int released = 0;
+		while (size > 0 && (timestamps[0] <= watermark || size > MAX_PENDING)) {
+			out.add(poll());
+			released++;
+		}
+		return released;
+	}
+
+	/**
+	 * Moves all the pending elements to the given list, in timestamp order.
+	 */
+	public int releaseAll(List<StreamElement> out) {
+		int released = size;
+		while (size > 0) {
+			out.add(poll());
+		}
+		return released;
+	}
+
+	/**
+	 * @return the number of elements waiting for the watermark
+	 */
+	public int getPendingCount() {
+		return size;
+	}
+
+	private StreamElement poll() {
+		StreamElement head = elements[0];
+		int last = --size;
+		long timestamp = timestamps[last];
+		long seq = sequences[last];
+		StreamElement se = elements[last];
+		elements[last] = null;
+		if (last == 0) {
+			return head;
+		}
+		// sift down the last element from the root
+		int i = 0;
+		int half = last >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			int right = child + 1;
+			if (right < last && before(timestamps[right], sequences[right], timestamps[child], sequences[child])) {
+				child = right;
+			}
+			if (!before(timestamps[child], sequences[child], timestamp, seq)) {
+				break;
+			}
+			move(child, i);
+			i = child;
+		}
+		timestamps[i] = timestamp;
+		sequences[i] = seq;
+		elements[i] = se;
+		return head;
+	}
+
+	private void move(int from, int to) {
+		timestamps[to] = timestamps[from];
+		sequences[to] = sequences[from];
+		elements[to] = elements[from];
+	}
+
+	private static boolean before(long timestamp1, long seq1, long timestamp2, long seq2) {
+		return timestamp1 < timestamp2 || (timestamp1 == timestamp2 && seq1 < seq2);
+	}
+}
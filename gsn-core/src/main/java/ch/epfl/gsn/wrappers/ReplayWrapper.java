@@ -43,7 +43,9 @@ import ch.epfl.gsn.Main;
 import ch.epfl.gsn.beans.AddressBean;
 import ch.epfl.gsn.beans.DataField;
 import ch.epfl.gsn.beans.StreamElement;
-import ch.epfl.gsn.storage.DataEnumerator;
+import ch.epfl.gsn.storage.DataEnumeratorIF;
+import ch.epfl.gsn.storage.KeysetDataEnumerator;
+import ch.epfl.gsn.storage.segment.SegmentStore;
 
 import org.slf4j.Logger;
 
@@ -51,6 +53,9 @@ import org.slf4j.Logger;
  * This wrapper enables one to reply the existing stream from a database.
  * parameters: (dbname,speed [integer >=1, default is 1], for instance speed=2
  * means play 2 times faster).
+ * If the virtual sensor dbname is archived in a segment store, the stream is
+ * replayed from the archive, in the order it was produced, instead of the
+ * table.
  */
 public class ReplayWrapper extends AbstractWrapper {
 
@@ -137,18 +142,19 @@ public class ReplayWrapper extends AbstractWrapper {
 
 class DelayedDataEnumerator implements Enumeration<ScheduledStreamElement> {
   private int speed;
-  private DataEnumerator data;
+  private DataEnumeratorIF data;
   private StreamElement previousElement = null;
-  private transient Logger logger = LoggerFactory.getLogger(this.getClass());
 
   public DelayedDataEnumerator(String dbName, int speed) {
     this.speed = speed;
-    StringBuilder query = new StringBuilder("select * from ").append(dbName).append(" order by TIMED asc");
-    try {
-      data = Main.getStorage(dbName).executeQuery(query, false);
-
-    } catch (SQLException e) {
-      logger.error(e.getMessage(), e);
+    SegmentStore archive = SegmentStore.find(dbName);
+    if (archive != null) {
+      // the segments are decoded one at a time as the replay goes on
+      data = archive.scan(Long.MIN_VALUE, Long.MAX_VALUE);
+    } else {
+      // the table is read page by page as the replay goes on
+      data = new KeysetDataEnumerator(Main.getStorage(dbName), dbName, null, true,
+          KeysetDataEnumerator.DEFAULT_PAGE_SIZE);
     }
   }
 
@@ -160,7 +166,8 @@ class DelayedDataEnumerator implements Enumeration<ScheduledStreamElement> {
     StreamElement currentSe = data.nextElement();
     long delay = 500;// First time execution is delayed for 500ms.
     if (previousElement != null) {
-      delay = (currentSe.getTimeStamp() - previousElement.getTimeStamp()) / speed;
+      // the archive is in production order, an element may be older than the previous one
+      delay = Math.max(0, (currentSe.getTimeStamp() - previousElement.getTimeStamp()) / speed);
     }
     previousElement = currentSe;
     return new ScheduledStreamElement(currentSe, delay);
@@ -0,0 +1,121 @@
+package ch.epfl.gsn.wrappers;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.LoggerFactory;
+
+import org.slf4j.Logger;
+
+/**
+ * Scheduler shared by the periodic wrappers (see {@link AbstractPeriodicWrapper})
+ * when GSN runs with <code>&lt;wrapper-runtime&gt;scheduled&lt;/wrapper-runtime&gt;</code>.
+ * Instead of one thread sleeping between two samples for each wrapper, the
+ * samples of all the periodic wrappers are taken by a small pool of threads.
+ * The other wrappers keep their own thread in both runtimes.
+ */
+public class WrapperScheduler {
+
+	public static final String RUNTIME_THREAD = "thread";
+
+	public static final String RUNTIME_SCHEDULED = "scheduled";
+
+	private static final transient Logger logger = LoggerFactory.getLogger(WrapperScheduler.class);
+
+	private static WrapperScheduler singleton;
+
+	private static boolean scheduledRuntime = false;
+
+	private static int configuredThreads = 0;
+
+	private final ScheduledThreadPoolExecutor pool;
+
+	private WrapperScheduler(int threads) {
+		pool = new ScheduledThreadPoolExecutor(threads, new SchedulerThreadFactory());
+		pool.setRemoveOnCancelPolicy(true);
+		logger.info("Wrapper scheduler started with " + threads + " threads.");
+	}
+
+	/**
+	 * Selects the wrapper runtime and the number of threads of the scheduler,
+	 * 0 or less means one per available processor. Only effective before the
+	 * wrappers are started.
+	 */
+	public static synchronized void configure(String runtime, int threads) {
+		String r = runtime == null ? RUNTIME_THREAD : runtime.trim().toLowerCase();
+		if (!RUNTIME_THREAD.equals(r) && !RUNTIME_SCHEDULED.equals(r)) {
+			logger.warn("Unknown wrapper runtime " + runtime + ", expected " + RUNTIME_THREAD + " or "
+					+ RUNTIME_SCHEDULED + ". Using " + RUNTIME_THREAD + ".");
+			r = RUNTIME_THREAD;
+		}
+		scheduledRuntime = RUNTIME_SCHEDULED.equals(r);
+		configuredThreads = threads;
+	}
+
+	/**
+	 * @return true if the periodic wrappers should be run by the scheduler
+	 *         instead of their own thread
+	 */
+	public static synchronized boolean isScheduledRuntime() {
+		return scheduledRuntime;
+	}
+
+	public static synchronized WrapperScheduler getInstance() {
+		if (singleton == null) {
+			int threads = configuredThreads > 0 ? configuredThreads : Runtime.getRuntime().availableProcessors();
+			singleton = new WrapperScheduler(threads);
+		}
+		return singleton;
+	}
+
+	/**
+	 * Runs the task every <code>period</code> milliseconds, the period being
+	 * counted from the end of the previous run like the sleeping loop of a
+	 * wrapper thread.
+	 */
+	public ScheduledFuture<?> schedule(Runnable task, long period) {
+		return pool.scheduleWithFixedDelay(task, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	public int getActiveCount() {
+		return pool.getActiveCount();
+	}
+
+	public int getPoolSize() {
+		return pool.getCorePoolSize();
+	}
+
+	/**
+	 * Stops the scheduler, the samples being taken are given a few seconds to
+	 * finish.
+	 */
+	public static synchronized void shutdown() {
+		if (singleton == null) {
+			return;
+		}
+		ScheduledThreadPoolExecutor pool = singleton.pool;
+		singleton = null;
+		pool.shutdown();
+		try {
+			if (!pool.awaitTermination(5, TimeUnit.SECONDS)) {
+				pool.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			pool.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class SchedulerThreadFactory implements ThreadFactory {
+		private final AtomicInteger counter = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "wrapper-scheduler-" + counter.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -46,7 +46,7 @@ import org.slf4j.LoggerFactory;
 import ch.epfl.gsn.beans.AddressBean;
 import ch.epfl.gsn.beans.DataField;
 import ch.epfl.gsn.beans.StreamElement;
-import ch.epfl.gsn.wrappers.AbstractWrapper;
+import ch.epfl.gsn.wrappers.AbstractPeriodicWrapper;
 
 import org.slf4j.Logger;
 
@@ -55,7 +55,7 @@ import org.slf4j.Logger;
  * Formatting:
  * http://joda-time.sourceforge.net/apidocs/org/joda/time/format/DateTimeFormat.html
  */
-public class CSVWrapper extends AbstractWrapper {
+public class CSVWrapper extends AbstractPeriodicWrapper {
 
     private final transient Logger logger = LoggerFactory.getLogger(CSVWrapper.class);
 
@@ -75,6 +75,12 @@ public class CSVWrapper extends AbstractWrapper {
     long processedLineCounter = 0; // counts lines processed when checkpoint use counter to track changes (instead
                                    // of timestamp, by default)
 
+    private Exception preivousError = null;
+
+    private long previousModTime = -1;
+
+    private long previousCheckModTime = -1;
+
     /**
      * Initializes the CSVWrapper by retrieving the necessary configuration values
      * from the AddressBean.
@@ -167,93 +173,87 @@ public class CSVWrapper extends AbstractWrapper {
         return true;
     }
 
+    protected long getSamplingPeriod() {
+        return samplingPeriodInMsc;
+    }
+
     /**
-     * Executes the main logic of the CSVWrapper in a continuous loop until the
-     * isActive flag is set to false.
-     * This method reads data from the data file and performs necessary operations
-     * on it.
-     * It also handles exceptions and updates the checkpoint file accordingly.
+     * Reads the data file if it changed since the previous error, posts the
+     * new lines and updates the checkpoint file accordingly. A repeated error
+     * is only logged once.
      */
-    public void run() {
-        Exception preivousError = null;
-        long previousModTime = -1;
-        long previousCheckModTime = -1;
-        while (isActive()) {
-            File dataFile = new File(handler.getDataFile());
-            File chkPointFile = new File(handler.getCheckPointFile());
-            long lastModified = -1;
-            long lastModifiedCheckPoint = -1;
-            if (dataFile.isFile()) {
-                lastModified = dataFile.lastModified();
-            }
-            if (chkPointFile.isFile()) {
-                lastModifiedCheckPoint = chkPointFile.lastModified();
-            }
+    protected void sample() {
+        File dataFile = new File(handler.getDataFile());
+        File chkPointFile = new File(handler.getCheckPointFile());
+        long lastModified = -1;
+        long lastModifiedCheckPoint = -1;
+        if (dataFile.isFile()) {
+            lastModified = dataFile.lastModified();
+        }
+        if (chkPointFile.isFile()) {
+            lastModifiedCheckPoint = chkPointFile.lastModified();
+        }
 
-            FileReader reader = null;
-
-            /*
-             * DEBUG_INFO("* Entry *");
-             * DEBUG_INFO(list("lastModified", lastModified));
-             * DEBUG_INFO(list("lastModifiedCheckPoint", lastModifiedCheckPoint));
-             */
-
-            try {
-                ArrayList<TreeMap<String, Serializable>> output = null;
-                if (preivousError == null || (preivousError != null
-                        && ((lastModified != previousModTime || lastModifiedCheckPoint != previousCheckModTime)
-                                || useCounterForCheckPoint))) {
-
-                    reader = new FileReader(handler.getDataFile());
-                    output = handler.work(reader, checkPointDir);
-                    for (TreeMap<String, Serializable> se : output) {
-                        StreamElement streamElement = new StreamElement(se, getOutputFormat());
-                        String[] ses = streamElement.getFieldNames();
-                        processedLineCounter++;
-                        for (int i = 0; i < ses.length; i++) {
-                            if ("anetz_snow_height".equalsIgnoreCase(ses[i])
-                                    || "mst_surface_temp".equalsIgnoreCase(ses[i])) {
-                                logger.warn(dataFile + " : " + se);
-                                break;
-                            }
-                        }
-                        postStreamElement(streamElement);
+        FileReader reader = null;
 
-                        if (useCounterForCheckPoint) {
-                            handler.updateCheckPointFile(processedLineCounter); // write latest processed line number
-                        } else {
-                            handler.updateCheckPointFile(streamElement.getTimeStamp()); // write latest processed
-                                                                                        // timestamp
+        /*
+         * DEBUG_INFO("* Entry *");
+         * DEBUG_INFO(list("lastModified", lastModified));
+         * DEBUG_INFO(list("lastModifiedCheckPoint", lastModifiedCheckPoint));
+         */
+
+        try {
+            ArrayList<TreeMap<String, Serializable>> output = null;
+            if (preivousError == null || (preivousError != null
+                    && ((lastModified != previousModTime || lastModifiedCheckPoint != previousCheckModTime)
+                            || useCounterForCheckPoint))) {
+
+                reader = new FileReader(handler.getDataFile());
+                output = handler.work(reader, checkPointDir);
+                for (TreeMap<String, Serializable> se : output) {
+                    StreamElement streamElement = new StreamElement(se, getOutputFormat());
+                    String[] ses = streamElement.getFieldNames();
+                    processedLineCounter++;
+                    for (int i = 0; i < ses.length; i++) {
+                        if ("anetz_snow_height".equalsIgnoreCase(ses[i])
+                                || "mst_surface_temp".equalsIgnoreCase(ses[i])) {
+                            logger.warn(dataFile + " : " + se);
+                            break;
                         }
+                    }
+                    postStreamElement(streamElement);
 
+                    if (useCounterForCheckPoint) {
+                        handler.updateCheckPointFile(processedLineCounter); // write latest processed line number
+                    } else {
+                        handler.updateCheckPointFile(streamElement.getTimeStamp()); // write latest processed
+                                                                                    // timestamp
                     }
+
                 }
-                // if (output==null || output.size()==0) //More intelligent sleeping, being more
-                // proactive once the wrapper receives huge files.
-                Thread.sleep(samplingPeriodInMsc);
-            } catch (Exception e) {
-                if (preivousError != null && preivousError.getMessage().equals(e.getMessage())) {
-                    continue;
-                }
-                logger.error(e.getMessage() + " :: " + dataFile, e);
-                preivousError = e;
-                previousModTime = lastModified;
-                previousCheckModTime = lastModifiedCheckPoint;
-            } finally {
-                if (reader != null) {
-                    try {
-                        reader.close();
-                    } catch (IOException e) {
-                        if(logger.isDebugEnabled()){
-                            logger.debug(e.getMessage(), e);
-                        }
+            }
+        } catch (Exception e) {
+            if (preivousError != null && preivousError.getMessage().equals(e.getMessage())) {
+                return;
+            }
+            logger.error(e.getMessage() + " :: " + dataFile, e);
+            preivousError = e;
+            previousModTime = lastModified;
+            previousCheckModTime = lastModifiedCheckPoint;
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    if(logger.isDebugEnabled()){
+                        logger.debug(e.getMessage(), e);
                     }
                 }
             }
-            /*
-             * DEBUG_INFO("* Exit *");
-             */
         }
+        /*
+         * DEBUG_INFO("* Exit *");
+         */
     }
 
     public DataField[] getOutputFormat() {
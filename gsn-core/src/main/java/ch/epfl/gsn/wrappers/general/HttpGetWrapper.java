@@ -41,11 +41,11 @@ import org.slf4j.LoggerFactory;
 
 import ch.epfl.gsn.beans.AddressBean;
 import ch.epfl.gsn.beans.DataField;
-import ch.epfl.gsn.wrappers.AbstractWrapper;
+import ch.epfl.gsn.wrappers.AbstractPeriodicWrapper;
 
 import org.slf4j.Logger;
 
-public class HttpGetWrapper extends AbstractWrapper {
+public class HttpGetWrapper extends AbstractPeriodicWrapper {
 
    private int DEFAULT_RATE = 2000;
 
@@ -65,6 +65,10 @@ public class HttpGetWrapper extends AbstractWrapper {
 
    private int rate;
 
+   private final ByteArrayOutputStream arrayOutputStream = new ByteArrayOutputStream(1024 * 20);
+
+   private final byte[] buffer = new byte[16 * 1024];
+
    private transient final DataField[] outputStructure = new DataField[] {
          new DataField("data", "binary:image/jpeg", "JPEG image from the remote networked camera.") };
 
@@ -97,38 +101,26 @@ public class HttpGetWrapper extends AbstractWrapper {
       return true;
    }
 
+   protected long getSamplingPeriod() {
+      return rate;
+   }
+
    /**
-    * Executes the continuous HTTP GET requests and processes the response.
-    * This method runs in a separate thread and continues until the isActive flag
-    * is set to false.
-    * It sleeps for a specified rate before each request and handles any exceptions
-    * that occur.
+    * Executes one HTTP GET request and posts the response.
     */
-   public void run() {
-      ByteArrayOutputStream arrayOutputStream = new ByteArrayOutputStream(1024 * 20);
-      byte[] buffer = new byte[16 * 1024];
-      BufferedInputStream content;
-      while (isActive()) {
-         try {
-            Thread.sleep(rate);
-            httpURLConnection = (HttpURLConnection) url.openConnection();
-            httpURLConnection.connect();
-            if (httpURLConnection.getResponseCode() == HttpURLConnection.HTTP_ACCEPTED) {
-               continue;
-            }
-            content = new BufferedInputStream(httpURLConnection.getInputStream(), 4096);
-            arrayOutputStream.reset();
-            int readIndex = -1;
-            while ((readIndex = content.read(buffer)) != -1) {
-               arrayOutputStream.write(buffer, 0, readIndex);
-            }
-            postStreamElement(arrayOutputStream.toByteArray());
-         } catch (InterruptedException e) {
-            logger.error(e.getMessage(), e);
-         } catch (IOException e) {
-            logger.error(e.getMessage(), e);
-         }
+   protected void sample() throws IOException {
+      httpURLConnection = (HttpURLConnection) url.openConnection();
+      httpURLConnection.connect();
+      if (httpURLConnection.getResponseCode() == HttpURLConnection.HTTP_ACCEPTED) {
+         return;
+      }
+      BufferedInputStream content = new BufferedInputStream(httpURLConnection.getInputStream(), 4096);
+      arrayOutputStream.reset();
+      int readIndex = -1;
+      while ((readIndex = content.read(buffer)) != -1) {
+         arrayOutputStream.write(buffer, 0, readIndex);
       }
+      postStreamElement(arrayOutputStream.toByteArray());
    }
 
    public String getWrapperName() {
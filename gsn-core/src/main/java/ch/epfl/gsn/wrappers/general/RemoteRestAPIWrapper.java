@@ -53,11 +53,13 @@ import com.fasterxml.jackson.databind.JsonNode;
 import ch.epfl.gsn.beans.AddressBean;
 import ch.epfl.gsn.beans.DataField;
 import ch.epfl.gsn.beans.StreamElement;
-import ch.epfl.gsn.wrappers.AbstractWrapper;
+import ch.epfl.gsn.wrappers.AbstractPeriodicWrapper;
 
 import org.slf4j.Logger;
 
-public class RemoteRestAPIWrapper extends AbstractWrapper {
+public class RemoteRestAPIWrapper extends AbstractPeriodicWrapper {
+
+	private static final long ERROR_DELAY = 60000;
 
 	private final transient Logger logger = LoggerFactory.getLogger(RemoteRestAPIWrapper.class);
 
@@ -70,7 +72,7 @@ public class RemoteRestAPIWrapper extends AbstractWrapper {
 	private String token = "";
 	private String vsName;
 	private HttpClient client = HttpClients.createDefault();
-	private HttpGet getData = null;
+	private final HttpGet getData = new HttpGet();
 	private int samplingPeriodInMsc;
 
 	public DataField[] getOutputFormat() {
@@ -237,41 +239,29 @@ public class RemoteRestAPIWrapper extends AbstractWrapper {
 		}
 	}
 
+	protected long getSamplingPeriod() {
+		return samplingPeriodInMsc;
+	}
+
 	/**
-	 * Executes the continuous data retrieval process from the remote REST API.
-	 * This method runs in a separate thread and retrieves data from the specified
-	 * URI.
-	 * The retrieved data is then processed and inserted into the system.
-	 * If an exception occurs during the retrieval process, the method will log a
-	 * warning
-	 * and retry after a minute if the process is still active.
+	 * Retrieves the data produced since the last received timestamp from the
+	 * remote REST API and inserts it. If an exception occurs, the method logs a
+	 * warning and the next retrieval is tried after a minute.
 	 */
-	public void run() {
-		getData = new HttpGet();
-		while (isActive()) {
-			String uri = wsURL + "/api/sensors/" + vsName + "/data?from_timestamp=" + lastReceivedTimestamp + "&order=asc&size=10000";
+	protected void sample() {
+		String uri = wsURL + "/api/sensors/" + vsName + "/data?from_timestamp=" + lastReceivedTimestamp + "&order=asc&size=10000";
 
-			try {
-				getData.setURI(new URI(uri));
-				String content = doRequest(getData);
+		try {
+			getData.setURI(new URI(uri));
+			String content = doRequest(getData);
 
-				for (StreamElement se : StreamElement.fromJSON(content)) {
-					manualDataInsertion(se);
-				}
-				Thread.sleep(samplingPeriodInMsc);
-			} catch (Exception e) {
-				logger.warn(
-						"Something went wrong when querying the REST API at " + uri + " trying again in 1 minute...");
-				try {
-					if (isActive()) {
-						Thread.sleep(60000);
-					}
-				} catch (Exception err) {
-					if(logger.isDebugEnabled()){
-						logger.debug(err.getMessage(), err);
-					}
-				}
+			for (StreamElement se : StreamElement.fromJSON(content)) {
+				manualDataInsertion(se);
 			}
+		} catch (Exception e) {
+			logger.warn(
+					"Something went wrong when querying the REST API at " + uri + " trying again in 1 minute...");
+			pauseSampling(ERROR_DELAY);
 		}
 	}
 
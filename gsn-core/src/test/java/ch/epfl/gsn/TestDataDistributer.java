@@ -0,0 +1,233 @@
+package ch.epfl.gsn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StorageConfig;
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.beans.VSensorConfig;
+import ch.epfl.gsn.delivery.DefaultDistributionRequest;
+import ch.epfl.gsn.delivery.DeliverySystem;
+import ch.epfl.gsn.delivery.LocalChannel;
+import ch.epfl.gsn.storage.StorageManager;
+import ch.epfl.gsn.vsensor.AbstractVirtualSensor;
+
+public class TestDataDistributer {
+
+	private static final String VS = "distributertest";
+
+	private static final DataField[] FIELDS = new DataField[] { new DataField("temperature", DataTypes.INTEGER) };
+
+	private static VSensorConfig config;
+
+	private static StorageManager sm;
+
+	private static DataDistributer distributer;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		DriverManager.registerDriver(new org.h2.Driver());
+		StorageConfig storage = new StorageConfig();
+		storage.setJdbcDriver("org.h2.Driver");
+		storage.setJdbcUsername("sa");
+		storage.setJdbcPassword("");
+		storage.setJdbcURL("jdbc:h2:mem:distributer");
+		config = new VSensorConfig();
+		config.setName(VS);
+		config.setFileName(VS + ".xml");
+		config.setOutputStructure(FIELDS);
+		config.setStorage(storage);
+		// the feeds find the channel and the storage of the virtual sensor by its name
+		assertTrue(Mappings.addVSensorInstance(new VirtualSensor(config) {
+			@Override
+			public AbstractVirtualSensor borrowVS() {
+				return null;
+			}
+		}));
+		sm = Main.getStorage(config);
+		distributer = DataDistributer.getInstance(Recorder.class, VS);
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() {
+		distributer.release();
+		Mappings.removeFilename(config.getFileName());
+	}
+
+	@Before
+	public void setUp() throws SQLException {
+		sm.executeCreateTable(VS, FIELDS, false);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		distributer.release();
+		sm.executeDropTable(VS);
+	}
+
+	@Test
+	public void testFeed() throws Exception {
+		publish(1, 10);
+		Recorder recorder = new Recorder(0);
+		distributer.addListener(DefaultDistributionRequest.create(recorder, config, "select * from " + VS, -1));
+		publish(11, 10);
+
+		assertEquals(20, recorder.await(20).size());
+		// the older rows are read from the table, the newer ones are pushed
+		assertTrue(recorder.received.get(9).getInternalPrimayKey() > 0);
+		assertEquals(-1, recorder.received.get(10).getInternalPrimayKey());
+	}
+
+	@Test
+	public void testFeedOverflow() throws Exception {
+		publish(1, 10);
+		// the listener gets stuck on the 5th element pushed
+		Recorder recorder = new Recorder(15);
+		distributer.addListener(DefaultDistributionRequest.create(recorder, config, "select * from " + VS, -1));
+		publish(11, 10);
+		assertTrue(recorder.blocked.await(5, TimeUnit.SECONDS));
+		for (int b = 0; b < 11; b++) {
+			publish(21 + b * 100, 100);
+		}
+		recorder.gate.countDown();
+
+		List<StreamElement> received = recorder.await(1120);
+		assertEquals(1120, received.size());
+		assertEquals(-1, received.get(14).getInternalPrimayKey());
+		// dropped from the ring, read from the table after the last element delivered
+		assertEquals(16, received.get(15).getInternalPrimayKey());
+	}
+
+	@Test
+	public void testSharedQuery() throws Exception {
+		for (int b = 0; b < 25; b++) {
+			publish(1 + b * 100, 100);
+		}
+		String query = "select * from " + VS + " where temperature >= 0";
+		Recorder first = new Recorder(0);
+		Recorder second = new Recorder(0);
+		Recorder later = new Recorder(0);
+		distributer.addListener(DefaultDistributionRequest.create(first, config, query, -1));
+		distributer.addListener(DefaultDistributionRequest.create(second, config, query, -1));
+		// shares the pages of the others, which are older than its start time
+		distributer.addListener(DefaultDistributionRequest.create(later, config, query, 1800));
+
+		assertEquals(2500, first.await(1, 2500).size());
+		assertEquals(2500, second.await(1, 2500).size());
+		assertEquals(700, later.await(1801, 700).size());
+
+		publish(2501, 100);
+		assertEquals(2600, first.await(1, 2600).size());
+		assertEquals(2600, second.await(1, 2600).size());
+		assertEquals(800, later.await(1801, 800).size());
+	}
+
+	/**
+	 * Publishes the elements as the container does: inserted, then the
+	 * listeners are notified.
+	 */
+	private static void publish(long firstTimed, int size) throws SQLException {
+		final List<StreamElement> data = new ArrayList<StreamElement>();
+		for (int i = 0; i < size; i++) {
+			data.add(new StreamElement(FIELDS, new Serializable[] { (int) firstTimed + i }, firstTimed + i));
+		}
+		LocalChannel.get(VS).publish(data, new LocalChannel.Persistence() {
+			public void persist() throws SQLException {
+				sm.executeBatchInsert(VS, FIELDS, data);
+				for (StreamElement se : data) {
+					distributer.consume(se, config);
+				}
+			}
+		});
+	}
+
+	private static class Recorder implements DeliverySystem {
+
+		private final List<StreamElement> received = Collections.synchronizedList(new ArrayList<StreamElement>());
+
+		private final int blockAt;
+
+		private final CountDownLatch blocked = new CountDownLatch(1);
+
+		private final CountDownLatch gate = new CountDownLatch(1);
+
+		private volatile boolean closed = false;
+
+		/**
+		 * @param blockAt the number of elements received after which the
+		 *                delivery waits for the gate, 0 to never wait
+		 */
+		Recorder(int blockAt) {
+			this.blockAt = blockAt;
+		}
+
+		public void writeStructure(DataField[] fields) {
+		}
+
+		public boolean writeStreamElement(StreamElement se) {
+			received.add(se);
+			if (received.size() == blockAt) {
+				blocked.countDown();
+				try {
+					gate.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			return true;
+		}
+
+		public boolean writeKeepAliveStreamElement() {
+			return true;
+		}
+
+		public void close() {
+			closed = true;
+		}
+
+		public boolean isClosed() {
+			return closed;
+		}
+
+		List<StreamElement> await(int size) throws InterruptedException {
+			return await(1, size);
+		}
+
+		/**
+		 * Waits for the elements, which must be received once each, in order
+		 * of their timestamps.
+		 */
+		List<StreamElement> await(long firstTimed, int size) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 20000;
+			while (received.size() < size && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			List<StreamElement> copy;
+			synchronized (received) {
+				copy = new ArrayList<StreamElement>(received);
+			}
+			for (int i = 0; i < copy.size(); i++) {
+				assertEquals(firstTimed + i, copy.get(i).getTimeStamp());
+				assertEquals((int) (firstTimed + i), ((Number) copy.get(i).getData("temperature")).intValue());
+			}
+			return copy;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package ch.epfl.gsn;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Serializable;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StorageConfig;
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.beans.VSensorConfig;
+import ch.epfl.gsn.storage.StorageManager;
+import ch.epfl.gsn.vsensor.AbstractVirtualSensor;
+
+public class TestLatestValueCache {
+
+	private static final String VS = "latestvaluetest";
+
+	private static final DataField[] FIELDS = new DataField[] { new DataField("station", DataTypes.INTEGER),
+			new DataField("temperature", DataTypes.DOUBLE), new DataField("image", "binary") };
+
+	private static VSensorConfig config;
+
+	private static StorageManager sm;
+
+	private static AbstractVirtualSensor sensor;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		DriverManager.registerDriver(new org.h2.Driver());
+		StorageConfig storage = new StorageConfig();
+		storage.setJdbcDriver("org.h2.Driver");
+		storage.setJdbcUsername("sa");
+		storage.setJdbcPassword("");
+		storage.setJdbcURL("jdbc:h2:mem:latestvalue");
+		config = new VSensorConfig();
+		config.setName(VS);
+		config.setFileName(VS + ".xml");
+		config.setOutputStructure(FIELDS);
+		config.setStorage(storage);
+		assertTrue(Mappings.addVSensorInstance(new VirtualSensor(config) {
+			@Override
+			public AbstractVirtualSensor borrowVS() {
+				return null;
+			}
+		}));
+		sm = Main.getStorage(config);
+		sensor = new AbstractVirtualSensor() {
+			public boolean initialize() {
+				return true;
+			}
+
+			public void dispose() {
+			}
+
+			public void dataAvailable(String inputStreamName, StreamElement streamElement) {
+			}
+		};
+		sensor.setVirtualSensorConfiguration(config);
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() {
+		Mappings.removeFilename(config.getFileName());
+	}
+
+	@Before
+	public void setUp() throws SQLException {
+		// a duplicated timestamp fails to be inserted
+		sm.executeCreateTable(VS, FIELDS, true);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		config.setPartitionField(null);
+		LatestValueCache.remove(VS);
+		sm.executeDropTable(VS);
+	}
+
+	@Test
+	public void testLatest() {
+		assertNull(LatestValueCache.get(VS));
+		LatestValueCache.update(config, Arrays.asList(element(1, 1, 10.0), element(2, 2, 20.0)));
+		LatestValueCache.update(config, Collections.<StreamElement>emptyList());
+
+		StreamElement[] latest = LatestValueCache.get(VS.toUpperCase());
+		assertEquals(1, latest.length);
+		assertEquals(2, latest[0].getTimeStamp());
+		assertEquals(20.0, ((Number) latest[0].getData("temperature")).doubleValue(), 0);
+	}
+
+	@Test
+	public void testByPartition() {
+		config.setPartitionField("station");
+		LatestValueCache.update(config, Arrays.asList(element(1, 1, 10.0), element(2, 2, 20.0), element(3, 1, 30.0)));
+
+		Map<Long, StreamElement> latest = byTimestamp(LatestValueCache.get(VS));
+		assertEquals(Arrays.asList(2L, 3L), Arrays.asList(latest.keySet().toArray()));
+	}
+
+	@Test
+	public void testWithoutBinaries() {
+		StreamElement se = element(1, 1, 10.0);
+		LatestValueCache.update(config, Collections.singletonList(se));
+
+		StreamElement cached = LatestValueCache.get(VS)[0];
+		assertNull(cached.getData("image"));
+		assertEquals(10.0, ((Number) cached.getData("temperature")).doubleValue(), 0);
+		// the published element is left as it is
+		assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) se.getData("image"));
+
+		StreamElement numbers = new StreamElement(new DataField[] { FIELDS[0] }, new Serializable[] { 1 }, 1);
+		assertSame(numbers, LatestValueCache.withoutBinaries(numbers));
+	}
+
+	@Test
+	public void testLoad() throws SQLException {
+		config.setPartitionField("station");
+		sm.executeBatchInsert(VS, FIELDS, Arrays.asList(element(1, 1, 10.0), element(2, 2, 20.0), element(3, 1, 30.0)));
+		LatestValueCache.load(config);
+
+		Map<Long, StreamElement> latest = byTimestamp(LatestValueCache.get(VS));
+		assertEquals(Arrays.asList(2L, 3L), Arrays.asList(latest.keySet().toArray()));
+		assertNull(latest.get(3L).getData("image"));
+	}
+
+	@Test
+	public void testOnlyWritten() throws SQLException {
+		ContainerImpl.getInstance().publishData(sensor, element(1, 1, 10.0));
+		assertEquals(1, LatestValueCache.get(VS)[0].getTimeStamp());
+		try {
+			ContainerImpl.getInstance().publishData(sensor, element(1, 2, 20.0));
+			fail("The duplicated timestamp must fail.");
+		} catch (SQLException e) {
+			// not stored, hence not served
+			StreamElement[] latest = LatestValueCache.get(VS);
+			assertEquals(1, latest.length);
+			assertEquals(10.0, ((Number) latest[0].getData("temperature")).doubleValue(), 0);
+		}
+		ContainerImpl.getInstance().publishData(sensor, element(2, 2, 20.0));
+		assertEquals(2, LatestValueCache.get(VS)[0].getTimeStamp());
+	}
+
+	private static StreamElement element(long timed, int station, double temperature) {
+		return new StreamElement(FIELDS, new Serializable[] { station, temperature, new byte[] { 1, 2, 3 } }, timed);
+	}
+
+	private static Map<Long, StreamElement> byTimestamp(StreamElement[] elements) {
+		Map<Long, StreamElement> toReturn = new TreeMap<Long, StreamElement>();
+		for (StreamElement se : elements) {
+			toReturn.put(se.getTimeStamp(), se);
+		}
+		return toReturn;
+	}
+}
@@ -0,0 +1,150 @@
+package ch.epfl.gsn;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.beans.VSensorConfig;
+
+public class TestVirtualSensorMailbox {
+
+	private RecordingVirtualSensor sensor;
+
+	private VirtualSensorMailbox mailbox;
+
+	@Before
+	public void setUp() {
+		VSensorConfig config = new VSensorConfig();
+		config.setName("mailboxtest");
+		config.setFileName("mailboxtest.xml");
+		sensor = new RecordingVirtualSensor(config);
+	}
+
+	@After
+	public void tearDown() {
+		sensor.release.countDown();
+		if (mailbox != null) {
+			mailbox.dispose();
+		}
+	}
+
+	@Test
+	public void testBlock() throws InterruptedException {
+		mailbox = new VirtualSensorMailbox(sensor, 1, VirtualSensorMailbox.BACKPRESSURE_BLOCK);
+		submitFirst();
+		assertTrue(submit("b"));
+		Thread producer = new Thread(new Runnable() {
+			public void run() {
+				submit("c");
+			}
+		});
+		producer.start();
+		producer.join(200);
+		assertTrue("the producer must wait for room in the mailbox", producer.isAlive());
+		assertEquals(1, mailbox.getQueueDepth());
+
+		sensor.release.countDown();
+		producer.join(2000);
+		assertFalse(producer.isAlive());
+		assertEquals(Arrays.asList("a", "b", "c"), sensor.awaitDelivered(3));
+		assertEquals(0L, statistic("dropped.counter"));
+	}
+
+	@Test
+	public void testDropOldest() throws InterruptedException {
+		mailbox = new VirtualSensorMailbox(sensor, 2, VirtualSensorMailbox.BACKPRESSURE_DROP_OLDEST);
+		submitFirst();
+		assertTrue(submit("b"));
+		assertTrue(submit("c"));
+		assertTrue(submit("d"));
+		assertEquals(2, mailbox.getQueueDepth());
+		assertEquals(1L, statistic("dropped.counter"));
+
+		sensor.release.countDown();
+		assertEquals(Arrays.asList("a", "c", "d"), sensor.awaitDelivered(3));
+	}
+
+	@Test
+	public void testSpill() throws InterruptedException {
+		mailbox = new VirtualSensorMailbox(sensor, 1, VirtualSensorMailbox.BACKPRESSURE_SPILL);
+		submitFirst();
+		assertTrue(submit("b"));
+		assertTrue(submit("c"));
+		assertTrue(submit("d"));
+		assertEquals(3, mailbox.getQueueDepth());
+		assertEquals(2L, statistic("spilled.counter"));
+
+		sensor.release.countDown();
+		assertEquals(Arrays.asList("a", "b", "c", "d"), sensor.awaitDelivered(4));
+		assertEquals(0, mailbox.getQueueDepth());
+		assertEquals(0L, statistic("dropped.counter"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownBackpressure() {
+		new VirtualSensorMailbox(sensor, 1, "discard");
+	}
+
+	/**
+	 * Submits "a" and waits until a worker is stuck processing it, so the
+	 * next inputs stay in the mailbox.
+	 */
+	private void submitFirst() throws InterruptedException {
+		assertTrue(submit("a"));
+		assertTrue(sensor.started.await(2, TimeUnit.SECONDS));
+	}
+
+	private boolean submit(String inputStreamName) {
+		return mailbox.submit(inputStreamName, new ArrayList<StreamElement>());
+	}
+
+	private long statistic(String name) {
+		return ((Number) mailbox.getStatistics().get("vs.mailboxtest.mailbox." + name)).longValue();
+	}
+
+	private static class RecordingVirtualSensor extends VirtualSensor {
+
+		private final CountDownLatch started = new CountDownLatch(1);
+
+		private final CountDownLatch release = new CountDownLatch(1);
+
+		private final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+
+		RecordingVirtualSensor(VSensorConfig config) {
+			super(config);
+		}
+
+		@Override
+		void deliver(String inputStreamName, List<StreamElement> elements) {
+			started.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			delivered.add(inputStreamName);
+		}
+
+		List<String> awaitDelivered(int count) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + 2000;
+			while (delivered.size() < count && System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			synchronized (delivered) {
+				return new ArrayList<String>(delivered);
+			}
+		}
+	}
+}
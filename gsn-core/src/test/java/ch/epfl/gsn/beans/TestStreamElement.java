@@ -0,0 +1,110 @@
+package ch.epfl.gsn.beans;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Serializable;
+
+import org.junit.Test;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+
+public class TestStreamElement {
+
+	private static final DataField[] fields = new DataField[] { new DataField("temperature", DataTypes.DOUBLE),
+			new DataField("counter", DataTypes.BIGINT), new DataField("status", DataTypes.INTEGER),
+			new DataField("label", DataTypes.VARCHAR) };
+
+	@Test
+	public void testPrimitiveValues() {
+		StreamElement se = new StreamElement(StreamSchema.of(fields), 1000);
+		assertTrue(se.hasPrimitiveValue(0));
+		assertFalse(se.hasPrimitiveValue(3));
+		for (int i = 0; i < fields.length; i++) {
+			assertTrue(se.isNull(i));
+		}
+		se.setDouble(0, 21.5);
+		se.setLong(1, 1L << 40);
+		se.setData(3, "north");
+		assertFalse(se.isNull(0));
+		assertTrue(se.isNull(2));
+		assertEquals(21.5, se.getDouble(0), 0);
+		assertEquals(21L, se.getLong(0));
+		assertEquals(1L << 40, se.getLong(1));
+		assertEquals(0L, se.getLong(2));
+		// the legacy accessors box the values with the type of the field
+		assertEquals(21.5, se.getData("temperature"));
+		assertEquals(Long.valueOf(1L << 40), se.getData(1));
+		assertNull(se.getData("status"));
+		assertEquals("north", se.getData("label"));
+		se.setData(2, 3);
+		assertEquals(Integer.valueOf(3), se.getData(2));
+		se.setData(0, null);
+		assertTrue(se.isNull(0));
+	}
+
+	@Test
+	public void testBoxedView() {
+		StreamElement se = new StreamElement(StreamSchema.of(fields), 1000);
+		se.setDouble(0, 1.25);
+		se.setLong(2, 7);
+		StreamElement copy = new StreamElement(se);
+		Serializable[] values = se.getData();
+		assertFalse(se.hasPrimitiveValue(0));
+		assertEquals(1.25, values[0]);
+		assertNull(values[1]);
+		assertEquals(7, values[2]);
+		// the boxed array is the backing storage from now on
+		values[2] = 8;
+		assertEquals(8L, se.getLong(2));
+		// copies keep their own unboxed values
+		assertTrue(copy.hasPrimitiveValue(0));
+		assertEquals(7L, copy.getLong(2));
+		assertTrue(se.equalsIgnoreTimedAndFields(copy, new String[] { "status" }));
+	}
+
+	@Test
+	public void testTypedAccessOnBoxedElement() {
+		StreamElement se = new StreamElement(fields, new Serializable[] { 2.5, 12L, null, "south" }, 1000);
+		assertFalse(se.hasPrimitiveValue(0));
+		assertEquals(2.5, se.getDouble(0), 0);
+		assertEquals(12L, se.getLong(1));
+		assertTrue(se.isNull(2));
+		se.setLong(2, 4);
+		assertEquals(Integer.valueOf(4), se.getData(2));
+	}
+
+	@Test
+	public void testKryo() {
+		StreamElement se = new StreamElement(StreamSchema.of(fields), 1000);
+		se.setDouble(0, 21.5);
+		se.setLong(1, 1L << 40);
+		se.setData(3, "north");
+		long volume = se.getVolume();
+		StreamElement read = kryoCopy(se);
+		assertEquals(1000, read.getTimeStamp());
+		assertTrue(read.hasPrimitiveValue(0));
+		assertEquals(21.5, read.getDouble(0), 0);
+		assertEquals(1L << 40, read.getLong(1));
+		assertTrue(read.isNull(2));
+		assertEquals("north", read.getData("label"));
+		assertEquals(volume, read.getVolume());
+		// the volume computed by the sender is kept
+		se.setData(3, null);
+		assertEquals(volume, kryoCopy(se).getVolume());
+	}
+
+	private static StreamElement kryoCopy(StreamElement se) {
+		Kryo kryo = new Kryo();
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Output output = new Output(bytes);
+		kryo.writeObjectOrNull(output, se, StreamElement.class);
+		output.close();
+		return kryo.readObjectOrNull(new Input(bytes.toByteArray()), StreamElement.class);
+	}
+}
@@ -0,0 +1,52 @@
+package ch.epfl.gsn.beans.windowing;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StreamElement;
+
+public class TestInMemoryWindow {
+
+	private static final DataField[] fields = new DataField[] { new DataField("value", DataTypes.INTEGER) };
+
+	private static StreamElement se(int value, long timed) {
+		return new StreamElement(fields, new Serializable[] { value }, timed);
+	}
+
+	@Test
+	public void testTupleRingBuffer() {
+		TupleRingBuffer buffer = new TupleRingBuffer(3);
+		for (int i = 1; i <= 5; i++) {
+			buffer.add(se(i, i * 10));
+		}
+		assertEquals(3, buffer.size());
+		List<StreamElement> content = buffer.snapshot(Long.MAX_VALUE);
+		assertEquals(3, content.size());
+		assertEquals(5, content.get(0).getData("value"));
+		assertEquals(3, content.get(2).getData("value"));
+		// elements newer than the reference time are not part of the window
+		assertEquals(2, buffer.snapshot(40).size());
+		buffer.clear();
+		assertEquals(0, buffer.snapshot(Long.MAX_VALUE).size());
+	}
+
+	@Test
+	public void testTimeWindowDeque() {
+		TimeWindowDeque deque = new TimeWindowDeque(100);
+		deque.add(se(1, 1000));
+		deque.add(se(2, 1050));
+		deque.add(se(3, 1100));
+		// 1000 is evicted since the window is (1100 - 100, 1100]
+		assertEquals(2, deque.size());
+		List<StreamElement> content = deque.snapshot(1100);
+		assertEquals(3, content.get(0).getData("value"));
+		assertEquals(2, content.get(1).getData("value"));
+		assertEquals(0, deque.snapshot(1200).size());
+	}
+}
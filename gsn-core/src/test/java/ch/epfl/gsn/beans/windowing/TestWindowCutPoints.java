@@ -0,0 +1,47 @@
+package ch.epfl.gsn.beans.windowing;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class TestWindowCutPoints {
+
+	@Test
+	public void testOldestOfLast() {
+		WindowCutPoints cutPoints = new WindowCutPoints();
+		assertEquals(Long.MIN_VALUE, cutPoints.oldestOfLast(3));
+		for (long t : new long[] { 10, 20, 15, 30, 25 }) {
+			cutPoints.add(t);
+		}
+		assertEquals(30, cutPoints.getMaxTimestamp());
+		// the last 3 rows are 15, 30 and 25
+		assertEquals(15, cutPoints.oldestOfLast(3));
+		assertEquals(Long.MIN_VALUE, cutPoints.oldestOfLast(5));
+	}
+
+	@Test
+	public void testNthNewestAtOrBefore() {
+		WindowCutPoints cutPoints = new WindowCutPoints();
+		for (long t = 1; t <= 10; t++) {
+			cutPoints.add(t * 100);
+		}
+		// keeps the rows after 800 and the two newest at or before it
+		assertEquals(700, cutPoints.nthNewestAtOrBefore(2, 800));
+		assertEquals(Long.MIN_VALUE, cutPoints.nthNewestAtOrBefore(9, 800));
+	}
+
+	@Test
+	public void testRingGrowsOnDemand() {
+		WindowCutPoints cutPoints = new WindowCutPoints();
+		for (long t = 0; t < 100; t++) {
+			cutPoints.add(t);
+		}
+		// only the last 64 rows are known yet
+		assertEquals(Long.MIN_VALUE, cutPoints.oldestOfLast(80));
+		for (long t = 100; t < 200; t++) {
+			cutPoints.add(t);
+		}
+		assertEquals(120, cutPoints.oldestOfLast(80));
+		assertEquals(150, cutPoints.nthNewestAtOrBefore(30, 179));
+	}
+}
@@ -0,0 +1,268 @@
+package ch.epfl.gsn.delivery;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.epfl.gsn.Main;
+import ch.epfl.gsn.Mappings;
+import ch.epfl.gsn.VirtualSensor;
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StorageConfig;
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.beans.VSensorConfig;
+import ch.epfl.gsn.storage.StorageManager;
+import ch.epfl.gsn.vsensor.AbstractVirtualSensor;
+
+public class TestLocalChannel {
+
+	private static final String VS = "localchanneltest";
+
+	private static final DataField[] FIELDS = new DataField[] { new DataField("temperature", DataTypes.INTEGER) };
+
+	private static VSensorConfig config;
+
+	private static StorageManager sm;
+
+	private LocalChannel channel;
+
+	private Subscriber subscriber;
+
+	private final List<Integer> persisted = Collections.synchronizedList(new ArrayList<Integer>());
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		DriverManager.registerDriver(new org.h2.Driver());
+		StorageConfig storage = new StorageConfig();
+		storage.setJdbcDriver("org.h2.Driver");
+		storage.setJdbcUsername("sa");
+		storage.setJdbcPassword("");
+		storage.setJdbcURL("jdbc:h2:mem:localchannel");
+		config = new VSensorConfig();
+		config.setName(VS);
+		config.setFileName(VS + ".xml");
+		config.setOutputStructure(FIELDS);
+		config.setStorage(storage);
+		// the channel finds the storage of the virtual sensor by its name
+		assertTrue(Mappings.addVSensorInstance(new VirtualSensor(config) {
+			@Override
+			public AbstractVirtualSensor borrowVS() {
+				return null;
+			}
+		}));
+		sm = Main.getStorage(config);
+	}
+
+	@AfterClass
+	public static void tearDownAfterClass() {
+		Mappings.removeFilename(config.getFileName());
+	}
+
+	@Before
+	public void setUp() throws SQLException {
+		sm.executeCreateTable(VS, FIELDS, false);
+		channel = LocalChannel.get(VS);
+		subscriber = new Subscriber();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		channel.unsubscribe(subscriber);
+		channel.attach(null);
+		sm.executeDropTable(VS);
+	}
+
+	@Test
+	public void testWithoutSubscriber() throws SQLException {
+		channel.publish(batch(0, 3), new Insert(0, batch(0, 3)));
+		// written right away
+		assertEquals(3, count(-1));
+		assertEquals(0, channel.getPendingCount());
+	}
+
+	@Test
+	public void testOrderAndCatchUp() throws Exception {
+		channel.publish(batch(0, 2), new Insert(0, batch(0, 2)));
+		long maxPk = channel.subscribe(subscriber);
+		// the rows up to the key are read from the table, none of the pushed ones
+		assertEquals(2, count(-1));
+		assertEquals(0, count(maxPk));
+
+		List<StreamElement> published = new ArrayList<StreamElement>();
+		for (int b = 1; b <= 20; b++) {
+			List<StreamElement> data = batch(b * 10, 3);
+			published.addAll(data);
+			channel.publish(data, new Insert(b, data));
+		}
+		long lastPk = channel.attach(null);
+
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int b = 0; b <= 20; b++) {
+			expected.add(b);
+		}
+		assertEquals(expected, persisted);
+		assertEquals(60, count(maxPk));
+		assertEquals(0, count(lastPk));
+		assertEquals(published.size(), subscriber.received.size());
+		for (int i = 0; i < published.size(); i++) {
+			assertEquals(published.get(i).getTimeStamp(), subscriber.received.get(i).getTimeStamp());
+			// each subscriber gets its own copy
+			assertNotSame(published.get(i), subscriber.received.get(i));
+		}
+
+		channel.unsubscribe(subscriber);
+		channel.publish(batch(300, 1), new Insert(21, batch(300, 1)));
+		assertEquals(1, count(lastPk));
+	}
+
+	@Test
+	public void testPublishBlocksWhenTheQueueIsFull() throws Exception {
+		channel.subscribe(subscriber);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch writing = new CountDownLatch(1);
+		channel.publish(batch(0, 1), new LocalChannel.Persistence() {
+			public void persist() throws SQLException {
+				writing.countDown();
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		assertTrue(writing.await(5, TimeUnit.SECONDS));
+		Thread publisher = new Thread(new Runnable() {
+			public void run() {
+				try {
+					// one more than the queue can hold
+					for (int b = 1; b <= 257; b++) {
+						channel.publish(batch(b, 1), new Insert(b, batch(b, 1)));
+					}
+				} catch (SQLException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		publisher.start();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (channel.getPendingCount() < 256 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		publisher.join(200);
+		assertTrue("the publisher must wait for room in the queue", publisher.isAlive());
+		assertEquals(256, channel.getPendingCount());
+
+		release.countDown();
+		publisher.join(10000);
+		channel.attach(null);
+		assertEquals(257, persisted.size());
+		assertEquals(257, count(-1));
+	}
+
+	@Test
+	public void testDrainAfterShutdown() throws Exception {
+		channel.subscribe(subscriber);
+		final CountDownLatch release = new CountDownLatch(1);
+		channel.publish(batch(0, 1), new LocalChannel.Persistence() {
+			public void persist() throws SQLException {
+				try {
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				new Insert(0, batch(0, 1)).persist();
+			}
+		});
+		// more than a writer takes in one run
+		for (int b = 1; b <= 40; b++) {
+			channel.publish(batch(b, 1), new Insert(b, batch(b, 1)));
+		}
+		Thread shutdown = new Thread(new Runnable() {
+			public void run() {
+				LocalChannel.shutdown();
+			}
+		});
+		shutdown.start();
+		long deadline = System.currentTimeMillis() + 5000;
+		while (shutdown.getState() != Thread.State.TIMED_WAITING && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		release.countDown();
+		shutdown.join(10000);
+
+		// the writer can't hand the rest of the queue over, it writes it itself
+		channel.attach(null);
+		assertEquals(41, persisted.size());
+		assertEquals(41, count(-1));
+		assertEquals(0, channel.getPendingCount());
+	}
+
+	private static List<StreamElement> batch(long firstTimed, int size) {
+		List<StreamElement> batch = new ArrayList<StreamElement>();
+		for (int i = 0; i < size; i++) {
+			batch.add(new StreamElement(FIELDS, new Serializable[] { i }, firstTimed + i));
+		}
+		return batch;
+	}
+
+	/**
+	 * @return the number of rows after the primary key
+	 */
+	private static int count(long afterPk) throws SQLException {
+		Connection conn = null;
+		ResultSet rs = null;
+		try {
+			rs = sm.executeQueryWithResultSet(new StringBuilder("select count(*) from ").append(VS)
+					.append(" where pk > ").append(afterPk), conn = sm.getConnection());
+			return rs.next() ? rs.getInt(1) : 0;
+		} finally {
+			sm.close(rs);
+			sm.close(conn);
+		}
+	}
+
+	private class Insert implements LocalChannel.Persistence {
+
+		private final int id;
+
+		private final List<StreamElement> data;
+
+		Insert(int id, List<StreamElement> data) {
+			this.id = id;
+			this.data = data;
+		}
+
+		public void persist() throws SQLException {
+			sm.executeBatchInsert(VS, FIELDS, data);
+			persisted.add(id);
+		}
+	}
+
+	private static class Subscriber extends LocalDeliveryWrapper {
+
+		private final List<StreamElement> received = Collections.synchronizedList(new ArrayList<StreamElement>());
+
+		@Override
+		void deliverLocal(List<StreamElement> elements) {
+			received.addAll(elements);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package ch.epfl.gsn.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.epfl.gsn.Main;
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StreamElement;
+
+public class TestBatchInsert {
+
+	private static final String TABLE = "batchtest";
+
+	private static final DataField[] FIELDS = new DataField[] { new DataField("temperature", DataTypes.INTEGER) };
+
+	private static StorageManager sm;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		DriverManager.registerDriver(new org.h2.Driver());
+		sm = StorageManagerFactory.getInstance("org.h2.Driver", "sa", "", "jdbc:h2:mem:batchinsert",
+				Main.DEFAULT_MAX_DB_CONNECTIONS);
+	}
+
+	@Before
+	public void setUp() throws SQLException {
+		// the unique index on timed makes the elements with the same timestamp fail
+		sm.executeCreateTable(TABLE, FIELDS, true);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		sm.executeDropTable(TABLE);
+	}
+
+	@Test
+	public void testBatch() throws SQLException {
+		sm.executeBatchInsert(TABLE, FIELDS, Arrays.asList(element(1, 10), element(2, 20), element(3, 30)));
+		assertEquals("[1, 2, 3]", timestamps());
+	}
+
+	@Test
+	public void testFallbackInsertsTheOtherElements() throws SQLException {
+		sm.executeInsert(TABLE, FIELDS, element(2, 0));
+		StreamElement first = element(1, 10);
+		StreamElement third = element(3, 30);
+		try {
+			sm.executeBatchInsert(TABLE, FIELDS, Arrays.asList(first, element(2, 20), third));
+			fail("The duplicated timestamp must fail.");
+		} catch (PartialInsertException e) {
+			List<StreamElement> inserted = e.getInserted();
+			assertEquals(2, inserted.size());
+			assertSame(first, inserted.get(0));
+			assertSame(third, inserted.get(1));
+		}
+		assertEquals("[1, 2, 3]", timestamps());
+	}
+
+	@Test
+	public void testNothingInserted() throws SQLException {
+		sm.executeBatchInsert(TABLE, FIELDS, Arrays.asList(element(1, 10), element(2, 20)));
+		try {
+			sm.executeBatchInsert(TABLE, FIELDS, Arrays.asList(element(1, 11), element(2, 21)));
+			fail("The duplicated timestamps must fail.");
+		} catch (SQLException e) {
+			assertFalse(e instanceof PartialInsertException);
+		}
+		assertEquals("[1, 2]", timestamps());
+	}
+
+	private static StreamElement element(long timed, int temperature) {
+		return new StreamElement(FIELDS, new Serializable[] { temperature }, timed);
+	}
+
+	private static String timestamps() throws SQLException {
+		List<Long> timed = new ArrayList<Long>();
+		Connection conn = null;
+		ResultSet rs = null;
+		try {
+			rs = sm.executeQueryWithResultSet(new StringBuilder("select timed from ").append(TABLE)
+					.append(" order by timed"), conn = sm.getConnection());
+			while (rs.next()) {
+				timed.add(rs.getLong(1));
+			}
+		} finally {
+			sm.close(rs);
+			sm.close(conn);
+		}
+		return timed.toString();
+	}
+}
@@ -0,0 +1,97 @@
+package ch.epfl.gsn.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestConnectionPoolMonitor {
+
+	private BasicDataSource dataSource;
+
+	private ConnectionPoolMonitor.Pool pool;
+
+	@Before
+	public void setUp() {
+		dataSource = new BasicDataSource();
+		dataSource.setDriverClassName("org.h2.Driver");
+		dataSource.setUsername("sa");
+		dataSource.setPassword("");
+		dataSource.setUrl("jdbc:h2:mem:poolmonitor");
+		pool = ConnectionPoolMonitor.getInstance().instrument(dataSource);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		dataSource.close();
+	}
+
+	@Test
+	public void testClose() throws Exception {
+		Connection first = pool.borrow();
+		Connection second = pool.borrow();
+		assertEquals(2, pool.getHoldCount());
+		assertEquals(2, dataSource.getNumActive());
+
+		first.close();
+		assertEquals(1, pool.getHoldCount());
+		// closing twice doesn't give back the other connection
+		first.close();
+		assertEquals(1, pool.getHoldCount());
+		second.close();
+		assertEquals(0, pool.getHoldCount());
+		assertEquals(0, dataSource.getNumActive());
+	}
+
+	@Test
+	public void testReleaseTheConnectionOfThePool() throws Exception {
+		Connection conn = pool.borrow();
+		Statement statement = conn.createStatement();
+		// the statements return the connection of the pool, not the proxy
+		Connection pooled = statement.getConnection();
+		assertFalse(pooled == conn);
+		pool.release(pooled);
+		assertEquals(0, pool.getHoldCount());
+
+		statement.close();
+		conn.close();
+		assertEquals(0, pool.getHoldCount());
+		assertEquals(0, dataSource.getNumActive());
+	}
+
+	@Test
+	public void testReleaseTheProxy() throws Exception {
+		Connection conn = pool.borrow();
+		pool.release(conn);
+		assertEquals(0, pool.getHoldCount());
+		// still usable until closed
+		assertFalse(conn.isClosed());
+		conn.close();
+		assertTrue(conn.isClosed());
+		assertEquals(0, dataSource.getNumActive());
+	}
+
+	@Test
+	public void testIdentity() throws Exception {
+		Connection first = pool.borrow();
+		Connection second = pool.borrow();
+		assertTrue(first.equals(first));
+		assertFalse(first.equals(second));
+		assertEquals(System.identityHashCode(first), first.hashCode());
+		first.close();
+		second.close();
+	}
+
+	@Test
+	public void testSharedByDataSource() {
+		assertSame(pool, ConnectionPoolMonitor.getInstance().instrument(dataSource));
+	}
+}
@@ -0,0 +1,58 @@
+package ch.epfl.gsn.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StreamElement;
+
+public class TestInsertPlan {
+
+	private static final DataField[] FIELDS = new DataField[] { new DataField("temperature", DataTypes.DOUBLE),
+			new DataField("timed", DataTypes.BIGINT), new DataField("label", DataTypes.VARCHAR),
+			new DataField("count", DataTypes.INTEGER) };
+
+	@Test
+	public void testBind() throws Exception {
+		InsertPlan plan = new InsertPlan(FIELDS, new StringBuilder("insert into t ( temperature ,label ,count , timed ) values (?,?,?,?)"));
+		final List<String> calls = new ArrayList<String>();
+		PreparedStatement ps = (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { PreparedStatement.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						calls.add(method.getName() + args[0] + "=" + args[1]);
+						return null;
+					}
+				});
+		// the stream element has its fields in another order than the table
+		StreamElement se = new StreamElement(
+				new DataField[] { new DataField("count", DataTypes.INTEGER), new DataField("label", DataTypes.VARCHAR),
+						new DataField("temperature", DataTypes.DOUBLE) },
+				new Serializable[] { 3, null, 21.5 }, 1000);
+		plan.bind(ps, se);
+		assertEquals("[setDouble1=21.5, setNull2=12, setInt3=3, setLong4=1000]", calls.toString());
+	}
+
+	@Test
+	public void testIsFor() {
+		InsertPlan plan = new InsertPlan(FIELDS, new StringBuilder());
+		assertTrue(plan.isFor(FIELDS));
+		assertTrue(plan.isFor(new DataField[] { new DataField("TEMPERATURE", DataTypes.DOUBLE),
+				new DataField("timed", DataTypes.BIGINT), new DataField("label", DataTypes.VARCHAR),
+				new DataField("count", DataTypes.INTEGER) }));
+		assertFalse(plan.isFor(new DataField[] { new DataField("temperature", DataTypes.INTEGER),
+				new DataField("timed", DataTypes.BIGINT), new DataField("label", DataTypes.VARCHAR),
+				new DataField("count", DataTypes.INTEGER) }));
+	}
+}
@@ -0,0 +1,112 @@
+package ch.epfl.gsn.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.epfl.gsn.Main;
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StreamElement;
+
+public class TestKeysetDataEnumerator {
+
+	private static final String TABLE = "keysettest";
+
+	private static final DataField[] FIELDS = new DataField[] { new DataField("temperature", DataTypes.INTEGER) };
+
+	private static StorageManager sm;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		DriverManager.registerDriver(new org.h2.Driver());
+		sm = StorageManagerFactory.getInstance("org.h2.Driver", "sa", "", "jdbc:h2:mem:keyset",
+				Main.DEFAULT_MAX_DB_CONNECTIONS);
+	}
+
+	@Before
+	public void setUp() throws SQLException {
+		sm.executeCreateTable(TABLE, FIELDS, false);
+		// the timestamps are inserted out of order, most of them twice
+		List<StreamElement> rows = new ArrayList<StreamElement>();
+		for (int i = 0; i < 25; i++) {
+			long timed = (i * 7) % 25 / 2;
+			rows.add(new StreamElement(FIELDS, new Serializable[] { i }, timed));
+		}
+		sm.executeBatchInsert(TABLE, FIELDS, rows);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		sm.executeDropTable(TABLE);
+	}
+
+	@Test
+	public void testByPrimaryKey() {
+		List<StreamElement> read = readAll(new KeysetDataEnumerator(sm, TABLE, null, false, 10));
+		assertEquals(25, read.size());
+		for (int i = 0; i < read.size(); i++) {
+			assertEquals(i, ((Number) read.get(i).getData("temperature")).intValue());
+			if (i > 0) {
+				assertTrue(read.get(i - 1).getInternalPrimayKey() < read.get(i).getInternalPrimayKey());
+			}
+		}
+	}
+
+	@Test
+	public void testByTimestamp() {
+		List<StreamElement> read = readAll(new KeysetDataEnumerator(sm, TABLE, null, true, 4));
+		assertEquals(25, read.size());
+		for (int i = 1; i < read.size(); i++) {
+			StreamElement previous = read.get(i - 1);
+			StreamElement current = read.get(i);
+			// the ties of the timestamps are broken by the primary key, across the pages
+			assertTrue(previous.getTimeStamp() < current.getTimeStamp()
+					|| (previous.getTimeStamp() == current.getTimeStamp()
+							&& previous.getInternalPrimayKey() < current.getInternalPrimayKey()));
+		}
+	}
+
+	@Test
+	public void testCondition() {
+		List<StreamElement> read = readAll(new KeysetDataEnumerator(sm, TABLE, "temperature >= 20", false, 2));
+		assertEquals(5, read.size());
+		assertEquals(20, ((Number) read.get(0).getData("temperature")).intValue());
+	}
+
+	@Test
+	public void testLastPageFull() {
+		// 25 rows in pages of 5, the last page read is empty
+		assertEquals(25, readAll(new KeysetDataEnumerator(sm, TABLE, null, false, 5)).size());
+	}
+
+	@Test(expected = NoSuchElementException.class)
+	public void testClose() {
+		KeysetDataEnumerator rows = new KeysetDataEnumerator(sm, TABLE, null, false, 10);
+		rows.nextElement();
+		rows.close();
+		assertFalse(rows.hasMoreElements());
+		rows.nextElement();
+	}
+
+	private static List<StreamElement> readAll(KeysetDataEnumerator rows) {
+		List<StreamElement> read = new ArrayList<StreamElement>();
+		while (rows.hasMoreElements()) {
+			read.add(rows.nextElement());
+		}
+		rows.close();
+		return read;
+	}
+}
@@ -0,0 +1,126 @@
+package ch.epfl.gsn.storage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.epfl.gsn.Main;
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StreamElement;
+
+public class TestRollupMaintainer {
+
+	private static final String TABLE = "rolluptest";
+
+	private static final String ROLLUP = RollupMaintainer.getTableName(TABLE, 1000);
+
+	private static final DataField[] FIELDS = new DataField[] { new DataField("temperature", DataTypes.DOUBLE) };
+
+	private static StorageManager sm;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		DriverManager.registerDriver(new org.h2.Driver());
+		sm = StorageManagerFactory.getInstance("org.h2.Driver", "sa", "", "jdbc:h2:mem:rollup",
+				Main.DEFAULT_MAX_DB_CONNECTIONS);
+	}
+
+	@Before
+	public void setUp() throws SQLException {
+		sm.executeCreateTable(TABLE, FIELDS, false);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		RollupMaintainer.unregister(TABLE);
+		sm.executeDropTable(ROLLUP);
+		sm.executeDropTable(TABLE);
+	}
+
+	@Test
+	public void testUpdate() throws SQLException {
+		RollupMaintainer maintainer = RollupMaintainer.register(sm, TABLE, FIELDS, "1000");
+		maintainer.update(Arrays.asList(element(-500, 4.0), element(1000, 1.0), element(1500, 3.0)));
+		// the null values are not counted, but are the last value of their bucket
+		maintainer.update(Arrays.asList(element(1900, 5.0), element(2100, 2.0), element(2200, null)));
+
+		assertEquals(Arrays.asList("-1000 -500 4.0 4.0 4.0 1 4.0", "1000 1900 1.0 5.0 9.0 3 5.0",
+				"2000 2200 2.0 2.0 2.0 1 null"), buckets());
+	}
+
+	@Test
+	public void testOutOfOrderElement() throws SQLException {
+		RollupMaintainer maintainer = RollupMaintainer.register(sm, TABLE, FIELDS, "1000");
+		maintainer.update(Arrays.asList(element(1800, 2.0)));
+		maintainer.update(Arrays.asList(element(1200, 6.0)));
+
+		// the late element doesn't replace the last value
+		assertEquals(Arrays.asList("1000 1800 2.0 6.0 8.0 2 2.0"), buckets());
+	}
+
+	@Test
+	public void testFilledFromTheTable() throws SQLException {
+		sm.executeBatchInsert(TABLE, FIELDS, Arrays.asList(element(1000, 1.0), element(1500, 3.0),
+				element(2500, 7.0)));
+		RollupMaintainer maintainer = RollupMaintainer.register(sm, TABLE, FIELDS, "1000");
+		maintainer.update(Arrays.asList(element(2700, 1.0)));
+
+		assertEquals(Arrays.asList("1000 1500 1.0 3.0 4.0 2 3.0", "2000 2700 1.0 7.0 8.0 2 1.0"), buckets());
+	}
+
+	@Test
+	public void testParsePeriods() {
+		assertEquals("[60000, 3600000]", Arrays.toString(RollupMaintainer.parsePeriods(" 60000, ,0,3600000")));
+	}
+
+	private static StreamElement element(long timed, Double temperature) {
+		return new StreamElement(FIELDS, new Serializable[] { temperature }, timed);
+	}
+
+	/**
+	 * @return the buckets as "timed last_timed min max sum count last"
+	 */
+	private static List<String> buckets() throws SQLException {
+		List<String> buckets = new ArrayList<String>();
+		Connection conn = null;
+		ResultSet rs = null;
+		try {
+			rs = sm.executeQueryWithResultSet(new StringBuilder("select timed, last_timed, min_temperature,")
+					.append(" max_temperature, sum_temperature, count_temperature, last_temperature from ")
+					.append(ROLLUP).append(" order by timed"), conn = sm.getConnection());
+			while (rs.next()) {
+				StringBuilder bucket = new StringBuilder().append(rs.getLong(1)).append(' ').append(rs.getLong(2));
+				for (int i = 3; i <= 7; i++) {
+					bucket.append(' ');
+					if (i == 6) {
+						bucket.append(rs.getLong(i));
+					} else {
+						bucket.append(rs.getDouble(i));
+					}
+					if (rs.wasNull()) {
+						bucket.setLength(bucket.lastIndexOf(" ") + 1);
+						bucket.append("null");
+					}
+				}
+				buckets.add(bucket.toString());
+			}
+		} finally {
+			sm.close(rs);
+			sm.close(conn);
+		}
+		return buckets;
+	}
+}
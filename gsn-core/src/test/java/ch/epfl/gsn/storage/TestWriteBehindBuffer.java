@@ -0,0 +1,173 @@
+package ch.epfl.gsn.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.epfl.gsn.Main;
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StreamElement;
+
+public class TestWriteBehindBuffer {
+
+	private static final String TABLE = "writebehindtest";
+
+	private static final DataField[] FIELDS = new DataField[] { new DataField("temperature", DataTypes.INTEGER) };
+
+	private static StorageManager sm;
+
+	@BeforeClass
+	public static void setUpBeforeClass() throws Exception {
+		DriverManager.registerDriver(new org.h2.Driver());
+		sm = StorageManagerFactory.getInstance("org.h2.Driver", "sa", "", "jdbc:h2:mem:writebehind",
+				Main.DEFAULT_MAX_DB_CONNECTIONS);
+	}
+
+	@Before
+	public void setUp() throws SQLException {
+		sm.executeCreateTable(TABLE, FIELDS, true);
+	}
+
+	@After
+	public void tearDown() throws SQLException {
+		WriteBehindBuffer.unregister(TABLE);
+		sm.executeDropTable(TABLE);
+	}
+
+	@Test
+	public void testSync() throws SQLException {
+		WriteBehindBuffer buffer = WriteBehindBuffer.register(sm, TABLE, FIELDS, 100, 0);
+		Recorder recorder = new Recorder();
+		buffer.add(Arrays.asList(element(1), element(2)), recorder, true);
+		assertEquals(2, count());
+		assertTrue(recorder.written);
+		assertNull(recorder.error);
+	}
+
+	@Test
+	public void testAsyncAfterDelay() throws Exception {
+		WriteBehindBuffer buffer = WriteBehindBuffer.register(sm, TABLE, FIELDS, 100, 50);
+		Recorder recorder = new Recorder();
+		buffer.add(Arrays.asList(element(1), element(2)), recorder, false);
+		assertTrue(recorder.await());
+		assertNull(recorder.error);
+		assertEquals(2, count());
+		assertEquals(2, buffer.getWrittenRows());
+		assertEquals(0, buffer.getPendingRows());
+	}
+
+	@Test
+	public void testQueuedUntilTheBatchIsFull() throws Exception {
+		WriteBehindBuffer buffer = WriteBehindBuffer.register(sm, TABLE, FIELDS, 3, 60000);
+		Recorder first = new Recorder();
+		buffer.add(Arrays.asList(element(1), element(2)), first, false);
+		assertEquals(2, buffer.getPendingRows());
+		assertFalse(first.written);
+
+		Recorder second = new Recorder();
+		buffer.add(Collections.singletonList(element(3)), second, false);
+		assertTrue(first.await());
+		assertTrue(second.await());
+		assertEquals(3, count());
+		assertEquals(1, buffer.getBatchCount());
+	}
+
+	@Test
+	public void testFlush() throws SQLException {
+		WriteBehindBuffer buffer = WriteBehindBuffer.register(sm, TABLE, FIELDS, 100, 60000);
+		buffer.add(Arrays.asList(element(1), element(2), element(3)), null, false);
+		buffer.flush();
+		assertEquals(0, buffer.getPendingRows());
+		assertEquals(3, count());
+	}
+
+	@Test
+	public void testFailureOfOneEntry() throws SQLException {
+		sm.executeInsert(TABLE, FIELDS, element(2));
+		WriteBehindBuffer buffer = WriteBehindBuffer.register(sm, TABLE, FIELDS, 100, 60000);
+		Recorder first = new Recorder();
+		Recorder duplicate = new Recorder();
+		Recorder third = new Recorder();
+		buffer.add(Collections.singletonList(element(1)), first, false);
+		buffer.add(Collections.singletonList(element(2)), duplicate, false);
+		buffer.add(Collections.singletonList(element(3)), third, false);
+		buffer.flush();
+
+		// the entries are written in one batch, only the failing one gets the error
+		assertNull(first.error);
+		assertTrue(duplicate.error instanceof PartialInsertException);
+		assertNull(third.error);
+		assertEquals(3, count());
+		assertEquals(2, buffer.getWrittenRows());
+		assertEquals(1L, buffer.getStatistics().get("vs." + TABLE + ".write-behind.failed.counter"));
+	}
+
+	@Test
+	public void testSyncFailure() throws SQLException {
+		sm.executeInsert(TABLE, FIELDS, element(1));
+		WriteBehindBuffer buffer = WriteBehindBuffer.register(sm, TABLE, FIELDS, 100, 0);
+		Recorder recorder = new Recorder();
+		try {
+			buffer.add(Collections.singletonList(element(1)), recorder, true);
+			fail("The duplicated timestamp must fail.");
+		} catch (SQLException e) {
+			assertTrue(recorder.written);
+			assertTrue(recorder.error != null);
+		}
+		assertEquals(1, count());
+	}
+
+	private static StreamElement element(long timed) {
+		return new StreamElement(FIELDS, new Serializable[] { (int) timed * 10 }, timed);
+	}
+
+	private static int count() throws SQLException {
+		Connection conn = null;
+		ResultSet rs = null;
+		try {
+			rs = sm.executeQueryWithResultSet(new StringBuilder("select count(*) from ").append(TABLE),
+					conn = sm.getConnection());
+			return rs.next() ? rs.getInt(1) : 0;
+		} finally {
+			sm.close(rs);
+			sm.close(conn);
+		}
+	}
+
+	private static class Recorder implements WriteBehindBuffer.Callback {
+
+		private final CountDownLatch latch = new CountDownLatch(1);
+
+		private volatile boolean written = false;
+
+		private volatile SQLException error;
+
+		public void written(SQLException error) {
+			this.error = error;
+			this.written = true;
+			latch.countDown();
+		}
+
+		boolean await() throws InterruptedException {
+			return latch.await(5, TimeUnit.SECONDS);
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package ch.epfl.gsn.storage.db;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StreamElement;
+
+public class TestPostgresCopyEncoder {
+
+	@Test
+	public void testEncode() throws Exception {
+		DataField[] fields = new DataField[] { new DataField("temperature", DataTypes.DOUBLE),
+				new DataField("label", DataTypes.VARCHAR), new DataField("level", DataTypes.TINYINT) };
+		PostgresCopyEncoder encoder = new PostgresCopyEncoder("station", fields);
+		assertEquals("COPY station (temperature, label, level, timed) FROM STDIN (FORMAT binary)",
+				encoder.getStatement());
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		encoder.encode(Arrays.asList(new StreamElement(fields, new Serializable[] { 21.5, "é", (byte) 3 }, 1000),
+				new StreamElement(fields, new Serializable[] { null, null, null }, 2000)), bytes);
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+		byte[] signature = new byte[11];
+		in.readFully(signature);
+		assertEquals("PGCOPY\nÿ\r\n\u0000", new String(signature, "ISO-8859-1"));
+		assertEquals(0, in.readInt());
+		assertEquals(0, in.readInt());
+
+		assertEquals(4, in.readShort());
+		assertEquals(8, in.readInt());
+		assertEquals(21.5, in.readDouble(), 0);
+		assertEquals(2, in.readInt());
+		assertEquals((byte) 0xc3, in.readByte());
+		assertEquals((byte) 0xa9, in.readByte());
+		assertEquals(2, in.readInt());
+		assertEquals(3, in.readShort());
+		assertEquals(8, in.readInt());
+		assertEquals(1000, in.readLong());
+
+		assertEquals(4, in.readShort());
+		assertEquals(-1, in.readInt());
+		assertEquals(-1, in.readInt());
+		assertEquals(-1, in.readInt());
+		assertEquals(8, in.readInt());
+		assertEquals(2000, in.readLong());
+
+		assertEquals(-1, in.readShort());
+		assertEquals(0, in.available());
+	}
+}
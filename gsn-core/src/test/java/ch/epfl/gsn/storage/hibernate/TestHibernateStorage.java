@@ -57,8 +57,8 @@ public class TestHibernateStorage {
 
     @BeforeClass
     public static void initClass() {
-        //dbInfo = new HibernateUtil.DBConnectionInfo("org.h2.Driver", "jdbc:h2:mem:test", "sa", "");
-        dbInfo = new DBConnectionInfo("com.mysql.jdbc.Driver", "jdbc:mysql://localhost/ch.epfl.gsn", "root", "");
+        dbInfo = new DBConnectionInfo("org.h2.Driver", "jdbc:h2:mem:test", "sa", "");
+        //dbInfo = new DBConnectionInfo("com.mysql.jdbc.Driver", "jdbc:mysql://localhost/ch.epfl.gsn", "root", "");
     }
 
     @Before
@@ -402,6 +402,52 @@ public class TestHibernateStorage {
         }
     }
 
+    @Test
+    public void testBatchedInsertion() {
+        DataField[] structure = dataField.toArray(new DataField[]{});
+        HibernateStorage storage = HibernateStorage.newInstance(dbInfo, "testBatchedInsertion", structure, false);
+        assertNotNull(storage);
+        //
+        int numberOfElements = HibernateStorage.BATCH_SIZE * 3 + 7;
+        ArrayList<StreamElement> ses = new ArrayList<StreamElement>();
+        for (int k = 1; k <= numberOfElements; k++) {
+            StreamElement se = generateStreamElement(structure, Byte.MAX_VALUE);
+            se.setTimeStamp(k);
+            ses.add(se);
+        }
+        List<Serializable> pks = storage.saveStreamElements(ses);
+        assertEquals(numberOfElements, pks.size());
+        assertEquals((long) numberOfElements, storage.countStreamElement());
+        for (int k = 0; k < numberOfElements; k++) {
+            assertEquals(ses.get(k).getTimeStamp(), storage.getStreamElement(pks.get(k)).getTimeStamp());
+        }
+        checkQueryResult(storage.getStreamElements(11, Order.asc("timed"), new Criterion[]{}), 1, numberOfElements);
+    }
+
+    @Test
+    public void testPaginatedQueryWithDuplicatedTimed() {
+        DataField[] structure = dataField.toArray(new DataField[]{});
+        HibernateStorage storage = HibernateStorage.newInstance(dbInfo, "testPaginatedQueryWithDuplicatedTimed", structure, false);
+        assertNotNull(storage);
+        // 10 elements for each timed, the pages end in the middle of them
+        ArrayList<StreamElement> ses = new ArrayList<StreamElement>();
+        for (int k = 0; k < 100; k++) {
+            StreamElement se = generateStreamElement(structure, Byte.MIN_VALUE);
+            se.setTimeStamp(k / 10);
+            ses.add(se);
+        }
+        storage.saveStreamElements(ses);
+        for (int pageSize : new int[]{1, 7, 10, 13, 100}) {
+            DataEnumeratorIF de = storage.getStreamElements(pageSize, Order.asc("timed"), new Criterion[]{});
+            int nb = 0;
+            while (de.hasMoreElements()) {
+                assertEquals(nb / 10, de.nextElement().getTimeStamp());
+                nb++;
+            }
+            assertEquals(100, nb);
+        }
+    }
+
     private void checkQueryResult(DataEnumeratorIF de, int firstTimed, int lastTimed) {
         System.out.println("Checking Query Result with expected firstTimed: " + firstTimed + ", expected lastTimed: " + lastTimed);
         assertNotNull(de);
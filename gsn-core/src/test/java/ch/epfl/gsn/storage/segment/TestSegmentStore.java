@@ -0,0 +1,119 @@
+package ch.epfl.gsn.storage.segment;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StreamElement;
+import ch.epfl.gsn.storage.DataEnumeratorIF;
+
+public class TestSegmentStore {
+
+	private static final DataField[] FIELDS = new DataField[] { new DataField("temperature", DataTypes.DOUBLE),
+			new DataField("count", DataTypes.INTEGER), new DataField("label", DataTypes.VARCHAR),
+			new DataField("image", DataTypes.BINARY) };
+
+	private Path directory;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = Files.createTempDirectory("segments");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		for (Path file : Files.newDirectoryStream(directory)) {
+			Files.delete(file);
+		}
+		Files.delete(directory);
+	}
+
+	private static List<StreamElement> rows(int first, int count) {
+		List<StreamElement> rows = new ArrayList<StreamElement>();
+		for (int i = first; i < first + count; i++) {
+			// mostly regular timestamps, with some jitter
+			long timed = 1000000L + i * 1000L + (i % 7 == 0 ? 3 : 0);
+			rows.add(new StreamElement(FIELDS, new Serializable[] { i % 5 == 0 ? null : 20.0 + (i % 10) * 0.25,
+					i * 3, i % 3 == 0 ? null : "row" + i, new byte[] { (byte) i } }, timed));
+		}
+		return rows;
+	}
+
+	private static void assertRow(int i, StreamElement se) {
+		assertEquals(1000000L + i * 1000L + (i % 7 == 0 ? 3 : 0), se.getTimeStamp());
+		assertEquals(i + 1, se.getInternalPrimayKey());
+		if (i % 5 == 0) {
+			assertNull(se.getData("temperature"));
+		} else {
+			assertEquals(20.0 + (i % 10) * 0.25, (Double) se.getData("temperature"), 0);
+		}
+		assertEquals(i * 3, ((Number) se.getData("count")).intValue());
+		assertEquals(i % 3 == 0 ? null : "row" + i, se.getData("label"));
+		assertArrayEquals(new byte[] { (byte) i }, (byte[]) se.getData("image"));
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		SegmentStore store = new SegmentStore("t", directory, FIELDS);
+		store.append(rows(0, SegmentStore.SEGMENT_ROWS + 10));
+		assertEquals(1, store.getSegmentCount());
+		assertEquals(10, store.getTailRows());
+
+		DataEnumeratorIF all = store.scan(Long.MIN_VALUE, Long.MAX_VALUE);
+		int i = 0;
+		while (all.hasMoreElements()) {
+			assertRow(i++, all.nextElement());
+		}
+		assertEquals(SegmentStore.SEGMENT_ROWS + 10, i);
+
+		// read back from the files only
+		store.flush();
+		store = new SegmentStore("t", directory, FIELDS);
+		assertEquals(2, store.getSegmentCount());
+		DataEnumeratorIF range = store.scan(1000000L + 100 * 1000L, 1000000L + 199 * 1000L);
+		for (i = 100; i < 200; i++) {
+			assertTrue(range.hasMoreElements());
+			assertRow(i, range.nextElement());
+		}
+		assertFalse(range.hasMoreElements());
+		// the numbering goes on after the rows of the files
+		int next = SegmentStore.SEGMENT_ROWS + 10;
+		store.append(rows(next, 1));
+		store.flush();
+		assertRow(next, store.scan(1000000L + next * 1000L, Long.MAX_VALUE).nextElement());
+	}
+
+	@Test
+	public void testPruning() throws Exception {
+		SegmentStore store = new SegmentStore("t", directory, FIELDS);
+		store.append(rows(0, 100));
+		store.flush();
+		store.append(rows(100, 100));
+		store.flush();
+		List<Segment> segments = new ArrayList<Segment>();
+		for (Path file : Files.newDirectoryStream(directory)) {
+			segments.add(Segment.open(file));
+		}
+		assertEquals(2, segments.size());
+		for (Segment segment : segments) {
+			assertEquals(segment.getFirstPk() == 1, segment.overlaps(1000000L, 1000000L + 99 * 1000L));
+		}
+		assertEquals(1, store.dropBefore(1000000L + 100 * 1000L));
+		DataEnumeratorIF rest = store.scan(Long.MIN_VALUE, Long.MAX_VALUE);
+		assertRow(100, rest.nextElement());
+	}
+}
@@ -0,0 +1,72 @@
+package ch.epfl.gsn.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class TestTimingWheel {
+
+	@After
+	public void tearDown() {
+		TimingWheel.shutdown();
+	}
+
+	@Test
+	public void testOneShot() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		long start = System.nanoTime();
+		TimingWheel.getInstance().schedule(new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		}, 100);
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 100);
+	}
+
+	@Test
+	public void testPeriodicAndCancel() throws InterruptedException {
+		final AtomicInteger runs = new AtomicInteger();
+		final CountDownLatch latch = new CountDownLatch(3);
+		TimingWheel.Timeout timeout = TimingWheel.getInstance().scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				runs.incrementAndGet();
+				latch.countDown();
+			}
+		}, 0, 50);
+		assertTrue(latch.await(2, TimeUnit.SECONDS));
+		timeout.cancel();
+		Thread.sleep(100);
+		int stopped = runs.get();
+		Thread.sleep(200);
+		assertEquals(stopped, runs.get());
+	}
+
+	@Test
+	public void testOverflowWheels() throws InterruptedException {
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicInteger far = new AtomicInteger();
+		// beyond the first wheel, cascades down to it before firing
+		TimingWheel.getInstance().schedule(new Runnable() {
+			public void run() {
+				latch.countDown();
+			}
+		}, TimingWheel.TICK * TimingWheel.WHEEL_SIZE + 200);
+		TimingWheel.Timeout cancelled = TimingWheel.getInstance().schedule(new Runnable() {
+			public void run() {
+				far.incrementAndGet();
+			}
+		}, 3600000);
+		assertEquals(2, TimingWheel.getInstance().getPendingCount());
+		cancelled.cancel();
+		assertTrue(latch.await(3, TimeUnit.SECONDS));
+		assertFalse(far.get() > 0);
+	}
+}
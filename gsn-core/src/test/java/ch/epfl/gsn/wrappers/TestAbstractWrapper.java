@@ -117,11 +117,12 @@ public class TestAbstractWrapper {
 		assertEquals(wrapper.getTimerClockPeriod(), 100);
 		thread.start();
 		Thread.sleep(1000);
+		wrapper.removeUselessValues();
 		
 		ResultSet rs =sm.executeQueryWithResultSet(new StringBuilder("select count(*) from ").append(wrapper.getDBAliasInStr()), sm.getConnection());
 		assertTrue(rs.next());
 		//    System.out.println(rs.getInt(1));
-		assertTrue(rs.getInt(1)<=(AbstractWrapper.GARBAGE_COLLECT_AFTER_SPECIFIED_NO_OF_ELEMENTS*2));
+		assertTrue(rs.getInt(1)<=4);
 		wrapper.releaseResources();
 	}
 	
@@ -0,0 +1,79 @@
+package ch.epfl.gsn.wrappers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.epfl.gsn.beans.DataField;
+import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.beans.StreamElement;
+
+public class TestReorderBuffer {
+
+	private static final DataField[] fields = new DataField[] { new DataField("value", DataTypes.INTEGER) };
+
+	private static StreamElement se(int value, long timed) {
+		return new StreamElement(fields, new Serializable[] { value }, timed);
+	}
+
+	@Test
+	public void testReleaseInTimestampOrder() {
+		ReorderBuffer buffer = new ReorderBuffer(100);
+		List<StreamElement> out = new ArrayList<StreamElement>();
+		assertFalse(buffer.offer(se(1, 1000), 0));
+		assertFalse(buffer.offer(se(2, 1050), 0));
+		// late but within the bound
+		assertTrue(buffer.offer(se(3, 1020), 0));
+		assertEquals(0, buffer.release(out, 0));
+		assertFalse(buffer.offer(se(4, 1130), 0));
+		// the watermark is 1030
+		assertEquals(2, buffer.release(out, 0));
+		assertEquals(1000, out.get(0).getTimeStamp());
+		assertEquals(1020, out.get(1).getTimeStamp());
+		assertEquals(2, buffer.getPendingCount());
+		out.clear();
+		assertEquals(2, buffer.releaseAll(out));
+		assertEquals(1050, out.get(0).getTimeStamp());
+		assertEquals(1130, out.get(1).getTimeStamp());
+	}
+
+	@Test
+	public void testSameTimestampKeepsArrivalOrder() {
+		ReorderBuffer buffer = new ReorderBuffer(10);
+		List<StreamElement> out = new ArrayList<StreamElement>();
+		for (int i = 0; i < 20; i++) {
+			buffer.offer(se(i, 500 - (i % 2) * 100), 0);
+		}
+		buffer.releaseAll(out);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(400L, out.get(i).getTimeStamp());
+			assertEquals(2 * i + 1, out.get(i).getData("value"));
+			assertEquals(2 * i, out.get(10 + i).getData("value"));
+		}
+	}
+
+	@Test
+	public void testQuietKeyIsFlushed() {
+		ReorderBuffer buffer = new ReorderBuffer(100);
+		List<StreamElement> out = new ArrayList<StreamElement>();
+		buffer.offer(se(1, 1000), 5000);
+		assertEquals(0, buffer.release(out, 5050));
+		assertEquals(1, buffer.release(out, 5100));
+	}
+
+	@Test
+	public void testLateness() {
+		ReorderBuffer buffer = new ReorderBuffer(0);
+		assertFalse(buffer.isLate(1000, true));
+		buffer.setLastTimestamp(1000);
+		assertTrue(buffer.isLate(1000, true));
+		assertFalse(buffer.isLate(1000, false));
+		assertTrue(buffer.isLate(999, false));
+	}
+}
@@ -46,6 +46,7 @@ import play.api.mvc.MultipartFormData
 import play.api.libs.Files.TemporaryFile
 import play.mvc.Http
 import ch.epfl.gsn.beans.DataTypes;
+import ch.epfl.gsn.data.blob.{BlobReference, BlobStore}
 import play.core.j.JavaHelpers
 
 import play.Logger
@@ -336,7 +337,13 @@ def sensorData(sensorid:String) = headings((APIPermissionAction(playAuth,false,
             }.map {
               case l:Long=>Ok(l.toString)
               case d:Double=>Ok(d.toString)
-              case bin:Array[Byte]=>Ok(bin).as("image")
+              case bin:Array[Byte]=>Option(BlobReference.parse(bin)) match {
+                case None=>Ok(bin).as("image")
+                // streamed from its file rather than read in memory
+                case Some(ref)=>Option(BlobStore.getInstance).map{store=>
+                  Ok.sendPath(store.getPath(ref),inline=true).as("image")
+                }.getOrElse(InternalServerError("No blob directory is configured."))
+              }
             }         
           fieldData.get
       }.recover{
@@ -465,18 +472,23 @@ def sensorData(sensorid:String) = headings((APIPermissionAction(playAuth,false,
                     .asJava
                   val se = StreamElement.fromCSV(file.path, outputMap)
                   forwarder.connect("tcp://"+address+":"+port)
-                  forwarder.setReceiveTimeOut(3000)
-                  val result = se.map(s => {
+                  // the rows go as one multipart message, so that they are stored as a single batch
+                  forwarder.setReceiveTimeOut(3000 + se.length)
+                  val frames = se.map(s => {
                     val baos = new ByteArrayOutputStream()
                     val o = new kOutput(baos)
                     kryo.writeObjectOrNull(o,s,classOf[StreamElement])
                     o.close()
-                    forwarder.send(baos.toByteArray)
+                    baos.toByteArray
+                  })
+                  val result = frames.isEmpty || {
+                    frames.init.foreach(f => forwarder.sendMore(f))
+                    forwarder.send(frames.last)
                     val rec = forwarder.recv()
                     (rec != null && rec.head == 0.asInstanceOf[Byte])
-                  })
+                  }
                   forwarder.close()
-                  if (result.forall(identity)){
+                  if (result){
                     Results.Ok("{\"status\": \"success\"}")       
                   } else {
                     Results.InternalServerError("{\"status\": \"error\", \"message\" : \"Packet forwarding to GSN core failed.\"}")
@@ -0,0 +1,56 @@
+package controllers.gsn.api
+
+import org.zeromq.ZMQ
+import com.esotericsoftware.kryo.Kryo
+import com.esotericsoftware.kryo.io.Input
+import ch.epfl.gsn.beans.StreamElement
+import ch.epfl.gsn.data.LatestValueSource
+import ch.epfl.gsn.networking.zeromq.ZeroMQProxy
+import play.Logger
+import scala.util.Try
+
+/**
+ * Asks the GSN core for the latest values of the sensors on its ZeroMQ
+ * metadata port. When the core doesn't answer, it isn't asked again for
+ * RETRY_DELAY milliseconds, the values are then read from the tables.
+ */
+class ZmqLatestValueSource(port:Int) extends LatestValueSource {
+  val TIMEOUT=1000
+  val RETRY_DELAY=60000L
+
+  private val kryo=new Kryo()
+  private val context=ZMQ.context(1)
+  private var socket:ZMQ.Socket=null
+  private var unavailableUntil=0L
+
+  def latest(vsName:String):Option[Seq[(Long,Map[String,Any])]]=synchronized {
+    if (System.currentTimeMillis < unavailableUntil) None
+    else {
+      if (socket==null) {
+        socket=context.socket(ZMQ.REQ)
+        socket.setReceiveTimeOut(TIMEOUT)
+        socket.setLinger(0)
+        socket.connect("tcp://localhost:"+port)
+      }
+      val rec=Try{
+        socket.send(ZeroMQProxy.LATEST_VALUES_REQUEST+vsName)
+        socket.recv()
+      }.toOption.flatMap(Option(_))
+      if (rec.isEmpty) {
+        // a REQ socket without answer can't send again
+        socket.close()
+        socket=null
+        unavailableUntil=System.currentTimeMillis+RETRY_DELAY
+        Logger.warn(s"The GSN core didn't give the latest values of $vsName, reading them from the database.")
+        None
+      } else {
+        val in=new Input(rec.get)
+        val count=in.readInt
+        if (count<0) None
+        else Some((0 until count).flatMap(_=>Option(kryo.readObjectOrNull(in,classOf[StreamElement]))).map{se=>
+          (se.getTimeStamp,se.getFieldNames.indices.map(i=>(se.getFieldNames()(i).toLowerCase,se.getData(i):Any)).toMap)
+        })
+      }
+    }
+  }
+}
@@ -10,12 +10,16 @@ import akka.actor.ActorSystem;
 import akka.actor.Props;
 import play.inject.ApplicationLifecycle;
 import service.gsn.GSNConfigService;
+import controllers.gsn.api.ZmqLatestValueSource;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
 
 import ch.epfl.gsn.data.DataStore;
+import ch.epfl.gsn.data.LatestValues;
+import ch.epfl.gsn.data.blob.BlobStore;
 import ch.epfl.gsn.data.SensorStore;
 import ch.epfl.gsn.config.GsnConf;
 
@@ -38,6 +42,16 @@ public class ActorSystemInitializer {
 		DataStore dataStore = new DataStore(gsnConf);
         GSNConfigService gsnConfigService = new GSNConfigService(config);
 
+        if (gsnConf.blobDirectory().isDefined()) {
+            try {
+                BlobStore.configure(gsnConf.blobDirectory().get());
+            } catch (IOException e) {
+                Logger.error("The blob directory " + gsnConf.blobDirectory().get() + " isn't usable: " + e.getMessage());
+            }
+        }
+        if (gsnConf.zmqConf().enabled()) {
+            LatestValues.register(new ZmqLatestValueSource(gsnConf.zmqConf().metaPort()));
+        }
         actorSystem.actorOf(Props.create(SensorStore.class, dataStore), "gsnSensorStore");
 
 
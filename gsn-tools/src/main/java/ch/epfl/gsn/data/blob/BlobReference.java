@@ -0,0 +1,81 @@
+package ch.epfl.gsn.data.blob;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reference to a binary value kept in the {@link BlobStore}, stored in place
+ * of the value in its BINARY column.
+ * <p>
+ * In the column the reference is encoded as {@link #PREFIX} followed by the
+ * hexadecimal SHA-256 digest of the value, any other content of the column is
+ * the value itself.
+ */
+public final class BlobReference implements Serializable {
+
+	private static final long serialVersionUID = 6421590817461377031L;
+
+	private static final byte[] PREFIX = { 0, 'G', 'S', 'N', 'B', 'L', 'O', 'B', 0 };
+
+	private static final int DIGEST_LENGTH = 64;
+
+	private final String digest;
+
+	BlobReference(String digest) {
+		this.digest = digest;
+	}
+
+	/**
+	 * @return the reference encoded in the value of a BINARY column, or null
+	 *         if the column holds the value itself
+	 */
+	public static BlobReference parse(byte[] column) {
+		if (column == null || column.length != PREFIX.length + DIGEST_LENGTH) {
+			return null;
+		}
+		for (int i = 0; i < PREFIX.length; i++) {
+			if (column[i] != PREFIX[i]) {
+				return null;
+			}
+		}
+		return new BlobReference(new String(column, PREFIX.length, DIGEST_LENGTH, StandardCharsets.US_ASCII));
+	}
+
+	/**
+	 * @return the value to store in the BINARY column
+	 */
+	public byte[] toBytes() {
+		byte[] column = Arrays.copyOf(PREFIX, PREFIX.length + DIGEST_LENGTH);
+		System.arraycopy(digest.getBytes(StandardCharsets.US_ASCII), 0, column, PREFIX.length, DIGEST_LENGTH);
+		return column;
+	}
+
+	public String getDigest() {
+		return digest;
+	}
+
+	/**
+	 * Reads the value from the configured blob store.
+	 */
+	public byte[] resolve() throws IOException {
+		BlobStore store = BlobStore.getInstance();
+		if (store == null) {
+			throw new IOException("No blob directory is configured to read " + this + ".");
+		}
+		return store.read(this);
+	}
+
+	public boolean equals(Object o) {
+		return o instanceof BlobReference && ((BlobReference) o).digest.equals(digest);
+	}
+
+	public int hashCode() {
+		return digest.hashCode();
+	}
+
+	public String toString() {
+		return "blob:" + digest;
+	}
+}
@@ -0,0 +1,218 @@
+package ch.epfl.gsn.data.blob;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Content-addressed store of the large binary values of the virtual sensors.
+ * <p>
+ * Each value is written once in a file named after its SHA-256 digest, under
+ * a sub-directory named after the first two digits of the digest, and the
+ * rows only keep a {@link BlobReference} to it. Identical values, e.g. the
+ * same image received twice, share the same file.
+ * <p>
+ * The directory is set by the blob-directory element of gsn.xml, it is
+ * written by the GSN core and read by the web services, which must hence
+ * see it under the same path.
+ * <p>
+ * The values no row refers to anymore are deleted by
+ * {@link #sweep(Set, long)}, given the references found in the tables. The
+ * modification time of a file is the last time its value was put, so that a
+ * value put again while the tables are being read is kept. The tables which
+ * ever referred to a value are listed in the file {@link #TABLES} of the
+ * directory, as their rows outlive the virtual sensors: the values can only
+ * be swept while all of them can be read.
+ */
+public class BlobStore {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	public static final String TABLES = "tables";
+
+	private static volatile BlobStore instance = null;
+
+	private final Path directory;
+
+	// the tables which ever referred to a value, in lower case
+	private final Set<String> tables = new TreeSet<String>();
+
+	// the puts share it, the sweep takes it exclusively to check and delete a file
+	private final ReadWriteLock sweeping = new ReentrantReadWriteLock();
+
+	BlobStore(Path directory) throws IOException {
+		this.directory = directory;
+		Files.createDirectories(directory);
+		Path file = directory.resolve(TABLES);
+		if (Files.exists(file)) {
+			for (String table : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+				if (!table.trim().isEmpty()) {
+					tables.add(table.trim());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the directory of the blob store, called once at startup.
+	 */
+	public static synchronized void configure(String directory) throws IOException {
+		instance = new BlobStore(Paths.get(directory));
+	}
+
+	/**
+	 * @return the blob store, or null if no blob directory is configured
+	 */
+	public static BlobStore getInstance() {
+		return instance;
+	}
+
+	/**
+	 * @return the value of a BINARY column, read from the blob store if the
+	 *         column holds a reference
+	 */
+	public static byte[] resolve(byte[] column) throws IOException {
+		BlobReference reference = BlobReference.parse(column);
+		if (reference == null) {
+			return column;
+		}
+		return reference.resolve();
+	}
+
+	/**
+	 * Records that the rows of the table refer to values of the store, to be
+	 * called before they are written. The table is appended to the file
+	 * {@link #TABLES} the first time.
+	 */
+	public void addTable(String table) throws IOException {
+		String name = table.toLowerCase();
+		synchronized (tables) {
+			if (tables.contains(name)) {
+				return;
+			}
+			Files.write(directory.resolve(TABLES), Collections.singletonList(name), StandardCharsets.UTF_8,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			tables.add(name);
+		}
+	}
+
+	/**
+	 * @return the tables which ever referred to a value, in lower case
+	 */
+	public Set<String> getTables() {
+		synchronized (tables) {
+			return new TreeSet<String>(tables);
+		}
+	}
+
+	/**
+	 * Writes the value, unless a value with the same digest is already
+	 * stored.
+	 *
+	 * @return the reference to store in place of the value
+	 */
+	public BlobReference put(byte[] value) throws IOException {
+		BlobReference reference = new BlobReference(digest(value));
+		Path file = getPath(reference);
+		sweeping.readLock().lock();
+		try {
+			if (Files.exists(file)) {
+				Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+				return reference;
+			}
+			Files.createDirectories(file.getParent());
+			Path tmp = Files.createTempFile(file.getParent(), reference.getDigest(), ".tmp");
+			try {
+				Files.write(tmp, value);
+				// a concurrent writer of the same value writes the same content
+				Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+			} finally {
+				Files.deleteIfExists(tmp);
+			}
+			return reference;
+		} finally {
+			sweeping.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Deletes the values which are not referenced anymore.
+	 *
+	 * @param live   the references found in all the tables, see
+	 *               {@link #getTables()}
+	 * @param before only the files last put before this time (in
+	 *               milliseconds) are deleted, the others may be referenced by
+	 *               rows not written yet
+	 * @return the number of files deleted
+	 */
+	public int sweep(Set<BlobReference> live, long before) throws IOException {
+		int deleted = 0;
+		try (DirectoryStream<Path> prefixes = Files.newDirectoryStream(directory)) {
+			for (Path prefix : prefixes) {
+				if (!Files.isDirectory(prefix)) {
+					continue;
+				}
+				try (DirectoryStream<Path> files = Files.newDirectoryStream(prefix)) {
+					for (Path file : files) {
+						String name = file.getFileName().toString();
+						// the temporary files of a failed put are never referenced
+						if (!name.endsWith(".tmp") && live.contains(new BlobReference(name))) {
+							continue;
+						}
+						sweeping.writeLock().lock();
+						try {
+							if (Files.getLastModifiedTime(file).toMillis() < before && Files.deleteIfExists(file)) {
+								deleted++;
+							}
+						} finally {
+							sweeping.writeLock().unlock();
+						}
+					}
+				}
+			}
+		}
+		return deleted;
+	}
+
+	public Path getPath(BlobReference reference) {
+		String digest = reference.getDigest();
+		return directory.resolve(digest.substring(0, 2)).resolve(digest);
+	}
+
+	public byte[] read(BlobReference reference) throws IOException {
+		return Files.readAllBytes(getPath(reference));
+	}
+
+	public long size(BlobReference reference) throws IOException {
+		return Files.size(getPath(reference));
+	}
+
+	private static String digest(byte[] value) {
+		byte[] hash;
+		try {
+			hash = MessageDigest.getInstance("SHA-256").digest(value);
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform implements SHA-256
+			throw new IllegalStateException(e);
+		}
+		char[] hex = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			hex[2 * i] = HEX[(hash[i] >> 4) & 0xf];
+			hex[2 * i + 1] = HEX[hash[i] & 0xf];
+		}
+		return new String(hex);
+	}
+}
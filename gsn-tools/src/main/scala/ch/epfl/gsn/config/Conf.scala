@@ -55,8 +55,9 @@ trait Conf{
 
   lazy val storage=defaults.getConfig("storage")
   lazy val defaultStorage=StorageConf(storage.getString("driver"),storage.getString("url"),
-      storage.getString("user"),storage.getString("password"),None)
+      storage.getString("user"),storage.getString("password"),None,None)
 
   lazy val defaultGsn=GsnConf(defaults.getInt("monitorPort"),defaults.getString("timeFormat"),
-      defaultZmq,defaultStorage,None,defaults.getInt("maxDBConnections"), defaults.getInt("maxSlidingDBConnections"), defaultBacklogCommands)
+      defaultZmq,defaultStorage,None,defaults.getInt("maxDBConnections"), defaults.getInt("maxSlidingDBConnections"), defaultBacklogCommands,
+      defaults.getInt("vsWorkerThreads"), defaults.getString("wrapperRuntime"), defaults.getInt("wrapperSchedulerThreads"), None)
 }
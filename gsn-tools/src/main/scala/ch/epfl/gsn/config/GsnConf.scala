@@ -37,7 +37,8 @@ import play.api.libs.json._
 case class GsnConf(monitorPort:Int,timeFormat:String,
     zmqConf:ZmqConf,
     storageConf:StorageConf,slidingConf:Option[StorageConf],
-    maxDBConnections: Int, maxSlidingDBConnections: Int, backlogCommandsConf: BacklogCommandsConf)
+    maxDBConnections: Int, maxSlidingDBConnections: Int, backlogCommandsConf: BacklogCommandsConf,
+    vsWorkerThreads: Int, wrapperRuntime: String, wrapperSchedulerThreads: Int, blobDirectory: Option[String])
     
 object GsnConf extends Conf {
   def create(xml:Elem)=GsnConf(
@@ -49,6 +50,10 @@ object GsnConf extends Conf {
     takeInt(xml \ "max-db-connections").getOrElse(defaultGsn.maxDBConnections),
     takeInt(xml \ "max-sliding-db-connections").getOrElse(defaultGsn.maxSlidingDBConnections),
     BacklogCommandsConf.create(xml),
+    takeInt(xml \ "vs-worker-threads").getOrElse(defaultGsn.vsWorkerThreads),
+    take(xml \ "wrapper-runtime").getOrElse(defaultGsn.wrapperRuntime),
+    takeInt(xml \ "wrapper-scheduler-threads").getOrElse(defaultGsn.wrapperSchedulerThreads),
+    take(xml \ "blob-directory"),
   )
   def load(path:String)=create(XML.load(path))
 }
@@ -69,7 +74,7 @@ object BacklogCommandsConf extends Conf{
 }
 
 case class StorageConf(driver:String,url:String,
-    user:String,pass:String,identifier:Option[String]) 
+    user:String,pass:String,identifier:Option[String],dialect:Option[String]) 
 object StorageConf extends Conf{
   implicit val storageConfWrites: Writes[StorageConf] = Json.writes[StorageConf]
   implicit val storageConfReads: Reads[StorageConf] = Json.reads[StorageConf]
@@ -78,6 +83,7 @@ object StorageConf extends Conf{
     xml \@ "url",
     xml \@ "user",
     xml \@ "password",
-    xml.attribute("identifier").map(_.toString))  
+    xml.attribute("identifier").map(_.toString),
+    xml.attribute("dialect").map(_.toString))  
 }
 
@@ -33,8 +33,9 @@ import xml._
 import play.api.libs.json._
 
 case class VsConf(name:String,accessProtected:Boolean,priority:Int,initPriority:Boolean,timeZone:String,
-    description:String,poolSize:Option[Int],address:Map[String,String],storage:Option[StorageConf],
-    storageSize:Option[String], storageDirectory:Option[String],chunkSize:Option[String], processing:ProcessingConf,streams:Seq[StreamConf]) {
+    description:String,poolSize:Option[Int],mailboxSize:Option[Int],backpressure:Option[String],address:Map[String,String],storage:Option[StorageConf],
+    storageSize:Option[String], storageDirectory:Option[String],chunkSize:Option[String], aggregatePeriods:Option[String], rollupPeriods:Option[String], segmentDirectory:Option[String], blobThreshold:Option[Int], writeBehind:Option[WriteBehindConf],
+    processing:ProcessingConf,streams:Seq[StreamConf]) {
   
 }
 
@@ -45,11 +46,15 @@ object VsConf extends Conf{
   implicit val vsConfReads: Reads[VsConf] = Json.reads[VsConf]
   lazy val vs=defaults.getConfig("vs")
   val defaultPoolSize=vs.getInt("poolSize")
+  val defaultMailboxSize=vs.getInt("mailboxSize")
+  val defaultBackpressure=vs.getString("backpressure")
   val defaultPriority=vs.getInt("priority")
   val defaultProtected=vs.getBoolean("protected")
   val defaultOutputRate=vs.getInt("outputRate")
   val defaultUniqueTimestamps=vs.getBoolean("uniqueTimestamps")
   val defaultInitPriority= vs.getBoolean("initPriority")
+  val defaultWriteBatchSize=vs.getInt("writeBatchSize")
+  val defaultWriteMaxDelay=vs.getInt("writeMaxDelay")
   def create(xml:Elem)=VsConf(
 		  (xml \@ "name").replaceAll(" ", ""),
 		  attBool(xml,"protected",defaultProtected),
@@ -58,18 +63,35 @@ object VsConf extends Conf{
 		  att(xml,"time-zone",null),
 		  (xml \ "description").text,
 		  (xml \ "life-cycle").headOption.map(lc=>attInt(lc,"pool-size",defaultPoolSize)),
+		  (xml \ "life-cycle").headOption.map(lc=>attInt(lc,"mailbox-size",defaultMailboxSize)),
+		  (xml \ "life-cycle").headOption.map(lc=>lc.attribute("backpressure").map(_.toString).getOrElse(defaultBackpressure)),
 		  (xml \ "addressing" \ "predicate").map(p=>(p \@ "key",p.text)).toMap,
 		  (xml \ "storage").headOption.flatMap{s=>
 		    s.attribute("url").headOption.map(u=>StorageConf.create(s))},		  
 		  (xml \ "storage").headOption.map(s=>s \@ "history-size"),
       (xml \ "storage").headOption.map(s=>s \@ "storage-directory"),
       (xml \ "storage").headOption.map(s=>s \@ "timescale-chunk-size"),
+      (xml \ "storage").headOption.flatMap(s=>s.attribute("timescale-aggregates").map(_.toString)),
+      (xml \ "storage").headOption.flatMap(s=>s.attribute("rollups").map(_.toString)),
+      (xml \ "storage").headOption.flatMap(s=>s.attribute("segment-directory").map(_.toString)),
+      (xml \ "storage").headOption.flatMap(s=>s.attribute("blob-threshold").map(_.toString.toInt)),
+      (xml \ "storage").headOption.filter(s=>s.attribute("write-behind").exists(_.toString.toBoolean)).map(s=>WriteBehindConf.create(s)),
 		  ProcessingConf.create((xml \ "processing-class").head) ,
 		  (xml \ "streams" \ "stream").map(s=>StreamConf.create(s))		  
   )
   def load(path:String):VsConf=create(XML.load(path))
 }
 
+case class WriteBehindConf(batchSize:Int,maxDelay:Int,ack:String)
+object WriteBehindConf extends Conf{
+  implicit val writeBehindConfWrites: Writes[WriteBehindConf] = Json.writes[WriteBehindConf]
+  implicit val writeBehindConfReads: Reads[WriteBehindConf] = Json.reads[WriteBehindConf]
+  def create(xml:Node)=WriteBehindConf(
+      attInt(xml,"write-batch-size",VsConf.defaultWriteBatchSize),
+      attInt(xml,"write-max-delay",VsConf.defaultWriteMaxDelay),
+      xml.attribute("write-ack").map(_.toString.toLowerCase).getOrElse("async"))
+}
+
 case class ProcessingConf(className:String,uniqueTimestamp:Boolean,initParams:Map[String,String],
     rate:Option[Int],output:Seq[FieldConf],webInput:Option[WebInputConf], partitionField:Option[String])
 object ProcessingConf extends Conf{
@@ -129,7 +151,7 @@ object StreamConf extends Conf{
 }
 
 case class SourceConf(alias:String,query:String,storageSize:Option[String],slide:Option[String],
-    disconnectBufferSize:Option[Int],samplingRate:Option[Double],wrappers:Seq[WrapperConf])
+    disconnectBufferSize:Option[Int],samplingRate:Option[Double],windowEngine:Option[String],wrappers:Seq[WrapperConf])
 object SourceConf{
   implicit val sourceConfWrites: Writes[SourceConf] = Json.writes[SourceConf]
   implicit val sourceConfReads: Reads[SourceConf] = Json.reads[SourceConf]
@@ -139,17 +161,19 @@ object SourceConf{
       xml.attribute("slide").map(_.toString),
       xml.attribute("disconnected-buffer-size").map(_.toString.toInt),
       xml.attribute("sampling-rate").map(_.toString.toDouble),
+      xml.attribute("window-engine").map(_.toString),
       (xml \ "address").map(w=>WrapperConf.create(w))
   )
 }
     
-case class WrapperConf(wrapper:String,partialKey:Option[String],params:Map[String,String],output:Seq[FieldConf])
+case class WrapperConf(wrapper:String,partialKey:Option[String],maxLateness:Option[Long],params:Map[String,String],output:Seq[FieldConf])
 object WrapperConf{
   implicit val wrapperConfWrites: Writes[WrapperConf] = Json.writes[WrapperConf]
   implicit val wrapperConfReads: Reads[WrapperConf] = Json.reads[WrapperConf]
   def create(xml:Node)=WrapperConf(
       xml \@ "wrapper", 
       xml.attribute("partial-order-key").map(_.toString),
+      xml.attribute("max-lateness").map(_.toString.toLong),
       (xml \ "predicate").map(p=>(p \@ "key",p.text)).toMap,
       (xml \ "output-structure" \ "field").map(f=>FieldConf.create(f)))
 }    
@@ -0,0 +1,24 @@
+package ch.epfl.gsn.data
+
+/**
+ * Source of the latest values of the sensors kept in memory, e.g. by the GSN
+ * core, sparing the queries on their tables.
+ */
+trait LatestValueSource {
+  /**
+   * The latest rows of the sensor, one per value of its partition field, as
+   * their timestamp and their values by lower case field name. None if the
+   * source doesn't know the sensor.
+   */
+  def latest(vsName:String):Option[Seq[(Long,Map[String,Any])]]
+}
+
+object LatestValues {
+  @volatile private var source:Option[LatestValueSource]=None
+
+  def register(s:LatestValueSource)={
+    source=Option(s)
+  }
+
+  def get(vsName:String)=source.flatMap(_.latest(vsName))
+}
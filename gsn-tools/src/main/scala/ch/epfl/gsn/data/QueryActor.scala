@@ -116,7 +116,7 @@ class QueryActor(p:Promise[Seq[SensorData]]) extends Actor {
   
   private def sensorInfoToData(si:SensorInfo,latest:Boolean=true)={
     val latestValues=
-      if (latest) si.stats.get.latestValues
+      if (latest) cachedLatestValues(si.sensor).getOrElse(si.stats.get.latestValues)
       else Seq()
     SensorData(latestValues,si.sensor,si.stats.getOrElse(EmptyStats) ) 
   }
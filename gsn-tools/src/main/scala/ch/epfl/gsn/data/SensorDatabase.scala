@@ -45,13 +45,46 @@ import org.joda.time.DateTime
 import java.io.ByteArrayInputStream
 import java.io.ObjectInputStream
 import java.sql.ResultSet
+import ch.epfl.gsn.data.blob.BlobStore
 import com.hp.hpl.jena.datatypes.RDFDatatype
 import com.hp.hpl.jena.datatypes.xsd.XSDDatatype
 import com.typesafe.config.ConfigFactory
 
 object SensorDatabase { 
   val log=LoggerFactory.getLogger(SensorDatabase.getClass)
+  /**
+   * The latest values of the sensor, from the LatestValues source if it
+   * knows the sensor, otherwise from its table.
+   */
   def latestValues(sensor:Sensor, timeFormat:Option[String]=None)
+    (implicit ds:Option[String]):Seq[Series] =
+    cachedLatestValues(sensor,timeFormat).getOrElse(queryLatestValues(sensor,timeFormat))
+
+  /**
+   * The latest values of the sensor from the LatestValues source, None if it
+   * doesn't know the sensor. With a partition field, like in the query, only
+   * the partitions updated within the timeframe before the latest one are
+   * kept.
+   */
+  def cachedLatestValues(sensor:Sensor, timeFormat:Option[String]=None):Option[Seq[Series]]=
+    LatestValues.get(sensor.name.toLowerCase).map{rows=>
+      val selected=
+        if (sensor.properties.contains("partitionField") && rows.nonEmpty) {
+          val timeframe=ConfigFactory.load.getInt("gsn.data.timeframe")
+          val max=rows.map(_._1).max
+          rows.filter(_._1 > max - timeframe)
+        } else rows
+      val fields=sensor.fields
+      Seq(Series(timeOutput(sensor.name),selected.map(r=>formatTime(r._1)(timeFormat))))++
+      fields.map{f=>
+        Series(f,selected.map{r=>
+          if (f.dataType == BinaryType) "binary"
+          else r._2.getOrElse(f.fieldName.toLowerCase,null)
+        })
+      }
+    }
+
+  private def queryLatestValues(sensor:Sensor, timeFormat:Option[String])
     (implicit ds:Option[String]) ={
     val timeframe=ConfigFactory.load.getInt("gsn.data.timeframe")
     val vsName=sensor.name.toLowerCase 
@@ -132,8 +165,15 @@ object SensorDatabase {
     try{
 	  vsDB(sensorConf.ds).withSession {implicit session=>
         val stmt=session.conn.createStatement
-	    log.debug("Query: "+query)
-        val rs=stmt.executeQuery(query.toString)
+        val rs=continuousAggregateQuery(session.conn,sensor.name.toLowerCase,selFields,conditions,
+            size,aggFunction,aggPeriod).orElse(rollupQuery(session.conn,sensor.name.toLowerCase,selFields,
+            conditions,size,aggFunction,aggPeriod)).flatMap{q=>
+          log.debug("Query: "+q)
+          Try(stmt.executeQuery(q)).toOption
+        }.getOrElse{
+	      log.debug("Query: "+query)
+          stmt.executeQuery(query.toString)
+        }
         while (rs.next) {
           time += formatTime(rs.getLong("agg_interval")*aggPeriod)
           for (i <- selFields.indices) yield {
@@ -156,6 +196,107 @@ object SensorDatabase {
 	} 
   }   
 
+  // a bucket holds the rows from its start, included, to its end, excluded
+  private val alignedTimeCondition="""(?i)\s*timed\s*(>=|<)\s*(-?\d+)\s*""".r
+
+  /**
+   * True if the conditions select whole buckets of the period: they may only
+   * be timed >= X and timed < X with X a multiple of the period.
+   */
+  private def alignedOn(conditions:Seq[String],period:Long)=conditions==null || conditions.forall{
+    case alignedTimeCondition(_,bound) => bound.toLong % period == 0
+    case _ => false
+  }
+
+  /**
+   * The query on the continuous aggregate <vs>_agg_<aggPeriod> created by
+   * the TimescaleStorageManager, if it exists and gives the same result as
+   * the aggregation of the raw rows: the function must be materialized and
+   * the conditions must only bound timed on bucket boundaries, with >= for a
+   * lower bound and < for an upper bound (the bucket starting at X holds the
+   * rows with timed = X, which timed > X excludes and timed <= X includes).
+   */
+  private def continuousAggregateQuery(conn:java.sql.Connection,vsName:String,fields:Seq[String],
+      conditions:Seq[String],size:Option[Int],aggFunction:String,aggPeriod:Long):Option[String]={
+    val function=aggFunction.trim.toLowerCase
+    if (!Seq("avg","min","max","sum","count").contains(function) || aggPeriod<=0 || !alignedOn(conditions,aggPeriod)) None
+    else Try{
+      val view=s"${vsName}_agg_$aggPeriod"
+      if (!conn.getMetaData.getDatabaseProductName.equalsIgnoreCase("PostgreSQL")) None
+      else {
+        val stmt=conn.createStatement
+        val rs=stmt.executeQuery(s"select to_regclass('$view') is not null")
+        val exists=rs.next && rs.getBoolean(1)
+        rs.close
+        stmt.close
+        if (!exists) None
+        else {
+          val query = new StringBuilder("select ")
+          query.append((Seq(s"timed/$aggPeriod as agg_interval")++fields.map(f=>s"${function}_${f.toLowerCase} as $f")).mkString(","))
+          query.append(" from ").append(view)
+          if (conditions != null && conditions.length>0)
+            query.append(" where "+conditions.mkString(" and "))
+          if (size.isDefined)
+            query.append(" order by timed desc limit " + size.get)
+          Some(query.toString)
+        }
+      }
+    }.toOption.flatten
+  }
+
+  private val rollupTable="""(?i)(.+)_rollup_(\d+)""".r
+
+  /**
+   * The query on the coarsest rollup table <vs>_rollup_<period> maintained
+   * by the RollupMaintainer giving the same result as the aggregation of the
+   * raw rows: aggPeriod must be a multiple of its period (the period itself
+   * for the last value), the table must have the columns of the fields and
+   * the conditions must only bound timed on bucket boundaries, with >= and <.
+   */
+  private def rollupQuery(conn:java.sql.Connection,vsName:String,fields:Seq[String],
+      conditions:Seq[String],size:Option[Int],aggFunction:String,aggPeriod:Long):Option[String]={
+    val function=aggFunction.trim.toLowerCase
+    def fits(period:Long)=
+      if (function=="last") period==aggPeriod
+      else aggPeriod % period == 0
+    if (!Seq("avg","min","max","sum","count","last").contains(function) || aggPeriod<=0) None
+    else Try{
+      val meta=conn.getMetaData
+      val rs=meta.getTables(null,null,"%",Array("TABLE"))
+      val tables=new ArrayBuffer[(String,Long)]
+      while (rs.next) rs.getString("TABLE_NAME") match {
+        case rollupTable(vs,period) if vs.equalsIgnoreCase(vsName) => tables += ((rs.getString("TABLE_NAME"),period.toLong))
+        case _ =>
+      }
+      rs.close
+      def hasColumns(table:String)={
+        val cols=meta.getColumns(null,null,table,"%")
+        val names=new ArrayBuffer[String]
+        while (cols.next) names += cols.getString("COLUMN_NAME").toLowerCase
+        cols.close
+        fields.forall(f=>names.contains(s"${if (function=="avg") "sum" else function}_${f.toLowerCase}"))
+      }
+      tables.filter{case (_,period)=>fits(period) && alignedOn(conditions,period)}.sortBy(-_._2)
+        .find{case (table,_)=>hasColumns(table)}.map{case (table,period)=>
+          def expr(f:String)=function match {
+            case "avg" => s"sum(sum_$f)/nullif(sum(count_$f),0)"
+            case "count" => s"sum(count_$f)"
+            case "last" => s"max(last_$f)"
+            case _ => s"$function(${function}_$f)"
+          }
+          val query = new StringBuilder("select ")
+          query.append((Seq(s"floor(timed/$aggPeriod) as agg_interval")++fields.map(f=>s"${expr(f.toLowerCase)} as $f")).mkString(","))
+          query.append(" from ").append(table.toLowerCase)
+          if (conditions != null && conditions.length>0)
+            query.append(" where "+conditions.mkString(" and "))
+          query.append(" group by agg_interval")
+          if (size.isDefined)
+            query.append(" order by agg_interval desc limit " + size.get)
+          query.toString
+        }
+    }.toOption.flatten
+  }
+
   def getSensorTimescaleMetadata(sensorConf: SensorInfo): SensorData = {
     val sensor = sensorConf.sensor
     val query = new StringBuilder("SELECT COUNT(*) AS num_chunks, SUM(total_bytes) AS total_size_bytes,MIN(total_bytes) AS min_chunk_size_bytes, MAX(total_bytes) AS max_chunk_size_bytes")
@@ -308,7 +449,7 @@ object SensorDatabase {
           for (i <- fieldNames.indices) yield {
             if (sensor.fields(i).dataType == BinaryType){
               val grid={
-                val rawGrid=GridTools.deserialize(rs.getBytes(fieldNames(i)))
+                val rawGrid=GridTools.deserialize(BlobStore.resolve(rs.getBytes(fieldNames(i))))
                 val cropped=
                   if (!box.isDefined) rawGrid               
                   else GridTools.crop(rawGrid, GridTools.BoundingBox(box.get))
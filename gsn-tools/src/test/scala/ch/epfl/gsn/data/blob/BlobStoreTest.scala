@@ -0,0 +1,51 @@
+package ch.epfl.gsn.data.blob
+
+import java.nio.file.Files
+
+import org.scalatest.funspec.AnyFunSpec
+import org.scalatest.matchers.should.Matchers
+
+class BlobStoreTest extends AnyFunSpec with Matchers {
+
+  describe("blob store"){
+    val directory=Files.createTempDirectory("blobs").toString
+    BlobStore.configure(directory)
+    val store=BlobStore.getInstance
+    val image=Array.tabulate[Byte](10000)(i=>(i%251).toByte)
+
+    it("should keep identical values once"){
+      val ref=store.put(image)
+      store.put(image.clone) shouldBe ref
+      store.read(ref) shouldBe image
+      store.size(ref) shouldBe image.length
+    }
+
+    it("should resolve the references stored in the columns"){
+      val column=store.put(image).toBytes
+      BlobReference.parse(column) should not be null
+      BlobStore.resolve(column) shouldBe image
+    }
+
+    it("should leave the other values as they are"){
+      BlobReference.parse(image) shouldBe null
+      BlobStore.resolve(image) should be theSameInstanceAs image
+    }
+
+    it("should delete only the old values no row refers to"){
+      val kept=store.put(image)
+      val dropped=store.put(image.reverse)
+      store.sweep(new java.util.HashSet[BlobReference](),System.currentTimeMillis-60000) shouldBe 0
+      store.sweep(java.util.Collections.singleton(kept),System.currentTimeMillis+1000) shouldBe 1
+      store.read(kept) shouldBe image
+      Files.exists(store.getPath(dropped)) shouldBe false
+    }
+
+    it("should remember the tables referring to the values"){
+      store.addTable("Camera")
+      store.addTable("camera")
+      store.addTable("meteo")
+      BlobStore.configure(directory)
+      BlobStore.getInstance.getTables.toArray shouldBe Array("camera","meteo")
+    }
+  }
+}